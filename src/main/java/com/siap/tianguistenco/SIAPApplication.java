@@ -1,10 +1,16 @@
 package com.siap.tianguistenco;
 
 import com.formdev.flatlaf.FlatLightLaf;
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAOCache;
 import com.siap.tianguistenco.datos.UsuarioDAO;
-import com.siap.tianguistenco.gui.CatalogoFrame;
+import com.siap.tianguistenco.inventario.Inventario;
 import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.motor.MotorComercio;
 import com.siap.tianguistenco.threads.*;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -14,22 +20,17 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Coordina todos los hilos del sistema multihilo de e-commerce
  */
 public class SIAPApplication {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(SIAPApplication.class);
+
+    private final CicloVidaAplicacion cicloVida;
+    private final AtomicBoolean hilosPostAutenticacionIniciados;
     private final CarritoCompra carritoCompra;
-    
-    // Hilos del sistema
-    private Thread hiloAutenticacion;
-    private Thread hiloSesion;
-    private Thread hiloSelectorProductos;
-    private Thread hiloCalculadorPrecio;
-    private Thread hiloAplicadorDescuentos;
-    private Thread hiloFinalizadorCompra;
-    private Thread hiloGeneradorTicket;
-    private Thread hiloGestorTarjetas;
-    private Thread hiloGestorHistorial;
-    private Thread hiloGestorDevoluciones;
-    private Thread hiloGestorEnvio;
+
+    // Tiempo máximo total para que terminen los servicios al detener la aplicación
+    private static final long PLAZO_DETENCION_MS = 5000;
+
+    // Servicios del sistema, cada uno en su hilo virtual
+    private final EjecutorServicios servicios;
     
     // Gestores de hilos
     private GestorAutenticacion gestorAutenticacion;
@@ -45,11 +46,13 @@ public class SIAPApplication {
     private GestorEnvio gestorEnvio;
 
     public SIAPApplication() {
-        this.usuarioAutenticado = new AtomicBoolean(false);
-        this.aplicacionActiva = new AtomicBoolean(true);
-        this.carritoCompra = new CarritoCompra();
+        this.cicloVida = new CicloVidaAplicacion();
+        this.hilosPostAutenticacionIniciados = new AtomicBoolean(false);
+        this.carritoCompra = new CarritoCompra(Inventario.getInstancia());
+        this.servicios = new EjecutorServicios();
         
         inicializarHilos();
+        cicloVida.suscribir(this::alCambiarEstado);
     }
 
     /**
@@ -57,26 +60,21 @@ public class SIAPApplication {
      */
     private void inicializarHilos() {
         // Hilo 1: GestorAutenticacion
-        gestorAutenticacion = new GestorAutenticacion(usuarioAutenticado, aplicacionActiva);
-        hiloAutenticacion = new Thread(gestorAutenticacion, "GestorAutenticacion");
+        gestorAutenticacion = new GestorAutenticacion(cicloVida);
 
         // Hilo 2: GestorSesion (se inicializará después del login)
         // Hilo 3: SelectorProductos
-        selectorProductos = new SelectorProductos(usuarioAutenticado, aplicacionActiva, carritoCompra);
-        hiloSelectorProductos = new Thread(selectorProductos, "SelectorProductos");
+        selectorProductos = new SelectorProductos(cicloVida, carritoCompra);
 
         // Hilo 4: CalculadorPrecio
-        calculadorPrecio = new CalculadorPrecio(usuarioAutenticado, aplicacionActiva, carritoCompra, selectorProductos);
-        hiloCalculadorPrecio = new Thread(calculadorPrecio, "CalculadorPrecio");
+        calculadorPrecio = new CalculadorPrecio(cicloVida, carritoCompra, selectorProductos);
 
         // Hilo 5: AplicadorDescuentos
-        aplicadorDescuentos = new AplicadorDescuentos(usuarioAutenticado, aplicacionActiva, carritoCompra, calculadorPrecio);
-        hiloAplicadorDescuentos = new Thread(aplicadorDescuentos, "AplicadorDescuentos");
+        aplicadorDescuentos = new AplicadorDescuentos(cicloVida, carritoCompra, calculadorPrecio);
 
         // Hilo 6: FinalizadorCompra (se inicializará después del login)
         // Hilo 7: GeneradorTicket
-        generadorTicket = new GeneradorTicket(usuarioAutenticado, aplicacionActiva);
-        hiloGeneradorTicket = new Thread(generadorTicket, "GeneradorTicket");
+        generadorTicket = new GeneradorTicket(cicloVida);
     }
 
     /**
@@ -87,50 +85,36 @@ public class SIAPApplication {
             // Configurar Look and Feel moderno
             FlatLightLaf.setup();
             
-            System.out.println("=== SIAP TIANGUISTENCO E-COMMERCE MULTIHILO ===");
-            System.out.println("Iniciando aplicación...");
+            LOG.info("=== SIAP TIANGUISTENCO E-COMMERCE MULTIHILO ===");
+            LOG.info("Iniciando aplicación...");
             
             // Inicializar base de datos
-            System.out.println("Inicializando base de datos...");
+            LOG.info("Inicializando base de datos...");
             DatabaseInitializer dbInitializer = new DatabaseInitializer();
             dbInitializer.inicializar();
             
-            // Iniciar hilos principales
-            hiloAutenticacion.start();
-            hiloSelectorProductos.start();
-            hiloCalculadorPrecio.start();
-            hiloAplicadorDescuentos.start();
-            hiloGeneradorTicket.start();
-            
-            // Monitorear el estado de autenticación
-            monitorearAutenticacion();
+            // Iniciar servicios principales
+            servicios.iniciar("GestorAutenticacion", gestorAutenticacion);
+            servicios.iniciar("SelectorProductos", selectorProductos);
+            servicios.iniciar("CalculadorPrecio", calculadorPrecio);
+            servicios.iniciar("AplicadorDescuentos", aplicadorDescuentos);
+            servicios.iniciar("GeneradorTicket", generadorTicket);
             
         } catch (Exception e) {
-            System.err.println("Error al iniciar la aplicación: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al iniciar la aplicación", e);
         }
     }
 
     /**
-     * Monitorea el estado de autenticación para inicializar hilos dependientes
+     * Reacciona a las transiciones del ciclo de vida
+     * Al autenticarse el usuario se inician los hilos dependientes; la transición llega desde
+     * validarCredenciales (hilo de Swing), por eso el trabajo con la base de datos se hace en otro hilo.
      */
-    private void monitorearAutenticacion() {
-        new Thread(() -> {
-            try {
-                // Esperar a que el usuario se autentique
-                while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                    Thread.sleep(100);
-                }
-
-                if (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                    // Inicializar hilos que requieren autenticación
-                    inicializarHilosPostAutenticacion();
-                }
-
-            } catch (InterruptedException e) {
-                System.out.println("Monitoreo de autenticación interrumpido");
-            }
-        }, "MonitoreoAutenticacion").start();
+    private void alCambiarEstado(EstadoAplicacion anterior, EstadoAplicacion nuevo) {
+        if (nuevo == EstadoAplicacion.AUTENTICADO && anterior == EstadoAplicacion.SIN_SESION
+                && hilosPostAutenticacionIniciados.compareAndSet(false, true)) {
+            servicios.iniciar("InicioPostAutenticacion", this::inicializarHilosPostAutenticacion);
+        }
     }
 
     /**
@@ -145,50 +129,45 @@ public class SIAPApplication {
             int usuarioId = usuarioDAO.obtenerIdUsuario(usuario);
             
             if (usuarioId < 0) {
-                System.err.println("Error: No se pudo obtener el ID del usuario");
+                LOG.error("No se pudo obtener el ID del usuario {}", usuario);
                 return;
             }
             
             // Hilo 2: GestorSesion
-            gestorSesion = new GestorSesion(usuarioAutenticado, aplicacionActiva, usuario);
-            hiloSesion = new Thread(gestorSesion, "GestorSesion");
-            hiloSesion.start();
+            gestorSesion = new GestorSesion(cicloVida, usuario);
+            servicios.iniciar("GestorSesion", gestorSesion);
 
             // Hilo 6: FinalizadorCompra
-            finalizadorCompra = new FinalizadorCompra(usuarioAutenticado, aplicacionActiva, 
+            finalizadorCompra = new FinalizadorCompra(cicloVida, 
                 carritoCompra, gestorSesion, generadorTicket);
             finalizadorCompra.setUsuarioId(usuarioId);
-            hiloFinalizadorCompra = new Thread(finalizadorCompra, "FinalizadorCompra");
-            hiloFinalizadorCompra.start();
+            // La ventana es un cliente del motor de comercio con una sesión fija sobre su carrito
+            finalizadorCompra.setSesionMotor(MotorComercio.getInstancia().abrirSesion(usuarioId, carritoCompra));
+            servicios.iniciar("FinalizadorCompra", finalizadorCompra);
 
             // Hilo 8: GestorTarjetas
-            gestorTarjetas = new GestorTarjetas(usuarioAutenticado, aplicacionActiva, usuarioId);
-            hiloGestorTarjetas = new Thread(gestorTarjetas, "GestorTarjetas");
-            hiloGestorTarjetas.start();
+            gestorTarjetas = new GestorTarjetas(cicloVida, usuarioId);
+            servicios.iniciar("GestorTarjetas", gestorTarjetas);
 
             // Hilo 9: GestorHistorial
-            gestorHistorial = new GestorHistorial(usuarioAutenticado, aplicacionActiva, usuarioId);
-            hiloGestorHistorial = new Thread(gestorHistorial, "GestorHistorial");
-            hiloGestorHistorial.start();
+            gestorHistorial = new GestorHistorial(cicloVida, usuarioId);
+            servicios.iniciar("GestorHistorial", gestorHistorial);
 
             // Hilo 10: GestorDevoluciones
-            gestorDevoluciones = new GestorDevoluciones(usuarioAutenticado, aplicacionActiva, usuarioId);
-            hiloGestorDevoluciones = new Thread(gestorDevoluciones, "GestorDevoluciones");
-            hiloGestorDevoluciones.start();
+            gestorDevoluciones = new GestorDevoluciones(cicloVida, usuarioId);
+            servicios.iniciar("GestorDevoluciones", gestorDevoluciones);
 
             // Hilo 11: GestorEnvio
-            gestorEnvio = new GestorEnvio(usuarioAutenticado, aplicacionActiva);
-            hiloGestorEnvio = new Thread(gestorEnvio, "GestorEnvio");
-            hiloGestorEnvio.start();
+            gestorEnvio = new GestorEnvio(cicloVida);
+            servicios.iniciar("GestorEnvio", gestorEnvio);
 
             // Conectar gestores con CatalogoFrame
             conectarGestoresConCatalogo();
 
-            System.out.println("Hilos post-autenticación iniciados para usuario: " + usuario + " (ID: " + usuarioId + ")");
+            LOG.info("Hilos post-autenticación iniciados para usuario: {} (ID: {})", usuario, usuarioId);
             
         } catch (Exception e) {
-            System.err.println("Error al inicializar hilos post-autenticación: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al inicializar hilos post-autenticación", e);
         }
     }
 
@@ -196,33 +175,19 @@ public class SIAPApplication {
      * Conecta los gestores con la ventana del catálogo
      */
     private void conectarGestoresConCatalogo() {
-        try {
-            // Esperar un poco para que el catálogo se cree
-            Thread.sleep(500);
-            
-            if (selectorProductos != null) {
-                CatalogoFrame catalogoFrame = selectorProductos.getCatalogoFrame();
-                if (catalogoFrame != null) {
-                    catalogoFrame.setGestores(gestorTarjetas, gestorEnvio, finalizadorCompra, 
-                                             gestorHistorial, gestorDevoluciones);
-                    System.out.println("Gestores conectados con CatalogoFrame");
-                } else {
-                    System.out.println("CatalogoFrame aún no está disponible, reintentando...");
-                    // Reintentar después de un delay
-                    new Thread(() -> {
-                        try {
-                            Thread.sleep(1000);
-                            conectarGestoresConCatalogo();
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }).start();
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error al conectar gestores con catálogo: " + e.getMessage());
-            e.printStackTrace();
+        if (selectorProductos == null) {
+            return;
         }
+        // Se ejecuta en cuanto SelectorProductos crea la ventana (o de inmediato si ya existe)
+        selectorProductos.cuandoCatalogoListo(catalogoFrame -> {
+            try {
+                catalogoFrame.setGestores(gestorTarjetas, gestorEnvio, finalizadorCompra, 
+                                         gestorHistorial, gestorDevoluciones);
+                LOG.info("Gestores conectados con CatalogoFrame");
+            } catch (Exception e) {
+                LOG.error("Error al conectar gestores con catálogo", e);
+            }
+        });
     }
 
     /**
@@ -230,10 +195,10 @@ public class SIAPApplication {
      */
     public void detener() {
         try {
-            System.out.println("Deteniendo aplicación...");
+            LOG.info("Deteniendo aplicación...");
             
-            aplicacionActiva.set(false);
-            usuarioAutenticado.set(false);
+            // Despierta a todos los hilos que esperan en el ciclo de vida
+            cicloVida.transicionar(EstadoAplicacion.CERRADA);
             
             // Cerrar ventanas
             if (gestorAutenticacion != null) {
@@ -246,40 +211,22 @@ public class SIAPApplication {
                 generadorTicket.cerrarTicket();
             }
             
-            // Esperar a que los hilos terminen
-            esperarHilos();
+            // Esperar a todos los servicios dentro de un solo plazo
+            if (servicios.detener(PLAZO_DETENCION_MS)) {
+                LOG.info("Todos los servicios terminaron");
+            }
+            
+            // Detener el motor de comercio, confirmar las compras en cola y liberar las conexiones del pool
+            MotorComercio.detenerInstancia();
+            EscritorComprasAgrupadas.detenerInstancia(5000);
+            LibroInventario.detenerInstancia();
+            LOG.info("{}", ProductoDAOCache.getInstancia());
+            DatabaseManager.getInstance().cerrar();
             
-            System.out.println("Aplicación detenida correctamente");
+            LOG.info("Aplicación detenida correctamente");
             
         } catch (Exception e) {
-            System.err.println("Error al detener la aplicación: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Espera a que todos los hilos terminen
-     */
-    private void esperarHilos() {
-        Thread[] hilos = {
-            hiloAutenticacion, hiloSesion, hiloSelectorProductos, 
-            hiloCalculadorPrecio, hiloAplicadorDescuentos, 
-            hiloFinalizadorCompra, hiloGeneradorTicket,
-            hiloGestorTarjetas, hiloGestorHistorial, 
-            hiloGestorDevoluciones, hiloGestorEnvio
-        };
-        
-        for (Thread hilo : hilos) {
-            if (hilo != null && hilo.isAlive()) {
-                try {
-                    hilo.join(5000); // Esperar máximo 5 segundos
-                    if (hilo.isAlive()) {
-                        System.out.println("Hilo " + hilo.getName() + " no terminó en el tiempo esperado");
-                    }
-                } catch (InterruptedException e) {
-                    System.out.println("Interrumpido mientras se esperaba el hilo " + hilo.getName());
-                }
-            }
+            LOG.error("Error al detener la aplicación", e);
         }
     }
 
@@ -289,8 +236,7 @@ public class SIAPApplication {
     public static void main(String[] args) {
         // Configurar el manejo de excepciones no capturadas
         Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
-            System.err.println("Excepción no capturada en hilo " + thread.getName() + ": " + throwable.getMessage());
-            throwable.printStackTrace();
+            LOG.error("Excepción no capturada en hilo {}", thread.getName(), throwable);
         });
 
         // Crear e iniciar la aplicación
@@ -298,8 +244,10 @@ public class SIAPApplication {
         
         // Configurar shutdown hook para limpiar recursos
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Cerrando aplicación...");
+            LOG.info("Cerrando aplicación...");
             app.detener();
+            // Los hooks corren en paralelo: escribir aquí lo que registró detener()
+            Bitacora.vaciar();
         }));
 
         // Iniciar la aplicación
@@ -0,0 +1,137 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.bitacora.Nivel;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compara lo que cuesta a los hilos que registran: System.out.println con concatenación contra la bitácora
+ * con el nivel activo (el anillo lo escribe otro hilo) y con el nivel desactivado
+ * Las salidas se redirigen a un flujo que descarta todo, así se mide el registro y no la consola.
+ * Cada hilo registra en ráfagas, como un checkout, con trabajo entre ráfagas. El costo por mensaje es el tiempo
+ * de CPU del hilo dentro de cada ráfaga (así no cuenta si el sistema lo suspende a media ráfaga), restando lo que
+ * da la misma medición sin registrar nada; el tiempo total de cada corrida incluye además el del hilo escritor.
+ * Uso: java ... BenchmarkBitacora [hilos] [mensajesPorHilo]
+ */
+public class BenchmarkBitacora {
+    private static final Bitacora LOG = Bitacora.de(BenchmarkBitacora.class);
+    private static final int RAFAGA = 32;
+    private static final int TRABAJO_ENTRE_RAFAGAS = 200_000;
+    private static final ThreadMXBean HILOS = ManagementFactory.getThreadMXBean();
+
+    private interface Registro {
+        void registrar(int hilo, int i, long centavos);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int mensajes = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        PrintStream consola = System.out;
+        PrintStream nula = new PrintStream(OutputStream.nullOutputStream(), true);
+        System.setOut(nula);
+        System.setErr(nula);
+
+        Registro println = (hilo, i, centavos) ->
+            System.out.println("Compra " + i + " del hilo " + hilo + ": total " + centavos + " centavos");
+        Registro activo = (hilo, i, centavos) ->
+            LOG.info("Compra {} del hilo {}: total {} centavos", i, hilo, centavos);
+        Registro desactivado = (hilo, i, centavos) ->
+            LOG.depuracion("Compra {} del hilo {}: total {} centavos", i, hilo, centavos);
+        Registro nada = (hilo, i, centavos) -> { };
+
+        // Calentamiento
+        Bitacora.setNivel(Nivel.INFO);
+        for (int r = 0; r < 3; r++) {
+            ejecutar(hilos, mensajes / 10, nada);
+            ejecutar(hilos, mensajes / 10, println);
+            ejecutar(hilos, mensajes / 10, activo);
+            ejecutar(hilos, mensajes / 10, desactivado);
+        }
+
+        Corrida base = ejecutar(hilos, mensajes, nada);
+        Corrida conPrintln = ejecutar(hilos, mensajes, println);
+        long descartadosAntes = Bitacora.getDescartados();
+        Corrida activa = ejecutar(hilos, mensajes, activo);
+        long descartados = Bitacora.getDescartados() - descartadosAntes;
+        Corrida desactivada = ejecutar(hilos, mensajes, desactivado);
+
+        System.setOut(consola);
+        System.setErr(consola);
+        long total = (long) hilos * mensajes;
+        System.out.println("=== BENCHMARK BITÁCORA ===");
+        System.out.println("Hilos: " + hilos + ", mensajes por hilo: " + mensajes);
+        System.out.println(String.format("Sin registrar:         %8s           (%.1f ms en total)", "-", base.msTotal));
+        System.out.println(String.format("System.out.println:    %8.1f ns/mensaje (%.1f ms en total)",
+            conPrintln.nsPorMensaje(base), conPrintln.msTotal));
+        System.out.println(String.format("Bitácora activa:       %8.1f ns/mensaje (%.1f ms en total hasta escribir todo, %d de %d descartados)",
+            activa.nsPorMensaje(base), activa.msTotal, descartados, total));
+        System.out.println(String.format("Bitácora desactivada:  %8.1f ns/mensaje (%.1f ms en total)",
+            desactivada.nsPorMensaje(base), desactivada.msTotal));
+    }
+
+    /**
+     * Tiempo dentro de las ráfagas y tiempo total de una corrida
+     */
+    private static final class Corrida {
+        private final long nanosRafagas;
+        private final long mensajes;
+        private final double msTotal;
+
+        Corrida(long nanosRafagas, long mensajes, double msTotal) {
+            this.nanosRafagas = nanosRafagas;
+            this.mensajes = mensajes;
+            this.msTotal = msTotal;
+        }
+
+        double nsPorMensaje(Corrida base) {
+            return (nanosRafagas - base.nanosRafagas) / (double) mensajes;
+        }
+    }
+
+    private static Corrida ejecutar(int hilos, int mensajes, Registro registro) throws InterruptedException {
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicLong nanosRafagas = new AtomicLong();
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            int hilo = h;
+            trabajadores.add(Thread.ofPlatform().name("Registro-" + h).start(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long acumulado = 0;
+                long nanos = 0;
+                for (int i = 0; i < mensajes; i += RAFAGA) {
+                    long inicio = HILOS.getCurrentThreadCpuTime();
+                    for (int j = i; j < Math.min(i + RAFAGA, mensajes); j++) {
+                        registro.registrar(hilo, j, 1999L * j);
+                    }
+                    nanos += HILOS.getCurrentThreadCpuTime() - inicio;
+                    // Trabajo entre ráfagas
+                    for (int k = 0; k < TRABAJO_ENTRE_RAFAGAS; k++) {
+                        acumulado += k ^ (acumulado >>> 3);
+                    }
+                }
+                nanosRafagas.addAndGet(nanos + (acumulado == 42 ? 1 : 0));
+            }));
+        }
+        long inicio = System.nanoTime();
+        salida.countDown();
+        for (Thread t : trabajadores) {
+            t.join();
+        }
+        // La corrida termina cuando lo registrado ya se escribió
+        Bitacora.vaciar();
+        return new Corrida(nanosRafagas.get(), (long) hilos * mensajes, (System.nanoTime() - inicio) / 1_000_000.0);
+    }
+}
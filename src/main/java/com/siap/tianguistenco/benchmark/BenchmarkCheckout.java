@@ -0,0 +1,246 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.inventario.Inventario;
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.CompraItem;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.motor.MotorComercio;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+import com.siap.tianguistenco.threads.FinalizadorCompra;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga del checkout de escritorio con compradores simulados sobre una base de datos temporal
+ * Cada comprador (un hilo virtual) llena su CarritoCompra, que reserva existencias, y guarda la compra con
+ * FinalizadorCompra.guardarCompra() y el folio de CompraDAO, como la ventana de escritorio. Algunos productos
+ * tienen poco stock para que los compradores compitan por ellos. Se corre con cantidades crecientes de compradores
+ * y por cada una reporta compras por segundo y latencia p50/p99 del guardado.
+ * Al final verifica con CompraDAO y ProductoDAO: ningún stock negativo, stock inicial menos lo vendido igual al
+ * stock final, items que suman el total de su compra, folios únicos y tantas compras guardadas como confirmadas.
+ * Termina con código 1 si algo no cuadra.
+ * Uso: java ... BenchmarkCheckout [compradores,separados,por,coma] [comprasPorComprador]
+ */
+public class BenchmarkCheckout {
+    private static final int USUARIO_ID = 1;
+    private static final int STOCK_NORMAL = 500;
+    private static final int STOCK_ESCASO = 60;
+    private static final String[] PRODUCTOS_ESCASOS = {"BEB001", "LEC001"};
+
+    public static void main(String[] args) throws Exception {
+        int[] niveles = Arrays.stream((args.length > 0 ? args[0] : "1,4,16,64").split(","))
+            .mapToInt(Integer::parseInt).toArray();
+        int comprasPorComprador = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        File archivo = File.createTempFile("siap_checkout_", ".db");
+        archivo.deleteOnExit();
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+
+        ProductoDAO productoDAO = new ProductoDAO();
+        Map<String, Integer> stockInicial = new HashMap<>();
+        for (Producto producto : productoDAO.obtenerTodosLosProductos()) {
+            stockInicial.put(producto.getId(), STOCK_NORMAL);
+        }
+        for (String id : PRODUCTOS_ESCASOS) {
+            stockInicial.put(id, STOCK_ESCASO);
+        }
+        stockInicial.forEach(productoDAO::actualizarStock);
+        List<Producto> productos = RepositorioProductos.getInstancia().getTodosLosProductos();
+        List<Producto> escasos = new ArrayList<>();
+        for (String id : PRODUCTOS_ESCASOS) {
+            escasos.add(RepositorioProductos.getInstancia().buscarProductoPorId(id));
+        }
+
+        System.out.println("=== BENCHMARK CHECKOUT ===");
+        System.out.println("Compras por comprador: " + comprasPorComprador + ", stock " + STOCK_NORMAL +
+            " (" + String.join(", ", PRODUCTOS_ESCASOS) + ": " + STOCK_ESCASO + ")");
+        System.out.println("Compradores | Guardadas | Sin existencias | Fallidas | Compras/s | p50 ms | p99 ms");
+
+        Set<String> foliosConfirmados = ConcurrentHashMap.newKeySet();
+        AtomicInteger foliosRepetidos = new AtomicInteger();
+        int fallidasTotal = 0;
+        for (int compradores : niveles) {
+            Nivel nivel = ejecutar(compradores, comprasPorComprador, productos, escasos, foliosConfirmados, foliosRepetidos);
+            fallidasTotal += nivel.fallidas.get();
+            System.out.println(String.format("%11d | %9d | %15d | %8d | %9.1f | %6.2f | %6.2f",
+                compradores, nivel.guardadas.get(), nivel.sinExistencias.get(), nivel.fallidas.get(),
+                nivel.guardadas.get() / (nivel.ms / 1000.0), nivel.percentil(0.50), nivel.percentil(0.99)));
+        }
+
+        // Se espera a que el stock quede aplicado en la tabla para revisarla directamente
+        LibroInventario.getInstancia().vaciar();
+        boolean correcto = verificar(productoDAO, stockInicial, foliosConfirmados);
+        if (foliosRepetidos.get() > 0) {
+            System.out.println("[FALLA] " + foliosRepetidos.get() + " folios confirmados dos veces");
+            correcto = false;
+        }
+        if (fallidasTotal > 0) {
+            System.out.println("[FALLA] " + fallidasTotal + " compras no se pudieron guardar");
+            correcto = false;
+        }
+        System.out.println(Inventario.getInstancia());
+        System.out.println(correcto ? "Sin sobreventa, totales y folios correctos" : "Hubo diferencias");
+
+        MotorComercio.detenerInstancia();
+        EscritorComprasAgrupadas.detenerInstancia(5000);
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * Resultado de una corrida con cierta cantidad de compradores
+     */
+    private static final class Nivel {
+        private final AtomicInteger guardadas = new AtomicInteger();
+        private final AtomicInteger sinExistencias = new AtomicInteger();
+        private final AtomicInteger fallidas = new AtomicInteger();
+        private final long[] latenciasNanos;
+        private final AtomicInteger medidas = new AtomicInteger();
+        private double ms;
+
+        Nivel(int capacidad) {
+            this.latenciasNanos = new long[capacidad];
+        }
+
+        void medir(long nanos) {
+            latenciasNanos[medidas.getAndIncrement()] = nanos;
+        }
+
+        double percentil(double p) {
+            int n = medidas.get();
+            if (n == 0) {
+                return 0;
+            }
+            long[] ordenadas = Arrays.copyOf(latenciasNanos, n);
+            Arrays.sort(ordenadas);
+            return ordenadas[Math.min(n - 1, (int) Math.ceil(p * n) - 1)] / 1_000_000.0;
+        }
+    }
+
+    private static Nivel ejecutar(int compradores, int comprasPorComprador, List<Producto> productos,
+                                  List<Producto> escasos, Set<String> foliosConfirmados,
+                                  AtomicInteger foliosRepetidos) {
+        Nivel nivel = new Nivel(compradores * comprasPorComprador);
+        MotorComercio motor = MotorComercio.getInstancia();
+        CompraDAO compraDAO = new CompraDAO();
+        long inicio = System.nanoTime();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < compradores; c++) {
+                hilos.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    CarritoCompra carrito = new CarritoCompra(Inventario.getInstancia());
+                    FinalizadorCompra finalizador = new FinalizadorCompra(null, carrito, null, null);
+                    String sesion = motor.abrirSesion(USUARIO_ID, carrito);
+                    finalizador.setUsuarioId(USUARIO_ID);
+                    finalizador.setSesionMotor(sesion);
+                    try {
+                        for (int i = 0; i < comprasPorComprador; i++) {
+                            int lineas = 1 + random.nextInt(4);
+                            for (int j = 0; j < lineas; j++) {
+                                // Casi un tercio de las líneas compiten por los productos escasos
+                                Producto producto = random.nextInt(3) == 0
+                                    ? escasos.get(random.nextInt(escasos.size()))
+                                    : productos.get(random.nextInt(productos.size()));
+                                carrito.agregarProducto(producto, 1 + random.nextInt(3));
+                            }
+                            if (carrito.estaVacio()) {
+                                nivel.sinExistencias.incrementAndGet();
+                                continue;
+                            }
+                            long t0 = System.nanoTime();
+                            Compra compra = finalizador.guardarCompra(compraDAO.generarFolio(), Compra.TipoEnvio.TIENDA,
+                                null, 0, null);
+                            nivel.medir(System.nanoTime() - t0);
+                            if (compra != null) {
+                                carrito.limpiarVendido();
+                                nivel.guardadas.incrementAndGet();
+                                if (!foliosConfirmados.add(compra.getFolio())) {
+                                    foliosRepetidos.incrementAndGet();
+                                }
+                            } else {
+                                carrito.limpiar();
+                                nivel.fallidas.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        motor.cerrarSesion(sesion);
+                    }
+                });
+            }
+        }
+        nivel.ms = (System.nanoTime() - inicio) / 1_000_000.0;
+        return nivel;
+    }
+
+    /**
+     * Revisa lo guardado contra lo que los compradores confirmaron
+     */
+    private static boolean verificar(ProductoDAO productoDAO, Map<String, Integer> stockInicial,
+                                     Set<String> foliosConfirmados) {
+        boolean correcto = true;
+        List<Compra> compras = new CompraDAO().obtenerComprasPorUsuario(USUARIO_ID, true);
+        if (compras.size() != foliosConfirmados.size()) {
+            System.out.println("[FALLA] Compras guardadas " + compras.size() + ", confirmadas " + foliosConfirmados.size());
+            correcto = false;
+        }
+
+        Set<String> folios = new HashSet<>();
+        Map<String, Integer> vendidas = new HashMap<>();
+        int totalesDistintos = 0;
+        for (Compra compra : compras) {
+            if (!folios.add(compra.getFolio()) || !foliosConfirmados.contains(compra.getFolio())) {
+                System.out.println("[FALLA] Folio repetido o no confirmado: " + compra.getFolio());
+                correcto = false;
+            }
+            long suma = 0;
+            for (CompraItem item : compra.getItems()) {
+                suma += item.getSubtotalCentavos();
+                vendidas.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+            }
+            if (suma != compra.getTotalCentavos()) {
+                totalesDistintos++;
+            }
+        }
+        if (totalesDistintos > 0) {
+            System.out.println("[FALLA] " + totalesDistintos + " compras cuyos items no suman el total");
+            correcto = false;
+        }
+
+        Inventario inventario = Inventario.getInstancia();
+        for (Map.Entry<String, Integer> entrada : stockInicial.entrySet()) {
+            String id = entrada.getKey();
+            int stock = productoDAO.buscarProductoPorId(id).getStock();
+            int esperado = entrada.getValue() - vendidas.getOrDefault(id, 0);
+            if (stock < 0 || stock != esperado || inventario.getReservado(id) != 0) {
+                System.out.println("[FALLA] " + id + ": stock " + stock + ", esperado " + esperado +
+                    ", reservado " + inventario.getReservado(id));
+                correcto = false;
+            }
+        }
+        for (String id : PRODUCTOS_ESCASOS) {
+            System.out.println(id + ": vendidas " + vendidas.getOrDefault(id, 0) + " de " + stockInicial.get(id));
+        }
+        return correcto;
+    }
+}
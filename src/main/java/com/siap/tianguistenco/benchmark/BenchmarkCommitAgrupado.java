@@ -0,0 +1,125 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.CompraItem;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el guardado de compras con un commit por compra contra el escritor con commit agrupado
+ * Usa una base de datos temporal para no tocar siap_tienda.db.
+ * Uso: java ... BenchmarkCommitAgrupado [hilos] [comprasPorHilo]
+ */
+public class BenchmarkCommitAgrupado {
+    private static final int USUARIO_ID = 1;
+    private static final String PRODUCTO_ID = "LEC001";
+
+    public static void main(String[] args) throws Exception {
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int comprasPorHilo = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        File archivo = File.createTempFile("siap_benchmark_", ".db");
+        archivo.deleteOnExit();
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+        // Todas las compras venden el mismo producto: stock de sobra para que ninguna se rechace
+        new ProductoDAO().actualizarStock(PRODUCTO_ID, 1_000_000);
+
+        CompraDAO compraDAO = new CompraDAO();
+        EscritorComprasAgrupadas escritor = EscritorComprasAgrupadas.getInstancia();
+
+        System.out.println("=== BENCHMARK COMMIT AGRUPADO ===");
+        System.out.println("Hilos: " + hilos + ", compras por hilo: " + comprasPorHilo);
+
+        // Calentamiento
+        ejecutar("calentamiento-individual", hilos, 20, compra -> compraDAO.guardarCompraCompleta(compra, "EFECTIVO", null) != null);
+        ejecutar("calentamiento-agrupado", hilos, 20, compra -> escritor.encolar(compra, "EFECTIVO", null).join() > 0);
+
+        double individual = ejecutar("individual", hilos, comprasPorHilo,
+            compra -> compraDAO.guardarCompraCompleta(compra, "EFECTIVO", null) != null);
+        double agrupado = ejecutar("agrupado", hilos, comprasPorHilo,
+            compra -> escritor.encolar(compra, "EFECTIVO", null).join() > 0);
+
+        System.out.println(String.format("Individual: %.1f compras/s", individual));
+        System.out.println(String.format("Agrupado:   %.1f compras/s (%.2fx)", agrupado, agrupado / individual));
+        System.out.println(DatabaseManager.getInstance().getPool());
+
+        EscritorComprasAgrupadas.detenerInstancia(5000);
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+    }
+
+    /**
+     * Ejecuta un modo de guardado con varios hilos concurrentes
+     * @return compras guardadas por segundo
+     */
+    private static double ejecutar(String modo, int hilos, int comprasPorHilo, Guardado guardado) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        List<Future<Integer>> resultados = new ArrayList<>();
+
+        long inicio = System.nanoTime();
+        for (int h = 0; h < hilos; h++) {
+            final int hilo = h;
+            resultados.add(executor.submit(() -> {
+                int exitosas = 0;
+                for (int i = 0; i < comprasPorHilo; i++) {
+                    if (guardado.guardar(crearCompra("BENCH-" + modo + "-" + hilo + "-" + i))) {
+                        exitosas++;
+                    }
+                }
+                return exitosas;
+            }));
+        }
+
+        int total = 0;
+        for (Future<Integer> resultado : resultados) {
+            total += resultado.get();
+        }
+        long duracion = System.nanoTime() - inicio;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        double porSegundo = total / (duracion / 1_000_000_000.0);
+        System.out.println(String.format("[%s] %d compras en %.1f ms", modo, total, duracion / 1_000_000.0));
+        return porSegundo;
+    }
+
+    private static Compra crearCompra(String folio) {
+        Compra compra = new Compra();
+        compra.setUsuarioId(USUARIO_ID);
+        compra.setFolio(folio);
+        compra.setFecha(LocalDateTime.now());
+        compra.setTotal(57.00);
+        compra.setDescuento(0);
+        compra.setEstado("COMPLETADA");
+        compra.setTipoEnvio(Compra.TipoEnvio.TIENDA);
+        compra.setCostoEnvio(0);
+
+        CompraItem item = new CompraItem();
+        item.setProductoId(PRODUCTO_ID);
+        item.setNombreProducto("Leche Lala Entera");
+        item.setCantidad(2);
+        item.setPrecioUnitario(28.50);
+        item.setSubtotal(57.00);
+        compra.agregarItem(item);
+        return compra;
+    }
+
+    @FunctionalInterface
+    private interface Guardado {
+        boolean guardar(Compra compra) throws Exception;
+    }
+}
@@ -0,0 +1,171 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.GeneradorFolios;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Genera millones de folios desde varios hilos y verifica que no se repitan
+ * Los hilos se reparten entre dos generadores con nodos distintos, como dos cajas sobre la misma base de datos.
+ * Verifica que todos los folios sean distintos, que los de cada hilo vayan en aumento y que su dígito
+ * verificador sea válido; después altera una muestra cambiando un símbolo o intercambiando dos vecinos y
+ * cuenta cuántos errores de captura detecta el dígito. Compara con el folio anterior ("SIAP-" + milisegundos),
+ * que con la misma carga se repite casi siempre.
+ * Termina con código 1 si algo no cuadra.
+ * Uso: java ... BenchmarkFolios [hilos] [foliosPorHilo]
+ */
+public class BenchmarkFolios {
+    private static final String ALFABETO = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final int MUESTRA = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int porHilo = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        GeneradorFolios[] generadores = {new GeneradorFolios(1), new GeneradorFolios(2)};
+
+        System.out.println("=== BENCHMARK FOLIOS ===");
+        System.out.println("Hilos: " + hilos + ", folios por hilo: " + porHilo + ", ejemplo: " + generadores[0].siguiente());
+        boolean correcto = true;
+
+        // Calentamiento
+        generar(generadores, hilos, porHilo / 10);
+
+        long inicio = System.nanoTime();
+        String[][] folios = generar(generadores, hilos, porHilo);
+        double ms = (System.nanoTime() - inicio) / 1_000_000.0;
+        int total = hilos * porHilo;
+
+        Set<String> distintos = new HashSet<>(total * 2);
+        int desordenados = 0;
+        int invalidos = 0;
+        for (String[] propios : folios) {
+            for (int i = 0; i < propios.length; i++) {
+                distintos.add(propios[i]);
+                if (i > 0 && propios[i].compareTo(propios[i - 1]) <= 0) {
+                    desordenados++;
+                }
+                if (!GeneradorFolios.esValido(propios[i])) {
+                    invalidos++;
+                }
+            }
+        }
+        int repetidos = total - distintos.size();
+        if (repetidos > 0 || desordenados > 0 || invalidos > 0) {
+            System.out.println("[FALLA] Repetidos " + repetidos + ", fuera de orden " + desordenados + ", inválidos " + invalidos);
+            correcto = false;
+        }
+
+        // Errores de captura sobre una muestra
+        int sustituciones = 0;
+        int sustitucionesDetectadas = 0;
+        int transposiciones = 0;
+        int transposicionesDetectadas = 0;
+        for (int m = 0; m < MUESTRA; m++) {
+            String folio = folios[m % hilos][m * 7919 % porHilo];
+            char[] simbolos = folio.toCharArray();
+            for (int i = 0; i < simbolos.length; i++) {
+                if (ALFABETO.indexOf(simbolos[i]) < 0 || i < GeneradorFolios.PREFIJO.length()) {
+                    continue;
+                }
+                char original = simbolos[i];
+                for (int k = 0; k < ALFABETO.length(); k++) {
+                    if (ALFABETO.charAt(k) == original) {
+                        continue;
+                    }
+                    simbolos[i] = ALFABETO.charAt(k);
+                    sustituciones++;
+                    if (!GeneradorFolios.esValido(new String(simbolos))) {
+                        sustitucionesDetectadas++;
+                    }
+                }
+                simbolos[i] = original;
+                int j = i + 1 < simbolos.length && simbolos[i + 1] == '-' ? i + 2 : i + 1;
+                if (j < simbolos.length && simbolos[j] != original) {
+                    simbolos[i] = simbolos[j];
+                    simbolos[j] = original;
+                    transposiciones++;
+                    if (!GeneradorFolios.esValido(new String(simbolos))) {
+                        transposicionesDetectadas++;
+                    }
+                    simbolos[j] = simbolos[i];
+                    simbolos[i] = original;
+                }
+            }
+        }
+        if (sustitucionesDetectadas != sustituciones) {
+            System.out.println("[FALLA] Sustituciones no detectadas: " + (sustituciones - sustitucionesDetectadas));
+            correcto = false;
+        }
+        String capturado = folios[0][0].toLowerCase().replace("-", " ").replace('0', 'o').replace('1', 'l');
+        if (!folios[0][0].equals(GeneradorFolios.normalizar(capturado))) {
+            System.out.println("[FALLA] No se normalizó " + capturado);
+            correcto = false;
+        }
+
+        inicio = System.nanoTime();
+        int repetidosAnterior = generarAnterior(hilos, porHilo);
+        double msAnterior = (System.nanoTime() - inicio) / 1_000_000.0;
+
+        System.out.println(String.format("GeneradorFolios: %d folios en %.1f ms (%.2f millones/s), repetidos %d",
+            total, ms, total / ms / 1000.0, repetidos));
+        System.out.println(String.format("Dígito verificador: %d/%d sustituciones y %d/%d transposiciones detectadas",
+            sustitucionesDetectadas, sustituciones, transposicionesDetectadas, transposiciones));
+        System.out.println(String.format("Folio anterior (SIAP-milisegundos): %d folios en %.1f ms, repetidos %d",
+            total, msAnterior, repetidosAnterior));
+        System.out.println(correcto ? "Ningún folio repetido" : "Hubo diferencias");
+        System.exit(correcto ? 0 : 1);
+    }
+
+    private static String[][] generar(GeneradorFolios[] generadores, int hilos, int porHilo) throws InterruptedException {
+        String[][] folios = new String[hilos][porHilo];
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int t = 0; t < hilos; t++) {
+            String[] propios = folios[t];
+            GeneradorFolios generador = generadores[t % generadores.length];
+            trabajadores.add(Thread.ofPlatform().start(() -> {
+                esperar(salida);
+                for (int i = 0; i < propios.length; i++) {
+                    propios[i] = generador.siguiente();
+                }
+            }));
+        }
+        salida.countDown();
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        return folios;
+    }
+
+    private static int generarAnterior(int hilos, int porHilo) throws InterruptedException {
+        Set<String> distintos = ConcurrentHashMap.newKeySet();
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int t = 0; t < hilos; t++) {
+            trabajadores.add(Thread.ofPlatform().start(() -> {
+                esperar(salida);
+                for (int i = 0; i < porHilo; i++) {
+                    distintos.add("SIAP-" + System.currentTimeMillis());
+                }
+            }));
+        }
+        salida.countDown();
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        return hilos * porHilo - distintos.size();
+    }
+
+    private static void esperar(CountDownLatch salida) {
+        try {
+            salida.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
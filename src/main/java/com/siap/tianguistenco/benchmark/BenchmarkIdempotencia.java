@@ -0,0 +1,360 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.ClaveIdempotencia;
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.datos.UsuarioDAO;
+import com.siap.tianguistenco.inventario.Inventario;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.motor.MotorComercio;
+import com.siap.tianguistenco.motor.RegistroIdempotencia;
+import com.siap.tianguistenco.motor.ResultadoFinalizacion;
+import com.siap.tianguistenco.pagos.PasarelaSimulada;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+import com.siap.tianguistenco.promociones.MotorPromociones;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reintenta cada checkout varias veces a la vez con la misma clave de idempotencia y verifica un solo cobro y una sola compra
+ * Cada checkout es una sesión del MotorComercio con un producto; se llama pagar() varias veces en paralelo con la
+ * misma clave, como un cliente que reintenta sin esperar. Todas las respuestas deben ser la misma. La pasarela
+ * simulada rechaza el 5% de los cobros y pierde el 20% de las respuestas (el cobro se hace, pero se responde con
+ * error). Después se reintentan las claves sin compra hasta que todas la tengan: un rechazo se vuelve a cobrar,
+ * un resultado incierto se vuelve a pedir con la misma clave y la pasarela responde con el cobro original.
+ * Al final cada clave debe tener una sola autorización y una sola compra.
+ * Luego un motor nuevo, con las claves recientes vacías, responde desde la tabla claves_idempotencia y sin cobrar los
+ * reintentos del mismo usuario en una sesión nueva, también para un pago aprobado cuya compra aún no se guardaba.
+ * También registra dos veces la misma clave con folios distintos, como el cliente de escritorio, y debe quedar una compra.
+ * Por último otro usuario paga con una clave que ya usó el primero: debe cobrarse y guardarse como un checkout nuevo,
+ * sin recibir la compra del otro usuario.
+ * Con un registro de pocas claves, los cobros inciertos se guardan en la tabla, salen de memoria y su reintento vuelve
+ * a preguntar a la pasarela; ya aprobados, el siguiente reintento no cobra. Al vencer la retención se borran de la tabla.
+ * Usa una base de datos temporal. Termina con código 1 si algo no cuadra.
+ * Uso: java ... BenchmarkIdempotencia [checkouts] [reintentos]
+ */
+public class BenchmarkIdempotencia {
+    private static final int USUARIO_ID = 1;
+    private static final long INACTIVIDAD_MS = 5 * 60_000;
+    private static final long EXPIRACION_MS = 30 * 60_000;
+    private static final int RONDAS_MAXIMAS = 30;
+
+    public static void main(String[] args) throws Exception {
+        int checkouts = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int reintentos = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        File archivo = File.createTempFile("siap_idempotencia_", ".db");
+        archivo.deleteOnExit();
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+
+        ProductoDAO productoDAO = new ProductoDAO();
+        for (Producto producto : productoDAO.obtenerTodosLosProductos()) {
+            productoDAO.actualizarStock(producto.getId(), 1_000_000);
+        }
+        List<Producto> productos = RepositorioProductos.getInstancia().getTodosLosProductos();
+
+        PasarelaSimulada pasarela = new PasarelaSimulada(20, 80, 0, 0, 0.05, 0.20);
+        ProcesadorPagos procesador = new ProcesadorPagos(pasarela, 64, 4096);
+
+        System.out.println("=== BENCHMARK IDEMPOTENCIA ===");
+        System.out.println("Checkouts: " + checkouts + ", solicitudes por clave: " + reintentos + ", " + pasarela);
+        boolean correcto = true;
+
+        // Reintentos en paralelo con la misma clave
+        MotorComercio motor = crearMotor(procesador);
+        List<String> claves = new ArrayList<>(checkouts);
+        List<String> sesiones = new ArrayList<>(checkouts);
+        List<CompletableFuture<ResultadoFinalizacion>> respuestas = new ArrayList<>(checkouts * reintentos);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < checkouts; i++) {
+            String sesion = motor.abrirSesion(USUARIO_ID);
+            motor.agregarProducto(sesion, productos.get(i % productos.size()).getId(), 1);
+            String clave = UUID.randomUUID().toString();
+            sesiones.add(sesion);
+            claves.add(clave);
+            for (int r = 0; r < reintentos; r++) {
+                respuestas.add(motor.pagar(sesion, clave, Compra.TipoEnvio.TIENDA, null, null));
+            }
+        }
+        int[] compras = new int[checkouts];
+        ResultadoPago.Estado[] estados = new ResultadoPago.Estado[checkouts];
+        for (int i = 0; i < checkouts; i++) {
+            for (int r = 0; r < reintentos; r++) {
+                ResultadoFinalizacion resultado = respuestas.get(i * reintentos + r).join();
+                int compraId = compraId(resultado);
+                if (r == 0) {
+                    compras[i] = compraId;
+                    estados[i] = estado(resultado);
+                } else if (compraId != compras[i] || estado(resultado) != estados[i]) {
+                    System.out.println("[FALLA] Clave " + claves.get(i) + ": respuestas distintas " + resultado);
+                    correcto = false;
+                }
+            }
+        }
+        double msParalelo = (System.nanoTime() - inicio) / 1_000_000.0;
+        int rechazadas = contar(estados, ResultadoPago.Estado.RECHAZADO);
+        int inciertas = contar(estados, ResultadoPago.Estado.ERROR);
+        if (pasarela.getCobros() != checkouts) {
+            System.out.println("[FALLA] Cobros en paralelo " + pasarela.getCobros() + " (esperados " + checkouts + ")");
+            correcto = false;
+        }
+
+        // Reintentos de las claves sin compra: solo los rechazos vuelven a cobrar
+        int rondas = 0;
+        int pendientes = checkouts - contarCompras(compras);
+        while (pendientes > 0 && rondas < RONDAS_MAXIMAS) {
+            rondas++;
+            for (int i = 0; i < checkouts; i++) {
+                if (compras[i] < 0) {
+                    ResultadoFinalizacion resultado = motor.pagar(sesiones.get(i), claves.get(i),
+                        Compra.TipoEnvio.TIENDA, null, null).join();
+                    compras[i] = compraId(resultado);
+                    estados[i] = estado(resultado);
+                }
+            }
+            pendientes = checkouts - contarCompras(compras);
+        }
+        Set<Integer> compraIds = new HashSet<>();
+        for (int compraId : compras) {
+            compraIds.add(compraId);
+        }
+        if (pendientes > 0 || compraIds.size() != checkouts || pasarela.getAutorizaciones() != checkouts) {
+            System.out.println("[FALLA] Claves sin compra " + pendientes + ", compras distintas " + compraIds.size() +
+                ", autorizaciones " + pasarela.getAutorizaciones() + " (esperadas " + checkouts + ")");
+            correcto = false;
+        }
+        long cobrosAntes = pasarela.getCobros();
+        System.out.println(motor);
+        motor.detener();
+
+        // Motor nuevo: las claves ya no están en memoria y se responden desde la tabla
+        MotorComercio reiniciado = crearMotor(procesador);
+        inicio = System.nanoTime();
+        for (int i = 0; i < checkouts; i++) {
+            // El cliente se vuelve a conectar: otra sesión del mismo usuario
+            ResultadoFinalizacion resultado = reiniciado.pagar(reiniciado.abrirSesion(USUARIO_ID), claves.get(i),
+                Compra.TipoEnvio.TIENDA, null, null).join();
+            if (compraId(resultado) != compras[i]) {
+                System.out.println("[FALLA] Desde la tabla, clave " + claves.get(i) + ": " + resultado);
+                correcto = false;
+            }
+        }
+        double msTabla = (System.nanoTime() - inicio) / 1_000_000.0;
+        if (pasarela.getCobros() != cobrosAntes || reiniciado.getIdempotencia().getDesdeTabla() != checkouts) {
+            System.out.println("[FALLA] Cobros después de reiniciar " + (pasarela.getCobros() - cobrosAntes) +
+                ", respondidas desde la tabla " + reiniciado.getIdempotencia().getDesdeTabla());
+            correcto = false;
+        }
+
+        // Pago aprobado sin compra guardada: después de reiniciar no se vuelve a cobrar
+        String clave = UUID.randomUUID().toString();
+        String sesionCobro = reiniciado.abrirSesion(USUARIO_ID);
+        ResultadoPago aprobado = null;
+        for (int intento = 0; intento < RONDAS_MAXIMAS && (aprobado == null || !aprobado.isAprobado()); intento++) {
+            aprobado = reiniciado.cobrarUnaVez(sesionCobro, clave, () -> procesador.procesar(null, 5_000, clave)).join();
+        }
+        reiniciado.detener();
+        MotorComercio tercero = crearMotor(procesador);
+        CompraDAO compraDAO = new CompraDAO();
+        String sesion = tercero.abrirSesion(USUARIO_ID);
+        tercero.agregarProducto(sesion, productos.get(0).getId(), 1);
+        AtomicInteger llamadas = new AtomicInteger();
+        ResultadoPago repetido = tercero.cobrarUnaVez(sesion, clave, () -> {
+            llamadas.incrementAndGet();
+            return procesador.procesar(null, 5_000, clave);
+        }).join();
+        if (aprobado == null || !aprobado.isAprobado() || !repetido.isAprobado() || llamadas.get() != 0
+                || !aprobado.getAutorizacion().equals(repetido.getAutorizacion())) {
+            System.out.println("[FALLA] Pago aprobado sin compra: " + aprobado + ", después de reiniciar " + repetido +
+                " con " + llamadas.get() + " cobros");
+            correcto = false;
+        }
+        Compra guardada = tercero.registrarCompra(sesion, clave, compraDAO.generarFolio(),
+            Compra.TipoEnvio.TIENDA, null, 0, null).join();
+        // Las claves se guardan con el usuario como prefijo
+        ClaveIdempotencia fila = compraDAO.obtenerClave(USUARIO_ID + ":" + clave);
+        if (fila == null || fila.getEstado() != ClaveIdempotencia.Estado.COMPRA_GUARDADA
+                || fila.getCompra() == null || fila.getCompra().getId() != guardada.getId()
+                || !aprobado.getAutorizacion().equals(fila.getAutorizacion())) {
+            System.out.println("[FALLA] Clave después de guardar: " + fila);
+            correcto = false;
+        }
+
+        // Cliente de escritorio: dos guardados de la misma clave con folios distintos
+        sesion = tercero.abrirSesion(USUARIO_ID);
+        tercero.agregarProducto(sesion, productos.get(0).getId(), 2);
+        String claveEscritorio = UUID.randomUUID().toString();
+        String primerFolio = compraDAO.generarFolio();
+        CompletableFuture<Compra> primera = tercero.registrarCompra(sesion, claveEscritorio, primerFolio,
+            Compra.TipoEnvio.TIENDA, null, 0, null);
+        CompletableFuture<Compra> segunda = tercero.registrarCompra(sesion, claveEscritorio, compraDAO.generarFolio(),
+            Compra.TipoEnvio.TIENDA, null, 0, null);
+        if (!primerFolio.equals(primera.join().getFolio()) || !primerFolio.equals(segunda.join().getFolio())) {
+            System.out.println("[FALLA] Registro repetido: " + primera.join().getFolio() + " y " + segunda.join().getFolio());
+            correcto = false;
+        }
+
+        // Otro usuario con una clave del primero: es otro checkout, nunca la compra ajena
+        UsuarioDAO usuarioDAO = new UsuarioDAO();
+        usuarioDAO.registrarUsuario("idempotencia", "idempotencia");
+        int otroUsuario = usuarioDAO.obtenerIdUsuario("idempotencia");
+        String sesionOtro = tercero.abrirSesion(otroUsuario);
+        tercero.agregarProducto(sesionOtro, productos.get(1).getId(), 1);
+        ResultadoFinalizacion ajena = null;
+        for (int intento = 0; intento < RONDAS_MAXIMAS && (ajena == null || !ajena.isExitosa()); intento++) {
+            ajena = tercero.pagar(sesionOtro, claves.get(0), Compra.TipoEnvio.TIENDA, null, null).join();
+            if (ajena.isExitosa() && ajena.getCompra().getId() == compras[0]) {
+                break;
+            }
+        }
+        if (ajena == null || !ajena.isExitosa() || ajena.getCompra().getId() == compras[0]
+                || ajena.getCompra().getUsuarioId() != otroUsuario) {
+            System.out.println("[FALLA] Clave de otro usuario: " + ajena);
+            correcto = false;
+        }
+        System.out.println(tercero);
+        tercero.detener();
+
+        int comprasGuardadas = compraDAO.obtenerComprasPorUsuario(USUARIO_ID, false).size();
+        int comprasOtro = compraDAO.obtenerComprasPorUsuario(otroUsuario, false).size();
+        int clavesGuardadas = contarClaves();
+        if (comprasGuardadas != checkouts + 2 || comprasOtro != 1 || clavesGuardadas != comprasGuardadas + comprasOtro
+                || pasarela.getAutorizaciones() != checkouts + 2) {
+            System.out.println("[FALLA] Compras guardadas " + comprasGuardadas + " y " + comprasOtro + " del otro usuario, claves " +
+                clavesGuardadas + " (esperadas " + (checkouts + 3) + "), autorizaciones " + pasarela.getAutorizaciones());
+            correcto = false;
+        }
+
+        correcto &= verificarDesalojo(compraDAO);
+
+        System.out.println(String.format("%d solicitudes (%d claves) en %.1f ms: %d rechazadas, %d inciertas",
+            checkouts * reintentos, checkouts, msParalelo, rechazadas, inciertas));
+        System.out.println(String.format("Reintentos en %d rondas: %d cobros, %d respondidos por la pasarela con el cobro original",
+            rondas, cobrosAntes, pasarela.getRepetidas()));
+        System.out.println(String.format("%d reintentos respondidos desde la tabla en %.1f ms (%.2f ms c/u), sin cobrar",
+            checkouts, msTabla, msTabla / Math.max(1, checkouts)));
+        System.out.println(correcto ? "Un cobro aprobado y una compra por clave" : "Hubo diferencias");
+
+        EscritorComprasAgrupadas.detenerInstancia(5000);
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * Cobros inciertos en un registro más chico que las claves: se desalojan sin perder la clave y sin cobrar dos veces
+     */
+    private static boolean verificarDesalojo(CompraDAO compraDAO) {
+        int capacidad = 4;
+        int claves = 3 * capacidad;
+        RegistroIdempotencia registro = new RegistroIdempotencia(capacidad, compraDAO, Runnable::run);
+        AtomicInteger cobros = new AtomicInteger();
+        for (int i = 0; i < claves; i++) {
+            registro.cobrar("desalojo:" + i, () -> {
+                cobros.incrementAndGet();
+                return CompletableFuture.completedFuture(
+                    new ResultadoPago(ResultadoPago.Estado.TIEMPO_AGOTADO, null, "Sin respuesta", 0));
+            }).join();
+        }
+        boolean correcto = true;
+        if (registro.getDesalojadas() < claves - capacidad) {
+            System.out.println("[FALLA] Cobros inciertos sin desalojar: " + registro);
+            correcto = false;
+        }
+        // La primera clave ya no está en memoria: su reintento vuelve a preguntar y queda aprobado en la tabla
+        ResultadoPago aprobado = registro.cobrar("desalojo:0", () -> {
+            cobros.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                new ResultadoPago(ResultadoPago.Estado.APROBADO, "AUT-DESALOJO", "Aprobado", 0));
+        }).join();
+        for (int i = claves; i < 2 * claves; i++) {
+            registro.cobrar("desalojo:" + i, () -> CompletableFuture.completedFuture(
+                new ResultadoPago(ResultadoPago.Estado.RECHAZADO, null, "Rechazado", 0))).join();
+        }
+        ResultadoPago repetido = registro.cobrar("desalojo:0", () -> {
+            cobros.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                new ResultadoPago(ResultadoPago.Estado.APROBADO, "AUT-OTRO", "Aprobado", 0));
+        }).join();
+        if (!aprobado.isAprobado() || !"AUT-DESALOJO".equals(repetido.getAutorizacion()) || cobros.get() != claves + 1) {
+            System.out.println("[FALLA] Reintento de un cobro incierto desalojado: " + aprobado + ", luego " + repetido +
+                " con " + cobros.get() + " cobros (esperados " + (claves + 1) + ")");
+            correcto = false;
+        }
+
+        // Al vencer la retención la tabla queda sin claves
+        int borradas = registro.purgar(System.currentTimeMillis() + RegistroIdempotencia.RETENCION_MS + 1);
+        int restantes = -1;
+        try {
+            restantes = contarClaves();
+        } catch (Exception e) {
+            System.out.println("[FALLA] No se pudieron contar las claves: " + e.getMessage());
+        }
+        if (borradas <= 0 || restantes != 0) {
+            System.out.println("[FALLA] Claves vencidas: " + borradas + " borradas, " + restantes + " restantes");
+            correcto = false;
+        }
+        System.out.println(registro);
+        return correcto;
+    }
+
+    private static MotorComercio crearMotor(ProcesadorPagos procesador) {
+        return new MotorComercio(RepositorioProductos.getInstancia(), Inventario.getInstancia(),
+            MotorPromociones.getInstancia(), procesador, EscritorComprasAgrupadas.getInstancia(),
+            INACTIVIDAD_MS, EXPIRACION_MS);
+    }
+
+    private static int compraId(ResultadoFinalizacion resultado) {
+        return resultado.isExitosa() ? resultado.getCompra().getId() : -1;
+    }
+
+    private static ResultadoPago.Estado estado(ResultadoFinalizacion resultado) {
+        return resultado.getPago() != null ? resultado.getPago().getEstado() : null;
+    }
+
+    private static int contar(ResultadoPago.Estado[] estados, ResultadoPago.Estado buscado) {
+        int n = 0;
+        for (ResultadoPago.Estado estado : estados) {
+            if (estado == buscado) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int contarCompras(int[] compras) {
+        int n = 0;
+        for (int compraId : compras) {
+            if (compraId > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int contarClaves() throws Exception {
+        try (Connection conn = DatabaseManager.getInstance().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM claves_idempotencia")) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+}
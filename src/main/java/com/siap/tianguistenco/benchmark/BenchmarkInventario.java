@@ -0,0 +1,180 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.datos.StockInsuficienteException;
+import com.siap.tianguistenco.inventario.Inventario;
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.motor.MotorComercio;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Muchos clientes reservan el mismo producto a la vez y se verifica que nunca se reserve más que el stock
+ * Cada cliente (un hilo virtual) agrega piezas a su carrito hasta que se agotan y a veces devuelve alguna;
+ * al final lo reservado más lo disponible debe ser el stock inicial. Mide también el costo de reservar
+ * contra un contador con synchronized. Después encola dos compras que juntas exceden el stock guardado:
+ * el descuento condicionado debe rechazar la segunda sin tocar la primera. Usa una base de datos temporal.
+ * Termina con código 1 si algo no cuadra.
+ * Uso: java ... BenchmarkInventario [clientes] [stock]
+ */
+public class BenchmarkInventario {
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int stock = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        File archivo = File.createTempFile("siap_inventario_", ".db");
+        archivo.deleteOnExit();
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+
+        ProductoDAO productoDAO = new ProductoDAO();
+        List<Producto> productos = productoDAO.obtenerTodosLosProductos();
+        Producto producto = productos.get(0);
+        productoDAO.actualizarStock(producto.getId(), stock);
+        RepositorioProductos repositorio = RepositorioProductos.getInstancia();
+        repositorio.recargar();
+        producto = repositorio.buscarProductoPorId(producto.getId());
+
+        System.out.println("=== BENCHMARK INVENTARIO ===");
+        System.out.println("Clientes: " + clientes + ", stock de " + producto.getId() + ": " + stock);
+        boolean correcto = true;
+
+        // Calentamiento
+        for (int r = 0; r < 3; r++) {
+            reservarHastaAgotar(new Inventario(repositorio), producto, clientes);
+        }
+
+        Inventario inventario = new Inventario(repositorio);
+        long inicio = System.nanoTime();
+        int reservadas = reservarHastaAgotar(inventario, producto, clientes);
+        double msInventario = (System.nanoTime() - inicio) / 1_000_000.0;
+        int disponible = inventario.getDisponible(producto.getId());
+        int reservado = inventario.getReservado(producto.getId());
+        if (reservado != reservadas || disponible < 0 || disponible + reservado != stock) {
+            System.out.println("[FALLA] Reservadas " + reservadas + ", reservado " + reservado + ", disponible " + disponible);
+            correcto = false;
+        }
+
+        inicio = System.nanoTime();
+        int conMonitor = reservarConMonitor(clientes, stock);
+        double msMonitor = (System.nanoTime() - inicio) / 1_000_000.0;
+        if (conMonitor > stock) {
+            System.out.println("[FALLA] El contador con synchronized reservó " + conMonitor);
+            correcto = false;
+        }
+
+        // Descuento condicionado: stock guardado para una sola de las dos compras
+        int piezas = 3;
+        productoDAO.actualizarStock(producto.getId(), 2 * piezas - 1);
+        EscritorComprasAgrupadas escritor = EscritorComprasAgrupadas.getInstancia();
+        List<ItemCarrito> lineas = List.of(new ItemCarrito(producto, piezas));
+        long total = producto.getPrecioCentavos() * piezas;
+        Compra primera = MotorComercio.crearCompra(1, "INV-1", lineas, total, 0, Compra.TipoEnvio.TIENDA, null, 0);
+        Compra segunda = MotorComercio.crearCompra(1, "INV-2", lineas, total, 0, Compra.TipoEnvio.TIENDA, null, 0);
+        var guardadaPrimera = escritor.encolar(primera, "EFECTIVO", null);
+        var guardadaSegunda = escritor.encolar(segunda, "EFECTIVO", null);
+        boolean primeraGuardada = guardadaPrimera.handle((id, e) -> e == null).join();
+        Throwable rechazo = guardadaSegunda.handle((id, e) -> e).join();
+        if (rechazo instanceof CompletionException && rechazo.getCause() != null) {
+            rechazo = rechazo.getCause();
+        }
+        int stockFinal = productoDAO.buscarProductoPorId(producto.getId()).getStock();
+        if (!primeraGuardada || !(rechazo instanceof StockInsuficienteException) || stockFinal != piezas - 1) {
+            System.out.println("[FALLA] Descuento condicionado: primera guardada=" + primeraGuardada +
+                ", segunda=" + rechazo + ", stock final=" + stockFinal);
+            correcto = false;
+        }
+
+        System.out.println(String.format("Inventario segmentado: %d reservas en %.1f ms (%.0f ns por pieza)",
+            reservadas, msInventario, msInventario * 1_000_000 / Math.max(1, reservadas)));
+        System.out.println(String.format("Contador con synchronized: %d reservas en %.1f ms (%.0f ns por pieza)",
+            conMonitor, msMonitor, msMonitor * 1_000_000 / Math.max(1, conMonitor)));
+        System.out.println("Descuento condicionado: segunda compra rechazada con " + rechazo);
+        System.out.println(inventario);
+        System.out.println(correcto ? "Nunca se reservó más que el stock" : "Hubo diferencias");
+
+        EscritorComprasAgrupadas.detenerInstancia(5000);
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * Cada cliente agrega piezas a su carrito hasta que ya no hay y de vez en cuando devuelve una
+     * @return piezas que quedaron reservadas en los carritos
+     */
+    private static int reservarHastaAgotar(Inventario inventario, Producto producto, int clientes) {
+        AtomicInteger reservadas = new AtomicInteger();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clientes; c++) {
+                hilos.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    CarritoCompra carrito = new CarritoCompra(inventario);
+                    while (carrito.agregarProducto(producto, 1 + random.nextInt(3))) {
+                        if (random.nextInt(8) == 0) {
+                            carrito.eliminarProducto(producto);
+                        }
+                        if (random.nextInt(16) == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    reservadas.addAndGet(carrito.getCantidadTotalItems());
+                });
+            }
+        }
+        return reservadas.get();
+    }
+
+    /**
+     * La misma carga contra un solo contador protegido con synchronized
+     */
+    private static int reservarConMonitor(int clientes, int stock) {
+        int[] disponible = {stock};
+        Object monitor = new Object();
+        AtomicInteger reservadas = new AtomicInteger();
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clientes; c++) {
+                hilos.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int propias = 0;
+                    while (true) {
+                        int cantidad = 1 + random.nextInt(3);
+                        synchronized (monitor) {
+                            if (disponible[0] < cantidad) {
+                                break;
+                            }
+                            disponible[0] -= cantidad;
+                        }
+                        propias += cantidad;
+                        if (random.nextInt(8) == 0) {
+                            synchronized (monitor) {
+                                disponible[0]++;
+                            }
+                            propias--;
+                        }
+                        if (random.nextInt(16) == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    reservadas.addAndGet(propias);
+                });
+            }
+        }
+        return reservadas.get();
+    }
+}
@@ -0,0 +1,129 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.CompraItem;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Vende muchas veces el mismo producto y verifica que el stock se recupere después de una caída
+ * Un proceso hijo vende una pieza por compra con el escritor agrupado y termina con Runtime.halt(), sin vaciar
+ * el libro de inventario ni correr los ganchos de cierre. Este proceso abre la misma base de datos,
+ * la inicialización aplica los movimientos que quedaron pendientes y el stock debe ser el inicial menos lo vendido.
+ * Reporta cuántos UPDATE de productos hicieron falta para todas las ventas. Usa una base de datos temporal.
+ * Termina con código 1 si el stock no cuadra.
+ * Uso: java ... BenchmarkLibroInventario [compras]
+ */
+public class BenchmarkLibroInventario {
+    private static final String PRODUCTO_ID = "BEB001";
+    private static final int STOCK_INICIAL = 1_000_000;
+    private static final String PREFIJO_VENDIDAS = "VENDIDAS ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--vender")) {
+            vender(args[1], Integer.parseInt(args[2]));
+            return;
+        }
+        int compras = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+
+        File archivo = File.createTempFile("siap_libro_", ".db");
+        archivo.deleteOnExit();
+
+        System.out.println("=== BENCHMARK LIBRO DE INVENTARIO ===");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process hijo = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                BenchmarkLibroInventario.class.getName(), "--vender", archivo.getAbsolutePath(), String.valueOf(compras))
+            .redirectErrorStream(true)
+            .start();
+        int vendidas = -1;
+        try (BufferedReader salida = new BufferedReader(
+                new InputStreamReader(hijo.getInputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = salida.readLine()) != null) {
+                if (linea.startsWith(PREFIJO_VENDIDAS)) {
+                    vendidas = Integer.parseInt(linea.substring(PREFIJO_VENDIDAS.length()));
+                } else {
+                    System.out.println("  [hijo] " + linea);
+                }
+            }
+        }
+        hijo.waitFor();
+
+        // Mismo archivo: al inicializar se aplican los movimientos que el hijo no alcanzó a vaciar
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+        int stock = new ProductoDAO().buscarProductoPorId(PRODUCTO_ID).getStock();
+        int pendiente = LibroInventario.getInstancia().getPendiente(PRODUCTO_ID);
+        boolean correcto = vendidas > 0 && pendiente == 0 && stock == STOCK_INICIAL - vendidas;
+
+        System.out.println("Piezas vendidas antes de la caída: " + vendidas);
+        System.out.println("Stock después de recuperar: " + stock + " (esperado " + (STOCK_INICIAL - vendidas) + ")");
+        System.out.println(correcto ? "El stock se recuperó completo" : "[FALLA] El stock no cuadra");
+
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * Proceso hijo: vende y se cae sin vaciar el libro
+     */
+    private static void vender(String archivo, int compras) throws Exception {
+        DatabaseManager.usarArchivo(archivo);
+        new DatabaseInitializer().inicializar();
+        new ProductoDAO().actualizarStock(PRODUCTO_ID, STOCK_INICIAL);
+        EscritorComprasAgrupadas escritor = EscritorComprasAgrupadas.getInstancia();
+        LibroInventario libro = LibroInventario.getInstancia();
+
+        long inicio = System.nanoTime();
+        List<CompletableFuture<Integer>> guardadas = new ArrayList<>(compras);
+        for (int i = 0; i < compras; i++) {
+            guardadas.add(escritor.encolar(crearCompra("LIBRO-" + i), "EFECTIVO", null));
+        }
+        int vendidas = 0;
+        for (CompletableFuture<Integer> guardada : guardadas) {
+            if (guardada.handle((id, e) -> e == null).join()) {
+                vendidas++;
+            }
+        }
+        double ms = (System.nanoTime() - inicio) / 1_000_000.0;
+
+        System.out.println(String.format("%d compras de %s en %.1f ms (%.0f compras/s)",
+            vendidas, PRODUCTO_ID, ms, vendidas / (ms / 1000.0)));
+        System.out.println(libro + ", pendiente al caer: " + libro.getPendiente(PRODUCTO_ID));
+        System.out.println(PREFIJO_VENDIDAS + vendidas);
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static Compra crearCompra(String folio) {
+        Compra compra = new Compra();
+        compra.setUsuarioId(1);
+        compra.setFolio(folio);
+        compra.setFecha(LocalDateTime.now());
+        compra.setTotalCentavos(2000);
+        compra.setEstado("COMPLETADA");
+        compra.setTipoEnvio(Compra.TipoEnvio.TIENDA);
+
+        CompraItem item = new CompraItem();
+        item.setProductoId(PRODUCTO_ID);
+        item.setNombreProducto("Coca-Cola 600ml");
+        item.setCantidad(1);
+        item.setPrecioUnitarioCentavos(2000);
+        item.setSubtotalCentavos(2000);
+        compra.agregarItem(item);
+        return compra;
+    }
+}
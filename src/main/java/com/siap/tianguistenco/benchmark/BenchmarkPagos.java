@@ -0,0 +1,79 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.pagos.PasarelaSimulada;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envía muchos pagos concurrentes al ProcesadorPagos con una pasarela simulada
+ * Reporta resultados por estado, latencias y los hilos de plataforma usados. Termina con código 1 si
+ * se excedió el máximo de autorizaciones en vuelo o algún pago quedó sin respuesta después de su plazo.
+ * Uso: java ... BenchmarkPagos [clientes] [maximoEnVuelo] [plazoMs]
+ */
+public class BenchmarkPagos {
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int maximoEnVuelo = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long plazoMs = args.length > 2 ? Long.parseLong(args[2]) : 3000;
+
+        // 200-400 ms, 5% lentos (+2 s), 5% rechazos, 1% errores
+        PasarelaSimulada pasarela = new PasarelaSimulada(200, 400, 0.05, 2000, 0.05, 0.01);
+        ProcesadorPagos procesador = new ProcesadorPagos(pasarela, maximoEnVuelo, clientes);
+        int hilosAntes = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        System.out.println("=== BENCHMARK PAGOS ===");
+        System.out.println("Clientes: " + clientes + ", máximo en vuelo: " + maximoEnVuelo + ", plazo: " + plazoMs + " ms");
+
+        long inicio = System.nanoTime();
+        List<CompletableFuture<ResultadoPago>> pagos = new ArrayList<>(clientes);
+        for (int i = 0; i < clientes; i++) {
+            pagos.add(procesador.procesar(i % 2 == 0 ? null : i, 10_000 + i, plazoMs));
+        }
+        int hilosDurante = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        boolean completos = true;
+        try {
+            CompletableFuture.allOf(pagos.toArray(new CompletableFuture<?>[0])).get(plazoMs + 1000, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            completos = false;
+            System.out.println("[FALLA] Pagos sin respuesta después del plazo: " + e);
+        }
+        double segundos = (System.nanoTime() - inicio) / 1_000_000_000.0;
+
+        Map<ResultadoPago.Estado, Integer> porEstado = new EnumMap<>(ResultadoPago.Estado.class);
+        double[] latencias = new double[clientes];
+        for (int i = 0; i < clientes; i++) {
+            ResultadoPago resultado = pagos.get(i).getNow(null);
+            if (resultado == null) {
+                completos = false;
+                continue;
+            }
+            porEstado.merge(resultado.getEstado(), 1, Integer::sum);
+            latencias[i] = resultado.getTiempoMs();
+        }
+        Arrays.sort(latencias);
+
+        System.out.println(String.format("Tiempo total: %.2f s (%.0f pagos/s)", segundos, clientes / segundos));
+        System.out.println("Resultados: " + porEstado);
+        System.out.println(String.format("Latencia: p50=%.0f ms, p99=%.0f ms, máx=%.0f ms",
+            latencias[clientes / 2], latencias[Math.min(clientes - 1, clientes * 99 / 100)], latencias[clientes - 1]));
+        System.out.println("Hilos de plataforma: " + hilosAntes + " antes, " + hilosDurante + " con todos los pagos en curso");
+        System.out.println(procesador);
+
+        boolean limiteRespetado = procesador.getMaximoEnVueloObservado() <= maximoEnVuelo;
+        if (!limiteRespetado) {
+            System.out.println("[FALLA] Se excedió el máximo en vuelo");
+        }
+        System.exit(completos && limiteRespetado ? 0 : 1);
+    }
+}
@@ -0,0 +1,200 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.model.Centavos;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.promociones.EvaluacionCarrito;
+import com.siap.tianguistenco.promociones.Promocion;
+import com.siap.tianguistenco.promociones.ReglasPromocion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mide la evaluación de promociones con carritos de 10 a 1000 líneas y 1000 promociones activas
+ * Compara tres formas: recorrer todas las promociones por línea (sin compilar), evaluar el carrito completo
+ * con las reglas compiladas y actualizar una sola línea con la evaluación incremental. Antes de medir
+ * verifica que las tres den el mismo descuento; si no, termina con código 1.
+ * Uso: java ... BenchmarkPromociones [promociones] [iteraciones]
+ */
+public class BenchmarkPromociones {
+    private static final int PRODUCTOS = 5000;
+    private static final int CATEGORIAS = 40;
+    private static final int[] LINEAS = {10, 100, 1000};
+
+    private static long sumidero;
+
+    public static void main(String[] args) {
+        int cantidadPromociones = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int iteraciones = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Random random = new Random(42);
+        List<Producto> productos = generarProductos(random);
+        long ahora = System.currentTimeMillis();
+        List<Promocion> promociones = generarPromociones(random, cantidadPromociones, ahora);
+
+        long inicio = System.nanoTime();
+        ReglasPromocion reglas = ReglasPromocion.compilar(promociones, ahora);
+        System.out.println("=== BENCHMARK PROMOCIONES ===");
+        System.out.println(String.format("Compilación de %d promociones: %.3f ms -> %s",
+            promociones.size(), (System.nanoTime() - inicio) / 1_000_000.0, reglas));
+
+        boolean correcto = true;
+        for (int lineas : LINEAS) {
+            List<ItemCarrito> carrito = generarCarrito(random, productos, lineas);
+            correcto &= verificar(carrito, promociones, reglas, ahora);
+
+            // Calentamiento y medición de cada variante
+            for (int ronda = 0; ronda < 2; ronda++) {
+                boolean medir = ronda == 1;
+                double sinCompilar = medirSinCompilar(carrito, promociones, ahora, Math.max(1, iteraciones / lineas));
+                double completo = medirCompleto(carrito, reglas, iteraciones);
+                double incremental = medirIncremental(carrito, reglas, iteraciones * 10);
+                if (medir) {
+                    System.out.println(String.format(
+                        "%4d líneas: sin compilar %,12.0f ns/carrito | compilado %,10.0f ns/carrito | incremental %,8.0f ns/cambio",
+                        lineas, sinCompilar, completo, incremental));
+                }
+            }
+        }
+
+        System.out.println(correcto ? "Las tres evaluaciones coinciden" : "Las evaluaciones no coinciden");
+        System.out.println("(sumidero " + sumidero + ")");
+        System.exit(correcto ? 0 : 1);
+    }
+
+    private static double medirSinCompilar(List<ItemCarrito> carrito, List<Promocion> promociones, long ahora, int iteraciones) {
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            sumidero += descuentoSinCompilar(carrito, promociones, ahora);
+        }
+        return (System.nanoTime() - inicio) / (double) iteraciones;
+    }
+
+    private static double medirCompleto(List<ItemCarrito> carrito, ReglasPromocion reglas, int iteraciones) {
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            EvaluacionCarrito evaluacion = new EvaluacionCarrito(reglas);
+            evaluacion.sincronizar(carrito);
+            sumidero += evaluacion.getDescuentoCentavos();
+        }
+        return (System.nanoTime() - inicio) / (double) iteraciones;
+    }
+
+    private static double medirIncremental(List<ItemCarrito> carrito, ReglasPromocion reglas, int iteraciones) {
+        EvaluacionCarrito evaluacion = new EvaluacionCarrito(reglas);
+        evaluacion.sincronizar(carrito);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            ItemCarrito item = carrito.get(i % carrito.size());
+            // Alterna la cantidad de una línea entre n y n + 1
+            evaluacion.actualizarLinea(item.getProducto(), item.getCantidad() + (i / carrito.size() % 2 == 0 ? 1 : 0));
+            sumidero += evaluacion.getDescuentoCentavos();
+        }
+        return (System.nanoTime() - inicio) / (double) iteraciones;
+    }
+
+    /**
+     * Referencia sin compilar: por cada línea revisa todas las promociones
+     */
+    private static long descuentoSinCompilar(List<ItemCarrito> carrito, List<Promocion> promociones, long ahora) {
+        long subtotal = 0;
+        long descuentoLineas = 0;
+        for (ItemCarrito item : carrito) {
+            Producto producto = item.getProducto();
+            long lineaSubtotal = item.getSubtotalCentavos();
+            long mejor = 0;
+            for (Promocion promocion : promociones) {
+                if (!promocion.estaVigente(ahora)) {
+                    continue;
+                }
+                long descuento = switch (promocion.getTipo()) {
+                    case POR_PRODUCTO -> producto.getId().equals(promocion.getClave())
+                        ? Centavos.porcentaje(lineaSubtotal, promocion.getPorcentaje()) : 0;
+                    case POR_CATEGORIA -> producto.getCategoria().equals(promocion.getClave())
+                        ? Centavos.porcentaje(lineaSubtotal, promocion.getPorcentaje()) : 0;
+                    case PAQUETE -> producto.getId().equals(promocion.getClave())
+                        ? (long) (item.getCantidad() / promocion.getLleva()) * (promocion.getLleva() - promocion.getPaga())
+                            * producto.getPrecioCentavos() : 0;
+                    case POR_TOTAL -> 0;
+                };
+                mejor = Math.max(mejor, descuento);
+            }
+            subtotal += lineaSubtotal;
+            descuentoLineas += Math.min(mejor, lineaSubtotal);
+        }
+        long restante = subtotal - descuentoLineas;
+        int porcentaje = 0;
+        for (Promocion promocion : promociones) {
+            if (promocion.getTipo() == Promocion.Tipo.POR_TOTAL && promocion.estaVigente(ahora)
+                    && restante >= promocion.getUmbralCentavos()) {
+                porcentaje = Math.max(porcentaje, promocion.getPorcentaje());
+            }
+        }
+        return descuentoLineas + Centavos.porcentaje(restante, porcentaje);
+    }
+
+    private static boolean verificar(List<ItemCarrito> carrito, List<Promocion> promociones, ReglasPromocion reglas, long ahora) {
+        long esperado = descuentoSinCompilar(carrito, promociones, ahora);
+
+        EvaluacionCarrito completa = new EvaluacionCarrito(reglas);
+        completa.sincronizar(carrito);
+
+        // Construir la evaluación línea por línea con cantidades intermedias y quitando una línea de paso
+        EvaluacionCarrito incremental = new EvaluacionCarrito(reglas);
+        for (ItemCarrito item : carrito) {
+            incremental.actualizarLinea(item.getProducto(), item.getCantidad() + 3);
+        }
+        incremental.actualizarLinea(carrito.get(0).getProducto(), 0);
+        incremental.sincronizar(carrito);
+
+        boolean correcto = esperado == completa.getDescuentoCentavos() && esperado == incremental.getDescuentoCentavos();
+        if (!correcto) {
+            System.out.println("[FALLA] " + carrito.size() + " líneas: sin compilar " + esperado +
+                ", compilado " + completa.getDescuentoCentavos() + ", incremental " + incremental.getDescuentoCentavos());
+        }
+        return correcto;
+    }
+
+    private static List<Producto> generarProductos(Random random) {
+        List<Producto> productos = new ArrayList<>(PRODUCTOS);
+        for (int i = 0; i < PRODUCTOS; i++) {
+            double precio = (500 + random.nextInt(50_000)) / 100.0;
+            productos.add(new Producto(String.format("P%05d", i), "Producto " + i, "", precio,
+                "Categoria" + (i % CATEGORIAS), "", 100));
+        }
+        return productos;
+    }
+
+    /**
+     * Mezcla de rebajas por producto, paquetes, categorías, umbrales por total y campañas con vigencia
+     * (la mitad de las campañas está fuera de su ventana)
+     */
+    private static List<Promocion> generarPromociones(Random random, int cantidad, long ahora) {
+        List<Promocion> promociones = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            String id = "PROMO" + i;
+            String producto = String.format("P%05d", random.nextInt(PRODUCTOS));
+            Promocion promocion = switch (i % 10) {
+                case 0, 1, 2, 3 -> Promocion.porProducto(id, "Rebaja " + i, producto, 5 + random.nextInt(40));
+                case 4, 5 -> Promocion.paquete(id, "3x2 " + i, producto, 3, 2);
+                case 6 -> Promocion.porCategoria(id, "Categoría " + i, "Categoria" + random.nextInt(CATEGORIAS), 5 + random.nextInt(20));
+                case 7 -> Promocion.porTotal(id, "Total " + i, 10_000L * (1 + random.nextInt(500)), 1 + random.nextInt(25));
+                default -> Promocion.porProducto(id, "Campaña " + i, producto, 10 + random.nextInt(30))
+                    .vigente(random.nextBoolean() ? ahora - 60_000 : ahora + 60_000, ahora + 3_600_000);
+            };
+            promociones.add(promocion);
+        }
+        return promociones;
+    }
+
+    private static List<ItemCarrito> generarCarrito(Random random, List<Producto> productos, int lineas) {
+        List<ItemCarrito> items = new ArrayList<>(lineas);
+        for (int i = 0; i < lineas; i++) {
+            // Productos distintos: un carrito tiene una línea por producto
+            items.add(new ItemCarrito(productos.get(i * (PRODUCTOS / lineas)), 1 + random.nextInt(6)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,233 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.LibroInventario;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.inventario.Inventario;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.motor.MotorComercio;
+import com.siap.tianguistenco.motor.RegistroSesiones;
+import com.siap.tianguistenco.motor.ResultadoFinalizacion;
+import com.siap.tianguistenco.motor.ResumenCarrito;
+import com.siap.tianguistenco.pagos.PasarelaSimulada;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.promociones.MotorPromociones;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Abre muchas sesiones en el MotorComercio y mide memoria y tiempo
+ * Llena los carritos desde hilos virtuales, compacta las sesiones como si hubieran quedado inactivas,
+ * verifica que al rearmarlas den el mismo resumen, finaliza compras en algunas y deja expirar el resto.
+ * Al final no debe quedar nada reservado y lo disponible en el inventario debe ser igual al stock guardado.
+ * Reporta bytes por sesión vacía, con carrito y compactada. Usa una base de datos temporal.
+ * Termina con código 1 si algún resumen o compra no coincide.
+ * Uso: java ... BenchmarkSesiones [sesiones] [compras]
+ */
+public class BenchmarkSesiones {
+    private static final int USUARIO_ID = 1;
+    private static final long INACTIVIDAD_MS = 60_000;
+    private static final long EXPIRACION_MS = 600_000;
+    private static final int STOCK_INICIAL = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int cantidadSesiones = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int compras = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        File archivo = File.createTempFile("siap_sesiones_", ".db");
+        archivo.deleteOnExit();
+        DatabaseManager.usarArchivo(archivo.getAbsolutePath());
+        new DatabaseInitializer().inicializar();
+
+        // Stock de sobra: aquí se mide el motor, no se agotan existencias
+        ProductoDAO productoDAO = new ProductoDAO();
+        for (Producto producto : productoDAO.obtenerTodosLosProductos()) {
+            productoDAO.actualizarStock(producto.getId(), STOCK_INICIAL);
+        }
+        RepositorioProductos repositorio = RepositorioProductos.getInstancia();
+        repositorio.recargar();
+        List<Producto> productos = repositorio.getTodosLosProductos();
+        Inventario inventario = new Inventario(repositorio);
+        // Pasarela rápida y sin rechazos: aquí se mide el motor, no la pasarela
+        ProcesadorPagos procesador = new ProcesadorPagos(new PasarelaSimulada(1, 3, 0, 0, 0, 0), 64, cantidadSesiones);
+        MotorComercio motor = new MotorComercio(repositorio, inventario, MotorPromociones.getInstancia(), procesador,
+            EscritorComprasAgrupadas.getInstancia(), INACTIVIDAD_MS, EXPIRACION_MS);
+
+        System.out.println("=== BENCHMARK SESIONES ===");
+        System.out.println("Sesiones: " + cantidadSesiones + ", productos en catálogo: " + productos.size());
+
+        long memoriaBase = memoriaUsada();
+        long inicio = System.nanoTime();
+        String[] ids = new String[cantidadSesiones];
+        for (int i = 0; i < cantidadSesiones; i++) {
+            ids[i] = motor.abrirSesion(USUARIO_ID);
+        }
+        double msAbrir = (System.nanoTime() - inicio) / 1_000_000.0;
+        long memoriaVacias = memoriaUsada();
+
+        // Cada sesión agrega y quita productos desde su propio hilo virtual
+        // Solo los números del resumen: guardar los resúmenes completos retendría las líneas al medir memoria
+        long[] subtotales = new long[cantidadSesiones];
+        long[] descuentos = new long[cantidadSesiones];
+        int[] piezas = new int[cantidadSesiones];
+        AtomicInteger inconsistentes = new AtomicInteger();
+        AtomicInteger operaciones = new AtomicInteger();
+        inicio = System.nanoTime();
+        try (ExecutorService clientes = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < cantidadSesiones; i++) {
+                int indice = i;
+                clientes.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int lineas = 1 + random.nextInt(8);
+                    ResumenCarrito resumen = null;
+                    for (int j = 0; j < lineas; j++) {
+                        Producto producto = productos.get(random.nextInt(productos.size()));
+                        resumen = motor.agregarProducto(ids[indice], producto.getId(), 1 + random.nextInt(3));
+                        operaciones.incrementAndGet();
+                    }
+                    if (random.nextInt(4) == 0) {
+                        resumen = motor.quitarProducto(ids[indice], resumen.getItems().get(0).getProducto().getId());
+                        operaciones.incrementAndGet();
+                    }
+                    if (!consistente(resumen, "sesión " + indice)) {
+                        inconsistentes.incrementAndGet();
+                    }
+                    subtotales[indice] = resumen.getSubtotalCentavos();
+                    descuentos[indice] = resumen.getDescuentoCentavos();
+                    piezas[indice] = resumen.getPiezas();
+                });
+            }
+        }
+        double msCarritos = (System.nanoTime() - inicio) / 1_000_000.0;
+        long memoriaConCarrito = memoriaUsada();
+
+        boolean correcto = inconsistentes.get() == 0;
+
+        // Compactar todas como si llevaran más del tiempo de inactividad sin uso
+        long ahora = System.currentTimeMillis();
+        RegistroSesiones.Mantenimiento compactacion = motor.mantener(ahora + INACTIVIDAD_MS + 1);
+        long memoriaCompactadas = memoriaUsada();
+
+        // Rearmar: el resumen debe ser el mismo que antes de compactar
+        inicio = System.nanoTime();
+        int distintos = 0;
+        for (int i = 0; i < cantidadSesiones; i++) {
+            ResumenCarrito rearmado = motor.getResumen(ids[i]);
+            if (rearmado.getSubtotalCentavos() != subtotales[i] || rearmado.getDescuentoCentavos() != descuentos[i]
+                    || rearmado.getPiezas() != piezas[i]) {
+                distintos++;
+            }
+        }
+        double msRearmar = (System.nanoTime() - inicio) / 1_000_000.0;
+        if (distintos > 0) {
+            System.out.println("[FALLA] " + distintos + " sesiones con otro resumen después de compactar");
+            correcto = false;
+        }
+
+        // Finalizar compras en las primeras sesiones
+        CompraDAO compraDAO = new CompraDAO();
+        int comprasAntes = compraDAO.obtenerComprasPorUsuario(USUARIO_ID, false).size();
+        inicio = System.nanoTime();
+        int intentos = 0;
+        int exitosas = 0;
+        long totalCobrado = 0;
+        for (int i = 0; i < Math.min(compras, cantidadSesiones); i++) {
+            if (piezas[i] == 0) {
+                // Quitó la única pieza que tenía: no hay nada que cobrar
+                continue;
+            }
+            intentos++;
+            ResultadoFinalizacion resultado = motor.pagar(ids[i], Compra.TipoEnvio.TIENDA, null, null).join();
+            if (resultado.isExitosa() && motor.getResumen(ids[i]).estaVacio()) {
+                exitosas++;
+                totalCobrado += resultado.getCompra().getTotalConDescuentoCentavos();
+            } else {
+                System.out.println("[FALLA] Compra de la sesión " + i + ": " + resultado);
+            }
+        }
+        double msCompras = (System.nanoTime() - inicio) / 1_000_000.0;
+        int comprasGuardadas = compraDAO.obtenerComprasPorUsuario(USUARIO_ID, false).size() - comprasAntes;
+        if (exitosas != intentos || comprasGuardadas != exitosas) {
+            System.out.println("[FALLA] Compras exitosas " + exitosas + ", guardadas " + comprasGuardadas);
+            correcto = false;
+        }
+
+        // Rearmar y comprar tocó las sesiones: se expiran contando desde ahora
+        RegistroSesiones.Mantenimiento expiracion = motor.mantener(System.currentTimeMillis() + EXPIRACION_MS + 1);
+        if (motor.getRegistro().getTamano() != 0) {
+            System.out.println("[FALLA] Quedaron " + motor.getRegistro().getTamano() + " sesiones después de expirar");
+            correcto = false;
+        }
+
+        // Las sesiones expiradas devolvieron sus reservas y las compras confirmaron las suyas
+        int existenciasDistintas = 0;
+        for (Producto producto : productos) {
+            int stock = productoDAO.buscarProductoPorId(producto.getId()).getStock();
+            if (inventario.getReservado(producto.getId()) != 0 || inventario.getDisponible(producto.getId()) != stock) {
+                System.out.println("[FALLA] " + producto.getId() + ": stock " + stock + ", disponible " +
+                    inventario.getDisponible(producto.getId()) + ", reservado " + inventario.getReservado(producto.getId()));
+                existenciasDistintas++;
+            }
+        }
+        if (existenciasDistintas > 0) {
+            correcto = false;
+        }
+
+        System.out.println(String.format("Abrir sesiones: %.1f ms (%.0f bytes por sesión vacía)",
+            msAbrir, (memoriaVacias - memoriaBase) / (double) cantidadSesiones));
+        System.out.println(String.format("Llenar carritos: %d operaciones en %.1f ms (%.0f bytes por sesión con carrito)",
+            operaciones.get(), msCarritos, (memoriaConCarrito - memoriaBase) / (double) cantidadSesiones));
+        System.out.println(String.format("Compactar: %s (%.0f bytes por sesión compactada)",
+            compactacion, (memoriaCompactadas - memoriaBase) / (double) cantidadSesiones));
+        System.out.println(String.format("Rearmar y resumir todas: %.1f ms", msRearmar));
+        System.out.println(String.format("Compras: %d en %.1f ms, cobrado %d centavos", exitosas, msCompras, totalCobrado));
+        System.out.println("Expirar: " + expiracion);
+        System.out.println(motor);
+        System.out.println(inventario);
+        System.out.println(correcto ? "Resúmenes y compras coinciden" : "Hubo diferencias");
+
+        motor.detener();
+        EscritorComprasAgrupadas.detenerInstancia(5000);
+        LibroInventario.detenerInstancia();
+        DatabaseManager.getInstance().cerrar();
+        System.exit(correcto ? 0 : 1);
+    }
+
+    /**
+     * El subtotal y las piezas del resumen deben cuadrar con sus líneas
+     */
+    private static boolean consistente(ResumenCarrito resumen, String nombre) {
+        long subtotal = 0;
+        int piezas = 0;
+        for (ItemCarrito item : resumen.getItems()) {
+            subtotal += item.getSubtotalCentavos();
+            piezas += item.getCantidad();
+        }
+        boolean correcto = subtotal == resumen.getSubtotalCentavos() && piezas == resumen.getPiezas()
+            && resumen.getDescuentoCentavos() >= 0 && resumen.getDescuentoCentavos() <= subtotal;
+        if (!correcto) {
+            System.out.println("[FALLA] " + nombre + ": " + resumen);
+        }
+        return correcto;
+    }
+
+    private static long memoriaUsada() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,98 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.threads.AplicadorDescuentos;
+import com.siap.tianguistenco.threads.CalculadorPrecio;
+import com.siap.tianguistenco.threads.CicloVidaAplicacion;
+import com.siap.tianguistenco.threads.EstadoAplicacion;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Verifica que agregar un producto al carrito se refleja en el descuento y el total en un tiempo acotado
+ * Levanta CalculadorPrecio y AplicadorDescuentos sin interfaz, agrega un producto que activa el
+ * descuento del 10% y mide hasta que el carrito publica el descuento. Termina con código 1 si alguna
+ * repetición excede el límite o el total con descuento no es el esperado.
+ * Uso: java ... VerificadorLatenciaCarrito [repeticiones] [limiteMs]
+ */
+public class VerificadorLatenciaCarrito {
+    private static final double PRECIO = 600.0;
+    private static final long TOTAL_ESPERADO_CENTAVOS = 54_000;
+
+    public static void main(String[] args) throws Exception {
+        int repeticiones = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long limiteMs = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+        CicloVidaAplicacion cicloVida = new CicloVidaAplicacion();
+        CarritoCompra carrito = new CarritoCompra();
+        CalculadorPrecio calculador = new CalculadorPrecio(cicloVida, carrito, null);
+        AplicadorDescuentos aplicador = new AplicadorDescuentos(cicloVida, carrito, calculador);
+        Thread hiloCalculador = new Thread(calculador, "CalculadorPrecio");
+        Thread hiloAplicador = new Thread(aplicador, "AplicadorDescuentos");
+        hiloCalculador.start();
+        hiloAplicador.start();
+        cicloVida.transicionar(EstadoAplicacion.AUTENTICADO);
+
+        Producto producto = new Producto("BENCH01", "Producto de prueba", "", PRECIO, "Prueba", "", 100);
+        AtomicReference<CountDownLatch> descuentoAplicado = new AtomicReference<>();
+        carrito.suscribir((version, tipo, productoId) -> {
+            CountDownLatch latch = descuentoAplicado.get();
+            if (tipo == CarritoCompra.TipoCambio.DESCUENTO && carrito.getDescuentoCentavos() > 0 && latch != null) {
+                latch.countDown();
+            }
+        });
+
+        // La primera repetición espera a que ambos hilos estén suscritos al carrito
+        medir(carrito, producto, descuentoAplicado, 5000);
+
+        long[] latenciasMicros = new long[repeticiones];
+        int fallidas = 0;
+        for (int i = 0; i < repeticiones; i++) {
+            long micros = medir(carrito, producto, descuentoAplicado, limiteMs);
+            latenciasMicros[i] = micros;
+            boolean totalCorrecto = carrito.getTotalConDescuentoCentavos() == TOTAL_ESPERADO_CENTAVOS;
+            if (micros < 0 || !totalCorrecto) {
+                fallidas++;
+                System.out.println("[FALLA] repetición " + i + ": " + (micros < 0 ? "sin descuento en " + limiteMs + " ms"
+                    : "total " + carrito.getTotalConDescuentoCentavos() + " en lugar de " + TOTAL_ESPERADO_CENTAVOS + " centavos"));
+            }
+        }
+
+        cicloVida.transicionar(EstadoAplicacion.CERRADA);
+        hiloCalculador.join(1000);
+        hiloAplicador.join(1000);
+
+        long[] ordenadas = Arrays.stream(latenciasMicros).filter(l -> l >= 0).sorted().toArray();
+        if (ordenadas.length > 0) {
+            System.out.println(String.format("Latencia agregar -> descuento: p50=%.3f ms, p99=%.3f ms, máx=%.3f ms (límite %d ms)",
+                ordenadas[ordenadas.length / 2] / 1000.0,
+                ordenadas[Math.min(ordenadas.length - 1, ordenadas.length * 99 / 100)] / 1000.0,
+                ordenadas[ordenadas.length - 1] / 1000.0, limiteMs));
+        }
+        System.out.println(fallidas == 0
+            ? "Todas las repeticiones reflejaron el cambio dentro del límite"
+            : fallidas + " de " + repeticiones + " repeticiones fallaron");
+        System.exit(fallidas == 0 ? 0 : 1);
+    }
+
+    /**
+     * Vacía el carrito, agrega el producto y espera el descuento
+     * @return microsegundos transcurridos, o -1 si se agotó el límite
+     */
+    private static long medir(CarritoCompra carrito, Producto producto,
+                              AtomicReference<CountDownLatch> descuentoAplicado, long limiteMs) throws InterruptedException {
+        carrito.limpiar();
+        CountDownLatch latch = new CountDownLatch(1);
+        descuentoAplicado.set(latch);
+        long inicio = System.nanoTime();
+        carrito.agregarProducto(producto);
+        boolean aplicado = latch.await(limiteMs, TimeUnit.MILLISECONDS);
+        long micros = (System.nanoTime() - inicio) / 1000;
+        descuentoAplicado.set(null);
+        return aplicado ? micros : -1;
+    }
+}
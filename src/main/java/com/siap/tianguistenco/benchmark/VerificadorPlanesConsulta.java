@@ -0,0 +1,127 @@
+package com.siap.tianguistenco.benchmark;
+
+import com.siap.tianguistenco.datos.DatabaseInitializer;
+import com.siap.tianguistenco.datos.DatabaseManager;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifica con EXPLAIN QUERY PLAN que las consultas frecuentes usan los índices de las migraciones
+ * Crea una base de datos temporal, aplica el esquema y termina con código 1 si alguna consulta
+ * no usa su índice o necesita ordenar en un árbol temporal cuando no debería.
+ * Uso: java ... VerificadorPlanesConsulta [archivo.db]
+ */
+public class VerificadorPlanesConsulta {
+
+    public static void main(String[] args) throws Exception {
+        String ruta;
+        if (args.length > 0) {
+            ruta = args[0];
+        } else {
+            File archivo = File.createTempFile("siap_planes_", ".db");
+            archivo.deleteOnExit();
+            ruta = archivo.getAbsolutePath();
+        }
+        DatabaseManager.usarArchivo(ruta);
+        new DatabaseInitializer().inicializar();
+
+        List<Caso> casos = new ArrayList<>();
+        casos.add(new Caso("Historial por usuario",
+            "SELECT id, folio, fecha_ms FROM compras WHERE usuario_id = ? ORDER BY fecha_ms DESC, id DESC",
+            "idx_compras_usuario_fecha_ms", false));
+        casos.add(new Caso("Página siguiente del historial",
+            "SELECT id, folio, fecha_ms FROM compras WHERE usuario_id = ? AND (fecha_ms, id) < (?, ?) " +
+            "ORDER BY fecha_ms DESC, id DESC LIMIT ?",
+            "idx_compras_usuario_fecha_ms", false));
+        casos.add(new Caso("Compras de un usuario entre dos fechas",
+            "SELECT id, folio FROM compras WHERE usuario_id = ? AND fecha_ms >= ? AND fecha_ms < ? " +
+            "ORDER BY fecha_ms DESC, id DESC",
+            "idx_compras_usuario_fecha_ms", false));
+        casos.add(new Caso("Devoluciones entre dos fechas",
+            "SELECT id FROM devoluciones WHERE fecha_ms >= ? AND fecha_ms < ? ORDER BY fecha_ms DESC",
+            "idx_devoluciones_fecha_ms", false));
+        casos.add(new Caso("Items de una compra",
+            "SELECT id, producto_id, cantidad FROM compras_items WHERE compra_id = ?",
+            "idx_compras_items_compra", false));
+        casos.add(new Caso("Items de todas las compras de un usuario",
+            "SELECT id, compra_id FROM compras_items " +
+            "WHERE compra_id IN (SELECT id FROM compras WHERE usuario_id = ?) ORDER BY compra_id, id",
+            "idx_compras_items_compra", false));
+        casos.add(new Caso("Devoluciones por usuario",
+            "SELECT d.id FROM devoluciones d INNER JOIN compras c ON d.compra_id = c.id " +
+            "WHERE c.usuario_id = ? ORDER BY d.fecha_ms DESC",
+            "idx_devoluciones_compra", true));
+        casos.add(new Caso("Tarjetas activas por usuario",
+            "SELECT id FROM tarjetas WHERE usuario_id = ? AND activa = 1 ORDER BY fecha_creacion DESC",
+            "idx_tarjetas_usuario_activa", false));
+        casos.add(new Caso("Claves de idempotencia vencidas",
+            "DELETE FROM claves_idempotencia WHERE fecha_ms < ?",
+            "idx_claves_idempotencia_fecha", false));
+        casos.add(new Caso("Productos por categoría",
+            "SELECT id, nombre FROM productos WHERE categoria = ? ORDER BY nombre",
+            "idx_productos_categoria_nombre", false));
+
+        int fallidos = 0;
+        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
+            for (Caso caso : casos) {
+                if (!caso.verificar(conn)) {
+                    fallidos++;
+                }
+            }
+        } finally {
+            DatabaseManager.getInstance().cerrar();
+        }
+
+        System.out.println(fallidos == 0
+            ? "Todas las consultas usan sus índices"
+            : fallidos + " consultas no usan el índice esperado");
+        System.exit(fallidos == 0 ? 0 : 1);
+    }
+
+    /**
+     * Consulta frecuente y el índice que debe aparecer en su plan
+     */
+    private static final class Caso {
+        private final String nombre;
+        private final String sql;
+        private final String indiceEsperado;
+        private final boolean permiteOrdenTemporal;
+
+        Caso(String nombre, String sql, String indiceEsperado, boolean permiteOrdenTemporal) {
+            this.nombre = nombre;
+            this.sql = sql;
+            this.indiceEsperado = indiceEsperado;
+            this.permiteOrdenTemporal = permiteOrdenTemporal;
+        }
+
+        boolean verificar(Connection conn) throws SQLException {
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+                int parametros = stmt.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parametros; i++) {
+                    stmt.setInt(i, 1);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append("    ").append(rs.getString("detail")).append('\n');
+                    }
+                }
+            }
+
+            String texto = plan.toString();
+            boolean usaIndice = texto.contains(indiceEsperado);
+            boolean ordenTemporal = texto.contains("TEMP B-TREE");
+            boolean correcto = usaIndice && (permiteOrdenTemporal || !ordenTemporal);
+
+            System.out.println((correcto ? "[OK]    " : "[FALLA] ") + nombre);
+            System.out.print(texto);
+            return correcto;
+        }
+    }
+}
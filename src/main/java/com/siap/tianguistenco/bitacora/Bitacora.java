@@ -0,0 +1,166 @@
+package com.siap.tianguistenco.bitacora;
+
+/**
+ * Bitácora de una clase: mensajes con nivel y plantilla con {} en lugar de System.out.println
+ * El nivel se revisa antes de todo lo demás; un mensaje de un nivel desactivado no arma cadenas ni crea
+ * objetos (hasta tres argumentos no hay arreglo de varargs). Los mensajes activos se publican en un anillo
+ * sin candados y un hilo aparte los formatea y escribe, así quien registra no espera a la consola.
+ * Los argumentos se formatean después, en el hilo escritor: pasar valores que ya no cambien. Si el cálculo de
+ * un argumento es costoso (String.format, recorrer una lista), envolver la llamada en isDepuracion()/isInfo().
+ * Un Throwable como último argumento, sin {} que le corresponda, se escribe con su traza.
+ * El nivel mínimo se toma de la propiedad siap.bitacora.nivel (DEPURACION, INFO, AVISO, ERROR; INFO por omisión).
+ */
+public final class Bitacora {
+    private static volatile Nivel nivelMinimo = nivelInicial();
+
+    private final String origen;
+
+    private Bitacora(String origen) {
+        this.origen = origen;
+    }
+
+    public static Bitacora de(Class<?> clase) {
+        return new Bitacora(clase.getSimpleName());
+    }
+
+    public static Nivel getNivel() {
+        return nivelMinimo;
+    }
+
+    public static void setNivel(Nivel nivel) {
+        nivelMinimo = nivel;
+    }
+
+    /**
+     * Escribe lo que esté pendiente en el anillo antes de regresar
+     */
+    public static void vaciar() {
+        EscritorBitacora.INSTANCIA.vaciar();
+    }
+
+    /**
+     * Mensajes descartados porque el anillo estaba lleno
+     */
+    public static long getDescartados() {
+        return EscritorBitacora.INSTANCIA.getDescartados();
+    }
+
+    private static Nivel nivelInicial() {
+        String propiedad = System.getProperty("siap.bitacora.nivel");
+        if (propiedad != null) {
+            try {
+                return Nivel.valueOf(propiedad.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Nivel de bitácora desconocido: " + propiedad + ", se usa INFO");
+            }
+        }
+        return Nivel.INFO;
+    }
+
+    public boolean estaActivo(Nivel nivel) {
+        return nivel.compareTo(nivelMinimo) >= 0;
+    }
+
+    public boolean isDepuracion() {
+        return estaActivo(Nivel.DEPURACION);
+    }
+
+    public boolean isInfo() {
+        return estaActivo(Nivel.INFO);
+    }
+
+    // DEPURACION
+
+    public void depuracion(String mensaje) {
+        registrar(Nivel.DEPURACION, mensaje, 0, null, null, null, null);
+    }
+
+    public void depuracion(String plantilla, Object a1) {
+        registrar(Nivel.DEPURACION, plantilla, 1, a1, null, null, null);
+    }
+
+    public void depuracion(String plantilla, Object a1, Object a2) {
+        registrar(Nivel.DEPURACION, plantilla, 2, a1, a2, null, null);
+    }
+
+    public void depuracion(String plantilla, Object a1, Object a2, Object a3) {
+        registrar(Nivel.DEPURACION, plantilla, 3, a1, a2, a3, null);
+    }
+
+    public void depuracion(String plantilla, Object... argumentos) {
+        registrar(Nivel.DEPURACION, plantilla, argumentos.length, null, null, null, argumentos);
+    }
+
+    // INFO
+
+    public void info(String mensaje) {
+        registrar(Nivel.INFO, mensaje, 0, null, null, null, null);
+    }
+
+    public void info(String plantilla, Object a1) {
+        registrar(Nivel.INFO, plantilla, 1, a1, null, null, null);
+    }
+
+    public void info(String plantilla, Object a1, Object a2) {
+        registrar(Nivel.INFO, plantilla, 2, a1, a2, null, null);
+    }
+
+    public void info(String plantilla, Object a1, Object a2, Object a3) {
+        registrar(Nivel.INFO, plantilla, 3, a1, a2, a3, null);
+    }
+
+    public void info(String plantilla, Object... argumentos) {
+        registrar(Nivel.INFO, plantilla, argumentos.length, null, null, null, argumentos);
+    }
+
+    // AVISO
+
+    public void aviso(String mensaje) {
+        registrar(Nivel.AVISO, mensaje, 0, null, null, null, null);
+    }
+
+    public void aviso(String plantilla, Object a1) {
+        registrar(Nivel.AVISO, plantilla, 1, a1, null, null, null);
+    }
+
+    public void aviso(String plantilla, Object a1, Object a2) {
+        registrar(Nivel.AVISO, plantilla, 2, a1, a2, null, null);
+    }
+
+    public void aviso(String plantilla, Object a1, Object a2, Object a3) {
+        registrar(Nivel.AVISO, plantilla, 3, a1, a2, a3, null);
+    }
+
+    public void aviso(String plantilla, Object... argumentos) {
+        registrar(Nivel.AVISO, plantilla, argumentos.length, null, null, null, argumentos);
+    }
+
+    // ERROR
+
+    public void error(String mensaje) {
+        registrar(Nivel.ERROR, mensaje, 0, null, null, null, null);
+    }
+
+    public void error(String plantilla, Object a1) {
+        registrar(Nivel.ERROR, plantilla, 1, a1, null, null, null);
+    }
+
+    public void error(String plantilla, Object a1, Object a2) {
+        registrar(Nivel.ERROR, plantilla, 2, a1, a2, null, null);
+    }
+
+    public void error(String plantilla, Object a1, Object a2, Object a3) {
+        registrar(Nivel.ERROR, plantilla, 3, a1, a2, a3, null);
+    }
+
+    public void error(String plantilla, Object... argumentos) {
+        registrar(Nivel.ERROR, plantilla, argumentos.length, null, null, null, argumentos);
+    }
+
+    private void registrar(Nivel nivel, String plantilla, int cantidad, Object a1, Object a2, Object a3, Object[] resto) {
+        if (nivel.compareTo(nivelMinimo) < 0) {
+            return;
+        }
+        EscritorBitacora.INSTANCIA.registrar(nivel, origen, plantilla, cantidad, a1, a2, a3, resto);
+    }
+}
@@ -0,0 +1,293 @@
+package com.siap.tianguistenco.bitacora;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Anillo de eventos de la bitácora y el hilo que los escribe
+ * El anillo es una cola acotada sin candados (cada ranura tiene un número de secuencia que indica si está
+ * libre o publicada): quien registra reserva una ranura con un CAS, copia la plantilla y los argumentos y la
+ * publica. Las ranuras se reutilizan, así registrar no crea objetos. El formato del mensaje y la escritura
+ * en System.out/System.err se hacen en el hilo escritor.
+ * El hilo escritor revisa el anillo cada pocos milisegundos; solo se le despierta antes si el anillo va a la mitad
+ * o llega un ERROR, así quien registra casi nunca paga un unpark ni cede el procesador al escritor.
+ * Con el anillo lleno los mensajes se descartan y se cuentan, salvo los de ERROR, que se escriben directo.
+ */
+final class EscritorBitacora {
+    private static final int CAPACIDAD = 8192;
+    private static final long ESPERA_MAXIMA_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final DateTimeFormatter FORMATO_HORA =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    static final EscritorBitacora INSTANCIA = new EscritorBitacora();
+
+    private final Ranura[] ranuras = new Ranura[CAPACIDAD];
+    private final AtomicLongArray secuencias = new AtomicLongArray(CAPACIDAD);
+    private final AtomicLong cola = new AtomicLong();
+    private final AtomicLong cabeza = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicBoolean esperando = new AtomicBoolean();
+    private final Thread hilo;
+    private final StringBuilder linea = new StringBuilder(256);
+    private long descartadosReportados;
+    // Hora del último segundo formateado por el hilo escritor: los mensajes de un mismo segundo la reutilizan
+    private long segundoCacheado = Long.MIN_VALUE;
+    private String horaCacheada;
+
+    private EscritorBitacora() {
+        for (int i = 0; i < CAPACIDAD; i++) {
+            ranuras[i] = new Ranura();
+            secuencias.set(i, i);
+        }
+        hilo = new Thread(this::ejecutar, "EscritorBitacora");
+        hilo.setDaemon(true);
+        hilo.start();
+        // Al salir de la JVM (incluso con System.exit) se escribe lo que quede en el anillo
+        Runtime.getRuntime().addShutdownHook(new Thread(this::vaciar, "VaciadoBitacora"));
+    }
+
+    /**
+     * Publica un evento en el anillo; no bloquea
+     */
+    void registrar(Nivel nivel, String origen, String plantilla, int cantidad, Object a1, Object a2, Object a3, Object[] resto) {
+        long posicion = cola.get();
+        while (true) {
+            int indice = (int) (posicion & (CAPACIDAD - 1));
+            long secuencia = secuencias.getAcquire(indice);
+            if (secuencia == posicion) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    break;
+                }
+                posicion = cola.get();
+            } else if (secuencia < posicion) {
+                // Anillo lleno
+                if (nivel == Nivel.ERROR) {
+                    escribirDirecto(nivel, origen, plantilla, cantidad, a1, a2, a3, resto);
+                } else {
+                    descartados.incrementAndGet();
+                }
+                return;
+            } else {
+                posicion = cola.get();
+            }
+        }
+        int indice = (int) (posicion & (CAPACIDAD - 1));
+        Ranura ranura = ranuras[indice];
+        ranura.tiempoMs = System.currentTimeMillis();
+        ranura.nivel = nivel;
+        ranura.hilo = Thread.currentThread().getName();
+        ranura.origen = origen;
+        ranura.plantilla = plantilla;
+        ranura.cantidad = cantidad;
+        ranura.a1 = a1;
+        ranura.a2 = a2;
+        ranura.a3 = a3;
+        ranura.resto = resto;
+        secuencias.setRelease(indice, posicion + 1);
+
+        boolean urgente = nivel == Nivel.ERROR || posicion - cabeza.get() >= CAPACIDAD / 2;
+        if (urgente && esperando.get() && esperando.compareAndSet(true, false)) {
+            LockSupport.unpark(hilo);
+        }
+    }
+
+    private void ejecutar() {
+        while (true) {
+            if (vaciar() > 0) {
+                continue;
+            }
+            esperando.set(true);
+            // Revisar otra vez: un evento urgente publicado antes de marcar la espera no despertaría al hilo
+            if (hayPendientes()) {
+                esperando.set(false);
+                continue;
+            }
+            LockSupport.parkNanos(this, ESPERA_MAXIMA_NANOS);
+            esperando.set(false);
+        }
+    }
+
+    private boolean hayPendientes() {
+        long posicion = cabeza.get();
+        return secuencias.getAcquire((int) (posicion & (CAPACIDAD - 1))) == posicion + 1;
+    }
+
+    /**
+     * Escribe todos los eventos publicados; lo usan el hilo escritor y el cierre de la JVM
+     * @return eventos escritos
+     */
+    synchronized int vaciar() {
+        int escritos = 0;
+        PrintStream ultimaSalida = null;
+        while (true) {
+            long posicion = cabeza.get();
+            int indice = (int) (posicion & (CAPACIDAD - 1));
+            if (secuencias.getAcquire(indice) != posicion + 1) {
+                break;
+            }
+            Ranura ranura = ranuras[indice];
+            linea.setLength(0);
+            agregarHora(linea, ranura.tiempoMs);
+            formatear(linea, ranura.nivel, ranura.hilo, ranura.origen, ranura.plantilla,
+                ranura.cantidad, ranura.a1, ranura.a2, ranura.a3, ranura.resto);
+            Throwable error = ultimoThrowable(ranura.plantilla, ranura.cantidad, ranura.a1, ranura.a2, ranura.a3, ranura.resto);
+            PrintStream salida = salidaPara(ranura.nivel);
+            // Soltar las referencias antes de liberar la ranura
+            ranura.limpiar();
+            cabeza.set(posicion + 1);
+            secuencias.setRelease(indice, posicion + CAPACIDAD);
+
+            if (ultimaSalida != null && ultimaSalida != salida) {
+                ultimaSalida.flush();
+            }
+            salida.print(linea);
+            if (error != null) {
+                error.printStackTrace(salida);
+            }
+            ultimaSalida = salida;
+            escritos++;
+        }
+        long perdidos = descartados.get();
+        if (perdidos != descartadosReportados) {
+            System.err.println("[bitácora] " + (perdidos - descartadosReportados) + " mensajes descartados (anillo lleno)");
+            descartadosReportados = perdidos;
+        }
+        if (ultimaSalida != null) {
+            ultimaSalida.flush();
+        }
+        return escritos;
+    }
+
+    long getDescartados() {
+        return descartados.get();
+    }
+
+    private void escribirDirecto(Nivel nivel, String origen, String plantilla, int cantidad,
+                                 Object a1, Object a2, Object a3, Object[] resto) {
+        StringBuilder sb = new StringBuilder(128);
+        long tiempoMs = System.currentTimeMillis();
+        FORMATO_HORA.formatTo(Instant.ofEpochMilli(tiempoMs), sb);
+        agregarMilisegundos(sb, tiempoMs);
+        formatear(sb, nivel, Thread.currentThread().getName(), origen, plantilla,
+            cantidad, a1, a2, a3, resto);
+        PrintStream salida = salidaPara(nivel);
+        synchronized (salida) {
+            salida.print(sb);
+            Throwable error = ultimoThrowable(plantilla, cantidad, a1, a2, a3, resto);
+            if (error != null) {
+                error.printStackTrace(salida);
+            }
+        }
+    }
+
+    private static PrintStream salidaPara(Nivel nivel) {
+        return nivel.compareTo(Nivel.AVISO) >= 0 ? System.err : System.out;
+    }
+
+    private void agregarHora(StringBuilder sb, long tiempoMs) {
+        long segundo = Math.floorDiv(tiempoMs, 1000);
+        if (segundo != segundoCacheado) {
+            horaCacheada = FORMATO_HORA.format(Instant.ofEpochMilli(tiempoMs));
+            segundoCacheado = segundo;
+        }
+        sb.append(horaCacheada);
+        agregarMilisegundos(sb, tiempoMs);
+    }
+
+    private static void agregarMilisegundos(StringBuilder sb, long tiempoMs) {
+        int milis = Math.floorMod(tiempoMs, 1000);
+        sb.append('.');
+        if (milis < 100) {
+            sb.append('0');
+        }
+        if (milis < 10) {
+            sb.append('0');
+        }
+        sb.append(milis);
+    }
+
+    /**
+     * nivel [hilo] Origen - mensaje después de la hora, reemplazando cada {} por el siguiente argumento
+     */
+    private static void formatear(StringBuilder sb, Nivel nivel, String hilo, String origen,
+                                  String plantilla, int cantidad, Object a1, Object a2, Object a3, Object[] resto) {
+        sb.append(' ').append(nivel.name());
+        for (int i = nivel.name().length(); i < 10; i++) {
+            sb.append(' ');
+        }
+        sb.append('[').append(hilo).append("] ").append(origen).append(" - ");
+        int argumento = 0;
+        int desde = 0;
+        while (true) {
+            int marcador = plantilla.indexOf("{}", desde);
+            if (marcador < 0 || argumento >= cantidad) {
+                break;
+            }
+            sb.append(plantilla, desde, marcador);
+            sb.append(argumento(argumento++, a1, a2, a3, resto));
+            desde = marcador + 2;
+        }
+        sb.append(plantilla, desde, plantilla.length()).append(System.lineSeparator());
+    }
+
+    /**
+     * Un Throwable como último argumento sin {} que le corresponda se imprime con su traza
+     */
+    private static Throwable ultimoThrowable(String plantilla, int cantidad, Object a1, Object a2, Object a3, Object[] resto) {
+        if (cantidad == 0) {
+            return null;
+        }
+        Object ultimo = argumento(cantidad - 1, a1, a2, a3, resto);
+        if (!(ultimo instanceof Throwable)) {
+            return null;
+        }
+        int marcadores = 0;
+        for (int i = plantilla.indexOf("{}"); i >= 0; i = plantilla.indexOf("{}", i + 2)) {
+            marcadores++;
+        }
+        return marcadores < cantidad ? (Throwable) ultimo : null;
+    }
+
+    private static Object argumento(int i, Object a1, Object a2, Object a3, Object[] resto) {
+        if (resto != null) {
+            return resto[i];
+        }
+        return switch (i) {
+            case 0 -> a1;
+            case 1 -> a2;
+            default -> a3;
+        };
+    }
+
+    /**
+     * Ranura reutilizable del anillo
+     */
+    private static final class Ranura {
+        private long tiempoMs;
+        private Nivel nivel;
+        private String hilo;
+        private String origen;
+        private String plantilla;
+        private int cantidad;
+        private Object a1;
+        private Object a2;
+        private Object a3;
+        private Object[] resto;
+
+        void limpiar() {
+            hilo = null;
+            plantilla = null;
+            a1 = null;
+            a2 = null;
+            a3 = null;
+            resto = null;
+        }
+    }
+}
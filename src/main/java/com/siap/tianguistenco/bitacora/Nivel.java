@@ -0,0 +1,11 @@
+package com.siap.tianguistenco.bitacora;
+
+/**
+ * Niveles de la bitácora, de menor a mayor importancia
+ */
+public enum Nivel {
+    DEPURACION,
+    INFO,
+    AVISO,
+    ERROR
+}
@@ -0,0 +1,183 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché LRU de sentencias preparadas ligada a una conexión física del pool
+ * Las sentencias se identifican por su texto SQL; al cerrarlas el DAO solo las devuelve a la caché.
+ * Solo la usa el hilo que tiene prestada la conexión, por lo que no requiere sincronización propia.
+ */
+class CacheSentencias {
+    private static final Bitacora LOG = Bitacora.de(CacheSentencias.class);
+
+    private final Connection fisica;
+    private final int capacidad;
+    private final AtomicLong aciertos;
+    private final AtomicLong fallos;
+    private final LinkedHashMap<String, Entrada> sentencias;
+
+    CacheSentencias(Connection fisica, int capacidad, AtomicLong aciertos, AtomicLong fallos) {
+        this.fisica = fisica;
+        this.capacidad = capacidad;
+        this.aciertos = aciertos;
+        this.fallos = fallos;
+        this.sentencias = new LinkedHashMap<>(capacidad, 0.75f, true);
+    }
+
+    /**
+     * Obtiene una sentencia preparada para el SQL indicado, reutilizándola si ya existe
+     * @param sql texto de la sentencia
+     * @param clavesGeneradas Statement.RETURN_GENERATED_KEYS o Statement.NO_GENERATED_KEYS
+     * @return sentencia lista para recibir parámetros
+     * @throws SQLException si hay error al preparar la sentencia
+     */
+    PreparedStatement preparar(String sql, int clavesGeneradas) throws SQLException {
+        String clave = clavesGeneradas == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        Entrada entrada = sentencias.get(clave);
+
+        if (entrada != null && !entrada.enUso) {
+            aciertos.incrementAndGet();
+            return entrada.prestar();
+        }
+
+        fallos.incrementAndGet();
+        PreparedStatement real = fisica.prepareStatement(sql, clavesGeneradas);
+        if (entrada != null) {
+            // La misma sentencia ya está en uso (consulta anidada): se entrega una no cacheada
+            return real;
+        }
+
+        entrada = new Entrada(real);
+        sentencias.put(clave, entrada);
+        desalojarExcedentes();
+        return entrada.prestar();
+    }
+
+    /**
+     * Cierra las sentencias menos usadas recientemente que excedan la capacidad
+     */
+    private void desalojarExcedentes() {
+        Iterator<Entrada> it = sentencias.values().iterator();
+        while (sentencias.size() > capacidad && it.hasNext()) {
+            Entrada masAntigua = it.next();
+            if (!masAntigua.enUso) {
+                it.remove();
+                cerrarSilenciosamente(masAntigua.real);
+            }
+        }
+    }
+
+    /**
+     * Se invoca cuando la conexión regresa al pool
+     * Las sentencias que el DAO no cerró se descartan para que no se compartan con el siguiente préstamo
+     */
+    void alDevolver() {
+        Iterator<Entrada> it = sentencias.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            if (entrada.enUso) {
+                it.remove();
+                cerrarSilenciosamente(entrada.real);
+            }
+        }
+    }
+
+    /**
+     * Cierra todas las sentencias antes de cerrar la conexión física
+     */
+    void cerrarTodo() {
+        List<Entrada> entradas = new ArrayList<>(sentencias.values());
+        sentencias.clear();
+        for (Entrada entrada : entradas) {
+            cerrarSilenciosamente(entrada.real);
+        }
+    }
+
+    private static void cerrarSilenciosamente(Statement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOG.error("Error al cerrar sentencia cacheada: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sentencia cacheada y su estado de préstamo
+     */
+    private static final class Entrada {
+        private final PreparedStatement real;
+        private boolean enUso;
+
+        Entrada(PreparedStatement real) {
+            this.real = real;
+        }
+
+        PreparedStatement prestar() {
+            enUso = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new SentenciaPrestada(this));
+        }
+    }
+
+    /**
+     * Manejador del proxy de sentencia: close() limpia parámetros y la marca como libre
+     */
+    private static final class SentenciaPrestada implements InvocationHandler {
+        private Entrada entrada;
+
+        SentenciaPrestada(Entrada entrada) {
+            this.entrada = entrada;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (entrada != null) {
+                        Entrada liberada = entrada;
+                        entrada = null;
+                        try {
+                            liberada.real.clearParameters();
+                            liberada.real.clearBatch();
+                        } finally {
+                            liberada.enUso = false;
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return entrada == null || entrada.real.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            if (entrada == null) {
+                throw new SQLException("La sentencia ya fue cerrada");
+            }
+            try {
+                return method.invoke(entrada.real, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
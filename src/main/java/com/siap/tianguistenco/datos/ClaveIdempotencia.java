@@ -0,0 +1,58 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.model.Compra;
+
+/**
+ * Fila de claves_idempotencia: lo que ya se hizo con la clave de un checkout
+ * Una clave con el pago aprobado y sin compra no se debe volver a cobrar; solo falta guardar la compra.
+ * Una clave con el pago incierto se vuelve a pedir a la pasarela con la misma clave, que responde con el cobro original.
+ */
+public class ClaveIdempotencia {
+    private final String clave;
+    private final Estado estado;
+    private final String autorizacion;
+    private final Compra compra;
+
+    public ClaveIdempotencia(String clave, Estado estado, String autorizacion, Compra compra) {
+        this.clave = clave;
+        this.estado = estado;
+        this.autorizacion = autorizacion;
+        this.compra = compra;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    /**
+     * Código de autorización del pago; null si la compra se guardó sin pasar por el registro de pagos
+     */
+    public String getAutorizacion() {
+        return autorizacion;
+    }
+
+    /**
+     * Compra guardada con la clave, con sus items; null mientras solo está aprobado el pago
+     */
+    public Compra getCompra() {
+        return compra;
+    }
+
+    @Override
+    public String toString() {
+        return "ClaveIdempotencia[" + clave + ", " + estado + (compra != null ? ", folio " + compra.getFolio() : "") + "]";
+    }
+
+    /**
+     * Avance del checkout con la clave
+     */
+    public enum Estado {
+        PAGO_INCIERTO,
+        PAGO_APROBADO,
+        COMPRA_GUARDADA
+    }
+}
@@ -0,0 +1,68 @@
+package com.siap.tianguistenco.datos;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Conversión compartida entre LocalDateTime y las columnas de fecha de la base de datos
+ * Las fechas se guardan como milisegundos desde epoch (columnas fecha_ms INTEGER) en la zona del sistema;
+ * la columna de texto fecha se conserva como respaldo legible con el formato yyyy-MM-dd HH:mm:ss.
+ * El formateador y la zona se crean una sola vez; la lectura de texto usa un parser por posiciones fijas.
+ */
+public final class CodecFecha {
+    public static final DateTimeFormatter FORMATO_TEXTO = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ZoneId ZONA = ZoneId.systemDefault();
+
+    private CodecFecha() {
+    }
+
+    /**
+     * Convierte una fecha local a milisegundos desde epoch
+     */
+    public static long aMillis(LocalDateTime fecha) {
+        return fecha.atZone(ZONA).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Convierte milisegundos desde epoch a fecha local
+     */
+    public static LocalDateTime desdeMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONA);
+    }
+
+    /**
+     * Formatea una fecha para la columna de texto
+     */
+    public static String aTexto(LocalDateTime fecha) {
+        return FORMATO_TEXTO.format(fecha);
+    }
+
+    /**
+     * Lee una fecha de la columna de texto
+     * El formato yyyy-MM-dd HH:mm:ss se interpreta por posiciones sin crear formateadores;
+     * cualquier otro formato (p. ej. con fracción de segundo) se delega a LocalDateTime.parse.
+     */
+    public static LocalDateTime desdeTexto(String texto) {
+        if (texto.length() == 19 && texto.charAt(4) == '-' && texto.charAt(7) == '-'
+                && texto.charAt(10) == ' ' && texto.charAt(13) == ':' && texto.charAt(16) == ':') {
+            return LocalDateTime.of(
+                digitos(texto, 0, 4), digitos(texto, 5, 2), digitos(texto, 8, 2),
+                digitos(texto, 11, 2), digitos(texto, 14, 2), digitos(texto, 17, 2));
+        }
+        return LocalDateTime.parse(texto.replace(' ', 'T'));
+    }
+
+    private static int digitos(String texto, int inicio, int longitud) {
+        int valor = 0;
+        for (int i = inicio; i < inicio + longitud; i++) {
+            int digito = texto.charAt(i) - '0';
+            if (digito < 0 || digito > 9) {
+                throw new IllegalArgumentException("Fecha con formato inválido: " + texto);
+            }
+            valor = valor * 10 + digito;
+        }
+        return valor;
+    }
+}
@@ -1,5 +1,6 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Compra;
 import com.siap.tianguistenco.model.CompraItem;
 
@@ -8,70 +9,271 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object para la gestión de compras
  */
 public class CompraDAO {
+    private static final Bitacora LOG = Bitacora.de(CompraDAO.class);
+
+    private static final String COLUMNAS_COMPRA =
+        "id, usuario_id, folio, fecha, fecha_ms, total_centavos, descuento_centavos, estado, tipo_envio, direccion_envio, " +
+        "costo_envio_centavos";
+    private static final String COLUMNAS_ITEM =
+        "id, compra_id, producto_id, nombre_producto, cantidad, precio_unitario_centavos, subtotal_centavos";
+
     private final DatabaseManager dbManager;
+    private final MetodoPagoDAO metodoPagoDAO;
 
     public CompraDAO() {
         this.dbManager = DatabaseManager.getInstance();
+        this.metodoPagoDAO = new MetodoPagoDAO();
     }
 
     /**
-     * Guarda una compra completa con sus items
+     * Guarda una compra completa con sus items en una sola transacción
      */
     public int guardarCompra(Compra compra) {
-        String sqlCompra = "INSERT INTO compras (usuario_id, folio, fecha, total, descuento, estado, tipo_envio, direccion_envio, costo_envio) " +
-                          "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+            int compraId = insertarCompra(unidad.getConexion(), compra);
+            insertarItemsCompra(unidad.getConexion(), compraId, compra.getItems());
+            unidad.confirmar();
+            return compraId;
 
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmtCompra = conn.prepareStatement(sqlCompra, PreparedStatement.RETURN_GENERATED_KEYS)) {
+        } catch (SQLException e) {
+            LOG.error("Error al guardar compra", e);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Guarda el encabezado, los items, el método de pago y el movimiento de stock de una compra
+     * en una sola transacción sobre una sola conexión
+     * @return resultado con el ID generado y los tiempos de la transacción, o null si falló
+     */
+    public ResultadoCompra guardarCompraCompleta(Compra compra, String tipoPago, Integer tarjetaId) {
+        long inicio = System.nanoTime();
+
+        try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+            int compraId = escribirCompraCompleta(unidad.getConexion(), compra, tipoPago, tarjetaId);
+            long tiempoCommit;
+            try {
+                tiempoCommit = unidad.confirmar();
+            } finally {
+                // Cualquier falla antes del commit, no solo una SQLException; la unidad aún tiene el candado
+                if (!unidad.isConfirmada()) {
+                    LibroInventario.getInstancia().revertirVenta(compra.getItems());
+                }
+            }
+            // El stock cambió: lo cacheado de productos ya no es válido
+            ProductoDAOCache.getInstancia().invalidar();
+            return new ResultadoCompra(compraId, System.nanoTime() - inicio, tiempoCommit);
+
+        } catch (SQLException e) {
+            LOG.error("Error al guardar compra completa", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Escribe todas las filas de una compra usando la conexión de la transacción en curso
+     * El commit queda a cargo de quien abrió la transacción; si no se confirma, debe llamar a
+     * LibroInventario.revertirVenta() antes de revertirla
+     * @return ID generado para la compra
+     */
+    int escribirCompraCompleta(Connection conn, Compra compra, String tipoPago, Integer tarjetaId) throws SQLException {
+        int compraId = insertarCompra(conn, compra);
+        // Antes del movimiento de stock: una clave repetida deshace la compra sin tocar el LibroInventario
+        if (compra.getClaveIdempotencia() != null) {
+            insertarClave(conn, compra.getClaveIdempotencia(), compraId);
+        }
+        insertarItemsCompra(conn, compraId, compra.getItems());
+        metodoPagoDAO.registrarMetodoPago(conn, compraId, tipoPago, tarjetaId, compra.getTotalConDescuentoCentavos());
+        LibroInventario.getInstancia().registrarVenta(conn, compra.getFolio(), compra.getItems());
+        return compraId;
+    }
+
+    /**
+     * Inserta el encabezado de una compra usando la conexión de la transacción en curso
+     * @return ID generado para la compra
+     */
+    int insertarCompra(Connection conn, Compra compra) throws SQLException {
+        // Las columnas REAL se siguen escribiendo junto con las de centavos para consultas manuales
+        String sqlCompra = "INSERT INTO compras (usuario_id, folio, fecha, fecha_ms, total, descuento, estado, tipo_envio, direccion_envio, costo_envio, " +
+                          "total_centavos, descuento_centavos, costo_envio_centavos) " +
+                          "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement stmtCompra = conn.prepareStatement(sqlCompra, PreparedStatement.RETURN_GENERATED_KEYS)) {
 
             stmtCompra.setInt(1, compra.getUsuarioId());
             stmtCompra.setString(2, compra.getFolio());
-            stmtCompra.setString(3, compra.getFecha().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            stmtCompra.setDouble(4, compra.getTotal());
-            stmtCompra.setDouble(5, compra.getDescuento());
-            stmtCompra.setString(6, compra.getEstado());
-            stmtCompra.setString(7, compra.getTipoEnvio().name());
-            stmtCompra.setString(8, compra.getDireccionEnvio());
-            stmtCompra.setDouble(9, compra.getCostoEnvio());
-
-            int rowsAffected = stmtCompra.executeUpdate();
-            if (rowsAffected > 0) {
-                try (ResultSet generatedKeys = stmtCompra.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int compraId = generatedKeys.getInt(1);
-                        // Guardar items de la compra
-                        guardarItemsCompra(compraId, compra.getItems());
-                        return compraId;
-                    }
+            stmtCompra.setString(3, CodecFecha.aTexto(compra.getFecha()));
+            stmtCompra.setLong(4, CodecFecha.aMillis(compra.getFecha()));
+            stmtCompra.setDouble(5, compra.getTotal());
+            stmtCompra.setDouble(6, compra.getDescuento());
+            stmtCompra.setString(7, compra.getEstado());
+            stmtCompra.setString(8, compra.getTipoEnvio().name());
+            stmtCompra.setString(9, compra.getDireccionEnvio());
+            stmtCompra.setDouble(10, compra.getCostoEnvio());
+            stmtCompra.setLong(11, compra.getTotalCentavos());
+            stmtCompra.setLong(12, compra.getDescuentoCentavos());
+            stmtCompra.setLong(13, compra.getCostoEnvioCentavos());
+
+            stmtCompra.executeUpdate();
+            try (ResultSet generatedKeys = stmtCompra.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return generatedKeys.getInt(1);
                 }
             }
+        }
+
+        throw new SQLException("No se obtuvo el ID generado para la compra " + compra.getFolio());
+    }
+
+    /**
+     * Asocia la clave de idempotencia a la compra; falla si la clave ya pertenece a otra compra
+     * Si la clave tiene el pago aprobado o incierto y aún no tiene compra, se completa esa fila y se conserva la
+     * autorización.
+     */
+    private void insertarClave(Connection conn, String clave, int compraId) throws SQLException {
+        String sqlCompletar = "UPDATE claves_idempotencia SET estado = ?, compra_id = ?, fecha_ms = ? " +
+                              "WHERE clave = ? AND compra_id IS NULL";
+        long ahora = System.currentTimeMillis();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sqlCompletar)) {
+            stmt.setString(1, ClaveIdempotencia.Estado.COMPRA_GUARDADA.name());
+            stmt.setInt(2, compraId);
+            stmt.setLong(3, ahora);
+            stmt.setString(4, clave);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+
+        // Clave nueva, o ya usada por otra compra: entonces la llave primaria rechaza el INSERT
+        String sqlInsertar = "INSERT INTO claves_idempotencia (clave, estado, compra_id, fecha_ms) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sqlInsertar)) {
+            stmt.setString(1, clave);
+            stmt.setString(2, ClaveIdempotencia.Estado.COMPRA_GUARDADA.name());
+            stmt.setInt(3, compraId);
+            stmt.setLong(4, ahora);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Guarda que el pago de una clave se aprobó, antes de guardar su compra
+     * Una clave con el pago incierto pasa a aprobado; una con el pago aprobado o la compra guardada no se modifica.
+     * @return true si la clave quedó guardada, false si hubo error
+     */
+    public boolean registrarPagoAprobado(String clave, String autorizacion) {
+        String sql = "INSERT INTO claves_idempotencia (clave, estado, autorizacion, fecha_ms) VALUES (?, ?, ?, ?) " +
+                     "ON CONFLICT (clave) DO UPDATE SET estado = excluded.estado, autorizacion = excluded.autorizacion, " +
+                     "fecha_ms = excluded.fecha_ms WHERE estado = ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, clave);
+            stmt.setString(2, ClaveIdempotencia.Estado.PAGO_APROBADO.name());
+            stmt.setString(3, autorizacion);
+            stmt.setLong(4, System.currentTimeMillis());
+            stmt.setString(5, ClaveIdempotencia.Estado.PAGO_INCIERTO.name());
+            stmt.executeUpdate();
+            return true;
 
         } catch (SQLException e) {
-            System.err.println("Error al guardar compra: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al registrar pago aprobado de la clave {}", clave, e);
         }
 
-        return -1;
+        return false;
+    }
+
+    /**
+     * Guarda que no se supo si el pago de una clave se cobró (tiempo agotado o error)
+     * Así la clave puede salir de memoria: el reintento la encuentra en la tabla y vuelve a preguntar a la pasarela
+     * con la misma clave. Si la clave ya existe no se modifica.
+     * @return true si la clave quedó guardada, false si hubo error
+     */
+    public boolean registrarPagoIncierto(String clave) {
+        String sql = "INSERT OR IGNORE INTO claves_idempotencia (clave, estado, fecha_ms) VALUES (?, ?, ?)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, clave);
+            stmt.setString(2, ClaveIdempotencia.Estado.PAGO_INCIERTO.name());
+            stmt.setLong(3, System.currentTimeMillis());
+            stmt.executeUpdate();
+            return true;
+
+        } catch (SQLException e) {
+            LOG.error("Error al registrar pago incierto de la clave {}", clave, e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Borra una clave con el pago incierto cuyo reintento se rechazó: la clave se puede volver a cobrar
+     * @return true si no quedó la fila incierta, false si hubo error
+     */
+    public boolean olvidarPagoIncierto(String clave) {
+        String sql = "DELETE FROM claves_idempotencia WHERE clave = ? AND estado = ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, clave);
+            stmt.setString(2, ClaveIdempotencia.Estado.PAGO_INCIERTO.name());
+            stmt.executeUpdate();
+            return true;
+
+        } catch (SQLException e) {
+            LOG.error("Error al olvidar pago incierto de la clave {}", clave, e);
+        }
+
+        return false;
     }
 
     /**
-     * Guarda los items de una compra
+     * Borra las claves de idempotencia guardadas o actualizadas antes de una fecha
+     * Un reintento con una clave borrada se trata como un checkout nuevo.
+     * @param antesDeMs fecha límite en milisegundos
+     * @return claves borradas, o -1 si hubo error
      */
-    private void guardarItemsCompra(int compraId, List<CompraItem> items) throws SQLException {
-        String sql = "INSERT INTO compras_items (compra_id, producto_id, nombre_producto, cantidad, precio_unitario, subtotal) " +
-                     "VALUES (?, ?, ?, ?, ?, ?)";
+    public int eliminarClavesAnteriores(long antesDeMs) {
+        String sql = "DELETE FROM claves_idempotencia WHERE fecha_ms < ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
+            stmt.setLong(1, antesDeMs);
+            return stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            LOG.error("Error al eliminar claves de idempotencia anteriores a {}", antesDeMs, e);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Inserta los items de una compra usando la conexión de la transacción en curso
+     */
+    void insertarItemsCompra(Connection conn, int compraId, List<CompraItem> items) throws SQLException {
+        String sql = "INSERT INTO compras_items (compra_id, producto_id, nombre_producto, cantidad, precio_unitario, subtotal, " +
+                     "precio_unitario_centavos, subtotal_centavos) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+
             for (CompraItem item : items) {
                 stmt.setInt(1, compraId);
                 stmt.setString(2, item.getProductoId());
@@ -79,6 +281,8 @@ public class CompraDAO {
                 stmt.setInt(4, item.getCantidad());
                 stmt.setDouble(5, item.getPrecioUnitario());
                 stmt.setDouble(6, item.getSubtotal());
+                stmt.setLong(7, item.getPrecioUnitarioCentavos());
+                stmt.setLong(8, item.getSubtotalCentavos());
                 stmt.addBatch();
             }
 
@@ -87,81 +291,285 @@ public class CompraDAO {
     }
 
     /**
-     * Obtiene todas las compras de un usuario
+     * Obtiene todas las compras de un usuario con sus items
      */
     public List<Compra> obtenerComprasPorUsuario(int usuarioId) {
+        return obtenerComprasPorUsuario(usuarioId, true);
+    }
+
+    /**
+     * Obtiene todas las compras de un usuario
+     * Los encabezados y, si se piden, todos sus items se leen con dos consultas sobre la misma conexión;
+     * los items se agrupan en memoria por compra_id.
+     * @param usuarioId ID del usuario
+     * @param incluirItems false para cargar solo encabezados y pedir los items después con obtenerItemsCompra()
+     */
+    public List<Compra> obtenerComprasPorUsuario(int usuarioId, boolean incluirItems) {
+        List<Compra> compras = new ArrayList<>();
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras WHERE usuario_id = ? ORDER BY fecha_ms DESC, id DESC";
+        String sqlItems = "SELECT " + COLUMNAS_ITEM + " FROM compras_items " +
+                          "WHERE compra_id IN (SELECT id FROM compras WHERE usuario_id = ?) ORDER BY compra_id, id";
+
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, usuarioId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        compras.add(mapearCompra(rs));
+                    }
+                }
+            }
+
+            if (incluirItems && !compras.isEmpty()) {
+                Map<Integer, List<CompraItem>> itemsPorCompra = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(sqlItems)) {
+                    stmt.setInt(1, usuarioId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            CompraItem item = mapearItem(rs);
+                            itemsPorCompra.computeIfAbsent(item.getCompraId(), id -> new ArrayList<>()).add(item);
+                        }
+                    }
+                }
+                for (Compra compra : compras) {
+                    List<CompraItem> items = itemsPorCompra.get(compra.getId());
+                    if (items != null) {
+                        compra.setItems(items);
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            LOG.error("Error al obtener compras", e);
+        }
+
+        return compras;
+    }
+
+    /**
+     * Obtiene una página del historial de un usuario, de la compra más reciente a la más antigua
+     * Usa un cursor (fecha, id) en lugar de OFFSET: cada página es una búsqueda acotada en el índice.
+     * @param usuarioId ID del usuario
+     * @param despuesDe cursor devuelto por la página anterior, o null para la primera página
+     * @param tamanoPagina número máximo de compras por página
+     * @param incluirItems true para cargar también los items de las compras de la página
+     * @return página con sus compras y el cursor de la siguiente; vacía si hay error
+     * @throws IllegalArgumentException si tamanoPagina no es positivo
+     */
+    public PaginaCompras obtenerPaginaComprasPorUsuario(int usuarioId, CursorCompras despuesDe,
+                                                        int tamanoPagina, boolean incluirItems) {
+        if (tamanoPagina <= 0) {
+            throw new IllegalArgumentException("Tamaño de página inválido: " + tamanoPagina);
+        }
+        List<Compra> compras = new ArrayList<>(tamanoPagina + 1);
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras WHERE usuario_id = ? " +
+                     (despuesDe != null ? "AND (fecha_ms, id) < (?, ?) " : "") +
+                     "ORDER BY fecha_ms DESC, id DESC LIMIT ?";
+
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                int indice = 1;
+                stmt.setInt(indice++, usuarioId);
+                if (despuesDe != null) {
+                    stmt.setLong(indice++, CodecFecha.aMillis(despuesDe.getFecha()));
+                    stmt.setInt(indice++, despuesDe.getId());
+                }
+                // Se pide una fila extra para saber si hay otra página
+                stmt.setInt(indice, tamanoPagina + 1);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        compras.add(mapearCompra(rs));
+                    }
+                }
+            }
+
+            CursorCompras siguiente = null;
+            if (compras.size() > tamanoPagina) {
+                compras.remove(tamanoPagina);
+                Compra ultima = compras.get(tamanoPagina - 1);
+                siguiente = new CursorCompras(ultima.getFecha(), ultima.getId());
+            }
+
+            if (incluirItems && !compras.isEmpty()) {
+                asignarItems(conn, compras);
+            }
+            return new PaginaCompras(compras, siguiente);
+
+        } catch (SQLException e) {
+            LOG.error("Error al obtener página de compras", e);
+        }
+
+        return new PaginaCompras(new ArrayList<>(), null);
+    }
+
+    /**
+     * Obtiene las compras de un usuario dentro de un rango de fechas, de la más reciente a la más antigua
+     * El rango se resuelve con el índice (usuario_id, fecha_ms).
+     * @param desde inicio del rango (inclusivo)
+     * @param hasta fin del rango (exclusivo)
+     * @param incluirItems true para cargar también los items
+     */
+    public List<Compra> obtenerComprasPorUsuarioEntre(int usuarioId, LocalDateTime desde, LocalDateTime hasta,
+                                                      boolean incluirItems) {
         List<Compra> compras = new ArrayList<>();
-        String sql = "SELECT id, usuario_id, folio, fecha, total, descuento, estado, tipo_envio, direccion_envio, costo_envio " +
-                     "FROM compras WHERE usuario_id = ? ORDER BY fecha DESC";
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras " +
+                     "WHERE usuario_id = ? AND fecha_ms >= ? AND fecha_ms < ? ORDER BY fecha_ms DESC, id DESC";
+
+        try (Connection conn = dbManager.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, usuarioId);
+                stmt.setLong(2, CodecFecha.aMillis(desde));
+                stmt.setLong(3, CodecFecha.aMillis(hasta));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        compras.add(mapearCompra(rs));
+                    }
+                }
+            }
+            if (incluirItems && !compras.isEmpty()) {
+                asignarItems(conn, compras);
+            }
+
+        } catch (SQLException e) {
+            LOG.error("Error al obtener compras por rango de fechas", e);
+        }
+
+        return compras;
+    }
+
+    /**
+     * Carga con una sola consulta los items de un grupo acotado de compras
+     */
+    private void asignarItems(Connection conn, List<Compra> compras) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNAS_ITEM)
+            .append(" FROM compras_items WHERE compra_id IN (");
+        for (int i = 0; i < compras.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ORDER BY compra_id, id");
+
+        Map<Integer, List<CompraItem>> itemsPorCompra = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < compras.size(); i++) {
+                stmt.setInt(i + 1, compras.get(i).getId());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    CompraItem item = mapearItem(rs);
+                    itemsPorCompra.computeIfAbsent(item.getCompraId(), id -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+        for (Compra compra : compras) {
+            List<CompraItem> items = itemsPorCompra.get(compra.getId());
+            if (items != null) {
+                compra.setItems(items);
+            }
+        }
+    }
+
+    /**
+     * Obtiene lo registrado con una clave de idempotencia: el pago aprobado y, si ya se guardó, la compra con sus items
+     * @return la clave, o null si no se ha usado o hubo error
+     */
+    public ClaveIdempotencia obtenerClave(String clave) {
+        String sql = "SELECT estado, autorizacion, compra_id FROM claves_idempotencia WHERE clave = ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setInt(1, usuarioId);
+            stmt.setString(1, clave);
 
             try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Compra compra = new Compra(
-                        rs.getInt("id"),
-                        rs.getInt("usuario_id"),
-                        rs.getString("folio"),
-                        LocalDateTime.parse(rs.getString("fecha"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                        rs.getDouble("total"),
-                        rs.getDouble("descuento"),
-                        rs.getString("estado"),
-                        Compra.TipoEnvio.valueOf(rs.getString("tipo_envio")),
-                        rs.getString("direccion_envio"),
-                        rs.getDouble("costo_envio")
-                    );
-                    // Cargar items
-                    compra.setItems(obtenerItemsCompra(compra.getId()));
-                    compras.add(compra);
+                if (!rs.next()) {
+                    return null;
+                }
+                ClaveIdempotencia.Estado estado = ClaveIdempotencia.Estado.valueOf(rs.getString("estado"));
+                String autorizacion = rs.getString("autorizacion");
+                int compraId = rs.getInt("compra_id");
+                Compra compra = rs.wasNull() ? null : obtenerCompraPorId(conn, compraId);
+                if (compra != null) {
+                    compra.setClaveIdempotencia(clave);
                 }
+                return new ClaveIdempotencia(clave, estado, autorizacion, compra);
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener compras: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener clave de idempotencia", e);
         }
 
-        return compras;
+        return null;
+    }
+
+    private Compra obtenerCompraPorId(Connection conn, int compraId) throws SQLException {
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras WHERE id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, compraId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Compra compra = mapearCompra(rs);
+                    compra.setItems(obtenerItemsCompra(conn, compra.getId()));
+                    return compra;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtiene la compra guardada con una clave de idempotencia, con sus items
+     * @return la compra, o null si la clave no se ha usado o hubo error
+     */
+    public Compra obtenerCompraPorClave(String clave) {
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras " +
+                     "WHERE id = (SELECT compra_id FROM claves_idempotencia WHERE clave = ?)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, clave);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Compra compra = mapearCompra(rs);
+                    compra.setClaveIdempotencia(clave);
+                    compra.setItems(obtenerItemsCompra(conn, compra.getId()));
+                    return compra;
+                }
+            }
+
+        } catch (SQLException e) {
+            LOG.error("Error al obtener compra por clave de idempotencia", e);
+        }
+
+        return null;
     }
 
     /**
      * Obtiene una compra por su folio
      */
     public Compra obtenerCompraPorFolio(String folio) {
-        String sql = "SELECT id, usuario_id, folio, fecha, total, descuento, estado, tipo_envio, direccion_envio, costo_envio " +
-                     "FROM compras WHERE folio = ?";
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras WHERE folio = ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setString(1, folio);
+            // Un folio capturado a mano se lleva a la forma guardada
+            stmt.setString(1, GeneradorFolios.normalizar(folio));
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    Compra compra = new Compra(
-                        rs.getInt("id"),
-                        rs.getInt("usuario_id"),
-                        rs.getString("folio"),
-                        LocalDateTime.parse(rs.getString("fecha"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                        rs.getDouble("total"),
-                        rs.getDouble("descuento"),
-                        rs.getString("estado"),
-                        Compra.TipoEnvio.valueOf(rs.getString("tipo_envio")),
-                        rs.getString("direccion_envio"),
-                        rs.getDouble("costo_envio")
-                    );
-                    // Cargar items
-                    compra.setItems(obtenerItemsCompra(compra.getId()));
+                    Compra compra = mapearCompra(rs);
+                    // Cargar items en la misma conexión
+                    compra.setItems(obtenerItemsCompra(conn, compra.getId()));
                     return compra;
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener compra por folio: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener compra por folio", e);
         }
 
         return null;
@@ -171,8 +579,7 @@ public class CompraDAO {
      * Obtiene una compra por su ID
      */
     public Compra obtenerCompraPorId(int compraId) {
-        String sql = "SELECT id, usuario_id, folio, fecha, total, descuento, estado, tipo_envio, direccion_envio, costo_envio " +
-                     "FROM compras WHERE id = ?";
+        String sql = "SELECT " + COLUMNAS_COMPRA + " FROM compras WHERE id = ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -181,73 +588,99 @@ public class CompraDAO {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    Compra compra = new Compra(
-                        rs.getInt("id"),
-                        rs.getInt("usuario_id"),
-                        rs.getString("folio"),
-                        LocalDateTime.parse(rs.getString("fecha"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                        rs.getDouble("total"),
-                        rs.getDouble("descuento"),
-                        rs.getString("estado"),
-                        Compra.TipoEnvio.valueOf(rs.getString("tipo_envio")),
-                        rs.getString("direccion_envio"),
-                        rs.getDouble("costo_envio")
-                    );
-                    // Cargar items
-                    compra.setItems(obtenerItemsCompra(compra.getId()));
+                    Compra compra = mapearCompra(rs);
+                    // Cargar items en la misma conexión
+                    compra.setItems(obtenerItemsCompra(conn, compra.getId()));
                     return compra;
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener compra por ID: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener compra por ID", e);
         }
 
         return null;
     }
 
     /**
-     * Obtiene los items de una compra
+     * Obtiene los items de una compra (carga diferida de compras leídas sin items)
      */
-    private List<CompraItem> obtenerItemsCompra(int compraId) {
-        List<CompraItem> items = new ArrayList<>();
-        String sql = "SELECT id, compra_id, producto_id, nombre_producto, cantidad, precio_unitario, subtotal " +
-                     "FROM compras_items WHERE compra_id = ?";
+    public List<CompraItem> obtenerItemsCompra(int compraId) {
+        try (Connection conn = dbManager.getConnection()) {
+            return obtenerItemsCompra(conn, compraId);
+        } catch (SQLException e) {
+            LOG.error("Error al obtener items de compra", e);
+        }
 
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return new ArrayList<>();
+    }
 
-            stmt.setInt(1, compraId);
+    private List<CompraItem> obtenerItemsCompra(Connection conn, int compraId) throws SQLException {
+        List<CompraItem> items = new ArrayList<>();
+        String sql = "SELECT " + COLUMNAS_ITEM + " FROM compras_items WHERE compra_id = ? ORDER BY id";
 
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, compraId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    CompraItem item = new CompraItem(
-                        rs.getInt("id"),
-                        rs.getInt("compra_id"),
-                        rs.getString("producto_id"),
-                        rs.getString("nombre_producto"),
-                        rs.getInt("cantidad"),
-                        rs.getDouble("precio_unitario"),
-                        rs.getDouble("subtotal")
-                    );
-                    items.add(item);
+                    items.add(mapearItem(rs));
                 }
             }
-
-        } catch (SQLException e) {
-            System.err.println("Error al obtener items de compra: " + e.getMessage());
-            e.printStackTrace();
         }
 
         return items;
     }
 
+    private Compra mapearCompra(ResultSet rs) throws SQLException {
+        Compra compra = new Compra(
+            rs.getInt("id"),
+            rs.getInt("usuario_id"),
+            rs.getString("folio"),
+            leerFecha(rs),
+            0.0,
+            0.0,
+            rs.getString("estado"),
+            Compra.TipoEnvio.valueOf(rs.getString("tipo_envio")),
+            rs.getString("direccion_envio"),
+            0.0
+        );
+        compra.setTotalCentavos(rs.getLong("total_centavos"));
+        compra.setDescuentoCentavos(rs.getLong("descuento_centavos"));
+        compra.setCostoEnvioCentavos(rs.getLong("costo_envio_centavos"));
+        return compra;
+    }
+
+    /**
+     * Lee la fecha de fecha_ms; las filas sin ese valor se leen de la columna de texto
+     */
+    private static LocalDateTime leerFecha(ResultSet rs) throws SQLException {
+        long millis = rs.getLong("fecha_ms");
+        if (rs.wasNull()) {
+            return CodecFecha.desdeTexto(rs.getString("fecha"));
+        }
+        return CodecFecha.desdeMillis(millis);
+    }
+
+    private CompraItem mapearItem(ResultSet rs) throws SQLException {
+        CompraItem item = new CompraItem(
+            rs.getInt("id"),
+            rs.getInt("compra_id"),
+            rs.getString("producto_id"),
+            rs.getString("nombre_producto"),
+            rs.getInt("cantidad"),
+            0.0,
+            0.0
+        );
+        item.setPrecioUnitarioCentavos(rs.getLong("precio_unitario_centavos"));
+        item.setSubtotalCentavos(rs.getLong("subtotal_centavos"));
+        return item;
+    }
+
     /**
-     * Genera un folio único para una compra
+     * Genera un folio único para una compra, sin consultar la base de datos (ver GeneradorFolios)
      */
     public String generarFolio() {
-        return "SIAP-" + System.currentTimeMillis();
+        return GeneradorFolios.getInstancia().siguiente();
     }
 }
 
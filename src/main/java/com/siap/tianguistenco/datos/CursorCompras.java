@@ -0,0 +1,31 @@
+package com.siap.tianguistenco.datos;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posición dentro del historial de compras de un usuario
+ * Identifica la última compra entregada por (fecha, id), guardados como (fecha_ms, id); la siguiente página empieza justo después,
+ * sin OFFSET, por lo que el costo de cada página no depende de cuántas se leyeron antes.
+ */
+public final class CursorCompras {
+    private final LocalDateTime fecha;
+    private final int id;
+
+    public CursorCompras(LocalDateTime fecha, int id) {
+        this.fecha = fecha;
+        this.id = id;
+    }
+
+    public LocalDateTime getFecha() {
+        return fecha;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "CursorCompras[" + fecha + ", " + id + "]";
+    }
+}
@@ -1,14 +1,18 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 /**
  * Clase responsable de inicializar la base de datos
- * Crea las tablas y las puebla con datos iniciales
+ * Crea las tablas mediante migraciones versionadas y las puebla con datos iniciales
  */
 public class DatabaseInitializer {
+    private static final Bitacora LOG = Bitacora.de(DatabaseInitializer.class);
+
     private final DatabaseManager dbManager;
     
     public DatabaseInitializer() {
@@ -21,124 +25,28 @@ public class DatabaseInitializer {
      */
     public void inicializar() {
         try {
-            System.out.println("Inicializando base de datos...");
+            LOG.info("Inicializando base de datos...");
             
             crearTablas();
             poblarUsuarios();
             poblarProductos();
             
-            System.out.println("Base de datos inicializada correctamente");
+            LOG.info("Base de datos inicializada correctamente");
             
         } catch (SQLException e) {
-            System.err.println("Error al inicializar la base de datos: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al inicializar la base de datos", e);
         }
     }
     
     /**
-     * Crea las tablas necesarias en la base de datos
+     * Crea las tablas e índices necesarios aplicando las migraciones pendientes del esquema
      * @throws SQLException si hay error al crear las tablas
      */
     public void crearTablas() throws SQLException {
-        try (Connection conn = dbManager.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            // Crear tabla usuarios
-            String crearUsuarios = "CREATE TABLE IF NOT EXISTS usuarios (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "username TEXT UNIQUE NOT NULL, " +
-                "password TEXT NOT NULL, " +
-                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            
-            // Crear tabla productos
-            String crearProductos = "CREATE TABLE IF NOT EXISTS productos (" +
-                "id TEXT PRIMARY KEY, " +
-                "nombre TEXT NOT NULL, " +
-                "descripcion TEXT, " +
-                "precio REAL NOT NULL, " +
-                "categoria TEXT NOT NULL, " +
-                "imagen TEXT, " +
-                "stock INTEGER DEFAULT 0, " +
-                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP" +
-                ")";
-            
-            // Crear tabla tarjetas
-            String crearTarjetas = "CREATE TABLE IF NOT EXISTS tarjetas (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "usuario_id INTEGER NOT NULL, " +
-                "numero_tarjeta TEXT NOT NULL, " +
-                "nombre_titular TEXT NOT NULL, " +
-                "fecha_vencimiento TEXT NOT NULL, " +
-                "tipo TEXT NOT NULL, " +
-                "activa INTEGER DEFAULT 1, " +
-                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                "FOREIGN KEY (usuario_id) REFERENCES usuarios(id)" +
-                ")";
-            
-            // Crear tabla compras
-            String crearCompras = "CREATE TABLE IF NOT EXISTS compras (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "usuario_id INTEGER NOT NULL, " +
-                "folio TEXT UNIQUE NOT NULL, " +
-                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                "total REAL NOT NULL, " +
-                "descuento REAL DEFAULT 0, " +
-                "estado TEXT DEFAULT 'COMPLETADA', " +
-                "tipo_envio TEXT DEFAULT 'TIENDA', " +
-                "direccion_envio TEXT, " +
-                "costo_envio REAL DEFAULT 0, " +
-                "FOREIGN KEY (usuario_id) REFERENCES usuarios(id)" +
-                ")";
-            
-            // Crear tabla compras_items
-            String crearComprasItems = "CREATE TABLE IF NOT EXISTS compras_items (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "compra_id INTEGER NOT NULL, " +
-                "producto_id TEXT NOT NULL, " +
-                "nombre_producto TEXT NOT NULL, " +
-                "cantidad INTEGER NOT NULL, " +
-                "precio_unitario REAL NOT NULL, " +
-                "subtotal REAL NOT NULL, " +
-                "FOREIGN KEY (compra_id) REFERENCES compras(id) ON DELETE CASCADE, " +
-                "FOREIGN KEY (producto_id) REFERENCES productos(id)" +
-                ")";
-            
-            // Crear tabla devoluciones
-            String crearDevoluciones = "CREATE TABLE IF NOT EXISTS devoluciones (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "compra_id INTEGER NOT NULL, " +
-                "folio_compra TEXT NOT NULL, " +
-                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                "motivo TEXT NOT NULL, " +
-                "estado TEXT DEFAULT 'PENDIENTE', " +
-                "monto_devolucion REAL NOT NULL, " +
-                "observaciones TEXT, " +
-                "FOREIGN KEY (compra_id) REFERENCES compras(id)" +
-                ")";
-            
-            // Crear tabla metodos_pago
-            String crearMetodosPago = "CREATE TABLE IF NOT EXISTS metodos_pago (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "compra_id INTEGER NOT NULL, " +
-                "tipo_pago TEXT NOT NULL, " +
-                "tarjeta_id INTEGER, " +
-                "monto REAL NOT NULL, " +
-                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
-                "FOREIGN KEY (compra_id) REFERENCES compras(id), " +
-                "FOREIGN KEY (tarjeta_id) REFERENCES tarjetas(id)" +
-                ")";
-            
-            stmt.execute(crearUsuarios);
-            stmt.execute(crearProductos);
-            stmt.execute(crearTarjetas);
-            stmt.execute(crearCompras);
-            stmt.execute(crearComprasItems);
-            stmt.execute(crearDevoluciones);
-            stmt.execute(crearMetodosPago);
-            
-            System.out.println("Tablas creadas correctamente");
-        }
+        new MigradorEsquema(dbManager, MigradorEsquema.migracionesSiap()).migrar();
+        // Movimientos de inventario que no alcanzaron a aplicarse antes del último cierre
+        LibroInventario.getInstancia().recuperar();
+        LOG.info("Tablas creadas correctamente");
     }
     
     /**
@@ -160,9 +68,9 @@ public class DatabaseInitializer {
                     "VALUES ('admin', 'admin')";
                 
                 stmt.execute(insertUsuario);
-                System.out.println("Usuario por defecto creado: admin/admin");
+                LOG.info("Usuario por defecto creado: admin/admin");
             } else {
-                System.out.println("Usuarios ya existen en la base de datos");
+                LOG.info("Usuarios ya existen en la base de datos");
             }
         }
     }
@@ -181,7 +89,7 @@ public class DatabaseInitializer {
             rs.close();
             
             if (count == 0) {
-                System.out.println("Poblando productos en la base de datos...");
+                LOG.info("Poblando productos en la base de datos...");
                 
                 // Insertar todos los productos
                 insertarProductosLeche(stmt);
@@ -190,10 +98,12 @@ public class DatabaseInitializer {
                 insertarProductosSnacks(stmt);
                 insertarProductosLimpieza(stmt);
                 insertarProductosBebidas(stmt);
+                // Los datos iniciales traen el precio en pesos; se deriva precio_centavos
+                MigradorEsquema.rellenarCentavos(conn, "productos", "precio");
                 
-                System.out.println("Productos insertados correctamente");
+                LOG.info("Productos insertados correctamente");
             } else {
-                System.out.println("Productos ya existen en la base de datos");
+                LOG.info("Productos ya existen en la base de datos");
             }
         }
     }
@@ -1,19 +1,45 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
  * Clase que gestiona la conexión a la base de datos SQLite
  * Implementa el patrón Singleton para asegurar una única instancia
+ * Las conexiones se obtienen de un pool acotado en lugar de abrirse en cada llamada
  */
 public class DatabaseManager {
+    private static final Bitacora LOG = Bitacora.de(DatabaseManager.class);
+
     private static final String DB_URL = "jdbc:sqlite:siap_tienda.db";
+    private static final int TAMANO_POOL = 8;
     private static DatabaseManager instance;
+    private static String dbUrl = DB_URL;
+    private final PoolConexiones pool;
     
     private DatabaseManager() {
         // Constructor privado para implementar Singleton
+        try {
+            // Cargar el driver de SQLite una sola vez
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Driver de SQLite no encontrado", e);
+        }
+        this.pool = new PoolConexiones(dbUrl, TAMANO_POOL);
+    }
+    
+    /**
+     * Apunta el DatabaseManager a otro archivo SQLite (pruebas de carga, benchmarks)
+     * Debe llamarse antes de obtener la instancia por primera vez
+     * @param rutaArchivo ruta del archivo de base de datos
+     */
+    public static synchronized void usarArchivo(String rutaArchivo) {
+        if (instance != null) {
+            throw new IllegalStateException("El DatabaseManager ya fue inicializado con " + dbUrl);
+        }
+        dbUrl = "jdbc:sqlite:" + rutaArchivo;
     }
     
     /**
@@ -28,25 +54,29 @@ public class DatabaseManager {
     }
     
     /**
-     * Obtiene una conexión a la base de datos
+     * Obtiene una conexión a la base de datos desde el pool
+     * Al cerrarla (try-with-resources) la conexión regresa al pool
      * @return objeto Connection
      * @throws SQLException si hay error al conectar
      */
     public Connection getConnection() throws SQLException {
-        try {
-            // Cargar el driver de SQLite
-            Class.forName("org.sqlite.JDBC");
-            
-            // Crear conexión a la base de datos
-            Connection connection = DriverManager.getConnection(DB_URL);
-            
-            // Habilitar foreign keys
-            connection.createStatement().execute("PRAGMA foreign_keys = ON");
-            
-            return connection;
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("Driver de SQLite no encontrado", e);
-        }
+        return pool.obtenerConexion();
+    }
+    
+    /**
+     * Obtiene el pool de conexiones para consultar sus métricas
+     * @return pool de conexiones
+     */
+    public PoolConexiones getPool() {
+        return pool;
+    }
+    
+    /**
+     * Cierra el pool y libera las conexiones abiertas
+     */
+    public void cerrar() {
+        LOG.info("Cerrando pool de conexiones: {}", pool);
+        pool.cerrar();
     }
     
     /**
@@ -70,7 +100,7 @@ public class DatabaseManager {
             try {
                 connection.close();
             } catch (SQLException e) {
-                System.err.println("Error al cerrar la conexión: " + e.getMessage());
+                LOG.error("Error al cerrar la conexión: {}", e.getMessage());
             }
         }
     }
@@ -1,5 +1,6 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Devolucion;
 
 import java.sql.Connection;
@@ -7,7 +8,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,6 +15,8 @@ import java.util.List;
  * Data Access Object para la gestión de devoluciones
  */
 public class DevolucionDAO {
+    private static final Bitacora LOG = Bitacora.de(DevolucionDAO.class);
+
     private final DatabaseManager dbManager;
 
     public DevolucionDAO() {
@@ -25,19 +27,21 @@ public class DevolucionDAO {
      * Registra una nueva devolución
      */
     public int registrarDevolucion(Devolucion devolucion) {
-        String sql = "INSERT INTO devoluciones (compra_id, folio_compra, fecha, motivo, estado, monto_devolucion, observaciones) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO devoluciones (compra_id, folio_compra, fecha, fecha_ms, motivo, estado, monto_devolucion, observaciones, " +
+                     "monto_devolucion_centavos) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
 
             stmt.setInt(1, devolucion.getCompraId());
             stmt.setString(2, devolucion.getFolioCompra());
-            stmt.setString(3, devolucion.getFecha().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            stmt.setString(4, devolucion.getMotivo().name());
-            stmt.setString(5, devolucion.getEstado());
-            stmt.setDouble(6, devolucion.getMontoDevolucion());
-            stmt.setString(7, devolucion.getObservaciones());
+            stmt.setString(3, CodecFecha.aTexto(devolucion.getFecha()));
+            stmt.setLong(4, CodecFecha.aMillis(devolucion.getFecha()));
+            stmt.setString(5, devolucion.getMotivo().name());
+            stmt.setString(6, devolucion.getEstado());
+            stmt.setDouble(7, devolucion.getMontoDevolucion());
+            stmt.setString(8, devolucion.getObservaciones());
+            stmt.setLong(9, devolucion.getMontoDevolucionCentavos());
 
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected > 0) {
@@ -49,8 +53,7 @@ public class DevolucionDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al registrar devolución: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al registrar devolución", e);
         }
 
         return -1;
@@ -61,10 +64,10 @@ public class DevolucionDAO {
      */
     public List<Devolucion> obtenerDevolucionesPorUsuario(int usuarioId) {
         List<Devolucion> devoluciones = new ArrayList<>();
-        String sql = "SELECT d.id, d.compra_id, d.folio_compra, d.fecha, d.motivo, d.estado, d.monto_devolucion, d.observaciones " +
+        String sql = "SELECT d.id, d.compra_id, d.folio_compra, d.fecha, d.fecha_ms, d.motivo, d.estado, d.monto_devolucion_centavos, d.observaciones " +
                      "FROM devoluciones d " +
                      "INNER JOIN compras c ON d.compra_id = c.id " +
-                     "WHERE c.usuario_id = ? ORDER BY d.fecha DESC";
+                     "WHERE c.usuario_id = ? ORDER BY d.fecha_ms DESC";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -73,23 +76,41 @@ public class DevolucionDAO {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Devolucion devolucion = new Devolucion(
-                        rs.getInt("id"),
-                        rs.getInt("compra_id"),
-                        rs.getString("folio_compra"),
-                        LocalDateTime.parse(rs.getString("fecha"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                        Devolucion.MotivoDevolucion.valueOf(rs.getString("motivo")),
-                        rs.getString("estado"),
-                        rs.getDouble("monto_devolucion"),
-                        rs.getString("observaciones")
-                    );
-                    devoluciones.add(devolucion);
+                    devoluciones.add(mapearDevolucion(rs));
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener devoluciones: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener devoluciones", e);
+        }
+
+        return devoluciones;
+    }
+
+    /**
+     * Obtiene las devoluciones registradas dentro de un rango de fechas, de la más reciente a la más antigua
+     * @param desde inicio del rango (inclusivo)
+     * @param hasta fin del rango (exclusivo)
+     */
+    public List<Devolucion> obtenerDevolucionesEntre(LocalDateTime desde, LocalDateTime hasta) {
+        List<Devolucion> devoluciones = new ArrayList<>();
+        String sql = "SELECT id, compra_id, folio_compra, fecha, fecha_ms, motivo, estado, monto_devolucion_centavos, observaciones " +
+                     "FROM devoluciones WHERE fecha_ms >= ? AND fecha_ms < ? ORDER BY fecha_ms DESC";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, CodecFecha.aMillis(desde));
+            stmt.setLong(2, CodecFecha.aMillis(hasta));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    devoluciones.add(mapearDevolucion(rs));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOG.error("Error al obtener devoluciones por rango de fechas", e);
         }
 
         return devoluciones;
@@ -99,7 +120,7 @@ public class DevolucionDAO {
      * Obtiene una devolución por su ID
      */
     public Devolucion obtenerDevolucionPorId(int devolucionId) {
-        String sql = "SELECT id, compra_id, folio_compra, fecha, motivo, estado, monto_devolucion, observaciones " +
+        String sql = "SELECT id, compra_id, folio_compra, fecha, fecha_ms, motivo, estado, monto_devolucion_centavos, observaciones " +
                      "FROM devoluciones WHERE id = ?";
 
         try (Connection conn = dbManager.getConnection();
@@ -109,22 +130,12 @@ public class DevolucionDAO {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return new Devolucion(
-                        rs.getInt("id"),
-                        rs.getInt("compra_id"),
-                        rs.getString("folio_compra"),
-                        LocalDateTime.parse(rs.getString("fecha"), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                        Devolucion.MotivoDevolucion.valueOf(rs.getString("motivo")),
-                        rs.getString("estado"),
-                        rs.getDouble("monto_devolucion"),
-                        rs.getString("observaciones")
-                    );
+                    return mapearDevolucion(rs);
                 }
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener devolución por ID: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener devolución por ID", e);
         }
 
         return null;
@@ -146,10 +157,25 @@ public class DevolucionDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error al actualizar estado de devolución: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al actualizar estado de devolución", e);
             return false;
         }
     }
-}
 
+    private Devolucion mapearDevolucion(ResultSet rs) throws SQLException {
+        long millis = rs.getLong("fecha_ms");
+        LocalDateTime fecha = rs.wasNull() ? CodecFecha.desdeTexto(rs.getString("fecha")) : CodecFecha.desdeMillis(millis);
+        Devolucion devolucion = new Devolucion(
+            rs.getInt("id"),
+            rs.getInt("compra_id"),
+            rs.getString("folio_compra"),
+            fecha,
+            Devolucion.MotivoDevolucion.valueOf(rs.getString("motivo")),
+            rs.getString("estado"),
+            0.0,
+            rs.getString("observaciones")
+        );
+        devolucion.setMontoDevolucionCentavos(rs.getLong("monto_devolucion_centavos"));
+        return devolucion;
+    }
+}
@@ -0,0 +1,283 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.Compra;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritor dedicado de compras con commit agrupado
+ * Las compras se encolan y un solo hilo confirma lo acumulado en una transacción,
+ * limitado por un tamaño de lote y un tiempo máximo de espera.
+ * Cada compra se escribe bajo su propio savepoint: si una falla, las demás del lote se confirman.
+ */
+public class EscritorComprasAgrupadas {
+    private static final Bitacora LOG = Bitacora.de(EscritorComprasAgrupadas.class);
+
+    private static final int TAMANO_LOTE_DEFECTO = 64;
+    private static final long ESPERA_MAXIMA_DEFECTO_MS = 5;
+    private static EscritorComprasAgrupadas instancia;
+
+    private final DatabaseManager dbManager;
+    private final CompraDAO compraDAO;
+    private final int tamanoLote;
+    private final long esperaMaximaNanos;
+    private final BlockingQueue<Solicitud> cola;
+    private final Thread hiloEscritor;
+    private volatile boolean activo;
+
+    // Métricas
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong comprasEscritas = new AtomicLong();
+    private final AtomicLong comprasFallidas = new AtomicLong();
+    private final AtomicLong tiempoCommitTotalNanos = new AtomicLong();
+
+    public EscritorComprasAgrupadas(DatabaseManager dbManager, int tamanoLote, long esperaMaximaMs) {
+        this.dbManager = dbManager;
+        this.compraDAO = new CompraDAO();
+        this.tamanoLote = tamanoLote;
+        this.esperaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+        this.cola = new LinkedBlockingQueue<>();
+        this.activo = true;
+        this.hiloEscritor = new Thread(this::ejecutar, "EscritorCompras");
+        this.hiloEscritor.setDaemon(true);
+        this.hiloEscritor.start();
+    }
+
+    /**
+     * Obtiene el escritor compartido por la aplicación
+     * @return instancia única del escritor
+     */
+    public static synchronized EscritorComprasAgrupadas getInstancia() {
+        if (instancia == null) {
+            instancia = new EscritorComprasAgrupadas(DatabaseManager.getInstance(),
+                TAMANO_LOTE_DEFECTO, ESPERA_MAXIMA_DEFECTO_MS);
+        }
+        return instancia;
+    }
+
+    /**
+     * Detiene el escritor compartido si llegó a crearse
+     * @param esperaMs tiempo máximo para esperar al hilo escritor
+     */
+    public static synchronized void detenerInstancia(long esperaMs) {
+        if (instancia != null) {
+            instancia.detener(esperaMs);
+            LOG.info("{}", instancia);
+            instancia = null;
+        }
+    }
+
+    /**
+     * Encola una compra para el siguiente commit agrupado
+     * @param compra compra con sus items
+     * @param tipoPago TARJETA o EFECTIVO
+     * @param tarjetaId ID de la tarjeta o null
+     * @return future que se completa con el ID generado cuando el lote se confirma
+     */
+    public CompletableFuture<Integer> encolar(Compra compra, String tipoPago, Integer tarjetaId) {
+        Solicitud solicitud = new Solicitud(compra, tipoPago, tarjetaId);
+        // Bajo el mismo monitor que detener(): una solicitud aceptada siempre llega antes de que el
+        // hilo escritor vea activo en false y vacíe la cola por última vez
+        synchronized (this) {
+            if (activo) {
+                cola.add(solicitud);
+                return solicitud.resultado;
+            }
+        }
+        solicitud.resultado.completeExceptionally(new IllegalStateException("El escritor de compras está detenido"));
+        return solicitud.resultado;
+    }
+
+    /**
+     * Ciclo del hilo escritor: toma la primera solicitud y acumula las que lleguen
+     * hasta llenar el lote o agotar el tiempo máximo de espera
+     */
+    private void ejecutar() {
+        List<Solicitud> lote = new ArrayList<>(tamanoLote);
+        while (activo || !cola.isEmpty()) {
+            try {
+                Solicitud primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+
+                long limite = System.nanoTime() + esperaMaximaNanos;
+                while (lote.size() < tamanoLote) {
+                    // Primero se toma lo que ya está en la cola sin esperar
+                    if (cola.drainTo(lote, tamanoLote - lote.size()) > 0) {
+                        continue;
+                    }
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) {
+                        break;
+                    }
+                    Solicitud siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+
+                escribirLote(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                LOG.error("Error inesperado en EscritorCompras", e);
+                for (Solicitud solicitud : lote) {
+                    solicitud.resultado.completeExceptionally(e);
+                }
+            } finally {
+                lote.clear();
+            }
+        }
+
+        // Las solicitudes que quedaron tras una interrupción no se pierden en silencio
+        Solicitud pendiente;
+        while ((pendiente = cola.poll()) != null) {
+            pendiente.resultado.completeExceptionally(new IllegalStateException("El escritor de compras se detuvo"));
+        }
+    }
+
+    /**
+     * Escribe un lote completo en una sola transacción
+     */
+    private void escribirLote(List<Solicitud> lote) {
+        List<Solicitud> escritas = new ArrayList<>(lote.size());
+
+        try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+            Connection conn = unidad.getConexion();
+
+            try {
+                for (Solicitud solicitud : lote) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    boolean registrada = false;
+                    try {
+                        solicitud.compraId = compraDAO.escribirCompraCompleta(conn, solicitud.compra,
+                            solicitud.tipoPago, solicitud.tarjetaId);
+                        registrada = true;
+                        conn.releaseSavepoint(savepoint);
+                        escritas.add(solicitud);
+                    } catch (SQLException e) {
+                        // La venta ya estaba en el libro si lo que falló fue liberar el savepoint
+                        if (registrada) {
+                            LibroInventario.getInstancia().revertirVenta(solicitud.compra.getItems());
+                        }
+                        conn.rollback(savepoint);
+                        conn.releaseSavepoint(savepoint);
+                        comprasFallidas.incrementAndGet();
+                        LOG.error("Error al escribir compra {}: {}", solicitud.compra.getFolio(), e.getMessage());
+                        solicitud.resultado.completeExceptionally(e);
+                    }
+                }
+
+                tiempoCommitTotalNanos.addAndGet(unidad.confirmar());
+            } finally {
+                // Sin commit (SQLException o RuntimeException), las ventas registradas en el libro de
+                // inventario se deshacen antes de que la unidad revierta y suelte el candado de escritura
+                if (!unidad.isConfirmada()) {
+                    for (Solicitud solicitud : escritas) {
+                        LibroInventario.getInstancia().revertirVenta(solicitud.compra.getItems());
+                    }
+                }
+            }
+            lotes.incrementAndGet();
+            comprasEscritas.addAndGet(escritas.size());
+            if (!escritas.isEmpty()) {
+                // El stock cambió: lo cacheado de productos ya no es válido
+                ProductoDAOCache.getInstancia().invalidar();
+            }
+
+        } catch (SQLException e) {
+            LOG.error("Error al confirmar lote de {} compras", lote.size(), e);
+            for (Solicitud solicitud : lote) {
+                if (!solicitud.resultado.isDone()) {
+                    comprasFallidas.incrementAndGet();
+                    solicitud.resultado.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        // Los futures se completan solo después del commit
+        for (Solicitud solicitud : escritas) {
+            solicitud.resultado.complete(solicitud.compraId);
+        }
+    }
+
+    /**
+     * Detiene el escritor después de confirmar las compras que ya estaban en cola
+     * @param esperaMs tiempo máximo para esperar al hilo escritor
+     */
+    public void detener(long esperaMs) {
+        synchronized (this) {
+            activo = false;
+        }
+        try {
+            hiloEscritor.join(esperaMs);
+            if (hiloEscritor.isAlive()) {
+                LOG.aviso("EscritorCompras no terminó en el tiempo esperado");
+                hiloEscritor.interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Métricas
+    public long getLotes() {
+        return lotes.get();
+    }
+
+    public long getComprasEscritas() {
+        return comprasEscritas.get();
+    }
+
+    public long getComprasFallidas() {
+        return comprasFallidas.get();
+    }
+
+    public double getComprasPorLote() {
+        long totalLotes = lotes.get();
+        return totalLotes == 0 ? 0.0 : (double) comprasEscritas.get() / totalLotes;
+    }
+
+    public double getTiempoCommitPromedioMs() {
+        long totalLotes = lotes.get();
+        return totalLotes == 0 ? 0.0 : tiempoCommitTotalNanos.get() / 1_000_000.0 / totalLotes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EscritorCompras[lotes=%d, compras=%d, fallidas=%d, compras/lote=%.1f, commit prom=%.2f ms]",
+            getLotes(), getComprasEscritas(), getComprasFallidas(), getComprasPorLote(), getTiempoCommitPromedioMs());
+    }
+
+    /**
+     * Compra en espera de ser escrita
+     */
+    private static final class Solicitud {
+        private final Compra compra;
+        private final String tipoPago;
+        private final Integer tarjetaId;
+        private final CompletableFuture<Integer> resultado = new CompletableFuture<>();
+        private int compraId;
+
+        Solicitud(Compra compra, String tipoPago, Integer tarjetaId) {
+            this.compra = compra;
+            this.tipoPago = tipoPago;
+            this.tarjetaId = tarjetaId;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Folios de compra únicos sin consultar la base de datos ni tomar candados
+ * Cada folio es un número de 63 bits: milisegundos desde 2025 (41 bits), número de nodo (10 bits) y una
+ * secuencia dentro del milisegundo (12 bits, 4096 folios por ms). El milisegundo y la secuencia viven en un
+ * solo AtomicLong que solo avanza: si el reloj no ha cambiado o se atrasó, se suma uno a lo último emitido,
+ * así dos hilos nunca reciben el mismo valor y los folios de un nodo siempre van en aumento.
+ * Se escribe en Base32 de Crockford (sin I, L, O ni U) con un dígito verificador Luhn mod 32 al final,
+ * p. ej. SIAP-06JTNZD-6W0400G. El alfabeto está en orden ASCII, por lo que el texto ordena igual que el número.
+ * El nodo se toma de la propiedad siap.nodo (0 a 1023); sin ella se deriva del proceso y del equipo.
+ * Dos procesos que escriben en la misma base de datos deben tener nodos distintos.
+ */
+public final class GeneradorFolios {
+    public static final String PREFIJO = "SIAP-";
+
+    private static final String ALFABETO = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final int BASE = 32;
+    private static final int SIMBOLOS = 13;
+    private static final int BITS_SECUENCIA = 12;
+    private static final int BITS_NODO = 10;
+    private static final int NODOS = 1 << BITS_NODO;
+    // 2025-01-01T00:00:00Z
+    private static final long EPOCA_MS = 1_735_689_600_000L;
+    private static final int[] VALORES = valores();
+
+    private static final Bitacora LOG = Bitacora.de(GeneradorFolios.class);
+    private static final GeneradorFolios INSTANCIA = new GeneradorFolios(nodoConfigurado());
+
+    private final int nodo;
+    // Milisegundos desde la época << BITS_SECUENCIA | secuencia del último folio emitido
+    private final AtomicLong ultimo = new AtomicLong();
+
+    public GeneradorFolios(int nodo) {
+        if (nodo < 0 || nodo >= NODOS) {
+            throw new IllegalArgumentException("Nodo fuera de rango (0-" + (NODOS - 1) + "): " + nodo);
+        }
+        this.nodo = nodo;
+    }
+
+    public static GeneradorFolios getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Siguiente folio, siempre mayor que el anterior de este generador
+     */
+    public String siguiente() {
+        long ahora = (System.currentTimeMillis() - EPOCA_MS) << BITS_SECUENCIA;
+        long marca = ultimo.accumulateAndGet(ahora, (anterior, reloj) -> Math.max(reloj, anterior + 1));
+        long secuencia = marca & ((1L << BITS_SECUENCIA) - 1);
+        long milisegundos = marca >>> BITS_SECUENCIA;
+        return formatear((milisegundos << (BITS_NODO + BITS_SECUENCIA)) | ((long) nodo << BITS_SECUENCIA) | secuencia);
+    }
+
+    public int getNodo() {
+        return nodo;
+    }
+
+    /**
+     * Verifica el dígito de un folio capturado a mano; acepta minúsculas, espacios, guiones y O/I/L por 0/1
+     */
+    public static boolean esValido(String folio) {
+        return canonico(folio) != null;
+    }
+
+    /**
+     * Forma guardada de un folio capturado a mano, o el mismo texto si no es un folio de este generador
+     * Así los folios anteriores ("SIAP-" + milisegundos) se siguen encontrando tal cual.
+     */
+    public static String normalizar(String folio) {
+        String canonico = canonico(folio);
+        return canonico != null ? canonico : folio;
+    }
+
+    private static String canonico(String folio) {
+        if (folio == null) {
+            return null;
+        }
+        String texto = folio.trim().toUpperCase();
+        if (texto.startsWith(PREFIJO.substring(0, 4))) {
+            texto = texto.substring(4);
+        }
+        char[] simbolos = new char[SIMBOLOS + 1];
+        int n = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            int valor = valor(c);
+            if (valor < 0 || n == simbolos.length) {
+                return null;
+            }
+            simbolos[n++] = ALFABETO.charAt(valor);
+        }
+        if (n != simbolos.length || valor(simbolos[0]) > 7 || digitoVerificador(simbolos, SIMBOLOS + 1, 1) != 0) {
+            return null;
+        }
+        return armar(simbolos);
+    }
+
+    private static String formatear(long id) {
+        char[] simbolos = new char[SIMBOLOS + 1];
+        for (int i = SIMBOLOS - 1; i >= 0; i--) {
+            simbolos[i] = ALFABETO.charAt((int) (id & (BASE - 1)));
+            id >>>= 5;
+        }
+        int resto = digitoVerificador(simbolos, SIMBOLOS, 2);
+        simbolos[SIMBOLOS] = ALFABETO.charAt((BASE - resto) % BASE);
+        return armar(simbolos);
+    }
+
+    private static String armar(char[] simbolos) {
+        int mitad = simbolos.length / 2;
+        return PREFIJO + new String(simbolos, 0, mitad) + '-' + new String(simbolos, mitad, simbolos.length - mitad);
+    }
+
+    /**
+     * Luhn mod 32 de derecha a izquierda; con el dígito incluido (factor inicial 1) un folio válido da 0
+     */
+    private static int digitoVerificador(char[] simbolos, int longitud, int factorInicial) {
+        int factor = factorInicial;
+        int suma = 0;
+        for (int i = longitud - 1; i >= 0; i--) {
+            int sumando = factor * VALORES[simbolos[i]];
+            factor = factor == 2 ? 1 : 2;
+            suma += sumando / BASE + sumando % BASE;
+        }
+        return suma % BASE;
+    }
+
+    private static int valor(char c) {
+        return c < VALORES.length ? VALORES[c] : -1;
+    }
+
+    private static int[] valores() {
+        int[] valores = new int[128];
+        Arrays.fill(valores, -1);
+        for (int i = 0; i < BASE; i++) {
+            valores[ALFABETO.charAt(i)] = i;
+        }
+        valores['O'] = 0;
+        valores['I'] = 1;
+        valores['L'] = 1;
+        return valores;
+    }
+
+    private static int nodoConfigurado() {
+        String propiedad = System.getProperty("siap.nodo");
+        if (propiedad != null) {
+            try {
+                return Math.floorMod(Integer.parseInt(propiedad.trim()), NODOS);
+            } catch (NumberFormatException e) {
+                LOG.aviso("Nodo inválido en siap.nodo: {}, se deriva del proceso", propiedad);
+            }
+        }
+        String equipo = System.getenv().getOrDefault("HOSTNAME", System.getenv().getOrDefault("COMPUTERNAME", ""));
+        long pid = ProcessHandle.current().pid();
+        int h = (int) (pid ^ (pid >>> 32)) * 0x9E3779B9 ^ equipo.hashCode();
+        return (h ^ (h >>> 16)) & (NODOS - 1);
+    }
+}
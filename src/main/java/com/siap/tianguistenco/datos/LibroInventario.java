@@ -0,0 +1,438 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.CompraItem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Libro de movimientos de inventario con escritura diferida de productos.stock
+ * Cada venta o ajuste se agrega a movimientos_inventario dentro de la transacción que lo origina y su efecto
+ * se acumula en memoria, en arreglos indexados por la ranura del producto. Un hilo aplica a productos.stock
+ * el neto acumulado en una sola transacción, cada cierto tiempo o al juntar cierto número de movimientos,
+ * así un producto muy vendido no recibe un UPDATE por compra.
+ * El stock de un producto es productos.stock más lo pendiente en el libro. inventario_aplicado guarda el último
+ * movimiento ya aplicado; al iniciar, recuperar() aplica los posteriores (los que quedaron en memoria si el
+ * proceso terminó sin vaciar el libro). Supone un solo proceso escribiendo la base de datos.
+ * Lo acumulado en memoria siempre corresponde a movimientos confirmados o a la transacción abierta: se registra
+ * con el candado de escritura de SQLite tomado y el vaciado también lo toma antes de leer lo pendiente. El vaciado
+ * descuenta lo aplicado de lo pendiente solo después de confirmar, con el monitor del libro tomado durante el
+ * commit: mientras corre el UPDATE, quien lee productos.stock más lo pendiente sigue viendo lo pendiente completo.
+ */
+public class LibroInventario {
+    private static final Bitacora LOG = Bitacora.de(LibroInventario.class);
+
+    private static final int CAPACIDAD_INICIAL = 64;
+    private static final long PERIODO_DEFECTO_MS = 2000;
+    private static final int UMBRAL_DEFECTO = 256;
+    private static LibroInventario instancia;
+
+    /**
+     * Origen de un movimiento; la cantidad guardada lleva el signo de su efecto en el stock
+     */
+    public enum TipoMovimiento {
+        VENTA,
+        AJUSTE
+    }
+
+    private final DatabaseManager dbManager;
+    private final int umbral;
+    private final ScheduledExecutorService programador;
+    private final AtomicBoolean vaciadoSolicitado = new AtomicBoolean();
+    private final Object vaciando = new Object();
+
+    // Protegidos por el monitor del libro
+    private final Map<String, Integer> ranuras = new HashMap<>();
+    private String[] productos = new String[CAPACIDAD_INICIAL];
+    private int[] pendiente = new int[CAPACIDAD_INICIAL];
+    private int ocupadas;
+    private int movimientosSinAplicar;
+
+    // Métricas
+    private final AtomicLong movimientos = new AtomicLong();
+    private final AtomicLong vaciados = new AtomicLong();
+    private final AtomicLong filasActualizadas = new AtomicLong();
+    private final AtomicLong tiempoVaciadoTotalNanos = new AtomicLong();
+
+    public LibroInventario(DatabaseManager dbManager, long periodoMs, int umbral) {
+        this.dbManager = dbManager;
+        this.umbral = umbral;
+        this.programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "LibroInventario");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        programador.scheduleWithFixedDelay(this::vaciarProgramado, periodoMs, periodoMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtiene el libro compartido por la aplicación
+     * @return instancia única del libro
+     */
+    public static synchronized LibroInventario getInstancia() {
+        if (instancia == null) {
+            instancia = new LibroInventario(DatabaseManager.getInstance(), PERIODO_DEFECTO_MS, UMBRAL_DEFECTO);
+        }
+        return instancia;
+    }
+
+    /**
+     * Vacía y detiene el libro compartido si llegó a crearse
+     */
+    public static synchronized void detenerInstancia() {
+        if (instancia != null) {
+            instancia.detener();
+            LOG.info("{}", instancia);
+            instancia = null;
+        }
+    }
+
+    /**
+     * Registra la salida de los items vendidos usando la conexión de la transacción en curso
+     * Cada producto debe tener stock (productos.stock más lo pendiente) suficiente para sus piezas.
+     * La transacción ya debe haber escrito algo (tener el candado de escritura); si no llega a confirmarse,
+     * quien la abrió debe llamar a revertirVenta().
+     * @param conn conexión de la unidad de trabajo
+     * @param folio folio de la compra, se guarda como referencia del movimiento
+     * @param items items vendidos
+     * @throws StockInsuficienteException si algún producto no tenía piezas suficientes
+     * @throws SQLException si hay error al registrar
+     */
+    void registrarVenta(Connection conn, String folio, List<CompraItem> items) throws SQLException {
+        Map<String, Integer> piezas = new LinkedHashMap<>();
+        for (CompraItem item : items) {
+            piezas.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entrada : piezas.entrySet()) {
+            Integer stock = leerStock(conn, entrada.getKey());
+            if (stock == null || stock + getPendiente(entrada.getKey()) < entrada.getValue()) {
+                throw new StockInsuficienteException(entrada.getKey(), entrada.getValue());
+            }
+        }
+        for (Map.Entry<String, Integer> entrada : piezas.entrySet()) {
+            entrada.setValue(-entrada.getValue());
+        }
+        insertarMovimientos(conn, TipoMovimiento.VENTA, folio, piezas);
+        acumular(piezas, 1);
+    }
+
+    /**
+     * Deshace en memoria una venta registrada cuya transacción no se confirmó
+     * Llamar antes de revertir la transacción, mientras conserva el candado de escritura.
+     */
+    void revertirVenta(List<CompraItem> items) {
+        Map<String, Integer> piezas = new LinkedHashMap<>();
+        for (CompraItem item : items) {
+            piezas.merge(item.getProductoId(), -item.getCantidad(), Integer::sum);
+        }
+        acumular(piezas, -1);
+    }
+
+    /**
+     * Fija el stock de un producto registrando como ajuste la diferencia con el stock actual
+     * @return true si el producto existe y el ajuste se confirmó
+     */
+    public boolean ajustar(String productoId, int nuevoStock) {
+        try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+            Connection conn = unidad.getConexion();
+            tomarCandadoEscritura(conn);
+            Integer stock = leerStock(conn, productoId);
+            if (stock == null) {
+                return false;
+            }
+            int diferencia = nuevoStock - (stock + getPendiente(productoId));
+            if (diferencia == 0) {
+                return true;
+            }
+            Map<String, Integer> ajuste = Map.of(productoId, diferencia);
+            insertarMovimientos(conn, TipoMovimiento.AJUSTE, null, ajuste);
+            acumular(ajuste, 1);
+            try {
+                unidad.confirmar();
+            } finally {
+                if (!unidad.isConfirmada()) {
+                    acumular(ajuste, -1);
+                }
+            }
+            ProductoDAOCache.getInstancia().invalidar();
+            return true;
+        } catch (SQLException e) {
+            LOG.error("Error al ajustar stock de {}", productoId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Piezas de un producto registradas y todavía no aplicadas a productos.stock
+     */
+    public synchronized int getPendiente(String productoId) {
+        Integer ranura = ranuras.get(productoId);
+        return ranura != null ? pendiente[ranura] : 0;
+    }
+
+    /**
+     * Aplica a productos.stock el neto pendiente de cada producto en una sola transacción
+     * @return productos actualizados, o -1 si hubo error (lo pendiente se conserva)
+     */
+    public int vaciar() {
+        synchronized (vaciando) {
+            synchronized (this) {
+                if (movimientosSinAplicar == 0) {
+                    return 0;
+                }
+            }
+            try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+                Connection conn = unidad.getConexion();
+                // Con el candado tomado ninguna otra transacción puede registrar ni confirmar movimientos
+                tomarCandadoEscritura(conn);
+                long ultimoMovimiento = leerUltimoMovimiento(conn);
+                Map<String, Integer> tomado = leerPendiente();
+                aplicarAStock(conn, tomado);
+                marcarAplicado(conn, ultimoMovimiento);
+                // Entre el commit y el descuento nadie lee lo pendiente; si el commit falla, lo pendiente queda igual
+                synchronized (this) {
+                    tiempoVaciadoTotalNanos.addAndGet(unidad.confirmar());
+                    descontarAplicado(tomado);
+                }
+                vaciados.incrementAndGet();
+                filasActualizadas.addAndGet(tomado.size());
+                LOG.depuracion("Libro de inventario vaciado: {} productos hasta el movimiento {}", tomado.size(), ultimoMovimiento);
+                return tomado.size();
+            } catch (SQLException e) {
+                LOG.error("Error al vaciar el libro de inventario", e);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Aplica a productos.stock los movimientos posteriores al último aplicado
+     * Se llama al iniciar, antes de registrar movimientos, para recuperar lo que no se vació antes de un cierre.
+     * @return movimientos aplicados
+     * @throws SQLException si hay error al aplicar
+     */
+    public int recuperar() throws SQLException {
+        synchronized (vaciando) {
+            try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+                Connection conn = unidad.getConexion();
+                tomarCandadoEscritura(conn);
+                long aplicado = leerAplicado(conn);
+                long ultimoMovimiento = leerUltimoMovimiento(conn);
+                if (ultimoMovimiento <= aplicado) {
+                    return 0;
+                }
+                Map<String, Integer> netos = new LinkedHashMap<>();
+                int recuperados = 0;
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT producto_id, SUM(cantidad) AS neto, COUNT(*) AS movimientos FROM movimientos_inventario " +
+                        "WHERE id > ? AND id <= ? GROUP BY producto_id")) {
+                    stmt.setLong(1, aplicado);
+                    stmt.setLong(2, ultimoMovimiento);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            netos.put(rs.getString("producto_id"), rs.getInt("neto"));
+                            recuperados += rs.getInt("movimientos");
+                        }
+                    }
+                }
+                aplicarAStock(conn, netos);
+                marcarAplicado(conn, ultimoMovimiento);
+                unidad.confirmar();
+                LOG.info("Libro de inventario recuperado: {} movimientos de {} productos", recuperados, netos.size());
+                return recuperados;
+            }
+        }
+    }
+
+    /**
+     * Detiene el vaciado periódico y aplica lo pendiente
+     */
+    public void detener() {
+        programador.shutdown();
+        try {
+            programador.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        vaciar();
+    }
+
+    private void vaciarProgramado() {
+        vaciadoSolicitado.set(false);
+        vaciar();
+    }
+
+    /**
+     * Suma las cantidades (por el signo dado) a lo pendiente y pide un vaciado al llegar al umbral
+     */
+    private void acumular(Map<String, Integer> cantidades, int signo) {
+        boolean lleno;
+        synchronized (this) {
+            for (Map.Entry<String, Integer> entrada : cantidades.entrySet()) {
+                pendiente[ranura(entrada.getKey())] += signo * entrada.getValue();
+            }
+            movimientosSinAplicar += signo * cantidades.size();
+            lleno = movimientosSinAplicar >= umbral;
+        }
+        if (signo > 0) {
+            movimientos.addAndGet(cantidades.size());
+        }
+        if (lleno && vaciadoSolicitado.compareAndSet(false, true)) {
+            try {
+                programador.execute(this::vaciarProgramado);
+            } catch (RejectedExecutionException e) {
+                // El libro se está deteniendo; detener() vacía lo pendiente
+                vaciadoSolicitado.set(false);
+            }
+        }
+    }
+
+    /**
+     * Ranura del producto en los arreglos; la asigna la primera vez. Llamar con el monitor del libro.
+     */
+    private int ranura(String productoId) {
+        Integer ranura = ranuras.get(productoId);
+        if (ranura == null) {
+            if (ocupadas == productos.length) {
+                productos = Arrays.copyOf(productos, ocupadas * 2);
+                pendiente = Arrays.copyOf(pendiente, ocupadas * 2);
+            }
+            ranura = ocupadas++;
+            productos[ranura] = productoId;
+            ranuras.put(productoId, ranura);
+        }
+        return ranura;
+    }
+
+    /**
+     * Copia lo pendiente distinto de cero sin cambiarlo; llamar con el candado de escritura tomado
+     */
+    private synchronized Map<String, Integer> leerPendiente() {
+        Map<String, Integer> tomado = new LinkedHashMap<>();
+        for (int i = 0; i < ocupadas; i++) {
+            if (pendiente[i] != 0) {
+                tomado.put(productos[i], pendiente[i]);
+            }
+        }
+        return tomado;
+    }
+
+    /**
+     * Quita de lo pendiente lo que el vaciado ya confirmó en productos.stock
+     * Desde leerPendiente() el candado de escritura no se soltó, así que nada más se acumuló.
+     * Llamar con el monitor del libro.
+     */
+    private void descontarAplicado(Map<String, Integer> aplicado) {
+        for (Map.Entry<String, Integer> entrada : aplicado.entrySet()) {
+            pendiente[ranuras.get(entrada.getKey())] -= entrada.getValue();
+        }
+        movimientosSinAplicar = 0;
+    }
+
+    /**
+     * Primera escritura de la transacción: desde aquí SQLite no deja escribir a ninguna otra conexión
+     */
+    private static void tomarCandadoEscritura(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE inventario_aplicado SET ultimo_movimiento_id = ultimo_movimiento_id WHERE id = 1");
+        }
+    }
+
+    private static Integer leerStock(Connection conn, String productoId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT stock FROM productos WHERE id = ?")) {
+            stmt.setString(1, productoId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt("stock") : null;
+            }
+        }
+    }
+
+    private static long leerUltimoMovimiento(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM movimientos_inventario")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static long leerAplicado(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ultimo_movimiento_id FROM inventario_aplicado WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void insertarMovimientos(Connection conn, TipoMovimiento tipo, String referencia,
+                                            Map<String, Integer> cantidades) throws SQLException {
+        String sql = "INSERT INTO movimientos_inventario (producto_id, tipo, cantidad, referencia, fecha_ms) VALUES (?, ?, ?, ?, ?)";
+        long ahora = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> entrada : cantidades.entrySet()) {
+                stmt.setString(1, entrada.getKey());
+                stmt.setString(2, tipo.name());
+                stmt.setInt(3, entrada.getValue());
+                stmt.setString(4, referencia);
+                stmt.setLong(5, ahora);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void aplicarAStock(Connection conn, Map<String, Integer> netos) throws SQLException {
+        if (netos.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE productos SET stock = stock + ? WHERE id = ?")) {
+            for (Map.Entry<String, Integer> entrada : netos.entrySet()) {
+                stmt.setInt(1, entrada.getValue());
+                stmt.setString(2, entrada.getKey());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void marcarAplicado(Connection conn, long ultimoMovimiento) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE inventario_aplicado SET ultimo_movimiento_id = ? WHERE id = 1")) {
+            stmt.setLong(1, ultimoMovimiento);
+            stmt.executeUpdate();
+        }
+    }
+
+    // Métricas
+    public long getMovimientos() {
+        return movimientos.get();
+    }
+
+    public long getVaciados() {
+        return vaciados.get();
+    }
+
+    public long getFilasActualizadas() {
+        return filasActualizadas.get();
+    }
+
+    @Override
+    public String toString() {
+        long totalVaciados = vaciados.get();
+        return String.format("LibroInventario[movimientos=%d, vaciados=%d, filas actualizadas=%d, vaciado prom=%.2f ms]",
+            movimientos.get(), totalVaciados, filasActualizadas.get(),
+            totalVaciados == 0 ? 0.0 : tiempoVaciadoTotalNanos.get() / 1_000_000.0 / totalVaciados);
+    }
+}
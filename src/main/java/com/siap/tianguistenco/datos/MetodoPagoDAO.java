@@ -1,5 +1,8 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.Centavos;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -8,6 +11,8 @@ import java.sql.SQLException;
  * Data Access Object para la gestión de métodos de pago
  */
 public class MetodoPagoDAO {
+    private static final Bitacora LOG = Bitacora.de(MetodoPagoDAO.class);
+
     private final DatabaseManager dbManager;
 
     public MetodoPagoDAO() {
@@ -18,10 +23,23 @@ public class MetodoPagoDAO {
      * Registra un método de pago usado en una compra
      */
     public boolean registrarMetodoPago(int compraId, String tipoPago, Integer tarjetaId, double monto) {
-        String sql = "INSERT INTO metodos_pago (compra_id, tipo_pago, tarjeta_id, monto) VALUES (?, ?, ?, ?)";
+        try (Connection conn = dbManager.getConnection()) {
+            registrarMetodoPago(conn, compraId, tipoPago, tarjetaId, Centavos.desdePesos(monto));
+            return true;
+
+        } catch (SQLException e) {
+            LOG.error("Error al registrar método de pago", e);
+            return false;
+        }
+    }
 
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Registra un método de pago usando la conexión de la transacción en curso
+     */
+    void registrarMetodoPago(Connection conn, int compraId, String tipoPago, Integer tarjetaId, long montoCentavos) throws SQLException {
+        String sql = "INSERT INTO metodos_pago (compra_id, tipo_pago, tarjeta_id, monto, monto_centavos) VALUES (?, ?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, compraId);
             stmt.setString(2, tipoPago);
@@ -30,16 +48,10 @@ public class MetodoPagoDAO {
             } else {
                 stmt.setNull(3, java.sql.Types.INTEGER);
             }
-            stmt.setDouble(4, monto);
-
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
+            stmt.setDouble(4, Centavos.aPesos(montoCentavos));
+            stmt.setLong(5, montoCentavos);
 
-        } catch (SQLException e) {
-            System.err.println("Error al registrar método de pago: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+            stmt.executeUpdate();
         }
     }
 }
-
@@ -0,0 +1,69 @@
+package com.siap.tianguistenco.datos;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Paso versionado del esquema de la base de datos
+ * Cada migración se aplica una sola vez, en orden de versión, dentro de su propia transacción.
+ * Sus sentencias deben ser idempotentes (IF NOT EXISTS) para tolerar bases creadas antes del versionado.
+ */
+public class Migracion {
+    private final int version;
+    private final String descripcion;
+    private final Paso paso;
+
+    public Migracion(int version, String descripcion, Paso paso) {
+        this.version = version;
+        this.descripcion = descripcion;
+        this.paso = paso;
+    }
+
+    /**
+     * Crea una migración formada solo por sentencias SQL
+     * @param version número de versión del esquema que deja aplicada
+     * @param descripcion descripción corta del cambio
+     * @param sentencias sentencias DDL/DML a ejecutar en orden
+     * @return migración lista para registrarse en el MigradorEsquema
+     */
+    public static Migracion sql(int version, String descripcion, String... sentencias) {
+        return new Migracion(version, descripcion, conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String sentencia : sentencias) {
+                    stmt.execute(sentencia);
+                }
+            }
+        });
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    /**
+     * Ejecuta la migración sobre la conexión de la transacción en curso
+     * @param conn conexión con auto-commit deshabilitado
+     * @throws SQLException si alguna sentencia falla
+     */
+    void aplicar(Connection conn) throws SQLException {
+        paso.aplicar(conn);
+    }
+
+    @Override
+    public String toString() {
+        return "V" + version + " - " + descripcion;
+    }
+
+    /**
+     * Cuerpo de una migración escrita en Java (transformaciones de datos)
+     */
+    @FunctionalInterface
+    public interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+}
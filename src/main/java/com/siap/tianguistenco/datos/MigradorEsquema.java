@@ -0,0 +1,339 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aplica las migraciones versionadas del esquema
+ * La versión actual se guarda en la tabla schema_version; al iniciar solo se aplican
+ * las migraciones con versión mayor, en orden y cada una en su propia transacción.
+ */
+public class MigradorEsquema {
+    private static final Bitacora LOG = Bitacora.de(MigradorEsquema.class);
+
+    private final DatabaseManager dbManager;
+    private final List<Migracion> migraciones;
+
+    public MigradorEsquema() {
+        this(DatabaseManager.getInstance(), migracionesSiap());
+    }
+
+    public MigradorEsquema(DatabaseManager dbManager, List<Migracion> migraciones) {
+        this.dbManager = dbManager;
+        this.migraciones = new ArrayList<>(migraciones);
+        this.migraciones.sort(Comparator.comparingInt(Migracion::getVersion));
+        for (int i = 1; i < this.migraciones.size(); i++) {
+            if (this.migraciones.get(i).getVersion() == this.migraciones.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Versión de migración duplicada: " + this.migraciones.get(i));
+            }
+        }
+    }
+
+    /**
+     * Lleva el esquema a la última versión registrada
+     * @return número de migraciones aplicadas en esta llamada
+     * @throws SQLException si alguna migración falla; las anteriores quedan confirmadas
+     */
+    public int migrar() throws SQLException {
+        crearTablaVersion();
+        int versionActual = obtenerVersionActual();
+        int aplicadas = 0;
+
+        for (Migracion migracion : migraciones) {
+            if (migracion.getVersion() <= versionActual) {
+                continue;
+            }
+            aplicar(migracion);
+            aplicadas++;
+        }
+
+        if (aplicadas > 0) {
+            LOG.info("Esquema actualizado a la versión {} ({} migraciones aplicadas)", obtenerVersionActual(), aplicadas);
+        }
+        return aplicadas;
+    }
+
+    private void crearTablaVersion() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INTEGER PRIMARY KEY, " +
+                "descripcion TEXT NOT NULL, " +
+                "fecha_aplicacion DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                ")");
+        }
+    }
+
+    /**
+     * Obtiene la versión más alta aplicada
+     * @return versión actual del esquema, 0 si no se ha aplicado ninguna migración
+     * @throws SQLException si hay error al consultar
+     */
+    public int obtenerVersionActual() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Aplica una migración y registra su versión en la misma transacción
+     * Si otro proceso ya la registró, la llave primaria de schema_version hace fallar el commit
+     */
+    private void aplicar(Migracion migracion) throws SQLException {
+        LOG.info("Aplicando migración {}", migracion);
+        try (UnidadDeTrabajo unidad = new UnidadDeTrabajo(dbManager)) {
+            Connection conn = unidad.getConexion();
+            migracion.aplicar(conn);
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, descripcion) VALUES (?, ?)")) {
+                stmt.setInt(1, migracion.getVersion());
+                stmt.setString(2, migracion.getDescripcion());
+                stmt.executeUpdate();
+            }
+            unidad.confirmar();
+        }
+    }
+
+    public List<Migracion> getMigraciones() {
+        return Collections.unmodifiableList(migraciones);
+    }
+
+    /**
+     * Migraciones del esquema de SIAP en orden de versión
+     * Nunca se modifica una migración ya publicada: los cambios nuevos van en una versión nueva.
+     */
+    public static List<Migracion> migracionesSiap() {
+        List<Migracion> lista = new ArrayList<>();
+
+        lista.add(Migracion.sql(1, "Tablas base",
+            "CREATE TABLE IF NOT EXISTS usuarios (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "username TEXT UNIQUE NOT NULL, " +
+                "password TEXT NOT NULL, " +
+                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS productos (" +
+                "id TEXT PRIMARY KEY, " +
+                "nombre TEXT NOT NULL, " +
+                "descripcion TEXT, " +
+                "precio REAL NOT NULL, " +
+                "categoria TEXT NOT NULL, " +
+                "imagen TEXT, " +
+                "stock INTEGER DEFAULT 0, " +
+                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS tarjetas (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "usuario_id INTEGER NOT NULL, " +
+                "numero_tarjeta TEXT NOT NULL, " +
+                "nombre_titular TEXT NOT NULL, " +
+                "fecha_vencimiento TEXT NOT NULL, " +
+                "tipo TEXT NOT NULL, " +
+                "activa INTEGER DEFAULT 1, " +
+                "fecha_creacion DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "FOREIGN KEY (usuario_id) REFERENCES usuarios(id)" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS compras (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "usuario_id INTEGER NOT NULL, " +
+                "folio TEXT UNIQUE NOT NULL, " +
+                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "total REAL NOT NULL, " +
+                "descuento REAL DEFAULT 0, " +
+                "estado TEXT DEFAULT 'COMPLETADA', " +
+                "tipo_envio TEXT DEFAULT 'TIENDA', " +
+                "direccion_envio TEXT, " +
+                "costo_envio REAL DEFAULT 0, " +
+                "FOREIGN KEY (usuario_id) REFERENCES usuarios(id)" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS compras_items (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "compra_id INTEGER NOT NULL, " +
+                "producto_id TEXT NOT NULL, " +
+                "nombre_producto TEXT NOT NULL, " +
+                "cantidad INTEGER NOT NULL, " +
+                "precio_unitario REAL NOT NULL, " +
+                "subtotal REAL NOT NULL, " +
+                "FOREIGN KEY (compra_id) REFERENCES compras(id) ON DELETE CASCADE, " +
+                "FOREIGN KEY (producto_id) REFERENCES productos(id)" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS devoluciones (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "compra_id INTEGER NOT NULL, " +
+                "folio_compra TEXT NOT NULL, " +
+                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "motivo TEXT NOT NULL, " +
+                "estado TEXT DEFAULT 'PENDIENTE', " +
+                "monto_devolucion REAL NOT NULL, " +
+                "observaciones TEXT, " +
+                "FOREIGN KEY (compra_id) REFERENCES compras(id)" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS metodos_pago (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "compra_id INTEGER NOT NULL, " +
+                "tipo_pago TEXT NOT NULL, " +
+                "tarjeta_id INTEGER, " +
+                "monto REAL NOT NULL, " +
+                "fecha DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "FOREIGN KEY (compra_id) REFERENCES compras(id), " +
+                "FOREIGN KEY (tarjeta_id) REFERENCES tarjetas(id)" +
+                ")"));
+
+        // Índices para las consultas frecuentes de historial, devoluciones, tarjetas y catálogo
+        lista.add(Migracion.sql(2, "Índices de consultas frecuentes",
+            "CREATE INDEX IF NOT EXISTS idx_compras_usuario_fecha ON compras (usuario_id, fecha DESC, id)",
+            "CREATE INDEX IF NOT EXISTS idx_compras_items_compra ON compras_items (compra_id, id)",
+            "CREATE INDEX IF NOT EXISTS idx_devoluciones_compra ON devoluciones (compra_id)",
+            "CREATE INDEX IF NOT EXISTS idx_tarjetas_usuario_activa ON tarjetas (usuario_id, activa, fecha_creacion DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_productos_categoria_nombre ON productos (categoria, nombre)",
+            "CREATE INDEX IF NOT EXISTS idx_metodos_pago_compra ON metodos_pago (compra_id)",
+            "ANALYZE"));
+
+        // El historial paginado ordena por (fecha DESC, id DESC); el índice debe seguir el mismo orden
+        lista.add(Migracion.sql(3, "Índice del historial paginado por (fecha, id)",
+            "DROP INDEX IF EXISTS idx_compras_usuario_fecha",
+            "CREATE INDEX IF NOT EXISTS idx_compras_usuario_fecha_id ON compras (usuario_id, fecha DESC, id DESC)",
+            "ANALYZE"));
+
+        // Fechas como enteros: comparaciones y rangos numéricos en lugar de comparar texto
+        lista.add(new Migracion(4, "Fechas de compras y devoluciones en milisegundos desde epoch", conn -> {
+            agregarColumnaSiFalta(conn, "compras", "fecha_ms", "INTEGER");
+            agregarColumnaSiFalta(conn, "devoluciones", "fecha_ms", "INTEGER");
+            rellenarFechaMillis(conn, "compras");
+            rellenarFechaMillis(conn, "devoluciones");
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP INDEX IF EXISTS idx_compras_usuario_fecha_id");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_compras_usuario_fecha_ms ON compras (usuario_id, fecha_ms DESC, id DESC)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_devoluciones_fecha_ms ON devoluciones (fecha_ms)");
+                // Estadísticas tomadas con tablas casi vacías harían que el planificador prefiera recorridos
+                // completos cuando los datos crezcan; sin ellas elige los índices
+                stmt.execute("DROP TABLE IF EXISTS sqlite_stat1");
+            }
+        }));
+
+        // Importes como enteros de centavos; las columnas REAL se conservan y se siguen escribiendo
+        lista.add(new Migracion(5, "Importes en centavos enteros", conn -> {
+            agregarCentavos(conn, "productos", "precio");
+            agregarCentavos(conn, "compras", "total");
+            agregarCentavos(conn, "compras", "descuento");
+            agregarCentavos(conn, "compras", "costo_envio");
+            agregarCentavos(conn, "compras_items", "precio_unitario");
+            agregarCentavos(conn, "compras_items", "subtotal");
+            agregarCentavos(conn, "devoluciones", "monto_devolucion");
+            agregarCentavos(conn, "metodos_pago", "monto");
+        }));
+
+        // Movimientos de inventario: productos.stock se actualiza de forma diferida desde este registro
+        lista.add(Migracion.sql(6, "Libro de movimientos de inventario",
+            "CREATE TABLE IF NOT EXISTS movimientos_inventario (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "producto_id TEXT NOT NULL, " +
+                "tipo TEXT NOT NULL, " +
+                "cantidad INTEGER NOT NULL, " +
+                "referencia TEXT, " +
+                "fecha_ms INTEGER NOT NULL, " +
+                "FOREIGN KEY (producto_id) REFERENCES productos(id)" +
+                ")",
+            "CREATE TABLE IF NOT EXISTS inventario_aplicado (" +
+                "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                "ultimo_movimiento_id INTEGER NOT NULL" +
+                ")",
+            "INSERT OR IGNORE INTO inventario_aplicado (id, ultimo_movimiento_id) VALUES (1, 0)"));
+
+        // Claves de idempotencia del checkout: un reintento del cliente encuentra la compra ya guardada
+        lista.add(Migracion.sql(7, "Claves de idempotencia de compras",
+            "CREATE TABLE IF NOT EXISTS claves_idempotencia (" +
+                "clave TEXT PRIMARY KEY, " +
+                "compra_id INTEGER NOT NULL, " +
+                "fecha_ms INTEGER NOT NULL, " +
+                "FOREIGN KEY (compra_id) REFERENCES compras(id)" +
+                ")"));
+
+        // La clave se guarda desde que el pago se aprueba, antes que la compra: el reintento no vuelve a cobrar.
+        // SQLite no quita NOT NULL con ALTER TABLE; la tabla se vuelve a crear con compra_id opcional
+        lista.add(Migracion.sql(8, "Pagos aprobados en las claves de idempotencia",
+            "CREATE TABLE claves_idempotencia_v8 (" +
+                "clave TEXT PRIMARY KEY, " +
+                "estado TEXT NOT NULL, " +
+                "autorizacion TEXT, " +
+                "compra_id INTEGER, " +
+                "fecha_ms INTEGER NOT NULL, " +
+                "FOREIGN KEY (compra_id) REFERENCES compras(id)" +
+                ")",
+            "INSERT INTO claves_idempotencia_v8 (clave, estado, compra_id, fecha_ms) " +
+                "SELECT clave, 'COMPRA_GUARDADA', compra_id, fecha_ms FROM claves_idempotencia",
+            "DROP TABLE claves_idempotencia",
+            "ALTER TABLE claves_idempotencia_v8 RENAME TO claves_idempotencia"));
+
+        // Las claves se borran al pasar su tiempo de retención; el borrado busca por fecha
+        lista.add(Migracion.sql(9, "Índice de claves de idempotencia por fecha",
+            "CREATE INDEX IF NOT EXISTS idx_claves_idempotencia_fecha ON claves_idempotencia (fecha_ms)"));
+
+        return lista;
+    }
+
+    /**
+     * ALTER TABLE ADD COLUMN no acepta IF NOT EXISTS en SQLite; se revisa el esquema antes
+     */
+    static void agregarColumnaSiFalta(Connection conn, String tabla, String columna, String tipo) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + tabla + ")")) {
+            while (rs.next()) {
+                if (columna.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + tabla + " ADD COLUMN " + columna + " " + tipo);
+        }
+    }
+
+    /**
+     * Calcula fecha_ms a partir de la columna de texto fecha en las filas que aún no lo tienen
+     */
+    private static void rellenarFechaMillis(Connection conn, String tabla) throws SQLException {
+        try (PreparedStatement consulta = conn.prepareStatement(
+                "SELECT id, fecha FROM " + tabla + " WHERE fecha_ms IS NULL AND fecha IS NOT NULL");
+             PreparedStatement actualizacion = conn.prepareStatement(
+                "UPDATE " + tabla + " SET fecha_ms = ? WHERE id = ?");
+             ResultSet rs = consulta.executeQuery()) {
+            while (rs.next()) {
+                actualizacion.setLong(1, CodecFecha.aMillis(CodecFecha.desdeTexto(rs.getString("fecha"))));
+                actualizacion.setInt(2, rs.getInt("id"));
+                actualizacion.addBatch();
+            }
+            actualizacion.executeBatch();
+        }
+    }
+
+    /**
+     * Agrega la columna <columna>_centavos y la llena desde la columna REAL en las filas que no la tienen
+     */
+    private static void agregarCentavos(Connection conn, String tabla, String columna) throws SQLException {
+        agregarColumnaSiFalta(conn, tabla, columna + "_centavos", "INTEGER");
+        rellenarCentavos(conn, tabla, columna);
+    }
+
+    /**
+     * Convierte los pesos guardados como REAL a centavos redondeando al centavo más cercano
+     */
+    static void rellenarCentavos(Connection conn, String tabla, String columna) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE " + tabla + " SET " + columna + "_centavos = CAST(ROUND(COALESCE(" + columna
+                + ", 0) * 100) AS INTEGER) WHERE " + columna + "_centavos IS NULL");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.model.Compra;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página del historial de compras y el cursor para pedir la siguiente
+ */
+public class PaginaCompras {
+    private final List<Compra> compras;
+    private final CursorCompras siguiente;
+
+    public PaginaCompras(List<Compra> compras, CursorCompras siguiente) {
+        this.compras = Collections.unmodifiableList(compras);
+        this.siguiente = siguiente;
+    }
+
+    public List<Compra> getCompras() {
+        return compras;
+    }
+
+    /**
+     * Cursor para la siguiente página
+     * @return cursor de la última compra de esta página, o null si ya no hay más
+     */
+    public CursorCompras getSiguiente() {
+        return siguiente;
+    }
+
+    public boolean hayMas() {
+        return siguiente != null;
+    }
+}
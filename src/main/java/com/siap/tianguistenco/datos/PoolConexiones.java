@@ -0,0 +1,339 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones SQLite
+ * Cada conexión física se inicializa una sola vez y se reutiliza entre llamadas de los DAOs.
+ * Las conexiones prestadas son proxies: al cerrarlas regresan al pool en lugar de cerrarse.
+ */
+public class PoolConexiones {
+    private static final Bitacora LOG = Bitacora.de(PoolConexiones.class);
+
+    private static final long TIEMPO_MAXIMO_ESPERA_MS = 30000;
+    private static final long INACTIVIDAD_VALIDACION_MS = 60000;
+    private static final int TIMEOUT_VALIDACION_SEG = 2;
+    private static final int CAPACIDAD_CACHE_SENTENCIAS = 32;
+
+    private final String url;
+    private final int tamanoMaximo;
+    private final Semaphore permisos;
+    private final BlockingDeque<ConexionFisica> disponibles;
+    private volatile boolean cerrado;
+
+    // Métricas del pool
+    private final AtomicInteger enUso = new AtomicInteger();
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private final AtomicLong creadas = new AtomicLong();
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong prestamos = new AtomicLong();
+    private final AtomicLong tiempoEsperaTotalNanos = new AtomicLong();
+    private final AtomicLong tiempoEsperaMaximoNanos = new AtomicLong();
+    private final AtomicLong aciertosSentencias = new AtomicLong();
+    private final AtomicLong fallosSentencias = new AtomicLong();
+
+    public PoolConexiones(String url, int tamanoMaximo) {
+        this.url = url;
+        this.tamanoMaximo = tamanoMaximo;
+        this.permisos = new Semaphore(tamanoMaximo, true);
+        this.disponibles = new LinkedBlockingDeque<>();
+    }
+
+    /**
+     * Presta una conexión del pool, creando una nueva si no hay disponibles
+     * @return conexión lista para usarse; al cerrarla regresa al pool
+     * @throws SQLException si el pool está cerrado, se agota el tiempo de espera o falla la conexión
+     */
+    public Connection obtenerConexion() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+
+        long inicio = System.nanoTime();
+        try {
+            if (!permisos.tryAcquire(TIEMPO_MAXIMO_ESPERA_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Tiempo de espera agotado al obtener una conexión del pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una conexión", e);
+        }
+        registrarEspera(System.nanoTime() - inicio);
+
+        try {
+            ConexionFisica conexion = tomarConexionSana();
+            enUso.incrementAndGet();
+            prestamos.incrementAndGet();
+            return conexion.prestar();
+        } catch (SQLException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Toma una conexión inactiva que pase la verificación de salud o crea una nueva
+     */
+    private ConexionFisica tomarConexionSana() throws SQLException {
+        ConexionFisica conexion;
+        while ((conexion = disponibles.pollFirst()) != null) {
+            if (conexion.estaSana()) {
+                return conexion;
+            }
+            descartar(conexion);
+        }
+        return crearConexion();
+    }
+
+    /**
+     * Abre una conexión física y aplica la inicialización que antes se repetía en cada llamada
+     */
+    private ConexionFisica crearConexion() throws SQLException {
+        Connection fisica = DriverManager.getConnection(url);
+        try (Statement stmt = fisica.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON");
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        } catch (SQLException e) {
+            fisica.close();
+            throw e;
+        }
+        creadas.incrementAndGet();
+        abiertas.incrementAndGet();
+        return new ConexionFisica(fisica);
+    }
+
+    /**
+     * Regresa una conexión física al pool después de restaurar su estado
+     */
+    private void devolver(ConexionFisica conexion) {
+        enUso.decrementAndGet();
+        try {
+            if (cerrado || !conexion.restaurar()) {
+                descartar(conexion);
+            } else {
+                disponibles.offerFirst(conexion);
+            }
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private void descartar(ConexionFisica conexion) {
+        descartadas.incrementAndGet();
+        abiertas.decrementAndGet();
+        conexion.cerrarFisica();
+    }
+
+    private void registrarEspera(long nanos) {
+        tiempoEsperaTotalNanos.addAndGet(nanos);
+        tiempoEsperaMaximoNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Cierra el pool y todas las conexiones inactivas
+     * Las conexiones prestadas se cierran al ser devueltas
+     */
+    public void cerrar() {
+        cerrado = true;
+        ConexionFisica conexion;
+        while ((conexion = disponibles.pollFirst()) != null) {
+            descartar(conexion);
+        }
+    }
+
+    // Métricas
+    public int getTamanoMaximo() {
+        return tamanoMaximo;
+    }
+
+    public int getConexionesEnUso() {
+        return enUso.get();
+    }
+
+    public int getConexionesInactivas() {
+        return disponibles.size();
+    }
+
+    public int getConexionesAbiertas() {
+        return abiertas.get();
+    }
+
+    public long getConexionesCreadas() {
+        return creadas.get();
+    }
+
+    public long getConexionesDescartadas() {
+        return descartadas.get();
+    }
+
+    public long getPrestamos() {
+        return prestamos.get();
+    }
+
+    public double getTiempoEsperaPromedioMs() {
+        long total = prestamos.get();
+        return total == 0 ? 0.0 : tiempoEsperaTotalNanos.get() / 1_000_000.0 / total;
+    }
+
+    public double getTiempoEsperaMaximoMs() {
+        return tiempoEsperaMaximoNanos.get() / 1_000_000.0;
+    }
+
+    public long getAciertosSentencias() {
+        return aciertosSentencias.get();
+    }
+
+    public long getFallosSentencias() {
+        return fallosSentencias.get();
+    }
+
+    public double getTasaAciertosSentencias() {
+        long aciertos = aciertosSentencias.get();
+        long total = aciertos + fallosSentencias.get();
+        return total == 0 ? 0.0 : (double) aciertos / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[en uso=%d, inactivas=%d, creadas=%d, descartadas=%d, préstamos=%d, espera prom=%.3f ms, espera máx=%.3f ms, " +
+                "sentencias aciertos=%d fallos=%d]",
+            getConexionesEnUso(), getConexionesInactivas(), getConexionesCreadas(), getConexionesDescartadas(),
+            getPrestamos(), getTiempoEsperaPromedioMs(), getTiempoEsperaMaximoMs(),
+            getAciertosSentencias(), getFallosSentencias());
+    }
+
+    /**
+     * Conexión física administrada por el pool
+     */
+    private final class ConexionFisica {
+        private final Connection fisica;
+        private final CacheSentencias sentencias;
+        private long ultimoUso;
+
+        ConexionFisica(Connection fisica) {
+            this.fisica = fisica;
+            this.sentencias = new CacheSentencias(fisica, CAPACIDAD_CACHE_SENTENCIAS,
+                aciertosSentencias, fallosSentencias);
+            this.ultimoUso = System.currentTimeMillis();
+        }
+
+        Connection prestar() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new ConexionPrestada(this));
+        }
+
+        /**
+         * Verifica la conexión solo si estuvo inactiva el tiempo suficiente para justificarlo
+         */
+        boolean estaSana() {
+            try {
+                if (fisica.isClosed()) {
+                    return false;
+                }
+                if (System.currentTimeMillis() - ultimoUso < INACTIVIDAD_VALIDACION_MS) {
+                    return true;
+                }
+                return fisica.isValid(TIMEOUT_VALIDACION_SEG);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Deshace transacciones abiertas y restablece el auto-commit antes de reutilizarla
+         * @return false si la conexión ya no se puede reutilizar
+         */
+        boolean restaurar() {
+            try {
+                if (fisica.isClosed()) {
+                    return false;
+                }
+                sentencias.alDevolver();
+                if (!fisica.getAutoCommit()) {
+                    fisica.rollback();
+                    fisica.setAutoCommit(true);
+                }
+                ultimoUso = System.currentTimeMillis();
+                return true;
+            } catch (SQLException e) {
+                LOG.error("Error al restaurar conexión del pool: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        void cerrarFisica() {
+            sentencias.cerrarTodo();
+            DatabaseManager.closeConnection(fisica);
+        }
+    }
+
+    /**
+     * Manejador del proxy entregado a los DAOs
+     * close() devuelve la conexión al pool; cualquier uso posterior falla como en una conexión cerrada.
+     * prepareStatement() se atiende desde la caché de sentencias de la conexión física.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+        private ConexionFisica conexion;
+
+        ConexionPrestada(ConexionFisica conexion) {
+            this.conexion = conexion;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (conexion != null) {
+                        ConexionFisica devuelta = conexion;
+                        conexion = null;
+                        devolver(devuelta);
+                    }
+                    return null;
+                case "isClosed":
+                    return conexion == null || conexion.fisica.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPrestada[" + (conexion != null ? conexion.fisica : "cerrada") + "]";
+                default:
+                    break;
+            }
+
+            if (conexion == null) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            if (method.getName().equals("prepareStatement") && args != null) {
+                if (args.length == 1) {
+                    return conexion.sentencias.preparar((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && args[1] instanceof Integer) {
+                    return conexion.sentencias.preparar((String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(conexion.fisica, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Producto;
 
 import java.sql.Connection;
@@ -14,6 +15,11 @@ import java.util.List;
  * Maneja las operaciones CRUD de la tabla productos
  */
 public class ProductoDAO {
+    private static final Bitacora LOG = Bitacora.de(ProductoDAO.class);
+
+    private static final String COLUMNAS_PRODUCTO =
+        "id, nombre, descripcion, precio_centavos, categoria, imagen, stock";
+
     private final DatabaseManager dbManager;
     
     public ProductoDAO() {
@@ -26,28 +32,19 @@ public class ProductoDAO {
      */
     public List<Producto> obtenerTodosLosProductos() {
         List<Producto> productos = new ArrayList<>();
-        String sql = "SELECT id, nombre, descripcion, precio, categoria, imagen, stock FROM productos ORDER BY categoria, nombre";
+        String sql = "SELECT " + COLUMNAS_PRODUCTO + " FROM productos ORDER BY categoria, nombre";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                Producto producto = new Producto(
-                    rs.getString("id"),
-                    rs.getString("nombre"),
-                    rs.getString("descripcion"),
-                    rs.getDouble("precio"),
-                    rs.getString("categoria"),
-                    rs.getString("imagen"),
-                    rs.getInt("stock")
-                );
+                Producto producto = mapearProducto(rs);
                 productos.add(producto);
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al obtener productos: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener productos", e);
         }
         
         return productos;
@@ -60,7 +57,7 @@ public class ProductoDAO {
      */
     public List<Producto> obtenerProductosPorCategoria(String categoria) {
         List<Producto> productos = new ArrayList<>();
-        String sql = "SELECT id, nombre, descripcion, precio, categoria, imagen, stock FROM productos WHERE categoria = ? ORDER BY nombre";
+        String sql = "SELECT " + COLUMNAS_PRODUCTO + " FROM productos WHERE categoria = ? ORDER BY nombre";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -69,22 +66,13 @@ public class ProductoDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Producto producto = new Producto(
-                        rs.getString("id"),
-                        rs.getString("nombre"),
-                        rs.getString("descripcion"),
-                        rs.getDouble("precio"),
-                        rs.getString("categoria"),
-                        rs.getString("imagen"),
-                        rs.getInt("stock")
-                    );
+                    Producto producto = mapearProducto(rs);
                     productos.add(producto);
                 }
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al obtener productos por categoría: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener productos por categoría", e);
         }
         
         return productos;
@@ -96,7 +84,7 @@ public class ProductoDAO {
      * @return producto encontrado o null si no existe
      */
     public Producto buscarProductoPorId(String id) {
-        String sql = "SELECT id, nombre, descripcion, precio, categoria, imagen, stock FROM productos WHERE id = ?";
+        String sql = "SELECT " + COLUMNAS_PRODUCTO + " FROM productos WHERE id = ?";
         
         try (Connection conn = dbManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -105,21 +93,12 @@ public class ProductoDAO {
             
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return new Producto(
-                        rs.getString("id"),
-                        rs.getString("nombre"),
-                        rs.getString("descripcion"),
-                        rs.getDouble("precio"),
-                        rs.getString("categoria"),
-                        rs.getString("imagen"),
-                        rs.getInt("stock")
-                    );
+                    return mapearProducto(rs);
                 }
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al buscar producto por ID: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al buscar producto por ID", e);
         }
         
         return null;
@@ -142,8 +121,7 @@ public class ProductoDAO {
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al obtener categorías: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener categorías", e);
         }
         
         return categorias;
@@ -151,26 +129,28 @@ public class ProductoDAO {
     
     /**
      * Actualiza el stock de un producto
+     * Se registra como ajuste en el LibroInventario, que lo aplica a la tabla junto con las ventas pendientes.
      * @param id ID del producto
      * @param nuevoStock nuevo valor de stock
      * @return true si se actualizó correctamente
      */
     public boolean actualizarStock(String id, int nuevoStock) {
-        String sql = "UPDATE productos SET stock = ? WHERE id = ?";
-        
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, nuevoStock);
-            stmt.setString(2, id);
-            
-            int rowsAffected = stmt.executeUpdate();
-            return rowsAffected > 0;
-            
-        } catch (SQLException e) {
-            System.err.println("Error al actualizar stock: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+        return LibroInventario.getInstancia().ajustar(id, nuevoStock);
+    }
+
+    
+    private static Producto mapearProducto(ResultSet rs) throws SQLException {
+        Producto producto = new Producto(
+            rs.getString("id"),
+            rs.getString("nombre"),
+            rs.getString("descripcion"),
+            0.0,
+            rs.getString("categoria"),
+            rs.getString("imagen"),
+            // Lo vendido o ajustado que el libro aún no aplica a la tabla
+            rs.getInt("stock") + LibroInventario.getInstancia().getPendiente(rs.getString("id"))
+        );
+        producto.setPrecioCentavos(rs.getLong("precio_centavos"));
+        return producto;
     }
 }
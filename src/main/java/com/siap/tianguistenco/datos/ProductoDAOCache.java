@@ -0,0 +1,211 @@
+package com.siap.tianguistenco.datos;
+
+import com.siap.tianguistenco.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caché de lectura delante de ProductoDAO
+ * Las consultas de productos y categorías se guardan con un tamaño máximo (LRU) y un tiempo de vida.
+ * Cada entrada recuerda la versión del catálogo con la que se leyó; invalidar() incrementa la versión
+ * y así descarta de una vez todo lo leído antes, incluso lecturas que estaban en curso.
+ */
+public class ProductoDAOCache extends ProductoDAO {
+    private static final int CAPACIDAD_DEFECTO = 256;
+    private static final long TTL_DEFECTO_MS = 60000;
+    private static ProductoDAOCache instancia;
+
+    private final int capacidad;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entrada> entradas;
+    private final AtomicLong version = new AtomicLong();
+
+    // Métricas
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expiradas = new AtomicLong();
+    private final AtomicLong desalojadas = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+    private final AtomicLong tiempoCargaTotalNanos = new AtomicLong();
+    private final AtomicLong tiempoCargaMaximoNanos = new AtomicLong();
+
+    public ProductoDAOCache(int capacidad, long ttlMs) {
+        this.capacidad = capacidad;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.entradas = new LinkedHashMap<>(capacidad, 0.75f, true);
+    }
+
+    /**
+     * Obtiene la caché compartida por la aplicación
+     * @return instancia única de la caché
+     */
+    public static synchronized ProductoDAOCache getInstancia() {
+        if (instancia == null) {
+            instancia = new ProductoDAOCache(CAPACIDAD_DEFECTO, TTL_DEFECTO_MS);
+        }
+        return instancia;
+    }
+
+    @Override
+    public List<Producto> obtenerTodosLosProductos() {
+        return new ArrayList<>(obtener("todos", super::obtenerTodosLosProductos));
+    }
+
+    @Override
+    public List<Producto> obtenerProductosPorCategoria(String categoria) {
+        return new ArrayList<>(obtener("categoria:" + categoria, () -> super.obtenerProductosPorCategoria(categoria)));
+    }
+
+    @Override
+    public Producto buscarProductoPorId(String id) {
+        return obtener("id:" + id, () -> super.buscarProductoPorId(id));
+    }
+
+    @Override
+    public List<String> obtenerCategorias() {
+        return new ArrayList<>(obtener("categorias", super::obtenerCategorias));
+    }
+
+    @Override
+    public boolean actualizarStock(String id, int nuevoStock) {
+        boolean actualizado = super.actualizarStock(id, nuevoStock);
+        if (actualizado) {
+            invalidar();
+        }
+        return actualizado;
+    }
+
+    /**
+     * Descarta todo lo cacheado; se llama después de confirmar cambios a la tabla productos
+     */
+    public void invalidar() {
+        version.incrementAndGet();
+        invalidaciones.incrementAndGet();
+        synchronized (entradas) {
+            entradas.clear();
+        }
+    }
+
+    /**
+     * Devuelve el valor cacheado o lo carga del DAO si no existe, expiró o es de una versión anterior
+     * La carga se hace fuera del candado para no bloquear a los demás lectores mientras se consulta SQLite.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T obtener(String clave, Supplier<T> cargador) {
+        long ahora = System.nanoTime();
+        long versionActual = version.get();
+
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada != null) {
+                if (entrada.version == versionActual && ahora - entrada.cargadaNanos < ttlNanos) {
+                    aciertos.incrementAndGet();
+                    return (T) entrada.valor;
+                }
+                entradas.remove(clave);
+                if (entrada.version == versionActual) {
+                    expiradas.incrementAndGet();
+                }
+            }
+        }
+
+        fallos.incrementAndGet();
+        long inicio = System.nanoTime();
+        T valor = cargador.get();
+        long duracion = System.nanoTime() - inicio;
+        tiempoCargaTotalNanos.addAndGet(duracion);
+        tiempoCargaMaximoNanos.accumulateAndGet(duracion, Math::max);
+
+        // No se cachean resultados vacíos (pueden venir de un error del DAO) ni lecturas ya invalidadas
+        if (valor != null && !(valor instanceof List && ((List<?>) valor).isEmpty())) {
+            synchronized (entradas) {
+                if (version.get() == versionActual) {
+                    entradas.put(clave, new Entrada(valor, versionActual, inicio));
+                    desalojarExcedentes();
+                }
+            }
+        }
+        return valor;
+    }
+
+    private void desalojarExcedentes() {
+        Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+        while (entradas.size() > capacidad && it.hasNext()) {
+            it.next();
+            it.remove();
+            desalojadas.incrementAndGet();
+        }
+    }
+
+    // Métricas
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    public double getTasaAciertos() {
+        long a = aciertos.get();
+        long total = a + fallos.get();
+        return total == 0 ? 0.0 : (double) a / total;
+    }
+
+    public long getExpiradas() {
+        return expiradas.get();
+    }
+
+    public long getDesalojadas() {
+        return desalojadas.get();
+    }
+
+    public long getInvalidaciones() {
+        return invalidaciones.get();
+    }
+
+    public double getTiempoCargaPromedioMs() {
+        long cargas = fallos.get();
+        return cargas == 0 ? 0.0 : tiempoCargaTotalNanos.get() / 1_000_000.0 / cargas;
+    }
+
+    public double getTiempoCargaMaximoMs() {
+        return tiempoCargaMaximoNanos.get() / 1_000_000.0;
+    }
+
+    public int getTamano() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProductoDAOCache[entradas=%d/%d, aciertos=%d, fallos=%d, tasa=%.1f%%, expiradas=%d, " +
+                "desalojadas=%d, invalidaciones=%d, carga prom=%.3f ms, carga máx=%.3f ms]",
+            getTamano(), capacidad, getAciertos(), getFallos(), getTasaAciertos() * 100, getExpiradas(),
+            getDesalojadas(), getInvalidaciones(), getTiempoCargaPromedioMs(), getTiempoCargaMaximoMs());
+    }
+
+    /**
+     * Valor cacheado con la versión y el momento en que se leyó
+     */
+    private static final class Entrada {
+        private final Object valor;
+        private final long version;
+        private final long cargadaNanos;
+
+        Entrada(Object valor, long version, long cargadaNanos) {
+            this.valor = valor;
+            this.version = version;
+            this.cargadaNanos = cargadaNanos;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.siap.tianguistenco.datos;
+
+/**
+ * Resultado de persistir una compra completa en una sola transacción
+ */
+public class ResultadoCompra {
+    private final int compraId;
+    private final long tiempoTotalNanos;
+    private final long tiempoCommitNanos;
+
+    public ResultadoCompra(int compraId, long tiempoTotalNanos, long tiempoCommitNanos) {
+        this.compraId = compraId;
+        this.tiempoTotalNanos = tiempoTotalNanos;
+        this.tiempoCommitNanos = tiempoCommitNanos;
+    }
+
+    public int getCompraId() {
+        return compraId;
+    }
+
+    public double getTiempoTotalMs() {
+        return tiempoTotalNanos / 1_000_000.0;
+    }
+
+    public double getTiempoCommitMs() {
+        return tiempoCommitNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compra #%d guardada en %.2f ms (commit %.2f ms)",
+            compraId, getTiempoTotalMs(), getTiempoCommitMs());
+    }
+}
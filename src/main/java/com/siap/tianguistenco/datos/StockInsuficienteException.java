@@ -0,0 +1,20 @@
+package com.siap.tianguistenco.datos;
+
+import java.sql.SQLException;
+
+/**
+ * Una venta no encontró piezas suficientes de un producto (stock guardado más lo pendiente en el LibroInventario)
+ * Se lanza dentro de la transacción de la compra, que se deshace sin afectar a las demás del lote.
+ */
+public class StockInsuficienteException extends SQLException {
+    private final String productoId;
+
+    public StockInsuficienteException(String productoId, int cantidad) {
+        super("Stock insuficiente de " + productoId + " para " + cantidad + " piezas");
+        this.productoId = productoId;
+    }
+
+    public String getProductoId() {
+        return productoId;
+    }
+}
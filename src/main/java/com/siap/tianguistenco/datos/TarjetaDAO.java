@@ -1,5 +1,6 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Tarjeta;
 
 import java.sql.Connection;
@@ -13,6 +14,8 @@ import java.util.List;
  * Data Access Object para la gestión de tarjetas de pago
  */
 public class TarjetaDAO {
+    private static final Bitacora LOG = Bitacora.de(TarjetaDAO.class);
+
     private final DatabaseManager dbManager;
 
     public TarjetaDAO() {
@@ -40,8 +43,7 @@ public class TarjetaDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error al registrar tarjeta: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al registrar tarjeta", e);
             return false;
         }
     }
@@ -75,8 +77,7 @@ public class TarjetaDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener tarjetas: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener tarjetas", e);
         }
 
         return tarjetas;
@@ -109,8 +110,7 @@ public class TarjetaDAO {
             }
 
         } catch (SQLException e) {
-            System.err.println("Error al obtener tarjeta por ID: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener tarjeta por ID", e);
         }
 
         return null;
@@ -130,8 +130,7 @@ public class TarjetaDAO {
             return rowsAffected > 0;
 
         } catch (SQLException e) {
-            System.err.println("Error al desactivar tarjeta: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al desactivar tarjeta", e);
             return false;
         }
     }
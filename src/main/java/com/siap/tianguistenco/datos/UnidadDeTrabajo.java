@@ -0,0 +1,72 @@
+package com.siap.tianguistenco.datos;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Unidad de trabajo sobre una sola conexión del pool
+ * Todas las escrituras hechas con getConexion() se confirman juntas en una transacción;
+ * si no se llama a confirmar() antes de cerrar, la transacción se revierte.
+ */
+public class UnidadDeTrabajo implements AutoCloseable {
+    private final Connection conexion;
+    private boolean confirmada;
+    private long tiempoCommitNanos;
+
+    public UnidadDeTrabajo() throws SQLException {
+        this(DatabaseManager.getInstance());
+    }
+
+    public UnidadDeTrabajo(DatabaseManager dbManager) throws SQLException {
+        this.conexion = dbManager.getConnection();
+        try {
+            this.conexion.setAutoCommit(false);
+        } catch (SQLException e) {
+            conexion.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Obtiene la conexión de la transacción en curso
+     * @return conexión con auto-commit deshabilitado
+     */
+    public Connection getConexion() {
+        return conexion;
+    }
+
+    /**
+     * Confirma la transacción y mide cuánto tardó el commit
+     * @return duración del commit en nanosegundos
+     * @throws SQLException si el commit falla
+     */
+    public long confirmar() throws SQLException {
+        long inicio = System.nanoTime();
+        conexion.commit();
+        tiempoCommitNanos = System.nanoTime() - inicio;
+        confirmada = true;
+        return tiempoCommitNanos;
+    }
+
+    public boolean isConfirmada() {
+        return confirmada;
+    }
+
+    public long getTiempoCommitNanos() {
+        return tiempoCommitNanos;
+    }
+
+    /**
+     * Revierte la transacción si no fue confirmada y devuelve la conexión al pool
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!confirmada) {
+                conexion.rollback();
+            }
+        } finally {
+            conexion.close();
+        }
+    }
+}
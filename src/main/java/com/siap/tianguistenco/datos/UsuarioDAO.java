@@ -1,5 +1,7 @@
 package com.siap.tianguistenco.datos;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -10,6 +12,8 @@ import java.sql.SQLException;
  * Maneja las operaciones CRUD de la tabla usuarios
  */
 public class UsuarioDAO {
+    private static final Bitacora LOG = Bitacora.de(UsuarioDAO.class);
+
     private final DatabaseManager dbManager;
     
     public UsuarioDAO() {
@@ -38,8 +42,7 @@ public class UsuarioDAO {
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al validar usuario: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al validar usuario", e);
         }
         
         return false;
@@ -54,7 +57,7 @@ public class UsuarioDAO {
     public boolean registrarUsuario(String username, String password) {
         // Verificar si el usuario ya existe
         if (usuarioExiste(username)) {
-            System.out.println("El usuario '" + username + "' ya existe");
+            LOG.info("El usuario '{}' ya existe", username);
             return false;
         }
         
@@ -70,8 +73,7 @@ public class UsuarioDAO {
             return rowsAffected > 0;
             
         } catch (SQLException e) {
-            System.err.println("Error al registrar usuario: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al registrar usuario", e);
             return false;
         }
     }
@@ -96,8 +98,7 @@ public class UsuarioDAO {
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al verificar existencia de usuario: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al verificar existencia de usuario", e);
         }
         
         return false;
@@ -123,8 +124,7 @@ public class UsuarioDAO {
             }
             
         } catch (SQLException e) {
-            System.err.println("Error al obtener ID de usuario: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al obtener ID de usuario", e);
         }
         
         return -1;
@@ -1,10 +1,21 @@
 package com.siap.tianguistenco.gui;
 
-import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.datos.GeneradorFolios;
 import com.siap.tianguistenco.model.*;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+import com.siap.tianguistenco.repository.CatalogoProductos;
+import com.siap.tianguistenco.repository.RepositorioProductos;
 import com.siap.tianguistenco.threads.*;
 
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import javax.swing.*;
 import java.awt.*;
@@ -14,9 +25,11 @@ import java.text.DecimalFormat;
  * Ventana principal del catálogo de productos con carrito de compras
  */
 public class CatalogoFrame extends JFrame {
+    private static final Bitacora LOG = Bitacora.de(CatalogoFrame.class);
+    private static final int INTENTOS_GUARDADO = 3;
+
     private final SelectorProductos selectorProductos;
     private final CarritoCompra carritoCompra;
-    private final ProductoDAO productoDAO;
     private GestorTarjetas gestorTarjetas;
     private GestorEnvio gestorEnvio;
     private FinalizadorCompra finalizadorCompra;
@@ -33,11 +46,15 @@ public class CatalogoFrame extends JFrame {
     private JButton botonDevoluciones;
     private DefaultListModel<ItemCarrito> modeloListaCarrito;
     private final DecimalFormat formatoMoneda = new DecimalFormat("$#,##0.00");
+    // Etapas del proceso de pago que tocan la base de datos: cada una en su propio hilo virtual
+    private final Executor tareasCompra = tarea -> Thread.ofVirtual().name("ProcesoPago").start(tarea);
+    // Clave de idempotencia del checkout aún no guardado y el contenido (carrito, envío, pago) para el que se generó
+    private String clavePago;
+    private String contenidoClavePago;
 
-    public CatalogoFrame(SelectorProductos selectorProductos, CarritoCompra carritoCompra, ProductoDAO productoDAO) {
+    public CatalogoFrame(SelectorProductos selectorProductos, CarritoCompra carritoCompra) {
         this.selectorProductos = selectorProductos;
         this.carritoCompra = carritoCompra;
-        this.productoDAO = productoDAO;
         this.modeloListaCarrito = new DefaultListModel<>();
         
         inicializarComponentes();
@@ -190,17 +207,17 @@ public class CatalogoFrame extends JFrame {
     }
 
     private void cargarProductos() {
-        // Obtener categorías de la base de datos
-        List<String> categorias = productoDAO.obtenerCategorias();
+        // Una sola instantánea del catálogo para todas las pestañas
+        CatalogoProductos catalogo = RepositorioProductos.getInstancia().getCatalogo();
         
-        for (String categoria : categorias) {
+        for (String categoria : catalogo.getNombresCategorias()) {
             // Usar GridBagLayout para 4 columnas con tamaño fijo
             JPanel panelCategoria = new JPanel(new GridBagLayout());
             panelCategoria.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
             panelCategoria.setBackground(new Color(245, 245, 245));
 
             // Obtener productos de esta categoría
-            List<Producto> productos = productoDAO.obtenerProductosPorCategoria(categoria);
+            List<Producto> productos = catalogo.getProductosPorCategoria(categoria);
             
             GridBagConstraints gbc = new GridBagConstraints();
             gbc.insets = new Insets(10, 10, 10, 10);
@@ -273,8 +290,14 @@ public class CatalogoFrame extends JFrame {
         botonAgregar.setFocusPainted(false);
         botonAgregar.setPreferredSize(new Dimension(180, 40));
         botonAgregar.addActionListener(e -> {
-            selectorProductos.agregarAlCarrito(producto);
-            actualizarCarrito();
+            if (selectorProductos.agregarAlCarrito(producto)) {
+                actualizarCarrito();
+            } else {
+                JOptionPane.showMessageDialog(this,
+                    "Sin existencias de " + producto.getNombre() + ".",
+                    "Sin existencias",
+                    JOptionPane.WARNING_MESSAGE);
+            }
         });
 
         panelInfo.add(botonAgregar, BorderLayout.SOUTH);
@@ -326,178 +349,198 @@ public class CatalogoFrame extends JFrame {
         }
     }
     
+    /**
+     * Proceso de pago como una cadena de etapas asíncronas: envío, tarjeta, cobro, guardado y ticket
+     * Los diálogos completan futures al cerrarse, así que ningún hilo queda esperando a que se oculten.
+     * Cancelar un diálogo o un pago no aprobado detiene la cadena con CancellationException.
+     */
     private void activarProcesoPago() {
-        // Crear un nuevo hilo para el proceso de pago
-        Thread procesoPago = new Thread(() -> {
-            try {
-                // Paso 1: Seleccionar tipo de envío y PAGAR
-                System.out.println("=== PASO 1: Seleccionando tipo de envío ===");
-                final Compra.TipoEnvio[] tipoEnvio = {null};
-                final String[] direccionEnvio = {null};
-                final double[] costoEnvio = {0.0};
-                
-                if (gestorEnvio != null) {
-                    EnvioDialog envioDialog = new EnvioDialog(this, gestorEnvio, 
-                        carritoCompra.getTotalConDescuento());
-                    SwingUtilities.invokeLater(() -> envioDialog.setVisible(true));
-                    
-                    // Esperar a que el usuario seleccione el tipo de envío y haga clic en PAGAR
-                    System.out.println("Esperando selección de envío y clic en PAGAR...");
-                    while (envioDialog.isVisible()) {
-                        Thread.sleep(100);
-                    }
-                    
-                    tipoEnvio[0] = envioDialog.getTipoEnvio();
-                    if (tipoEnvio[0] == null) {
-                        System.out.println("Usuario canceló la selección de envío");
-                        // Usuario canceló
-                        return;
-                    }
-                    direccionEnvio[0] = envioDialog.getDireccionEnvio();
-                    costoEnvio[0] = envioDialog.getCostoEnvio();
-                    System.out.println("Tipo de envío seleccionado: " + tipoEnvio[0] + ", Costo: " + costoEnvio[0]);
-                } else {
-                    tipoEnvio[0] = Compra.TipoEnvio.TIENDA;
+        if (finalizadorCompra != null) {
+            finalizadorCompra.iniciarPago();
+        }
+        ProcesoCompra proceso = new ProcesoCompra();
+        seleccionarEnvio(proceso)
+            .thenCompose(v -> seleccionarTarjeta(proceso))
+            .thenCompose(v -> cobrar(proceso))
+            .thenRunAsync(() -> guardarCompra(proceso), tareasCompra)
+            .thenRunAsync(() -> terminarCompra(proceso), SwingUtilities::invokeLater)
+            .whenComplete((v, error) -> {
+                if (finalizadorCompra != null) {
+                    finalizadorCompra.terminarPago();
                 }
-                
-                // Paso 2: Seleccionar/Registrar tarjeta
-                System.out.println("=== PASO 2: Seleccionando tarjeta ===");
-                final Tarjeta[] tarjetaSeleccionada = {null};
-                if (gestorTarjetas != null) {
-                    System.out.println("GestorTarjetas disponible, mostrando diálogo...");
-                    final TarjetaDialog[] tarjetaDialog = {new TarjetaDialog(this, gestorTarjetas)};
-                    
-                    // Mostrar diálogo de forma síncrona
-                    try {
-                        SwingUtilities.invokeAndWait(() -> {
-                            tarjetaDialog[0].setVisible(true);
-                            System.out.println("Diálogo de tarjeta visible");
-                        });
-                    } catch (Exception ex) {
-                        System.err.println("Error al mostrar diálogo de tarjeta: " + ex.getMessage());
-                        SwingUtilities.invokeLater(() -> tarjetaDialog[0].setVisible(true));
-                    }
-                    
-                    // Esperar a que el usuario seleccione una tarjeta
-                    System.out.println("Esperando selección de tarjeta...");
-                    while (tarjetaDialog[0].isVisible()) {
-                        Thread.sleep(100);
-                    }
-                    
-                    tarjetaSeleccionada[0] = tarjetaDialog[0].getTarjetaSeleccionada();
-                    System.out.println("Tarjeta seleccionada: " + (tarjetaSeleccionada[0] != null ? tarjetaSeleccionada[0].toString() : "null"));
-                    if (tarjetaSeleccionada[0] == null) {
-                        System.out.println("Usuario canceló la selección de tarjeta - ABORTANDO PAGO");
-                        SwingUtilities.invokeLater(() -> 
-                            JOptionPane.showMessageDialog(this, 
-                                "Pago cancelado. Debe seleccionar una tarjeta para continuar.", 
-                                "Pago Cancelado", 
-                                JOptionPane.WARNING_MESSAGE));
-                        return;
-                    }
-                } else {
-                    System.out.println("GestorTarjetas no disponible, continuando sin tarjeta");
+                Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (causa instanceof CancellationException) {
+                    LOG.info("Proceso de pago detenido: {}", causa.getMessage());
+                } else if (causa != null) {
+                    LOG.error("Error en proceso de pago", causa);
                 }
-                
-                System.out.println("=== PROCESANDO PAGO ===");
-                System.out.println("Estado actual:");
-                System.out.println("  - gestorTarjetas: " + (gestorTarjetas != null ? "disponible" : "null"));
-                System.out.println("  - tarjetaSeleccionada: " + (tarjetaSeleccionada[0] != null ? tarjetaSeleccionada[0].toString() : "null"));
-                
-                // Paso 3: Procesar pago con tarjeta
-                double montoTotal = carritoCompra.getTotalConDescuento() + costoEnvio[0];
-                System.out.println("=== PASO 3: Procesando pago ===");
-                System.out.println("Monto total: " + montoTotal);
-                boolean pagoExitoso = false;
-                if (gestorTarjetas != null && tarjetaSeleccionada[0] != null) {
-                    System.out.println("Procesando pago con tarjeta ID: " + tarjetaSeleccionada[0].getId());
-                    pagoExitoso = gestorTarjetas.procesarPagoConTarjeta(
-                        tarjetaSeleccionada[0].getId(), montoTotal);
-                    System.out.println("Resultado del pago: " + pagoExitoso);
-                } else {
-                    System.out.println("Procesando pago en efectivo (gestorTarjetas o tarjeta no disponible)");
-                    // Simular pago en efectivo
-                    pagoExitoso = simularProcesamientoPago();
-                    System.out.println("Resultado del pago: " + pagoExitoso);
+            });
+    }
+
+    /**
+     * Paso 1: tipo de envío y dirección
+     */
+    private CompletableFuture<Void> seleccionarEnvio(ProcesoCompra proceso) {
+        if (gestorEnvio == null) {
+            proceso.tipoEnvio = Compra.TipoEnvio.TIENDA;
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture
+            .supplyAsync(() -> new EnvioDialog(this, gestorEnvio, carritoCompra.getTotalConDescuento()), SwingUtilities::invokeLater)
+            .thenCompose(envioDialog -> envioDialog.mostrar().thenAccept(tipoEnvio -> {
+                if (tipoEnvio == null) {
+                    throw new CancellationException("Usuario canceló la selección de envío");
                 }
-                
-                System.out.println("Pago procesado. Resultado: " + pagoExitoso);
-                
-                if (pagoExitoso) {
-                    System.out.println("=== PAGO EXITOSO - GUARDANDO COMPRA ===");
-                    // Paso 4: Generar folio y guardar compra
-                    final String[] folio = {null};
-                    if (gestorHistorial != null) {
-                        folio[0] = gestorHistorial.generarFolio();
-                    } else {
-                        folio[0] = "SIAP-" + System.currentTimeMillis();
-                    }
-                    
-                    Compra compraGuardada = null;
-                    if (finalizadorCompra != null) {
-                        Integer tarjetaId = tarjetaSeleccionada[0] != null ? tarjetaSeleccionada[0].getId() : null;
-                        System.out.println("Llamando a guardarCompra con:");
-                        System.out.println("  - Folio: " + folio[0]);
-                        System.out.println("  - Tipo Envío: " + tipoEnvio[0]);
-                        System.out.println("  - Dirección: " + (direccionEnvio[0] != null ? direccionEnvio[0] : "N/A"));
-                        System.out.println("  - Costo Envío: " + costoEnvio[0]);
-                        System.out.println("  - Tarjeta ID: " + tarjetaId);
-                        compraGuardada = finalizadorCompra.guardarCompra(
-                            folio[0], tipoEnvio[0], direccionEnvio[0], costoEnvio[0], tarjetaId);
-                        if (compraGuardada == null) {
-                            System.err.println("ERROR: No se pudo guardar la compra. compraGuardada es null");
-                            SwingUtilities.invokeLater(() -> 
-                                JOptionPane.showMessageDialog(this, 
-                                    "Error al guardar la compra en el historial.\n" +
-                                    "La compra se completó pero no se guardó en la base de datos.", 
-                                    "Advertencia", 
-                                    JOptionPane.WARNING_MESSAGE));
-                        } else {
-                            System.out.println("Compra guardada exitosamente en el historial");
-                        }
-                    } else {
-                        System.err.println("ERROR: finalizadorCompra es null, no se puede guardar la compra");
-                    }
-                    
-                    // Paso 6: Mostrar mensaje de pago exitoso
-                    SwingUtilities.invokeLater(() -> {
+                proceso.tipoEnvio = tipoEnvio;
+                proceso.direccionEnvio = envioDialog.getDireccionEnvio();
+                proceso.costoEnvio = envioDialog.getCostoEnvio();
+                LOG.depuracion("Envío seleccionado: {}, costo {}", tipoEnvio, proceso.costoEnvio);
+            }));
+    }
+
+    /**
+     * Paso 2: seleccionar o registrar tarjeta; sin GestorTarjetas el pago es en efectivo
+     */
+    private CompletableFuture<Void> seleccionarTarjeta(ProcesoCompra proceso) {
+        if (gestorTarjetas == null) {
+            LOG.depuracion("GestorTarjetas no disponible, continuando sin tarjeta");
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture
+            .supplyAsync(() -> new TarjetaDialog(this, gestorTarjetas), SwingUtilities::invokeLater)
+            .thenCompose(TarjetaDialog::mostrar)
+            .thenAccept(tarjeta -> {
+                if (tarjeta == null) {
+                    SwingUtilities.invokeLater(() ->
                         JOptionPane.showMessageDialog(this,
-                            "¡Pago procesado exitosamente!\n\n" +
-                            "Su compra ha sido confirmada y guardada.",
-                            "Pago Exitoso",
-                            JOptionPane.INFORMATION_MESSAGE);
-                    });
-                    
-                    // Paso 7: Generar ticket (con folio y datos de envío)
-                    final Compra.TipoEnvio tipoEnvioFinal = tipoEnvio[0];
-                    final String direccionEnvioFinal = direccionEnvio[0];
-                    final double costoEnvioFinal = costoEnvio[0];
-                    SwingUtilities.invokeLater(() -> generarTicket(folio[0], tipoEnvioFinal, direccionEnvioFinal, costoEnvioFinal));
-                    
-                    // Paso 8: Limpiar carrito
-                    carritoCompra.limpiar();
-                    SwingUtilities.invokeLater(() -> actualizarCarrito());
-                    
-                    // Paso 9: Mostrar confirmación final
-                    final String folioFinal = folio[0];
-                    SwingUtilities.invokeLater(() -> mostrarConfirmacionCompra(folioFinal));
-                    
-                    // Paso 10: Cerrar sesión después de un delay
-                    cerrarSesionDespuesDeCompra();
-                } else {
-                    SwingUtilities.invokeLater(() -> 
-                        JOptionPane.showMessageDialog(this, 
-                            "El pago no pudo ser procesado", 
-                            "Error de Pago", 
-                            JOptionPane.ERROR_MESSAGE));
+                            "Pago cancelado. Debe seleccionar una tarjeta para continuar.",
+                            "Pago Cancelado",
+                            JOptionPane.WARNING_MESSAGE));
+                    throw new CancellationException("Usuario canceló la selección de tarjeta");
                 }
-            } catch (Exception e) {
-                System.err.println("Error en proceso de pago: " + e.getMessage());
-                e.printStackTrace();
+                proceso.tarjeta = tarjeta;
+                LOG.depuracion("Tarjeta seleccionada: {}", tarjeta);
+            });
+    }
+
+    /**
+     * Paso 3: cobrar con tarjeta o en efectivo; un pago no aprobado detiene la cadena
+     */
+    private CompletableFuture<Void> cobrar(ProcesoCompra proceso) {
+        long montoTotal = carritoCompra.getTotalConDescuentoCentavos() + Centavos.desdePesos(proceso.costoEnvio);
+        proceso.clave = clavePago(proceso, montoTotal);
+        // Un reintento del mismo checkout recibe el cobro ya aprobado en vez de cobrar otra vez
+        CompletableFuture<ResultadoPago> pago = cobrarUnaVez(proceso.clave, () -> {
+            if (gestorTarjetas != null && proceso.tarjeta != null) {
+                LOG.depuracion("Cobrando {} centavos con la tarjeta {}", montoTotal, proceso.tarjeta.getId());
+                return gestorTarjetas.procesarPago(proceso.tarjeta.getId(), montoTotal, proceso.clave);
             }
-        }, "ProcesoPago");
-        
-        procesoPago.start();
+            LOG.depuracion("Cobrando {} centavos en efectivo", montoTotal);
+            return procesarPagoEfectivo(montoTotal, proceso.clave);
+        });
+        return pago.thenAccept(resultadoPago -> {
+            LOG.depuracion("Pago procesado: {}", resultadoPago);
+            if (!resultadoPago.isAprobado()) {
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this,
+                        "El pago no pudo ser procesado\n\n" + resultadoPago.getMensaje(),
+                        "Error de Pago",
+                        JOptionPane.ERROR_MESSAGE));
+                throw new CancellationException("Pago no aprobado: " + resultadoPago.getEstado());
+            }
+        });
+    }
+
+    private CompletableFuture<ResultadoPago> cobrarUnaVez(String clave, Supplier<CompletableFuture<ResultadoPago>> cobro) {
+        return finalizadorCompra != null ? finalizadorCompra.cobrarUnaVez(clave, cobro) : cobro.get();
+    }
+
+    /**
+     * Clave de idempotencia del checkout: la misma mientras no se guarde una compra y el contenido no cambie
+     * Así volver a pagar el mismo carrito después de un tiempo agotado no cobra ni guarda dos veces.
+     */
+    private synchronized String clavePago(ProcesoCompra proceso, long montoTotal) {
+        StringBuilder contenido = new StringBuilder();
+        for (ItemCarrito item : carritoCompra.getItems()) {
+            contenido.append(item.getProducto().getId()).append('x').append(item.getCantidad()).append(';');
+        }
+        contenido.append(proceso.tipoEnvio).append(';')
+            .append(proceso.tarjeta != null ? proceso.tarjeta.getId() : "EFECTIVO").append(';')
+            .append(montoTotal);
+        String actual = contenido.toString();
+        if (clavePago == null || !actual.equals(contenidoClavePago)) {
+            clavePago = UUID.randomUUID().toString();
+            contenidoClavePago = actual;
+        }
+        return clavePago;
+    }
+
+    private synchronized void olvidarClavePago() {
+        clavePago = null;
+        contenidoClavePago = null;
+    }
+
+    /**
+     * Paso 4: generar folio, guardar la compra (fuera del EDT: usa la base de datos)
+     * Reintenta con la misma clave: si el intento anterior sí se guardó, responde con esa compra.
+     */
+    private void guardarCompra(ProcesoCompra proceso) {
+        proceso.folio = gestorHistorial != null ? gestorHistorial.generarFolio() : GeneradorFolios.getInstancia().siguiente();
+
+        if (finalizadorCompra != null) {
+            Integer tarjetaId = proceso.tarjeta != null ? proceso.tarjeta.getId() : null;
+            Compra compraGuardada = null;
+            for (int intento = 1; compraGuardada == null && intento <= INTENTOS_GUARDADO; intento++) {
+                if (intento > 1) {
+                    LOG.aviso("Reintentando guardar la compra {} (intento {})", proceso.folio, intento);
+                }
+                compraGuardada = finalizadorCompra.guardarCompra(proceso.clave,
+                    proceso.folio, proceso.tipoEnvio, proceso.direccionEnvio, proceso.costoEnvio, tarjetaId);
+            }
+            proceso.guardada = compraGuardada != null;
+            if (compraGuardada != null && !compraGuardada.getFolio().equals(proceso.folio)) {
+                // La guardó un intento anterior de este checkout
+                proceso.folio = compraGuardada.getFolio();
+                proceso.repetida = true;
+            }
+            if (compraGuardada == null) {
+                LOG.error("No se pudo guardar la compra {}", proceso.folio);
+                SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(this,
+                        "Error al guardar la compra en el historial.\n" +
+                        "La compra se completó pero no se guardó en la base de datos.",
+                        "Advertencia",
+                        JOptionPane.WARNING_MESSAGE));
+            }
+        } else {
+            LOG.error("Sin FinalizadorCompra, no se puede guardar la compra {}", proceso.folio);
+        }
+    }
+
+    /**
+     * Paso 5 (en el EDT): confirmación, ticket y opciones para continuar
+     */
+    private void terminarCompra(ProcesoCompra proceso) {
+        JOptionPane.showMessageDialog(this,
+            "¡Pago procesado exitosamente!\n\n" +
+            "Su compra ha sido confirmada y guardada.",
+            "Pago Exitoso",
+            JOptionPane.INFORMATION_MESSAGE);
+        // El ticket lee las líneas del carrito: se limpia después de generarlo
+        generarTicket(proceso.folio, proceso.tipoEnvio, proceso.direccionEnvio, proceso.costoEnvio);
+        // Si la compra se guardó el stock ya se descontó: las reservas se confirman en vez de devolverse.
+        // Una compra repetida descontó el stock del intento anterior, no el de estas reservas.
+        if (proceso.guardada && !proceso.repetida) {
+            carritoCompra.limpiarVendido();
+        } else {
+            carritoCompra.limpiar();
+        }
+        if (proceso.guardada) {
+            olvidarClavePago();
+        }
+        actualizarCarrito();
+        mostrarConfirmacionCompra(proceso.folio);
+        cerrarSesionDespuesDeCompra();
     }
     
     private void mostrarResumenCompra() {
@@ -522,25 +565,23 @@ public class CatalogoFrame extends JFrame {
             JOptionPane.INFORMATION_MESSAGE);
     }
     
-    private boolean simularProcesamientoPago() {
-        // Mostrar mensaje de procesamiento simple
+    private CompletableFuture<ResultadoPago> procesarPagoEfectivo(long montoCentavos, String clave) {
+        // Mensaje no modal: la espera la marca la pasarela, no un tiempo fijo
+        JOptionPane aviso = new JOptionPane("Procesando su pago...\n\nPor favor espere un momento.",
+            JOptionPane.INFORMATION_MESSAGE);
+        JDialog[] dialogo = {null};
         SwingUtilities.invokeLater(() -> {
-            JOptionPane.showMessageDialog(this, 
-                "Procesando su pago...\n\nPor favor espere un momento.", 
-                "Procesando Pago", 
-                JOptionPane.INFORMATION_MESSAGE);
+            dialogo[0] = aviso.createDialog(this, "Procesando Pago");
+            dialogo[0].setModal(false);
+            dialogo[0].setVisible(true);
         });
         
-        // Simular delay de procesamiento
-        try {
-            Thread.sleep(2000); // Reducido a 2 segundos
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
-        }
-        
-        // Simular éxito del pago (90% de probabilidad)
-        return Math.random() > 0.1;
+        return ProcesadorPagos.getInstancia().procesar(null, montoCentavos, clave)
+            .whenComplete((resultado, error) -> SwingUtilities.invokeLater(() -> {
+                if (dialogo[0] != null) {
+                    dialogo[0].dispose();
+                }
+            }));
     }
     
     private void generarTicket() {
@@ -741,43 +782,40 @@ public class CatalogoFrame extends JFrame {
     }
     
     private void cerrarSesionDespuesDeCompra() {
-        // Esperar un poco antes de mostrar opciones
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        // Mostrar opciones después de un momento sin detener el EDT ni ocupar un hilo durmiendo
+        Timer espera = new Timer(2000, e -> mostrarOpcionesDespuesDeCompra());
+        espera.setRepeats(false);
+        espera.start();
+    }
+
+    private void mostrarOpcionesDespuesDeCompra() {
+        int opcion = JOptionPane.showOptionDialog(this,
+            "¿Qué desea hacer ahora?",
+            "Compra Completada",
+            JOptionPane.YES_NO_CANCEL_OPTION,
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            new String[]{"Nueva Compra", "Ver Ticket", "Salir"},
+            "Nueva Compra");
+        
+        switch (opcion) {
+            case 0: // Nueva Compra
+                // Limpiar carrito y continuar
+                carritoCompra.limpiar();
+                actualizarCarrito();
+                break;
+            case 1: // Ver Ticket
+                generarTicket();
+                break;
+            case 2: // Salir
+                System.exit(0);
+                break;
+            default:
+                // Nueva Compra por defecto
+                carritoCompra.limpiar();
+                actualizarCarrito();
+                break;
         }
-        
-        // Mostrar opciones al usuario
-        SwingUtilities.invokeLater(() -> {
-            int opcion = JOptionPane.showOptionDialog(this,
-                "¿Qué desea hacer ahora?",
-                "Compra Completada",
-                JOptionPane.YES_NO_CANCEL_OPTION,
-                JOptionPane.QUESTION_MESSAGE,
-                null,
-                new String[]{"Nueva Compra", "Ver Ticket", "Salir"},
-                "Nueva Compra");
-            
-            switch (opcion) {
-                case 0: // Nueva Compra
-                    // Limpiar carrito y continuar
-                    carritoCompra.limpiar();
-                    actualizarCarrito();
-                    break;
-                case 1: // Ver Ticket
-                    generarTicket();
-                    break;
-                case 2: // Salir
-                    System.exit(0);
-                    break;
-                default:
-                    // Nueva Compra por defecto
-                    carritoCompra.limpiar();
-                    actualizarCarrito();
-                    break;
-            }
-        });
     }
 
     /**
@@ -833,4 +871,19 @@ public class CatalogoFrame extends JFrame {
             return this;
         }
     }
+
+    /**
+     * Datos que las etapas del proceso de pago van completando
+     * Cada etapa empieza cuando termina la anterior (el future las ordena), así que ve lo que esta escribió.
+     */
+    private static final class ProcesoCompra {
+        private Compra.TipoEnvio tipoEnvio;
+        private String direccionEnvio;
+        private double costoEnvio;
+        private Tarjeta tarjeta;
+        private String clave;
+        private String folio;
+        private boolean guardada;
+        private boolean repetida;
+    }
 }
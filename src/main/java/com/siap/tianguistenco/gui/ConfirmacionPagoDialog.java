@@ -1,5 +1,6 @@
 package com.siap.tianguistenco.gui;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Compra;
 import com.siap.tianguistenco.model.ItemCarrito;
 import com.siap.tianguistenco.model.Tarjeta;
@@ -12,6 +13,8 @@ import java.text.DecimalFormat;
  * Diálogo de confirmación de pago con resumen y botón PAGAR
  */
 public class ConfirmacionPagoDialog extends JDialog {
+    private static final Bitacora LOG = Bitacora.de(ConfirmacionPagoDialog.class);
+
     private boolean pagoConfirmado = false;
     private final DecimalFormat formatoMoneda = new DecimalFormat("$#,##0.00");
     
@@ -19,9 +22,9 @@ public class ConfirmacionPagoDialog extends JDialog {
                                   double total, double descuento, double costoEnvio,
                                   Tarjeta tarjeta, Compra.TipoEnvio tipoEnvio, String direccionEnvio) {
         super(parent, "Confirmar Pago", true);
-        System.out.println("ConfirmacionPagoDialog creado");
+        LOG.depuracion("ConfirmacionPagoDialog creado");
         inicializarComponentes(items, total, descuento, costoEnvio, tarjeta, tipoEnvio, direccionEnvio);
-        System.out.println("ConfirmacionPagoDialog inicializado");
+        LOG.depuracion("ConfirmacionPagoDialog inicializado");
     }
     
     private void inicializarComponentes(java.util.List<ItemCarrito> items, double total, 
@@ -104,11 +107,11 @@ public class ConfirmacionPagoDialog extends JDialog {
         botonPagar.setFocusPainted(false);
         botonPagar.setPreferredSize(new Dimension(150, 45));
         botonPagar.addActionListener(e -> {
-            System.out.println("Botón PAGAR presionado");
+            LOG.depuracion("Botón PAGAR presionado");
             pagoConfirmado = true;
-            System.out.println("pagoConfirmado establecido a: " + pagoConfirmado);
+            LOG.depuracion("pagoConfirmado establecido a: {}", pagoConfirmado);
             dispose();
-            System.out.println("Diálogo cerrado");
+            LOG.depuracion("Diálogo cerrado");
         });
         
         JButton botonCancelar = new JButton("Cancelar");
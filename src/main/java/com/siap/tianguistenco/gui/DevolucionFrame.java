@@ -195,7 +195,7 @@ public class DevolucionFrame extends JFrame {
 
     private void cargarHistorialCompras() {
         modeloHistorial.setRowCount(0);
-        List<Compra> compras = gestorHistorial.obtenerHistorialCompras();
+        List<Compra> compras = gestorHistorial.obtenerEncabezadosCompras();
         for (Compra compra : compras) {
             modeloHistorial.addRow(new Object[]{
                 compra.getFolio(),
@@ -1,15 +1,23 @@
 package com.siap.tianguistenco.gui;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Compra;
 import com.siap.tianguistenco.threads.GestorEnvio;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Diálogo para seleccionar tipo de envío y dirección con formulario completo
+ * Al cerrarse completa un future con el tipo de envío elegido (null si se canceló), así quien lo abre
+ * no tiene que revisar si sigue visible.
  */
 public class EnvioDialog extends JDialog {
+    private static final Bitacora LOG = Bitacora.de(EnvioDialog.class);
+
     private Compra.TipoEnvio tipoEnvioSeleccionado;
     private String direccionEnvio;
     private double costoEnvio;
@@ -30,6 +38,7 @@ public class EnvioDialog extends JDialog {
     private JLabel etiquetaCostoEnvio;
     private JButton botonAceptar;
     private JButton botonCancelar;
+    private final CompletableFuture<Compra.TipoEnvio> resultado = new CompletableFuture<>();
 
     public EnvioDialog(Frame parent, GestorEnvio gestorEnvio, double montoTotal) {
         super(parent, "Tipo de Envío", true);
@@ -45,6 +54,14 @@ public class EnvioDialog extends JDialog {
         setSize(550, 600);
         setLocationRelativeTo(getParent());
         setResizable(false);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        // Cerrar la ventana equivale a cancelar
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                tipoEnvioSeleccionado = null;
+            }
+        });
 
         JPanel panelPrincipal = new JPanel(new BorderLayout());
         panelPrincipal.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
@@ -222,7 +239,7 @@ public class EnvioDialog extends JDialog {
                 tipoEnvioSeleccionado = Compra.TipoEnvio.TIENDA;
                 direccionEnvio = null;
             }
-            System.out.println("Botón PAGAR presionado en diálogo de envío");
+            LOG.depuracion("Botón PAGAR presionado en diálogo de envío");
             dispose();
         });
 
@@ -312,6 +329,21 @@ public class EnvioDialog extends JDialog {
         }
     }
 
+    /**
+     * Muestra el diálogo sin bloquear a quien llama
+     * @return future que se completa al cerrarse con el tipo de envío elegido, o null si se canceló
+     */
+    public CompletableFuture<Compra.TipoEnvio> mostrar() {
+        SwingUtilities.invokeLater(() -> setVisible(true));
+        return resultado;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        resultado.complete(tipoEnvioSeleccionado);
+    }
+
     public Compra.TipoEnvio getTipoEnvio() {
         return tipoEnvioSeleccionado;
     }
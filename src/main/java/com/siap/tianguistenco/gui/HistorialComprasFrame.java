@@ -1,5 +1,8 @@
 package com.siap.tianguistenco.gui;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.datos.CursorCompras;
+import com.siap.tianguistenco.datos.PaginaCompras;
 import com.siap.tianguistenco.model.Compra;
 import com.siap.tianguistenco.model.CompraItem;
 import com.siap.tianguistenco.threads.GestorHistorial;
@@ -9,20 +12,32 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.text.DecimalFormat;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Ventana para ver el historial de compras del usuario
  */
 public class HistorialComprasFrame extends JFrame {
+    private static final Bitacora LOG = Bitacora.de(HistorialComprasFrame.class);
+
+    private static final int TAMANO_PAGINA = 50;
+    private static final int FILAS_ANTICIPACION = 15;
     private GestorHistorial gestorHistorial;
     private JTable tablaCompras;
+    private JScrollPane scrollTabla;
     private DefaultTableModel modeloTabla;
     private JTextArea areaDetalles;
     private JButton botonVerDetalles;
     private JButton botonDevolver;
     private JButton botonCerrar;
     private final DecimalFormat formatoMoneda = new DecimalFormat("$#,##0.00");
+    private final DateTimeFormatter formatoFecha = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    // Estado de la paginación; solo se modifica en el hilo de eventos de Swing
+    private CursorCompras cursorSiguiente;
+    private boolean hayMasPaginas;
+    private boolean cargandoPagina;
+    private int generacion;
 
     public HistorialComprasFrame(GestorHistorial gestorHistorial) {
         this.gestorHistorial = gestorHistorial;
@@ -47,7 +62,9 @@ public class HistorialComprasFrame extends JFrame {
         tablaCompras = new JTable(modeloTabla);
         tablaCompras.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         tablaCompras.getTableHeader().setReorderingAllowed(false);
-        JScrollPane scrollTabla = new JScrollPane(tablaCompras);
+        scrollTabla = new JScrollPane(tablaCompras);
+        // Pedir la siguiente página cuando el usuario se acerca al final de la tabla
+        scrollTabla.getVerticalScrollBar().addAdjustmentListener(e -> verificarDesplazamiento());
 
         // Panel inferior con detalles
         JPanel panelDetalles = new JPanel(new BorderLayout());
@@ -99,21 +116,76 @@ public class HistorialComprasFrame extends JFrame {
         setLocationRelativeTo(null);
     }
 
+    /**
+     * Reinicia la tabla y carga la primera página del historial
+     */
     private void cargarCompras() {
         modeloTabla.setRowCount(0);
-        List<Compra> compras = gestorHistorial.obtenerHistorialCompras();
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-
-        for (Compra compra : compras) {
-            Object[] fila = {
-                compra.getFolio(),
-                compra.getFecha().format(formatter),
-                formatoMoneda.format(compra.getTotalConDescuento()),
-                compra.getEstado(),
-                compra.getTipoEnvio().name()
-            };
-            modeloTabla.addRow(fila);
+        cursorSiguiente = null;
+        hayMasPaginas = true;
+        cargandoPagina = false;
+        // Las páginas que lleguen de una carga anterior se descartan
+        generacion++;
+        cargarSiguientePagina();
+    }
+
+    /**
+     * Lee la siguiente página en segundo plano y la agrega al final de la tabla
+     */
+    private void cargarSiguientePagina() {
+        if (cargandoPagina || !hayMasPaginas) {
+            return;
+        }
+        cargandoPagina = true;
+        final int generacionPagina = generacion;
+        final CursorCompras desde = cursorSiguiente;
+
+        new SwingWorker<PaginaCompras, Void>() {
+            @Override
+            protected PaginaCompras doInBackground() {
+                return gestorHistorial.obtenerPaginaHistorial(desde, TAMANO_PAGINA);
+            }
+
+            @Override
+            protected void done() {
+                if (generacionPagina != generacion) {
+                    return;
+                }
+                cargandoPagina = false;
+                try {
+                    PaginaCompras pagina = get();
+                    for (Compra compra : pagina.getCompras()) {
+                        Object[] fila = {
+                            compra.getFolio(),
+                            compra.getFecha().format(formatoFecha),
+                            formatoMoneda.format(compra.getTotalConDescuento()),
+                            compra.getEstado(),
+                            compra.getTipoEnvio().name()
+                        };
+                        modeloTabla.addRow(fila);
+                    }
+                    cursorSiguiente = pagina.getSiguiente();
+                    hayMasPaginas = pagina.hayMas();
+                    // Si la página no llena la vista no habrá desplazamiento que dispare la siguiente
+                    SwingUtilities.invokeLater(HistorialComprasFrame.this::verificarDesplazamiento);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    hayMasPaginas = false;
+                    LOG.error("Error al cargar historial", e.getCause());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Carga la siguiente página si la parte visible está cerca de la última fila cargada
+     */
+    private void verificarDesplazamiento() {
+        JScrollBar barra = scrollTabla.getVerticalScrollBar();
+        int margen = FILAS_ANTICIPACION * tablaCompras.getRowHeight();
+        if (barra.getValue() + barra.getVisibleAmount() >= barra.getMaximum() - margen) {
+            cargarSiguientePagina();
         }
     }
 
@@ -1,22 +1,28 @@
 package com.siap.tianguistenco.gui;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.Tarjeta;
 import com.siap.tianguistenco.threads.GestorTarjetas;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Diálogo para seleccionar o registrar una tarjeta de pago
+ * Al cerrarse completa un future con la tarjeta seleccionada (null si se canceló o se cerró la ventana).
  */
 public class TarjetaDialog extends JDialog {
+    private static final Bitacora LOG = Bitacora.de(TarjetaDialog.class);
+
     private GestorTarjetas gestorTarjetas;
     private Tarjeta tarjetaSeleccionada;
     private JComboBox<Tarjeta> comboBoxTarjetas;
     private JButton botonRegistrar;
     private JButton botonSeleccionar;
     private JButton botonCancelar;
+    private final CompletableFuture<Tarjeta> resultado = new CompletableFuture<>();
 
     public TarjetaDialog(Frame parent, GestorTarjetas gestorTarjetas) {
         super(parent, "Seleccionar Tarjeta de Pago", true);
@@ -29,6 +35,7 @@ public class TarjetaDialog extends JDialog {
         setSize(500, 300);
         setLocationRelativeTo(getParent());
         setResizable(false);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
         JPanel panelPrincipal = new JPanel(new BorderLayout());
         panelPrincipal.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
@@ -85,7 +92,7 @@ public class TarjetaDialog extends JDialog {
         botonSeleccionar.addActionListener(e -> {
             if (comboBoxTarjetas.getSelectedItem() != null) {
                 tarjetaSeleccionada = (Tarjeta) comboBoxTarjetas.getSelectedItem();
-                System.out.println("Tarjeta seleccionada: " + tarjetaSeleccionada.toString());
+                LOG.depuracion("Tarjeta seleccionada: {}", tarjetaSeleccionada);
                 dispose();
             } else {
                 JOptionPane.showMessageDialog(this, "Por favor seleccione una tarjeta", 
@@ -224,6 +231,21 @@ public class TarjetaDialog extends JDialog {
         dialogRegistro.setVisible(true);
     }
 
+    /**
+     * Muestra el diálogo sin bloquear a quien llama
+     * @return future que se completa al cerrarse con la tarjeta seleccionada, o null si se canceló
+     */
+    public CompletableFuture<Tarjeta> mostrar() {
+        SwingUtilities.invokeLater(() -> setVisible(true));
+        return resultado;
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        resultado.complete(tarjetaSeleccionada);
+    }
+
     public Tarjeta getTarjetaSeleccionada() {
         return tarjetaSeleccionada;
     }
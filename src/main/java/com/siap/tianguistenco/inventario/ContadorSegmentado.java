@@ -0,0 +1,100 @@
+package com.siap.tianguistenco.inventario;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntSupplier;
+
+/**
+ * Existencias disponibles de un producto repartidas en varias celdas que nunca bajan de cero
+ * Cada hilo empieza por su propia celda, así muchas reservas del mismo producto no compiten por un solo
+ * valor atómico. Si su celda no alcanza toma de las demás; si entre todas no alcanza, devuelve lo que tomó
+ * y la reserva falla. Como ninguna celda queda negativa, la suma nunca permite vender de más.
+ * Las celdas están separadas por 64 bytes para que no compartan línea de caché.
+ */
+final class ContadorSegmentado {
+    private static final int CELDAS = celdas();
+    private static final int SEPARACION = 16;
+
+    private final AtomicIntegerArray valores = new AtomicIntegerArray(CELDAS * SEPARACION);
+
+    ContadorSegmentado(int inicial) {
+        repartir(Math.max(0, inicial));
+    }
+
+    private static int celdas() {
+        int procesadores = Runtime.getRuntime().availableProcessors();
+        return Math.max(2, Integer.highestOneBit(Math.min(procesadores, 32) - 1) << 1);
+    }
+
+    /**
+     * Toma cantidad piezas, todas o ninguna
+     */
+    boolean tomar(int cantidad) {
+        int inicio = celdaDelHilo();
+        int tomado = 0;
+        for (int k = 0; k < CELDAS && tomado < cantidad; k++) {
+            int indice = ((inicio + k) & (CELDAS - 1)) * SEPARACION;
+            while (true) {
+                int actual = valores.get(indice);
+                if (actual == 0) {
+                    break;
+                }
+                int parte = Math.min(actual, cantidad - tomado);
+                if (valores.compareAndSet(indice, actual, actual - parte)) {
+                    tomado += parte;
+                    break;
+                }
+            }
+        }
+        if (tomado < cantidad) {
+            if (tomado > 0) {
+                devolver(tomado);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Regresa piezas tomadas; excluye a fijar() para que lo devuelto no se cuente dos veces
+     */
+    synchronized void devolver(int cantidad) {
+        valores.getAndAdd(celdaDelHilo() * SEPARACION, cantidad);
+    }
+
+    /**
+     * Reemplaza el total: vacía las celdas y reparte el valor que da total, calculado ya con las celdas vacías
+     * devolver() no puede correr en medio. Si devolvió antes, su parte se pierde al vaciar o ya está descontada
+     * en total; si devuelve después, se suma a un total que aún la contaba como tomada. Lo que tomar() saque
+     * mientras se vacían las celdas se pierde, así que bajo concurrencia el resultado puede quedar corto pero
+     * nunca de más.
+     */
+    synchronized void fijar(IntSupplier total) {
+        for (int i = 0; i < CELDAS; i++) {
+            valores.getAndSet(i * SEPARACION, 0);
+        }
+        repartir(Math.max(0, total.getAsInt()));
+    }
+
+    int suma() {
+        int suma = 0;
+        for (int i = 0; i < CELDAS; i++) {
+            suma += valores.get(i * SEPARACION);
+        }
+        return suma;
+    }
+
+    private void repartir(int total) {
+        for (int i = 0; i < CELDAS; i++) {
+            int parte = total / CELDAS + (i < total % CELDAS ? 1 : 0);
+            if (parte > 0) {
+                valores.getAndAdd(i * SEPARACION, parte);
+            }
+        }
+    }
+
+    private static int celdaDelHilo() {
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (CELDAS - 1);
+    }
+}
@@ -0,0 +1,145 @@
+package com.siap.tianguistenco.inventario;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Existencias en memoria con reserva al agregar al carrito
+ * Por producto lleva lo disponible (stock menos lo reservado por carritos) en un ContadorSegmentado y lo
+ * reservado en un LongAdder. La primera vez que se pide un producto su disponible se toma del stock del
+ * catálogo. Reservar no toma candados; liberar toma el monitor del contador del producto, que solo comparte
+ * con fijarExistencia(). Al registrar una compra, LibroInventario revisa con el candado de escritura de SQLite
+ * tomado que el stock (productos.stock más lo pendiente en el libro) alcance y registra la salida; el carrito
+ * confirma sus reservas, que dejan de contar como reservadas sin volver a lo disponible.
+ */
+public final class Inventario implements CarritoCompra.Existencias {
+    private static final Bitacora LOG = Bitacora.de(Inventario.class);
+
+    private static Inventario instancia;
+
+    // Se resuelve en la primera reserva: la instancia compartida se crea antes de inicializar la base de datos
+    private final Supplier<RepositorioProductos> repositorio;
+    private final ConcurrentHashMap<String, Existencia> existencias = new ConcurrentHashMap<>();
+
+    // Métricas
+    private final LongAdder reservas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder piezasVendidas = new LongAdder();
+
+    public Inventario(RepositorioProductos repositorio) {
+        this(() -> repositorio);
+    }
+
+    private Inventario(Supplier<RepositorioProductos> repositorio) {
+        this.repositorio = repositorio;
+    }
+
+    public static synchronized Inventario getInstancia() {
+        if (instancia == null) {
+            instancia = new Inventario(RepositorioProductos::getInstancia);
+        }
+        return instancia;
+    }
+
+    @Override
+    public boolean reservar(String productoId, int cantidad) {
+        Existencia existencia = existencia(productoId);
+        if (existencia == null) {
+            rechazadas.increment();
+            return false;
+        }
+        // Lo reservado sube antes de tomar: fijarExistencia() puede quedar corto, nunca de más
+        existencia.reservado.add(cantidad);
+        if (!existencia.disponible.tomar(cantidad)) {
+            existencia.reservado.add(-cantidad);
+            rechazadas.increment();
+            return false;
+        }
+        reservas.increment();
+        return true;
+    }
+
+    @Override
+    public void liberar(String productoId, int cantidad) {
+        Existencia existencia = existencias.get(productoId);
+        if (existencia != null) {
+            existencia.disponible.devolver(cantidad);
+            existencia.reservado.add(-cantidad);
+        }
+    }
+
+    @Override
+    public void confirmar(String productoId, int cantidad) {
+        Existencia existencia = existencias.get(productoId);
+        if (existencia != null) {
+            existencia.reservado.add(-cantidad);
+            piezasVendidas.add(cantidad);
+        }
+    }
+
+    /**
+     * Piezas que todavía se pueden reservar
+     */
+    public int getDisponible(String productoId) {
+        Existencia existencia = existencia(productoId);
+        return existencia != null ? existencia.disponible.suma() : 0;
+    }
+
+    /**
+     * Piezas que están en carritos sin comprar
+     */
+    public int getReservado(String productoId) {
+        Existencia existencia = existencias.get(productoId);
+        return existencia != null ? existencia.reservado.intValue() : 0;
+    }
+
+    /**
+     * Ajusta lo disponible a un stock leído de la base de datos, descontando lo reservado
+     * Se usa cuando el stock cambió por fuera de las compras (o una compra encontró menos stock del esperado).
+     */
+    public void fijarExistencia(String productoId, int stock) {
+        Existencia existencia = existencias.get(productoId);
+        if (existencia == null) {
+            return;
+        }
+        // Lo reservado se lee después de vaciar las celdas (ver reservar())
+        existencia.disponible.fijar(() -> stock - existencia.reservado.intValue());
+        LOG.info("Existencia de {} ajustada: stock={}, reservado={}", productoId, stock, existencia.reservado.intValue());
+    }
+
+    private Existencia existencia(String productoId) {
+        Existencia existencia = existencias.get(productoId);
+        if (existencia != null) {
+            return existencia;
+        }
+        Producto producto = repositorio.get().buscarProductoPorId(productoId);
+        if (producto == null) {
+            return null;
+        }
+        return existencias.computeIfAbsent(productoId, id -> new Existencia(producto.getStock()));
+    }
+
+    @Override
+    public String toString() {
+        return "Inventario[productos=" + existencias.size() + ", reservas=" + reservas.sum() +
+               ", rechazadas=" + rechazadas.sum() + ", piezas vendidas=" + piezasVendidas.sum() + "]";
+    }
+
+    /**
+     * Disponible y reservado de un producto
+     */
+    private static final class Existencia {
+        private final ContadorSegmentado disponible;
+        private final LongAdder reservado = new LongAdder();
+
+        Existencia(int stock) {
+            this.disponible = new ContadorSegmentado(stock);
+        }
+    }
+}
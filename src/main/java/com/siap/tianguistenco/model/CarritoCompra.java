@@ -1,129 +1,377 @@
 package com.siap.tianguistenco.model;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Clase que representa el carrito de compras con sincronización para multihilo
+ * Cada modificación incrementa la versión del carrito y se publica a los oyentes suscritos,
+ * fuera del candado del carrito y en el hilo que hizo el cambio, junto con el producto cuya línea cambió.
+ * Las líneas se guardan en un mapa por id de producto, así agregar y eliminar son O(1); el total y la
+ * cantidad de piezas se ajustan en cada cambio y se publican juntos en un objeto inmutable, de modo que
+ * las lecturas no toman el candado. getItems() devuelve una instantánea inmutable que se reconstruye
+ * solo cuando cambió la versión. Los importes se llevan en centavos (long), así las sumas y restas
+ * incrementales son exactas.
+ * Un carrito creado con Existencias reserva las piezas al agregarlas y las libera al quitarlas o vaciarlo;
+ * después de una compra registrada se vacía con limpiarVendido(), que da las reservas por vendidas.
  */
 public class CarritoCompra {
-    private final List<ItemCarrito> items;
-    private double total;
-    private double descuento;
-    private double totalConDescuento;
+    private static final Bitacora LOG = Bitacora.de(CarritoCompra.class);
+
+    private final ConcurrentHashMap<String, Linea> lineas = new ConcurrentHashMap<>();
+    private final Existencias existencias;
+    private final List<Oyente> oyentes = new CopyOnWriteArrayList<>();
+    private volatile Totales totales = new Totales(0, 0, 0, 0);
+    private volatile Instantanea instantanea = new Instantanea(0, List.of());
+    private long siguienteOrden;
 
+    /**
+     * Carrito sin reserva de existencias
+     */
     public CarritoCompra() {
-        this.items = new CopyOnWriteArrayList<>();
-        this.total = 0.0;
-        this.descuento = 0.0;
-        this.totalConDescuento = 0.0;
+        this(null);
+    }
+
+    /**
+     * Carrito que reserva en existencias las piezas que se le agregan
+     */
+    public CarritoCompra(Existencias existencias) {
+        this.existencias = existencias;
     }
 
     /**
      * Agrega un producto al carrito de manera sincronizada
+     * @return false si no hay existencias para reservarlo
      */
-    public synchronized void agregarProducto(Producto producto) {
-        ItemCarrito itemExistente = buscarItem(producto);
-        if (itemExistente != null) {
-            itemExistente.incrementarCantidad();
-        } else {
-            items.add(new ItemCarrito(producto, 1));
-        }
-        calcularTotal();
+    public boolean agregarProducto(Producto producto) {
+        return agregarProducto(producto, 1);
     }
 
     /**
-     * Elimina un producto del carrito de manera sincronizada
+     * Agrega varias piezas de un producto en una sola modificación
+     * @return false si no hay existencias para reservarlas todas; en ese caso el carrito no cambia
      */
-    public synchronized void eliminarProducto(Producto producto) {
-        ItemCarrito item = buscarItem(producto);
-        if (item != null) {
-            item.decrementarCantidad();
-            if (item.getCantidad() <= 0) {
-                items.remove(item);
+    public boolean agregarProducto(Producto producto, int cantidad) {
+        if (cantidad <= 0) {
+            return true;
+        }
+        long nuevaVersion;
+        synchronized (this) {
+            if (existencias != null && !existencias.reservar(producto.getId(), cantidad)) {
+                return false;
+            }
+            Linea linea = lineas.get(producto.getId());
+            if (linea == null) {
+                linea = new Linea(producto, siguienteOrden++);
+                lineas.put(producto.getId(), linea);
             }
-            calcularTotal();
+            linea.cantidad += cantidad;
+            Totales t = totales;
+            totales = new Totales(t.total + linea.producto.getPrecioCentavos() * cantidad, t.descuento,
+                t.cantidad + cantidad, t.version + 1);
+            nuevaVersion = t.version + 1;
         }
+        publicar(nuevaVersion, TipoCambio.ITEMS, producto.getId());
+        return true;
     }
 
     /**
-     * Busca un item en el carrito por producto
+     * Elimina un producto del carrito de manera sincronizada
      */
-    private ItemCarrito buscarItem(Producto producto) {
-        return items.stream()
-                .filter(item -> item.getProducto().equals(producto))
-                .findFirst()
-                .orElse(null);
+    public void eliminarProducto(Producto producto) {
+        long nuevaVersion;
+        synchronized (this) {
+            Linea linea = lineas.get(producto.getId());
+            if (linea == null) {
+                return;
+            }
+            linea.cantidad--;
+            if (linea.cantidad <= 0) {
+                lineas.remove(producto.getId());
+            }
+            if (existencias != null) {
+                existencias.liberar(producto.getId(), 1);
+            }
+            Totales t = totales;
+            totales = new Totales(t.total - linea.producto.getPrecioCentavos(), t.descuento, t.cantidad - 1, t.version + 1);
+            nuevaVersion = t.version + 1;
+        }
+        publicar(nuevaVersion, TipoCambio.ITEMS, producto.getId());
     }
 
     /**
-     * Calcula el total del carrito de manera sincronizada
+     * Recalcula el total sumando todas las líneas
+     * Los totales ya se mantienen en cada cambio; este recorrido completo solo sirve para conciliarlos.
      */
     public synchronized void calcularTotal() {
-        total = items.stream()
-                .mapToDouble(ItemCarrito::getSubtotal)
-                .sum();
-        totalConDescuento = total - descuento;
+        long total = 0;
+        int cantidad = 0;
+        for (Linea linea : lineas.values()) {
+            total += linea.producto.getPrecioCentavos() * linea.cantidad;
+            cantidad += linea.cantidad;
+        }
+        Totales t = totales;
+        totales = new Totales(total, t.descuento, cantidad, t.version);
     }
 
     /**
      * Aplica un descuento al carrito
      */
-    public synchronized void aplicarDescuento(double descuento) {
-        this.descuento = descuento;
-        totalConDescuento = total - descuento;
+    public void aplicarDescuento(double descuento) {
+        aplicarDescuentoCentavos(Centavos.desdePesos(descuento));
+    }
+
+    /**
+     * Aplica un descuento al carrito expresado en centavos
+     */
+    public void aplicarDescuentoCentavos(long descuento) {
+        long nuevaVersion;
+        synchronized (this) {
+            Totales t = totales;
+            totales = new Totales(t.total, descuento, t.cantidad, t.version + 1);
+            nuevaVersion = t.version + 1;
+        }
+        publicar(nuevaVersion, TipoCambio.DESCUENTO, null);
     }
 
     /**
-     * Limpia el carrito
+     * Limpia el carrito y libera las piezas reservadas
      */
-    public synchronized void limpiar() {
-        items.clear();
-        total = 0.0;
-        descuento = 0.0;
-        totalConDescuento = 0.0;
+    public void limpiar() {
+        vaciar(false);
     }
 
-    // Getters
+    /**
+     * Limpia el carrito después de registrar la compra de su contenido: las piezas reservadas ya se
+     * descontaron del inventario, así que se dan por vendidas en lugar de liberarse
+     */
+    public void limpiarVendido() {
+        vaciar(true);
+    }
+
+    private void vaciar(boolean vendido) {
+        long nuevaVersion;
+        synchronized (this) {
+            if (existencias != null) {
+                for (Linea linea : lineas.values()) {
+                    if (vendido) {
+                        existencias.confirmar(linea.producto.getId(), linea.cantidad);
+                    } else {
+                        existencias.liberar(linea.producto.getId(), linea.cantidad);
+                    }
+                }
+            }
+            lineas.clear();
+            nuevaVersion = totales.version + 1;
+            totales = new Totales(0, 0, 0, nuevaVersion);
+        }
+        publicar(nuevaVersion, TipoCambio.VACIADO, null);
+    }
+
+    /**
+     * Registra un oyente que se llama después de cada modificación del carrito
+     */
+    public void suscribir(Oyente oyente) {
+        oyentes.add(oyente);
+    }
+
+    public void desuscribir(Oyente oyente) {
+        oyentes.remove(oyente);
+    }
+
+    private void publicar(long nuevaVersion, TipoCambio tipo, String productoId) {
+        for (Oyente oyente : oyentes) {
+            try {
+                oyente.alCambiarCarrito(nuevaVersion, tipo, productoId);
+            } catch (RuntimeException e) {
+                LOG.error("Error en oyente del carrito", e);
+            }
+        }
+    }
+
+    /**
+     * Obtiene los items en el orden en que se agregaron
+     * @return lista inmutable; los items son copias y no cambian si el carrito se modifica después
+     */
     public List<ItemCarrito> getItems() {
-        return new ArrayList<>(items);
+        Instantanea actual = instantanea;
+        if (actual.version == totales.version) {
+            return actual.items;
+        }
+        synchronized (this) {
+            long version = totales.version;
+            if (instantanea.version != version) {
+                List<Linea> ordenadas = new ArrayList<>(lineas.values());
+                ordenadas.sort(Comparator.comparingLong(linea -> linea.orden));
+                List<ItemCarrito> items = new ArrayList<>(ordenadas.size());
+                for (Linea linea : ordenadas) {
+                    items.add(new ItemCarrito(linea.producto, linea.cantidad));
+                }
+                instantanea = new Instantanea(version, List.copyOf(items));
+            }
+            return instantanea.items;
+        }
     }
 
+    // Getters
     public double getTotal() {
-        return total;
+        return Centavos.aPesos(totales.total);
     }
 
     public double getDescuento() {
-        return descuento;
+        return Centavos.aPesos(totales.descuento);
     }
 
     public double getTotalConDescuento() {
-        return totalConDescuento;
+        return Centavos.aPesos(getTotalConDescuentoCentavos());
+    }
+
+    public long getTotalCentavos() {
+        return totales.total;
+    }
+
+    public long getDescuentoCentavos() {
+        return totales.descuento;
+    }
+
+    public long getTotalConDescuentoCentavos() {
+        Totales t = totales;
+        return t.total - t.descuento;
     }
 
     public int getCantidadTotalItems() {
-        return items.stream()
-                .mapToInt(ItemCarrito::getCantidad)
-                .sum();
+        return totales.cantidad;
+    }
+
+    /**
+     * Línea de un producto como copia, o null si no está en el carrito
+     */
+    public synchronized ItemCarrito getItem(String productoId) {
+        Linea linea = lineas.get(productoId);
+        return linea != null ? new ItemCarrito(linea.producto, linea.cantidad) : null;
+    }
+
+    /**
+     * Piezas de un producto en el carrito (0 si no está)
+     */
+    public synchronized int getCantidad(String productoId) {
+        Linea linea = lineas.get(productoId);
+        return linea != null ? linea.cantidad : 0;
     }
 
     public boolean estaVacio() {
-        return items.isEmpty();
+        return lineas.isEmpty();
+    }
+
+    /**
+     * Versión del carrito; aumenta con cada modificación
+     */
+    public long getVersion() {
+        return totales.version;
     }
 
     @Override
     public String toString() {
+        Totales t = totales;
         StringBuilder sb = new StringBuilder();
         sb.append("=== CARRITO DE COMPRAS ===\n");
-        for (ItemCarrito item : items) {
+        for (ItemCarrito item : getItems()) {
             sb.append(item.toString()).append("\n");
         }
-        sb.append("Subtotal: $").append(String.format("%.2f", total)).append("\n");
-        if (descuento > 0) {
-            sb.append("Descuento: -$").append(String.format("%.2f", descuento)).append("\n");
+        sb.append("Subtotal: ").append(Centavos.formatear(t.total)).append("\n");
+        if (t.descuento > 0) {
+            sb.append("Descuento: -").append(Centavos.formatear(t.descuento)).append("\n");
         }
-        sb.append("TOTAL: $").append(String.format("%.2f", totalConDescuento));
+        sb.append("TOTAL: ").append(Centavos.formatear(t.total - t.descuento));
         return sb.toString();
     }
+
+    /**
+     * Línea del carrito; solo se modifica con el candado del carrito
+     */
+    private static final class Linea {
+        private final Producto producto;
+        private final long orden;
+        private int cantidad;
+
+        Linea(Producto producto, long orden) {
+            this.producto = producto;
+            this.orden = orden;
+        }
+    }
+
+    /**
+     * Total y descuento (centavos), piezas y versión publicados juntos para lecturas consistentes sin candado
+     */
+    private static final class Totales {
+        private final long total;
+        private final long descuento;
+        private final int cantidad;
+        private final long version;
+
+        Totales(long total, long descuento, int cantidad, long version) {
+            this.total = total;
+            this.descuento = descuento;
+            this.cantidad = cantidad;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Lista de items calculada para una versión del carrito
+     */
+    private static final class Instantanea {
+        private final long version;
+        private final List<ItemCarrito> items;
+
+        Instantanea(long version, List<ItemCarrito> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Tipo de modificación publicada a los oyentes
+     */
+    public enum TipoCambio {
+        ITEMS,
+        DESCUENTO,
+        VACIADO
+    }
+
+    /**
+     * Inventario donde el carrito reserva las piezas que contiene
+     */
+    public interface Existencias {
+        /**
+         * Reserva cantidad piezas del producto, todas o ninguna
+         */
+        boolean reservar(String productoId, int cantidad);
+
+        /**
+         * Devuelve piezas reservadas que no se compraron
+         */
+        void liberar(String productoId, int cantidad);
+
+        /**
+         * Da por vendidas piezas reservadas cuya compra ya descontó el stock
+         */
+        void confirmar(String productoId, int cantidad);
+    }
+
+    /**
+     * Recibe las modificaciones del carrito junto con la versión resultante
+     */
+    @FunctionalInterface
+    public interface Oyente {
+        /**
+         * @param productoId producto cuya línea cambió en un cambio ITEMS; null en DESCUENTO y VACIADO
+         */
+        void alCambiarCarrito(long version, TipoCambio tipo, String productoId);
+    }
 }
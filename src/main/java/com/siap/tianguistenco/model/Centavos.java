@@ -0,0 +1,45 @@
+package com.siap.tianguistenco.model;
+
+/**
+ * Operaciones sobre importes en centavos (long)
+ * Los precios, subtotales, descuentos y envíos se guardan como enteros de centavos: las sumas son exactas,
+ * no hay objetos por operación y no se comparan totales con tolerancias. Los double solo se usan en los
+ * bordes (interfaz y datos iniciales) y se convierten con desdePesos/aPesos.
+ */
+public final class Centavos {
+
+    private Centavos() {
+    }
+
+    /**
+     * Convierte pesos a centavos redondeando al centavo más cercano
+     */
+    public static long desdePesos(double pesos) {
+        return Math.round(pesos * 100);
+    }
+
+    /**
+     * Convierte centavos a pesos para mostrar o para las APIs que aún reciben double
+     */
+    public static double aPesos(long centavos) {
+        return centavos / 100.0;
+    }
+
+    /**
+     * Porcentaje de un importe redondeado al centavo (mitades hacia afuera de cero)
+     * @param porcentaje porcentaje entero, p. ej. 15 para 15%
+     */
+    public static long porcentaje(long centavos, int porcentaje) {
+        long producto = centavos * porcentaje;
+        return producto >= 0 ? (producto + 50) / 100 : -((-producto + 50) / 100);
+    }
+
+    /**
+     * Formatea un importe como $1234.56 sin pasar por double
+     */
+    public static String formatear(long centavos) {
+        long absoluto = Math.abs(centavos);
+        long resto = absoluto % 100;
+        return (centavos < 0 ? "-$" : "$") + (absoluto / 100) + (resto < 10 ? ".0" : ".") + resto;
+    }
+}
@@ -12,12 +12,14 @@ public class Compra {
     private int usuarioId;
     private String folio;
     private LocalDateTime fecha;
-    private double total;
-    private double descuento;
+    private long totalCentavos;
+    private long descuentoCentavos;
     private String estado; // PENDIENTE, COMPLETADA, CANCELADA
     private TipoEnvio tipoEnvio;
     private String direccionEnvio;
-    private double costoEnvio;
+    private long costoEnvioCentavos;
+    // Clave de idempotencia del cliente; se guarda en claves_idempotencia junto con la compra
+    private String claveIdempotencia;
     private List<CompraItem> items;
 
     public enum TipoEnvio {
@@ -35,12 +37,12 @@ public class Compra {
         this.usuarioId = usuarioId;
         this.folio = folio;
         this.fecha = fecha;
-        this.total = total;
-        this.descuento = descuento;
+        this.totalCentavos = Centavos.desdePesos(total);
+        this.descuentoCentavos = Centavos.desdePesos(descuento);
         this.estado = estado;
         this.tipoEnvio = tipoEnvio;
         this.direccionEnvio = direccionEnvio;
-        this.costoEnvio = costoEnvio;
+        this.costoEnvioCentavos = Centavos.desdePesos(costoEnvio);
         this.items = new ArrayList<>();
     }
 
@@ -78,19 +80,35 @@ public class Compra {
     }
 
     public double getTotal() {
-        return total;
+        return Centavos.aPesos(totalCentavos);
     }
 
     public void setTotal(double total) {
-        this.total = total;
+        this.totalCentavos = Centavos.desdePesos(total);
+    }
+
+    public long getTotalCentavos() {
+        return totalCentavos;
+    }
+
+    public void setTotalCentavos(long totalCentavos) {
+        this.totalCentavos = totalCentavos;
     }
 
     public double getDescuento() {
-        return descuento;
+        return Centavos.aPesos(descuentoCentavos);
     }
 
     public void setDescuento(double descuento) {
-        this.descuento = descuento;
+        this.descuentoCentavos = Centavos.desdePesos(descuento);
+    }
+
+    public long getDescuentoCentavos() {
+        return descuentoCentavos;
+    }
+
+    public void setDescuentoCentavos(long descuentoCentavos) {
+        this.descuentoCentavos = descuentoCentavos;
     }
 
     public String getEstado() {
@@ -118,11 +136,27 @@ public class Compra {
     }
 
     public double getCostoEnvio() {
-        return costoEnvio;
+        return Centavos.aPesos(costoEnvioCentavos);
     }
 
     public void setCostoEnvio(double costoEnvio) {
-        this.costoEnvio = costoEnvio;
+        this.costoEnvioCentavos = Centavos.desdePesos(costoEnvio);
+    }
+
+    public long getCostoEnvioCentavos() {
+        return costoEnvioCentavos;
+    }
+
+    public void setCostoEnvioCentavos(long costoEnvioCentavos) {
+        this.costoEnvioCentavos = costoEnvioCentavos;
+    }
+
+    public String getClaveIdempotencia() {
+        return claveIdempotencia;
+    }
+
+    public void setClaveIdempotencia(String claveIdempotencia) {
+        this.claveIdempotencia = claveIdempotencia;
     }
 
     public List<CompraItem> getItems() {
@@ -138,12 +172,16 @@ public class Compra {
     }
 
     public double getTotalConDescuento() {
-        return total - descuento + costoEnvio;
+        return Centavos.aPesos(getTotalConDescuentoCentavos());
+    }
+
+    public long getTotalConDescuentoCentavos() {
+        return totalCentavos - descuentoCentavos + costoEnvioCentavos;
     }
 
     @Override
     public String toString() {
-        return "Compra #" + folio + " - " + fecha + " - $" + String.format("%.2f", getTotalConDescuento());
+        return "Compra #" + folio + " - " + fecha + " - " + Centavos.formatear(getTotalConDescuentoCentavos());
     }
 }
 
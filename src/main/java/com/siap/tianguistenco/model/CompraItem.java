@@ -9,8 +9,8 @@ public class CompraItem {
     private String productoId;
     private String nombreProducto;
     private int cantidad;
-    private double precioUnitario;
-    private double subtotal;
+    private long precioUnitarioCentavos;
+    private long subtotalCentavos;
 
     public CompraItem() {
     }
@@ -22,8 +22,8 @@ public class CompraItem {
         this.productoId = productoId;
         this.nombreProducto = nombreProducto;
         this.cantidad = cantidad;
-        this.precioUnitario = precioUnitario;
-        this.subtotal = subtotal;
+        this.precioUnitarioCentavos = Centavos.desdePesos(precioUnitario);
+        this.subtotalCentavos = Centavos.desdePesos(subtotal);
     }
 
     // Getters y Setters
@@ -68,24 +68,40 @@ public class CompraItem {
     }
 
     public double getPrecioUnitario() {
-        return precioUnitario;
+        return Centavos.aPesos(precioUnitarioCentavos);
     }
 
     public void setPrecioUnitario(double precioUnitario) {
-        this.precioUnitario = precioUnitario;
+        this.precioUnitarioCentavos = Centavos.desdePesos(precioUnitario);
+    }
+
+    public long getPrecioUnitarioCentavos() {
+        return precioUnitarioCentavos;
+    }
+
+    public void setPrecioUnitarioCentavos(long precioUnitarioCentavos) {
+        this.precioUnitarioCentavos = precioUnitarioCentavos;
     }
 
     public double getSubtotal() {
-        return subtotal;
+        return Centavos.aPesos(subtotalCentavos);
     }
 
     public void setSubtotal(double subtotal) {
-        this.subtotal = subtotal;
+        this.subtotalCentavos = Centavos.desdePesos(subtotal);
+    }
+
+    public long getSubtotalCentavos() {
+        return subtotalCentavos;
+    }
+
+    public void setSubtotalCentavos(long subtotalCentavos) {
+        this.subtotalCentavos = subtotalCentavos;
     }
 
     @Override
     public String toString() {
-        return String.format("%s x%d = $%.2f", nombreProducto, cantidad, subtotal);
+        return nombreProducto + " x" + cantidad + " = " + Centavos.formatear(subtotalCentavos);
     }
 }
 
@@ -12,7 +12,7 @@ public class Devolucion {
     private LocalDateTime fecha;
     private MotivoDevolucion motivo;
     private String estado; // PENDIENTE, PROCESADA, RECHAZADA
-    private double montoDevolucion;
+    private long montoDevolucionCentavos;
     private String observaciones;
 
     public enum MotivoDevolucion {
@@ -43,7 +43,7 @@ public class Devolucion {
         this.fecha = fecha;
         this.motivo = motivo;
         this.estado = estado;
-        this.montoDevolucion = montoDevolucion;
+        this.montoDevolucionCentavos = Centavos.desdePesos(montoDevolucion);
         this.observaciones = observaciones;
     }
 
@@ -97,11 +97,19 @@ public class Devolucion {
     }
 
     public double getMontoDevolucion() {
-        return montoDevolucion;
+        return Centavos.aPesos(montoDevolucionCentavos);
     }
 
     public void setMontoDevolucion(double montoDevolucion) {
-        this.montoDevolucion = montoDevolucion;
+        this.montoDevolucionCentavos = Centavos.desdePesos(montoDevolucion);
+    }
+
+    public long getMontoDevolucionCentavos() {
+        return montoDevolucionCentavos;
+    }
+
+    public void setMontoDevolucionCentavos(long montoDevolucionCentavos) {
+        this.montoDevolucionCentavos = montoDevolucionCentavos;
     }
 
     public String getObservaciones() {
@@ -115,7 +123,7 @@ public class Devolucion {
     @Override
     public String toString() {
         return "Devolución #" + id + " - Folio: " + folioCompra + " - " + motivo.getDescripcion() + 
-               " - $" + String.format("%.2f", montoDevolucion);
+               " - " + Centavos.formatear(montoDevolucionCentavos);
     }
 }
 
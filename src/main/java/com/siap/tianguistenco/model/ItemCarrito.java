@@ -29,7 +29,11 @@ public class ItemCarrito {
     }
 
     public double getSubtotal() {
-        return producto.getPrecio() * cantidad;
+        return Centavos.aPesos(getSubtotalCentavos());
+    }
+
+    public long getSubtotalCentavos() {
+        return producto.getPrecioCentavos() * cantidad;
     }
 
     public void incrementarCantidad() {
@@ -44,7 +48,7 @@ public class ItemCarrito {
 
     @Override
     public String toString() {
-        return String.format("%s x%d - $%.2f", producto.getNombre(), cantidad, getSubtotal());
+        return producto.getNombre() + " x" + cantidad + " - " + Centavos.formatear(getSubtotalCentavos());
     }
 
     @Override
@@ -7,7 +7,7 @@ public class Producto {
     private String id;
     private String nombre;
     private String descripcion;
-    private double precio;
+    private long precioCentavos;
     private String categoria;
     private String imagen;
     private int stock;
@@ -16,7 +16,7 @@ public class Producto {
         this.id = id;
         this.nombre = nombre;
         this.descripcion = descripcion;
-        this.precio = precio;
+        this.precioCentavos = Centavos.desdePesos(precio);
         this.categoria = categoria;
         this.imagen = imagen;
         this.stock = stock;
@@ -48,11 +48,19 @@ public class Producto {
     }
 
     public double getPrecio() {
-        return precio;
+        return Centavos.aPesos(precioCentavos);
     }
 
     public void setPrecio(double precio) {
-        this.precio = precio;
+        this.precioCentavos = Centavos.desdePesos(precio);
+    }
+
+    public long getPrecioCentavos() {
+        return precioCentavos;
+    }
+
+    public void setPrecioCentavos(long precioCentavos) {
+        this.precioCentavos = precioCentavos;
     }
 
     public String getCategoria() {
@@ -81,7 +89,7 @@ public class Producto {
 
     @Override
     public String toString() {
-        return String.format("%s - $%.2f", nombre, precio);
+        return nombre + " - " + Centavos.formatear(precioCentavos);
     }
 
     @Override
@@ -0,0 +1,594 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.DevolucionDAO;
+import com.siap.tianguistenco.datos.EscritorComprasAgrupadas;
+import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.datos.StockInsuficienteException;
+import com.siap.tianguistenco.datos.TarjetaDAO;
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.model.CompraItem;
+import com.siap.tianguistenco.model.Devolucion;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.inventario.Inventario;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+import com.siap.tianguistenco.promociones.EvaluacionCarrito;
+import com.siap.tianguistenco.promociones.MotorPromociones;
+import com.siap.tianguistenco.repository.RepositorioProductos;
+import com.siap.tianguistenco.threads.GestorEnvio;
+import com.siap.tianguistenco.threads.TareaCoalescente;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lógica de la tienda (carrito, promociones, pago, historial y devoluciones) para muchos clientes a la vez
+ * Cada cliente tiene una SesionCompra en el RegistroSesiones; catálogo, promociones, procesador de pagos y
+ * escritor de compras se comparten entre todas. No depende de Swing: la ventana de escritorio es un cliente
+ * más (con una sesión fija sobre su propio carrito), igual que lo sería un frente web o un kiosco.
+ * Un hilo de mantenimiento compacta las sesiones inactivas y elimina las expiradas.
+ * Los carritos reservan existencias en el Inventario al agregar productos y las confirman al registrarse la compra.
+ * Cobro y guardado aceptan una clave de idempotencia del cliente para que sus reintentos no cobren ni guarden dos veces;
+ * la clave se guarda con el usuario de la sesión como prefijo, así nunca responde con lo de otro usuario.
+ */
+public class MotorComercio {
+    private static final Bitacora LOG = Bitacora.de(MotorComercio.class);
+
+    private static final long INACTIVIDAD_MS = 5 * 60_000;
+    private static final long EXPIRACION_MS = 30 * 60_000;
+    private static final long PERIODO_MANTENIMIENTO_MS = 30_000;
+    private static final long TIEMPO_MAXIMO_GUARDADO_SEG = 30;
+    private static final int CLAVES_IDEMPOTENCIA_RECIENTES = 10_000;
+
+    private static MotorComercio instancia;
+
+    private final RegistroSesiones registro = new RegistroSesiones();
+    private final RepositorioProductos repositorio;
+    private final Inventario inventario;
+    private final MotorPromociones promociones;
+    private final ProcesadorPagos procesadorPagos;
+    private final EscritorComprasAgrupadas escritorCompras;
+    private final CompraDAO compraDAO = new CompraDAO();
+    private final ProductoDAO productoDAO = new ProductoDAO();
+    private final DevolucionDAO devolucionDAO = new DevolucionDAO();
+    private final TarjetaDAO tarjetaDAO = new TarjetaDAO();
+    private final ExecutorService consultas = Executors.newVirtualThreadPerTaskExecutor();
+    private final RegistroIdempotencia idempotencia =
+        new RegistroIdempotencia(CLAVES_IDEMPOTENCIA_RECIENTES, compraDAO, consultas);
+    // Muchas compras seguidas cambian el stock: una sola recarga del catálogo por ráfaga
+    private final TareaCoalescente recargaCatalogo;
+    private final ScheduledExecutorService mantenimiento;
+    private final long inactividadMs;
+    private final long expiracionMs;
+
+    public MotorComercio(RepositorioProductos repositorio, Inventario inventario, MotorPromociones promociones,
+                         ProcesadorPagos procesadorPagos, EscritorComprasAgrupadas escritorCompras,
+                         long inactividadMs, long expiracionMs) {
+        this.repositorio = repositorio;
+        this.inventario = inventario;
+        this.promociones = promociones;
+        this.procesadorPagos = procesadorPagos;
+        this.escritorCompras = escritorCompras;
+        this.inactividadMs = inactividadMs;
+        this.expiracionMs = expiracionMs;
+        this.recargaCatalogo = new TareaCoalescente("RecargaCatalogo", repositorio::recargar);
+        this.mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "MantenimientoSesiones");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        mantenimiento.scheduleWithFixedDelay(this::mantenerPeriodicamente,
+            PERIODO_MANTENIMIENTO_MS, PERIODO_MANTENIMIENTO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized MotorComercio getInstancia() {
+        if (instancia == null) {
+            instancia = new MotorComercio(RepositorioProductos.getInstancia(), Inventario.getInstancia(),
+                MotorPromociones.getInstancia(), ProcesadorPagos.getInstancia(), EscritorComprasAgrupadas.getInstancia(), INACTIVIDAD_MS, EXPIRACION_MS);
+        }
+        return instancia;
+    }
+
+    /**
+     * Detiene el motor compartido si llegó a crearse
+     */
+    public static synchronized void detenerInstancia() {
+        if (instancia != null) {
+            instancia.detener();
+            LOG.info("{}", instancia);
+            instancia = null;
+        }
+    }
+
+    /**
+     * Abre una sesión con carrito propio del motor
+     * @return id de la sesión
+     */
+    public String abrirSesion(int usuarioId) {
+        return registro.abrir(usuarioId, null).getId();
+    }
+
+    /**
+     * Abre una sesión fija sobre el carrito de un cliente (la ventana de escritorio)
+     * El cliente aplica sus propias promociones a ese carrito; el motor solo lo lee y lo registra como compra.
+     */
+    public String abrirSesion(int usuarioId, CarritoCompra carrito) {
+        return registro.abrir(usuarioId, carrito).getId();
+    }
+
+    public boolean cerrarSesion(String sesionId) {
+        return registro.cerrar(sesionId) != null;
+    }
+
+    /**
+     * Agrega piezas de un producto al carrito de la sesión
+     * @throws IllegalArgumentException si la sesión o el producto no existen
+     * @throws IllegalStateException si la sesión tiene un pago en curso o no hay existencias suficientes
+     */
+    public ResumenCarrito agregarProducto(String sesionId, String productoId, int cantidad) {
+        SesionCompra sesion = sesion(sesionId);
+        Producto producto = repositorio.buscarProductoPorId(productoId);
+        if (producto == null) {
+            throw new IllegalArgumentException("Producto no encontrado: " + productoId);
+        }
+        synchronized (sesion) {
+            verificarSinPago(sesion);
+            CarritoCompra carrito = abrirCarrito(sesion);
+            if (!carrito.agregarProducto(producto, cantidad)) {
+                throw new IllegalStateException("Sin existencias suficientes: " + productoId);
+            }
+            return aplicarPromociones(sesion, carrito, productoId);
+        }
+    }
+
+    /**
+     * Quita una pieza de un producto del carrito de la sesión
+     */
+    public ResumenCarrito quitarProducto(String sesionId, String productoId) {
+        SesionCompra sesion = sesion(sesionId);
+        synchronized (sesion) {
+            verificarSinPago(sesion);
+            if (sesion.sinLineas()) {
+                return ResumenCarrito.vacio();
+            }
+            CarritoCompra carrito = abrirCarrito(sesion);
+            for (ItemCarrito item : carrito.getItems()) {
+                if (item.getProducto().getId().equals(productoId)) {
+                    carrito.eliminarProducto(item.getProducto());
+                    break;
+                }
+            }
+            return aplicarPromociones(sesion, carrito, productoId);
+        }
+    }
+
+    public ResumenCarrito vaciarCarrito(String sesionId) {
+        SesionCompra sesion = sesion(sesionId);
+        synchronized (sesion) {
+            verificarSinPago(sesion);
+            if (sesion.sinLineas()) {
+                return ResumenCarrito.vacio();
+            }
+            CarritoCompra carrito = abrirCarrito(sesion);
+            carrito.limpiar();
+            return aplicarPromociones(sesion, carrito);
+        }
+    }
+
+    public ResumenCarrito getResumen(String sesionId) {
+        SesionCompra sesion = sesion(sesionId);
+        synchronized (sesion) {
+            if (sesion.sinLineas()) {
+                return ResumenCarrito.vacio();
+            }
+            return aplicarPromociones(sesion, abrirCarrito(sesion));
+        }
+    }
+
+    /**
+     * Cobra el carrito de la sesión y, si el pago se aprueba, registra la compra y vacía el carrito
+     * Mientras el pago está en curso el carrito de la sesión no se puede modificar. No bloquea: el cobro
+     * va al ProcesadorPagos y el guardado al escritor de compras agrupadas.
+     * @param tarjetaId tarjeta del usuario de la sesión, o null para pago en efectivo
+     * @return future que siempre se completa normalmente, también si la sesión no existe o expiró
+     */
+    public CompletableFuture<ResultadoFinalizacion> pagar(String sesionId, Compra.TipoEnvio tipoEnvio,
+                                                          String direccionEnvio, Integer tarjetaId) {
+        return pagar(sesionId, null, tipoEnvio, direccionEnvio, tarjetaId);
+    }
+
+    /**
+     * Como pagar(), pero una sola vez por clave: el reintento recibe el resultado del primer intento (aunque siga
+     * en curso) o la compra guardada con esa clave, sin volver a cobrar
+     * La clave es del usuario de la sesión: la misma clave mandada por otro usuario es un checkout distinto.
+     * @param clave clave de idempotencia generada por el cliente para este checkout, o null para no usarla
+     * @return future que siempre se completa normalmente; si la sesión no existe o expiró, con un resultado sin
+     *         pago que lo indica
+     */
+    public CompletableFuture<ResultadoFinalizacion> pagar(String sesionId, String clave, Compra.TipoEnvio tipoEnvio,
+                                                          String direccionEnvio, Integer tarjetaId) {
+        SesionCompra sesion = registro.obtener(sesionId);
+        if (sesion == null) {
+            return CompletableFuture.completedFuture(new ResultadoFinalizacion(null, null, "Sesión no encontrada o expirada"));
+        }
+        if (clave == null) {
+            return cobrarYRegistrar(sesion, null, tipoEnvio, direccionEnvio, tarjetaId);
+        }
+        String claveUsuario = claveDeUsuario(sesion, clave);
+        return idempotencia.finalizar(claveUsuario,
+            () -> cobrarYRegistrar(sesion, claveUsuario, tipoEnvio, direccionEnvio, tarjetaId));
+    }
+
+    private CompletableFuture<ResultadoFinalizacion> cobrarYRegistrar(SesionCompra sesion, String clave, Compra.TipoEnvio tipoEnvio,
+                                                                      String direccionEnvio, Integer tarjetaId) {
+        long montoCentavos;
+        long costoEnvio;
+        synchronized (sesion) {
+            if (sesion.isPagando()) {
+                return CompletableFuture.completedFuture(new ResultadoFinalizacion(null, null, "Ya hay un pago en curso"));
+            }
+            if (sesion.sinLineas()) {
+                return CompletableFuture.completedFuture(new ResultadoFinalizacion(null, null, "El carrito está vacío"));
+            }
+            CarritoCompra carrito = abrirCarrito(sesion);
+            ResumenCarrito resumen = aplicarPromociones(sesion, carrito);
+            costoEnvio = costoEnvioCentavos(tipoEnvio, resumen.getTotalCentavos());
+            montoCentavos = resumen.getTotalCentavos() + costoEnvio;
+            sesion.setPagando(true);
+        }
+
+        CompletableFuture<ResultadoPago> pago = cobrarPorClave(clave, () -> cobrar(sesion, tarjetaId, montoCentavos, clave));
+
+        return pago
+            .thenCompose(resultado -> {
+                if (!resultado.isAprobado()) {
+                    return CompletableFuture.completedFuture(new ResultadoFinalizacion(resultado, null, resultado.getMensaje()));
+                }
+                String folio = compraDAO.generarFolio();
+                return registrarCompra(sesion, clave, folio, tipoEnvio, direccionEnvio, costoEnvio, tarjetaId)
+                    .thenApply(compra -> {
+                        synchronized (sesion) {
+                            // Con otro folio la compra es la de un intento anterior: estas reservas no se vendieron
+                            if (compra.getFolio().equals(folio)) {
+                                abrirCarrito(sesion).limpiarVendido();
+                            } else {
+                                abrirCarrito(sesion).limpiar();
+                            }
+                        }
+                        return new ResultadoFinalizacion(resultado, compra, "Compra registrada con folio " + compra.getFolio());
+                    })
+                    .exceptionally(e -> {
+                        LOG.error("Pago aprobado pero la compra no se guardó: {}", causa(e).getMessage());
+                        return new ResultadoFinalizacion(resultado, null, "El pago se aprobó pero la compra no se pudo guardar");
+                    });
+            })
+            .exceptionally(e -> {
+                LOG.error("Error al finalizar la compra de la sesión {}: {}", sesion.getId(), causa(e).getMessage());
+                return new ResultadoFinalizacion(null, null, "Error al finalizar la compra");
+            })
+            .whenComplete((resultado, error) -> {
+                synchronized (sesion) {
+                    sesion.setPagando(false);
+                }
+            });
+    }
+
+    private CompletableFuture<ResultadoPago> cobrar(SesionCompra sesion, Integer tarjetaId, long montoCentavos,
+                                                    String clave) {
+        if (tarjetaId == null) {
+            return procesadorPagos.procesar(null, montoCentavos, clave);
+        }
+        return CompletableFuture.supplyAsync(() -> tarjetaDAO.obtenerTarjetaPorId(tarjetaId), consultas)
+            .thenCompose(tarjeta -> {
+                // Solo se puede cargar a una tarjeta activa del mismo usuario de la sesión
+                if (tarjeta == null || !tarjeta.isActiva() || tarjeta.getUsuarioId() != sesion.getUsuarioId()) {
+                    return CompletableFuture.completedFuture(ResultadoPago.rechazado("Tarjeta no válida o inactiva"));
+                }
+                return procesadorPagos.procesar(tarjetaId, montoCentavos, clave);
+            });
+    }
+
+    /**
+     * Ejecuta el cobro una sola vez por clave; el reintento recibe el mismo resultado sin cobrar otra vez
+     * La usa el cliente de escritorio, que cobra por su cuenta. El cobro debe pasar la misma clave a la pasarela:
+     * si no se supo el resultado (tiempo agotado o error), el reintento lo vuelve a pedir con esa clave.
+     * @param clave clave de idempotencia del checkout, o null para cobrar sin ella; es del usuario de la sesión
+     * @return future con el resultado del cobro, o fallido con IllegalArgumentException si la sesión no existe
+     */
+    public CompletableFuture<ResultadoPago> cobrarUnaVez(String sesionId, String clave,
+                                                         Supplier<CompletableFuture<ResultadoPago>> cobro) {
+        if (clave == null) {
+            return cobro.get();
+        }
+        SesionCompra sesion = registro.obtener(sesionId);
+        if (sesion == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Sesión no encontrada o expirada: " + sesionId));
+        }
+        return cobrarPorClave(claveDeUsuario(sesion, clave), cobro);
+    }
+
+    private CompletableFuture<ResultadoPago> cobrarPorClave(String claveUsuario,
+                                                            Supplier<CompletableFuture<ResultadoPago>> cobro) {
+        return claveUsuario == null ? cobro.get() : idempotencia.cobrar(claveUsuario, cobro);
+    }
+
+    /**
+     * Clave de idempotencia con el usuario de la sesión como prefijo; con ella se guarda en el registro, en la
+     * tabla y en la pasarela, así la clave de un usuario nunca responde con la compra o el cobro de otro
+     */
+    private static String claveDeUsuario(SesionCompra sesion, String clave) {
+        return clave != null ? sesion.getUsuarioId() + ":" + clave : null;
+    }
+
+    /**
+     * Registra como compra el contenido actual del carrito de la sesión (sin cobrar ni vaciar el carrito)
+     * La usa pagar() y también el cliente de escritorio, que cobra por su cuenta.
+     * @return future con la compra y su id, o fallido si no se pudo guardar
+     */
+    public CompletableFuture<Compra> registrarCompra(String sesionId, String folio, Compra.TipoEnvio tipoEnvio,
+                                                     String direccionEnvio, long costoEnvioCentavos, Integer tarjetaId) {
+        return registrarCompra(sesionId, null, folio, tipoEnvio, direccionEnvio, costoEnvioCentavos, tarjetaId);
+    }
+
+    /**
+     * Como registrarCompra(), pero una sola vez por clave: el reintento recibe la compra del primer intento
+     * Si la compra devuelta tiene otro folio que el pedido, es la de un intento anterior y el carrito no se vendió.
+     * @param clave clave de idempotencia del checkout, o null para no usarla; es del usuario de la sesión
+     */
+    public CompletableFuture<Compra> registrarCompra(String sesionId, String clave, String folio, Compra.TipoEnvio tipoEnvio,
+                                                     String direccionEnvio, long costoEnvioCentavos, Integer tarjetaId) {
+        SesionCompra sesion = sesion(sesionId);
+        return registrarCompra(sesion, claveDeUsuario(sesion, clave), folio, tipoEnvio, direccionEnvio,
+            costoEnvioCentavos, tarjetaId);
+    }
+
+    private CompletableFuture<Compra> registrarCompra(SesionCompra sesion, String clave, String folio,
+                                                      Compra.TipoEnvio tipoEnvio, String direccionEnvio,
+                                                      long costoEnvioCentavos, Integer tarjetaId) {
+        if (clave == null) {
+            return encolarCompra(sesion, null, folio, tipoEnvio, direccionEnvio, costoEnvioCentavos, tarjetaId);
+        }
+        return idempotencia.registrar(clave,
+                () -> encolarCompra(sesion, clave, folio, tipoEnvio, direccionEnvio, costoEnvioCentavos, tarjetaId))
+            .thenApply(compra -> {
+                // Respuesta de un intento anterior: el inventario en memoria pudo haber devuelto esas reservas
+                if (!compra.getFolio().equals(folio)) {
+                    for (CompraItem item : compra.getItems()) {
+                        consultas.execute(() -> resincronizarExistencia(item.getProductoId()));
+                    }
+                }
+                return compra;
+            });
+    }
+
+    private CompletableFuture<Compra> encolarCompra(SesionCompra sesion, String clave, String folio,
+                                                    Compra.TipoEnvio tipoEnvio, String direccionEnvio,
+                                                    long costoEnvioCentavos, Integer tarjetaId) {
+        Compra compra;
+        synchronized (sesion) {
+            CarritoCompra carrito = abrirCarrito(sesion);
+            compra = crearCompra(sesion.getUsuarioId(), folio, carrito.getItems(), carrito.getTotalCentavos(),
+                carrito.getDescuentoCentavos(), tipoEnvio, direccionEnvio, costoEnvioCentavos);
+        }
+        compra.setClaveIdempotencia(clave);
+        // Encabezado, items, método de pago y stock se confirman en el mismo lote que las demás compras
+        String tipoPago = tarjetaId != null ? "TARJETA" : "EFECTIVO";
+        return escritorCompras.encolar(compra, tipoPago, tarjetaId)
+            .orTimeout(TIEMPO_MAXIMO_GUARDADO_SEG, TimeUnit.SECONDS)
+            .thenApply(compraId -> {
+                compra.setId(compraId);
+                recargaCatalogo.solicitar();
+                return compra;
+            })
+            .whenComplete((guardada, error) -> {
+                // La base de datos tenía menos stock que el inventario en memoria (cambió por fuera)
+                if (error != null && causa(error) instanceof StockInsuficienteException sinStock) {
+                    consultas.execute(() -> resincronizarExistencia(sinStock.getProductoId()));
+                }
+            });
+    }
+
+    /**
+     * Arma una compra a partir de las líneas de un carrito
+     */
+    public static Compra crearCompra(int usuarioId, String folio, List<ItemCarrito> items, long totalCentavos,
+                                     long descuentoCentavos, Compra.TipoEnvio tipoEnvio, String direccionEnvio,
+                                     long costoEnvioCentavos) {
+        Compra compra = new Compra();
+        compra.setUsuarioId(usuarioId);
+        compra.setFolio(folio);
+        compra.setFecha(LocalDateTime.now());
+        compra.setTotalCentavos(totalCentavos);
+        compra.setDescuentoCentavos(descuentoCentavos);
+        compra.setEstado("COMPLETADA");
+        compra.setTipoEnvio(tipoEnvio);
+        compra.setDireccionEnvio(direccionEnvio);
+        compra.setCostoEnvioCentavos(costoEnvioCentavos);
+
+        List<CompraItem> itemsCompra = new ArrayList<>(items.size());
+        for (ItemCarrito itemCarrito : items) {
+            CompraItem item = new CompraItem();
+            item.setProductoId(itemCarrito.getProducto().getId());
+            item.setNombreProducto(itemCarrito.getProducto().getNombre());
+            item.setCantidad(itemCarrito.getCantidad());
+            item.setPrecioUnitarioCentavos(itemCarrito.getProducto().getPrecioCentavos());
+            item.setSubtotalCentavos(itemCarrito.getSubtotalCentavos());
+            itemsCompra.add(item);
+        }
+        compra.setItems(itemsCompra);
+        return compra;
+    }
+
+    /**
+     * Encabezados de las compras del usuario de la sesión
+     */
+    public List<Compra> obtenerHistorial(String sesionId) {
+        return compraDAO.obtenerComprasPorUsuario(sesion(sesionId).getUsuarioId(), false);
+    }
+
+    /**
+     * Compra con sus items, solo si pertenece al usuario de la sesión
+     */
+    public Compra obtenerCompra(String sesionId, String folio) {
+        Compra compra = compraDAO.obtenerCompraPorFolio(folio);
+        if (compra != null && compra.getUsuarioId() == sesion(sesionId).getUsuarioId()) {
+            return compra;
+        }
+        return null;
+    }
+
+    /**
+     * Registra y procesa la devolución de una compra del usuario de la sesión
+     * @return ID de la devolución, o -1 si la compra no es del usuario, el monto excede el pagado o hubo error
+     */
+    public int registrarDevolucion(String sesionId, String folio, Devolucion.MotivoDevolucion motivo,
+                                   long montoCentavos, String observaciones) {
+        Compra compra = obtenerCompra(sesionId, folio);
+        if (compra == null || montoCentavos <= 0 || montoCentavos > compra.getTotalConDescuentoCentavos()) {
+            return -1;
+        }
+        Devolucion devolucion = new Devolucion();
+        devolucion.setCompraId(compra.getId());
+        devolucion.setFolioCompra(folio);
+        devolucion.setFecha(LocalDateTime.now());
+        devolucion.setMotivo(motivo);
+        devolucion.setEstado("PENDIENTE");
+        devolucion.setMontoDevolucionCentavos(montoCentavos);
+        devolucion.setObservaciones(observaciones);
+
+        int devolucionId = devolucionDAO.registrarDevolucion(devolucion);
+        if (devolucionId > 0) {
+            devolucionDAO.actualizarEstadoDevolucion(devolucionId, "PROCESADA");
+        }
+        return devolucionId;
+    }
+
+    /**
+     * Pasada de mantenimiento con la hora actual
+     */
+    public RegistroSesiones.Mantenimiento mantener() {
+        return mantener(System.currentTimeMillis());
+    }
+
+    /**
+     * Pasada de mantenimiento como si la hora fuera ahoraMs (pruebas de carga)
+     */
+    public RegistroSesiones.Mantenimiento mantener(long ahoraMs) {
+        return registro.mantener(ahoraMs, inactividadMs, expiracionMs);
+    }
+
+    private void mantenerPeriodicamente() {
+        try {
+            RegistroSesiones.Mantenimiento resultado = mantener();
+            if (resultado.getCompactadas() > 0 || resultado.getExpiradas() > 0) {
+                LOG.info("Mantenimiento de sesiones: {}, abiertas={}", resultado, registro.getTamano());
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error en mantenimiento de sesiones", e);
+        }
+        int claves = idempotencia.purgar(System.currentTimeMillis());
+        if (claves > 0) {
+            LOG.info("Claves de idempotencia vencidas borradas: {}", claves);
+        }
+    }
+
+    /**
+     * Ajusta las existencias en memoria de un producto al stock de la base de datos
+     */
+    private void resincronizarExistencia(String productoId) {
+        Producto producto = productoDAO.buscarProductoPorId(productoId);
+        if (producto != null) {
+            inventario.fijarExistencia(productoId, producto.getStock());
+        }
+    }
+
+    public Inventario getInventario() {
+        return inventario;
+    }
+
+    public RegistroIdempotencia getIdempotencia() {
+        return idempotencia;
+    }
+
+    public RegistroSesiones getRegistro() {
+        return registro;
+    }
+
+    public void detener() {
+        mantenimiento.shutdownNow();
+        recargaCatalogo.cerrar();
+        consultas.shutdown();
+    }
+
+    private SesionCompra sesion(String sesionId) {
+        SesionCompra sesion = registro.obtener(sesionId);
+        if (sesion == null) {
+            throw new IllegalArgumentException("Sesión no encontrada o expirada: " + sesionId);
+        }
+        return sesion;
+    }
+
+    private CarritoCompra abrirCarrito(SesionCompra sesion) {
+        return sesion.abrirCarrito(repositorio.getCatalogo(), inventario);
+    }
+
+    private static void verificarSinPago(SesionCompra sesion) {
+        if (sesion.isPagando()) {
+            throw new IllegalStateException("La sesión tiene un pago en curso");
+        }
+    }
+
+    /**
+     * Aplica las promociones vigentes al carrito de la sesión y devuelve su resumen
+     * En una sesión fija las promociones las aplica el cliente; aquí solo se lee el carrito.
+     * Llamar con el monitor de la sesión.
+     */
+    private ResumenCarrito aplicarPromociones(SesionCompra sesion, CarritoCompra carrito) {
+        return aplicarPromociones(sesion, carrito, null);
+    }
+
+    /**
+     * Como aplicarPromociones(), después de cambiar solo la línea de productoId: se reevalúa solo esa línea
+     */
+    private ResumenCarrito aplicarPromociones(SesionCompra sesion, CarritoCompra carrito, String productoId) {
+        String descripcion = "";
+        if (!sesion.isFija()) {
+            EvaluacionCarrito evaluacion = sesion.evaluar(carrito, promociones.getReglas(), productoId);
+            if (evaluacion.getDescuentoCentavos() != carrito.getDescuentoCentavos()) {
+                carrito.aplicarDescuentoCentavos(evaluacion.getDescuentoCentavos());
+                sesion.descuentoAplicado(carrito.getVersion());
+            }
+            descripcion = evaluacion.describir();
+        }
+        return new ResumenCarrito(carrito.getItems(), carrito.getTotalCentavos(), carrito.getDescuentoCentavos(),
+            carrito.getCantidadTotalItems(), descripcion, carrito.getVersion());
+    }
+
+    private static long costoEnvioCentavos(Compra.TipoEnvio tipoEnvio, long totalCentavos) {
+        return tipoEnvio == Compra.TipoEnvio.DOMICILIO ? GestorEnvio.costoEnvioCentavos(totalCentavos) : 0;
+    }
+
+    private static Throwable causa(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    @Override
+    public String toString() {
+        return "MotorComercio[sesiones=" + registro.getTamano() + ", con carrito en memoria=" + registro.contarActivas() +
+               ", inactividad=" + inactividadMs / 1000 + " s, expiración=" + expiracionMs / 1000 + " s, " +
+               "recargas de catálogo=" + recargaCatalogo.getEjecuciones() + "/" + recargaCatalogo.getSolicitudes() + ", " +
+               idempotencia + "]";
+    }
+}
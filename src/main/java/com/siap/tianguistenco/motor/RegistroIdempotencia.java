@@ -0,0 +1,448 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.datos.ClaveIdempotencia;
+import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Cobro, guardado y finalización del checkout una sola vez por clave de idempotencia del cliente
+ * Un cliente que reintenta (tiempo agotado, doble clic) manda la misma clave y recibe el mismo future que el
+ * primer intento, aunque siga en curso, sin volver a cobrar ni a insertar. Las claves recientes viven en memoria
+ * con un tamaño máximo (LRU). Si una clave ya no está en memoria se busca en la tabla claves_idempotencia, donde
+ * se guarda cuando el cobro termina aprobado o incierto y se completa en la misma transacción que la compra.
+ * Un cobro rechazado (o que no llegó a la pasarela por saturación) y un guardado fallido se olvidan, así el
+ * reintento lo vuelve a intentar. Un cobro con tiempo agotado o error no dice si se cobró: se conserva y el
+ * reintento lo vuelve a pedir a la pasarela con la misma clave, que responde con el cobro original. Un cobro
+ * aprobado se conserva aunque el guardado falle, para que el reintento guarde sin cobrar otra vez.
+ * Al pasarse de la capacidad se revisan a lo más ESCANEO_MAXIMO claves de las más antiguas. Se desalojan las que no
+ * tienen nada en curso y cuyo cobro incierto o aprobado ya está en la tabla; las demás pasan al final de la lista.
+ * Solo lo que está en curso o lo que no se pudo guardar en la tabla hace que se pase de la capacidad.
+ * Las claves se borran de la tabla después de RETENCION_MS, lo mismo que las recuerda la pasarela.
+ */
+public class RegistroIdempotencia {
+    private static final Bitacora LOG = Bitacora.de(RegistroIdempotencia.class);
+
+    /**
+     * Tiempo que se conservan las claves en la tabla; la pasarela debe recordarlas al menos este tiempo
+     */
+    public static final long RETENCION_MS = TimeUnit.HOURS.toMillis(24);
+    private static final int ESCANEO_MAXIMO = 64;
+
+    private final int capacidad;
+    private final CompraDAO compraDAO;
+    private final Executor consultas;
+    private final LinkedHashMap<String, Entrada> recientes;
+
+    // Métricas
+    private final AtomicLong repetidas = new AtomicLong();
+    private final AtomicLong desdeTabla = new AtomicLong();
+    private final AtomicLong inciertos = new AtomicLong();
+    private final AtomicLong desalojadas = new AtomicLong();
+    private final AtomicLong purgadas = new AtomicLong();
+
+    public RegistroIdempotencia(int capacidad, CompraDAO compraDAO, Executor consultas) {
+        this.capacidad = capacidad;
+        this.compraDAO = compraDAO;
+        this.consultas = consultas;
+        this.recientes = new LinkedHashMap<>(capacidad, 0.75f, true);
+    }
+
+    /**
+     * Lo hecho hasta ahora con una clave
+     */
+    private static final class Entrada {
+        private CompletableFuture<ClaveIdempotencia> consulta;
+        private CompletableFuture<ResultadoPago> pago;
+        private CompletableFuture<Compra> compra;
+        private CompletableFuture<ResultadoFinalizacion> finalizacion;
+        // La tabla tiene el cobro incierto o aprobado de la clave: se puede desalojar y volver a leer
+        private boolean enTabla;
+
+        boolean enCurso() {
+            return pendiente(consulta) || pendiente(pago) || pendiente(compra) || pendiente(finalizacion);
+        }
+
+        /**
+         * Se puede olvidar sin arriesgar un segundo cobro: nada en curso, y un cobro incierto o aprobado sin
+         * compra guardada solo si ya está en la tabla
+         */
+        boolean desalojable() {
+            if (enCurso()) {
+                return false;
+            }
+            if (pago == null || enTabla) {
+                return true;
+            }
+            if (incierto(pago)) {
+                return false;
+            }
+            return !pago.join().isAprobado() || (compra != null && !compra.isCompletedExceptionally());
+        }
+
+        private static boolean pendiente(CompletableFuture<?> future) {
+            return future != null && !future.isDone();
+        }
+    }
+
+    /**
+     * Cobra una sola vez por clave; si la clave ya tiene el pago aprobado o una compra guardada no cobra y
+     * responde aprobado
+     * El cobro debe pasar la clave a la pasarela: si el primer intento quedó incierto, el reintento lo vuelve a
+     * llamar y la pasarela responde con el cobro original.
+     */
+    public CompletableFuture<ResultadoPago> cobrar(String clave, Supplier<CompletableFuture<ResultadoPago>> cobro) {
+        CompletableFuture<ResultadoPago> nuevo = new CompletableFuture<>();
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entrada(clave);
+            if (entrada.pago != null && !(entrada.pago.isDone() && incierto(entrada.pago))) {
+                repetidas.incrementAndGet();
+                return entrada.pago;
+            }
+            entrada.pago = nuevo;
+        }
+        registrada(clave, entrada)
+            .thenCompose(registro -> {
+                if (registro == null || registro.getEstado() == ClaveIdempotencia.Estado.PAGO_INCIERTO) {
+                    // Clave nueva, o cobro incierto que la pasarela responde con el cobro original si lo hubo
+                    return iniciar(cobro)
+                        .handle((resultado, error) -> recordar(clave, entrada, resultado, error))
+                        .thenCompose(Function.identity());
+                }
+                return CompletableFuture.completedFuture(registro.getCompra() != null
+                    ? yaRegistrada(registro.getCompra(), registro.getAutorizacion())
+                    : new ResultadoPago(ResultadoPago.Estado.APROBADO, registro.getAutorizacion(),
+                        "Sin cobro: pago ya aprobado con autorización " + registro.getAutorizacion(), 0));
+            })
+            .whenComplete((resultado, error) -> {
+                if (error == null && olvidable(resultado)) {
+                    synchronized (this) {
+                        if (entrada.pago == nuevo) {
+                            entrada.pago = null;
+                        }
+                    }
+                } else if (error != null || incierto(resultado)) {
+                    inciertos.incrementAndGet();
+                    LOG.aviso("Cobro incierto con la clave {}: {}", clave, error != null ? error.getMessage() : resultado);
+                }
+                completar(nuevo, resultado, error);
+            });
+        return nuevo;
+    }
+
+    /**
+     * Guarda una sola vez por clave
+     * No consulta la tabla antes de guardar: la clave se inserta con la compra y, si ya existía, esa compra
+     * se deshace y se responde con la que estaba guardada.
+     */
+    public CompletableFuture<Compra> registrar(String clave, Supplier<CompletableFuture<Compra>> registro) {
+        CompletableFuture<Compra> nueva = new CompletableFuture<>();
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entrada(clave);
+            if (entrada.compra != null) {
+                repetidas.incrementAndGet();
+                return entrada.compra;
+            }
+            entrada.compra = nueva;
+        }
+        iniciar(registro)
+            .exceptionallyCompose(error -> CompletableFuture.supplyAsync(() -> compraDAO.obtenerCompraPorClave(clave), consultas)
+                .thenCompose(guardada -> {
+                    if (guardada == null) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    desdeTabla.incrementAndGet();
+                    return CompletableFuture.completedFuture(guardada);
+                }))
+            .whenComplete((compra, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        if (entrada.compra == nueva) {
+                            entrada.compra = null;
+                        }
+                    }
+                }
+                completar(nueva, compra, error);
+            });
+        return nueva;
+    }
+
+    /**
+     * Cobra y guarda una sola vez por clave; si la clave ya tiene una compra guardada responde con ella
+     * Solo se recuerda una finalización exitosa: las demás se pueden reintentar con la misma clave.
+     */
+    public CompletableFuture<ResultadoFinalizacion> finalizar(String clave,
+                                                              Supplier<CompletableFuture<ResultadoFinalizacion>> finalizacion) {
+        CompletableFuture<ResultadoFinalizacion> nueva = new CompletableFuture<>();
+        Entrada entrada;
+        synchronized (this) {
+            entrada = entrada(clave);
+            if (entrada.finalizacion != null) {
+                repetidas.incrementAndGet();
+                return entrada.finalizacion;
+            }
+            entrada.finalizacion = nueva;
+        }
+        registrada(clave, entrada)
+            .thenCompose(registro -> {
+                Compra compra = registro != null ? registro.getCompra() : null;
+                if (compra == null) {
+                    // Sin clave, o con el pago aprobado o incierto y sin compra: cobrar() no cobra dos veces
+                    return iniciar(finalizacion);
+                }
+                return CompletableFuture.completedFuture(new ResultadoFinalizacion(
+                    yaRegistrada(compra, registro.getAutorizacion()), compra,
+                    "Compra ya registrada con folio " + compra.getFolio()));
+            })
+            .whenComplete((resultado, error) -> {
+                if (error != null || !resultado.isExitosa()) {
+                    synchronized (this) {
+                        if (entrada.finalizacion == nueva) {
+                            entrada.finalizacion = null;
+                        }
+                    }
+                }
+                completar(nueva, resultado, error);
+            });
+        return nueva;
+    }
+
+    /**
+     * Lo registrado con la clave: la compra de memoria si existe, si no la fila de la tabla (una sola consulta
+     * por entrada)
+     * @return future con la clave, o con null si la clave no se ha usado
+     */
+    private CompletableFuture<ClaveIdempotencia> registrada(String clave, Entrada entrada) {
+        synchronized (this) {
+            if (entrada.compra != null) {
+                return entrada.compra.handle((compra, error) -> compra != null
+                    ? new ClaveIdempotencia(clave, ClaveIdempotencia.Estado.COMPRA_GUARDADA, null, compra)
+                    : null);
+            }
+            if (entrada.consulta == null) {
+                entrada.consulta = CompletableFuture.supplyAsync(() -> {
+                    ClaveIdempotencia registro = compraDAO.obtenerClave(clave);
+                    if (registro != null) {
+                        desdeTabla.incrementAndGet();
+                        synchronized (this) {
+                            entrada.enTabla = true;
+                            // Un registrar() posterior con la clave responde con esta compra sin intentar insertar
+                            if (registro.getCompra() != null && entrada.compra == null) {
+                                entrada.compra = CompletableFuture.completedFuture(registro.getCompra());
+                            }
+                        }
+                    }
+                    return registro;
+                }, consultas);
+            }
+            return entrada.consulta;
+        }
+    }
+
+    /**
+     * Guarda en la tabla un cobro aprobado o incierto antes de responderlo, para que un reintento después de
+     * reiniciar o de desalojar la clave no vuelva a cobrar; un rechazo borra el cobro incierto que hubiera
+     * Responde con el mismo resultado o error del cobro. Si no se puede guardar se responde igual; queda en
+     * memoria y la entrada no se desaloja.
+     */
+    private CompletableFuture<ResultadoPago> recordar(String clave, Entrada entrada, ResultadoPago resultado,
+                                                      Throwable error) {
+        boolean guardar = error != null || !olvidable(resultado);
+        synchronized (this) {
+            if (!guardar && !entrada.enTabla) {
+                return completado(resultado, error);
+            }
+        }
+        CompletableFuture<ResultadoPago> respuesta = new CompletableFuture<>();
+        try {
+            consultas.execute(() -> {
+                try {
+                    guardarEstado(clave, entrada, resultado, error);
+                } finally {
+                    completar(respuesta, resultado, error);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.error("Cobro con la clave {} sin guardar en la tabla: el motor se detuvo", clave);
+            completar(respuesta, resultado, error);
+        }
+        return respuesta;
+    }
+
+    private void guardarEstado(String clave, Entrada entrada, ResultadoPago resultado, Throwable error) {
+        boolean enTabla;
+        if (error != null || incierto(resultado)) {
+            enTabla = compraDAO.registrarPagoIncierto(clave);
+            if (!enTabla) {
+                LOG.error("Cobro incierto con la clave {} sin guardar en la tabla", clave);
+            }
+        } else if (resultado.isAprobado()) {
+            enTabla = compraDAO.registrarPagoAprobado(clave, resultado.getAutorizacion());
+            if (!enTabla) {
+                LOG.error("Pago aprobado con la clave {} sin guardar en la tabla", clave);
+            }
+        } else {
+            // Si no se borra, el reintento vuelve a preguntar a la pasarela, que ya olvidó el rechazo y cobra
+            compraDAO.olvidarPagoIncierto(clave);
+            enTabla = false;
+        }
+        synchronized (this) {
+            entrada.enTabla = enTabla;
+        }
+    }
+
+    /**
+     * Borra de la tabla las claves guardadas hace más de RETENCION_MS; un reintento con ellas es un checkout nuevo
+     * @return claves borradas, o -1 si hubo error
+     */
+    public int purgar(long ahoraMs) {
+        int borradas = compraDAO.eliminarClavesAnteriores(ahoraMs - RETENCION_MS);
+        if (borradas > 0) {
+            purgadas.addAndGet(borradas);
+        }
+        return borradas;
+    }
+
+    /**
+     * Agrega la entrada de la clave y, si se pasa de la capacidad, desaloja las más antiguas que se puedan olvidar
+     * Llamar con el monitor del registro.
+     */
+    private Entrada entrada(String clave) {
+        Entrada entrada = recientes.get(clave);
+        if (entrada != null) {
+            return entrada;
+        }
+        entrada = new Entrada();
+        recientes.put(clave, entrada);
+        if (recientes.size() > capacidad) {
+            desalojar(entrada);
+        }
+        return entrada;
+    }
+
+    /**
+     * Revisa a lo más ESCANEO_MAXIMO de las claves más antiguas; las que no se pueden desalojar pasan al final
+     * para que la siguiente revisión empiece por otras. Llamar con el monitor del registro.
+     */
+    private void desalojar(Entrada nueva) {
+        List<String> ocupadas = new ArrayList<>();
+        Iterator<Map.Entry<String, Entrada>> it = recientes.entrySet().iterator();
+        for (int revisadas = 0; recientes.size() > capacidad && revisadas < ESCANEO_MAXIMO && it.hasNext(); revisadas++) {
+            Map.Entry<String, Entrada> mayor = it.next();
+            if (mayor.getValue() == nueva) {
+                break;
+            }
+            if (mayor.getValue().desalojable()) {
+                it.remove();
+                desalojadas.incrementAndGet();
+            } else {
+                ocupadas.add(mayor.getKey());
+            }
+        }
+        // En orden de acceso, get() las pasa al final
+        for (String clave : ocupadas) {
+            recientes.get(clave);
+        }
+    }
+
+    private static ResultadoPago yaRegistrada(Compra compra, String autorizacion) {
+        return new ResultadoPago(ResultadoPago.Estado.APROBADO, autorizacion,
+            "Sin cobro: compra ya registrada con folio " + compra.getFolio(), 0);
+    }
+
+    /**
+     * Resultado que asegura que no hubo cobro: rechazado por la pasarela o sin llegar a ella
+     */
+    private static boolean olvidable(ResultadoPago resultado) {
+        return resultado.getEstado() == ResultadoPago.Estado.RECHAZADO
+            || resultado.getEstado() == ResultadoPago.Estado.SATURADO;
+    }
+
+    /**
+     * Resultado que no dice si se cobró
+     */
+    private static boolean incierto(ResultadoPago resultado) {
+        return resultado.getEstado() == ResultadoPago.Estado.TIEMPO_AGOTADO
+            || resultado.getEstado() == ResultadoPago.Estado.ERROR;
+    }
+
+    private static boolean incierto(CompletableFuture<ResultadoPago> pago) {
+        return pago.isCompletedExceptionally() || incierto(pago.join());
+    }
+
+    private static <T> CompletableFuture<T> completado(T valor, Throwable error) {
+        return error != null ? CompletableFuture.failedFuture(error) : CompletableFuture.completedFuture(valor);
+    }
+
+    private static <T> CompletableFuture<T> iniciar(Supplier<CompletableFuture<T>> accion) {
+        try {
+            return accion.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static <T> void completar(CompletableFuture<T> future, T valor, Throwable error) {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(valor);
+        }
+    }
+
+    public synchronized int getTamano() {
+        return recientes.size();
+    }
+
+    /**
+     * Solicitudes respondidas con lo que ya estaba en curso o hecho para su clave
+     */
+    public long getRepetidas() {
+        return repetidas.get();
+    }
+
+    public long getDesdeTabla() {
+        return desdeTabla.get();
+    }
+
+    /**
+     * Cobros que terminaron sin saber si se cobró (tiempo agotado o error)
+     */
+    public long getInciertos() {
+        return inciertos.get();
+    }
+
+    public long getDesalojadas() {
+        return desalojadas.get();
+    }
+
+    /**
+     * Claves borradas de la tabla al vencer su retención
+     */
+    public long getPurgadas() {
+        return purgadas.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RegistroIdempotencia[claves=" + getTamano() + "/" + capacidad + ", repetidas=" + repetidas.get() +
+               ", desde tabla=" + desdeTabla.get() + ", inciertos=" + inciertos.get() +
+               ", desalojadas=" + desalojadas.get() + ", purgadas=" + purgadas.get() + "]";
+    }
+}
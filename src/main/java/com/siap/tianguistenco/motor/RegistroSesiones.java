@@ -0,0 +1,136 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.model.CarritoCompra;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sesiones abiertas indexadas por id
+ * Los ids son 128 bits aleatorios (SecureRandom) en Base64 URL, así un frente web o de kiosco los puede
+ * entregar al cliente sin que se puedan adivinar. mantener() compacta las sesiones inactivas y elimina las
+ * expiradas; las sesiones fijas solo se cierran explícitamente.
+ */
+public class RegistroSesiones {
+    private final ConcurrentHashMap<String, SesionCompra> sesiones = new ConcurrentHashMap<>();
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final Base64.Encoder codificador = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * Abre una sesión nueva
+     * @param carrito carrito propio del cliente, o null para que la sesión maneje el suyo
+     */
+    public SesionCompra abrir(int usuarioId, CarritoCompra carrito) {
+        long ahora = System.currentTimeMillis();
+        while (true) {
+            byte[] bytes = new byte[16];
+            aleatorio.nextBytes(bytes);
+            SesionCompra sesion = new SesionCompra(codificador.encodeToString(bytes), usuarioId, carrito, ahora);
+            if (sesiones.putIfAbsent(sesion.getId(), sesion) == null) {
+                return sesion;
+            }
+        }
+    }
+
+    /**
+     * Busca una sesión y registra el acceso
+     * @return la sesión, o null si no existe o ya expiró
+     */
+    public SesionCompra obtener(String id) {
+        SesionCompra sesion = id != null ? sesiones.get(id) : null;
+        if (sesion == null) {
+            return null;
+        }
+        // Con el monitor, para que mantener() no la expire entre la búsqueda y el acceso
+        synchronized (sesion) {
+            sesion.tocar(System.currentTimeMillis());
+            return sesiones.get(id) == sesion ? sesion : null;
+        }
+    }
+
+    public SesionCompra cerrar(String id) {
+        SesionCompra sesion = sesiones.remove(id);
+        if (sesion != null) {
+            synchronized (sesion) {
+                sesion.liberarReservas();
+            }
+        }
+        return sesion;
+    }
+
+    /**
+     * Compacta las sesiones sin uso desde hace inactividadMs y elimina las que llevan expiracionMs sin uso
+     * @return resultado de la pasada
+     */
+    public Mantenimiento mantener(long ahoraMs, long inactividadMs, long expiracionMs) {
+        int compactadas = 0;
+        int expiradas = 0;
+        Iterator<SesionCompra> it = sesiones.values().iterator();
+        while (it.hasNext()) {
+            SesionCompra sesion = it.next();
+            if (ahoraMs - sesion.getUltimoAccesoMs() < inactividadMs) {
+                continue;
+            }
+            synchronized (sesion) {
+                // Se vuelve a medir con el monitor: la sesión pudo usarse después de la primera lectura
+                long inactiva = ahoraMs - sesion.getUltimoAccesoMs();
+                if (inactiva < inactividadMs) {
+                    continue;
+                }
+                if (!sesion.isFija() && !sesion.isPagando() && inactiva >= expiracionMs) {
+                    it.remove();
+                    sesion.liberarReservas();
+                    expiradas++;
+                } else if (sesion.compactar()) {
+                    compactadas++;
+                }
+            }
+        }
+        return new Mantenimiento(compactadas, expiradas);
+    }
+
+    public int getTamano() {
+        return sesiones.size();
+    }
+
+    /**
+     * Sesiones con carrito en memoria (recorre el registro)
+     */
+    public int contarActivas() {
+        int activas = 0;
+        for (SesionCompra sesion : sesiones.values()) {
+            if (!sesion.isCompactada()) {
+                activas++;
+            }
+        }
+        return activas;
+    }
+
+    /**
+     * Resultado de una pasada de mantenimiento
+     */
+    public static final class Mantenimiento {
+        private final int compactadas;
+        private final int expiradas;
+
+        Mantenimiento(int compactadas, int expiradas) {
+            this.compactadas = compactadas;
+            this.expiradas = expiradas;
+        }
+
+        public int getCompactadas() {
+            return compactadas;
+        }
+
+        public int getExpiradas() {
+            return expiradas;
+        }
+
+        @Override
+        public String toString() {
+            return "compactadas=" + compactadas + ", expiradas=" + expiradas;
+        }
+    }
+}
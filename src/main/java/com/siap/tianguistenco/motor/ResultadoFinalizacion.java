@@ -0,0 +1,47 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.model.Compra;
+import com.siap.tianguistenco.pagos.ResultadoPago;
+
+/**
+ * Resultado de finalizar la compra de una sesión: el pago y, si se aprobó y se guardó, la compra
+ */
+public final class ResultadoFinalizacion {
+    private final ResultadoPago pago;
+    private final Compra compra;
+    private final String mensaje;
+
+    ResultadoFinalizacion(ResultadoPago pago, Compra compra, String mensaje) {
+        this.pago = pago;
+        this.compra = compra;
+        this.mensaje = mensaje;
+    }
+
+    /**
+     * Resultado del cobro; null si la compra no llegó a cobrarse (carrito vacío, pago ya en curso, ...)
+     */
+    public ResultadoPago getPago() {
+        return pago;
+    }
+
+    /**
+     * Compra guardada con su id, o null si no se completó
+     */
+    public Compra getCompra() {
+        return compra;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public boolean isExitosa() {
+        return compra != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultadoFinalizacion[" + (isExitosa() ? "compra " + compra.getFolio() : "sin compra") +
+               ", " + mensaje + "]";
+    }
+}
@@ -0,0 +1,78 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.model.Centavos;
+import com.siap.tianguistenco.model.ItemCarrito;
+
+import java.util.List;
+
+/**
+ * Estado del carrito de una sesión en un momento dado (inmutable)
+ * Es lo que el MotorComercio devuelve a sus clientes después de cada operación sobre el carrito.
+ */
+public final class ResumenCarrito {
+    private final List<ItemCarrito> items;
+    private final long subtotalCentavos;
+    private final long descuentoCentavos;
+    private final int piezas;
+    private final String promociones;
+    private final long version;
+
+    ResumenCarrito(List<ItemCarrito> items, long subtotalCentavos, long descuentoCentavos, int piezas,
+                   String promociones, long version) {
+        this.items = items;
+        this.subtotalCentavos = subtotalCentavos;
+        this.descuentoCentavos = descuentoCentavos;
+        this.piezas = piezas;
+        this.promociones = promociones;
+        this.version = version;
+    }
+
+    static ResumenCarrito vacio() {
+        return new ResumenCarrito(List.of(), 0, 0, 0, "", 0);
+    }
+
+    public List<ItemCarrito> getItems() {
+        return items;
+    }
+
+    public long getSubtotalCentavos() {
+        return subtotalCentavos;
+    }
+
+    public long getDescuentoCentavos() {
+        return descuentoCentavos;
+    }
+
+    public long getTotalCentavos() {
+        return subtotalCentavos - descuentoCentavos;
+    }
+
+    public int getPiezas() {
+        return piezas;
+    }
+
+    /**
+     * Descripción de las promociones aplicadas, o cadena vacía
+     */
+    public String getPromociones() {
+        return promociones;
+    }
+
+    /**
+     * Versión del carrito que describe este resumen
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean estaVacio() {
+        return items.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ResumenCarrito[" + items.size() + " líneas, " + piezas + " piezas, subtotal " +
+               Centavos.formatear(subtotalCentavos) + ", descuento " + Centavos.formatear(descuentoCentavos) +
+               ", total " + Centavos.formatear(getTotalCentavos()) + "]";
+    }
+}
@@ -0,0 +1,193 @@
+package com.siap.tianguistenco.motor;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.promociones.EvaluacionCarrito;
+import com.siap.tianguistenco.promociones.ReglasPromocion;
+import com.siap.tianguistenco.repository.CatalogoProductos;
+
+import java.util.List;
+
+/**
+ * Estado de un cliente conectado al MotorComercio: usuario, carrito y evaluación de promociones
+ * Una sesión recién abierta o con el carrito vacío no reserva carrito ni evaluación. Cuando pasa un tiempo
+ * sin uso se compacta: las líneas se guardan como dos arreglos (id de producto y cantidad) y el carrito se
+ * vuelve a armar con el catálogo vigente en el siguiente acceso. Una sesión compactada no retiene existencias:
+ * al compactarse libera sus reservas y al rearmarse las vuelve a pedir, descartando las líneas que ya no alcanzan.
+ * Las operaciones se hacen con el monitor de la sesión (sin candado aparte, para no ocupar memoria en las
+ * sesiones inactivas); dentro de él no hay esperas de base de datos ni de la pasarela.
+ */
+public final class SesionCompra {
+    private static final Bitacora LOG = Bitacora.de(SesionCompra.class);
+
+    private final String id;
+    private final int usuarioId;
+    private final long creadaMs;
+    private final boolean fija;
+    private volatile long ultimoAccesoMs;
+
+    // Carrito activo; null mientras la sesión está vacía o compactada
+    private CarritoCompra carrito;
+    private EvaluacionCarrito evaluacion;
+    // Versión del carrito con la que la evaluación está al día
+    private long versionEvaluada;
+
+    // Líneas de una sesión compactada
+    private String[] idsCompactados;
+    private int[] cantidadesCompactadas;
+
+    private boolean pagando;
+
+    SesionCompra(String id, int usuarioId, CarritoCompra carrito, long ahoraMs) {
+        this.id = id;
+        this.usuarioId = usuarioId;
+        this.creadaMs = ahoraMs;
+        this.ultimoAccesoMs = ahoraMs;
+        this.carrito = carrito;
+        // Un cliente que trae su propio carrito (la ventana de escritorio) lo sigue usando: no se compacta
+        this.fija = carrito != null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getUsuarioId() {
+        return usuarioId;
+    }
+
+    public long getCreadaMs() {
+        return creadaMs;
+    }
+
+    public long getUltimoAccesoMs() {
+        return ultimoAccesoMs;
+    }
+
+    /**
+     * Sesión de un cliente con carrito propio; no se compacta ni expira por inactividad
+     */
+    public boolean isFija() {
+        return fija;
+    }
+
+    void tocar(long ahoraMs) {
+        ultimoAccesoMs = ahoraMs;
+    }
+
+    /**
+     * Carrito de la sesión; lo crea o lo rearma desde las líneas compactadas
+     * Los productos que ya no están en el catálogo o que ya no tienen existencias se descartan.
+     * Llamar con el monitor de la sesión.
+     */
+    CarritoCompra abrirCarrito(CatalogoProductos catalogo, CarritoCompra.Existencias existencias) {
+        if (carrito == null) {
+            carrito = new CarritoCompra(existencias);
+            if (idsCompactados != null) {
+                for (int i = 0; i < idsCompactados.length; i++) {
+                    Producto producto = catalogo.buscarPorId(idsCompactados[i]);
+                    if (producto != null && !carrito.agregarProducto(producto, cantidadesCompactadas[i])) {
+                        LOG.info("Sesión {}: {} se quitó del carrito por falta de existencias", id, producto.getId());
+                    }
+                }
+                idsCompactados = null;
+                cantidadesCompactadas = null;
+            }
+        }
+        return carrito;
+    }
+
+    /**
+     * Evaluación de promociones al día con el carrito y las reglas dadas; llamar con el monitor de la sesión
+     * Si el único cambio desde la última evaluación fue la línea de productoId, solo se reevalúa esa línea;
+     * si el carrito cambió de otra forma se recorre completo.
+     * @param productoId producto cuya línea se acaba de cambiar, o null si no se cambió una sola línea
+     */
+    EvaluacionCarrito evaluar(CarritoCompra carritoActivo, ReglasPromocion reglas, String productoId) {
+        long version = carritoActivo.getVersion();
+        if (evaluacion == null) {
+            evaluacion = new EvaluacionCarrito(reglas);
+            evaluacion.sincronizar(carritoActivo.getItems());
+        } else {
+            evaluacion.setReglas(reglas);
+            if (productoId != null && version == versionEvaluada + 1) {
+                evaluacion.actualizarLinea(carritoActivo, productoId);
+            } else if (version != versionEvaluada) {
+                evaluacion.sincronizar(carritoActivo.getItems());
+            }
+        }
+        versionEvaluada = version;
+        return evaluacion;
+    }
+
+    /**
+     * Registra que la evaluación sigue al día después de aplicar su descuento al carrito (que sube la versión);
+     * llamar con el monitor de la sesión
+     */
+    void descuentoAplicado(long version) {
+        versionEvaluada = version;
+    }
+
+    /**
+     * true si la sesión no tiene líneas (ni en el carrito ni compactadas); llamar con el monitor de la sesión
+     */
+    boolean sinLineas() {
+        return carrito != null ? carrito.estaVacio() : idsCompactados == null;
+    }
+
+    /**
+     * Libera el carrito, sus reservas y la evaluación guardando solo las líneas; llamar con el monitor de la sesión
+     * @return true si se liberó memoria
+     */
+    boolean compactar() {
+        if (fija || pagando || carrito == null) {
+            return false;
+        }
+        List<ItemCarrito> items = carrito.getItems();
+        if (!items.isEmpty()) {
+            idsCompactados = new String[items.size()];
+            cantidadesCompactadas = new int[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                idsCompactados[i] = items.get(i).getProducto().getId();
+                cantidadesCompactadas[i] = items.get(i).getCantidad();
+            }
+            carrito.limpiar();
+        }
+        carrito = null;
+        evaluacion = null;
+        return true;
+    }
+
+    /**
+     * Devuelve las existencias reservadas por el carrito al cerrar o expirar la sesión
+     * El carrito de una sesión fija es del cliente y no se toca; el de una sesión con pago en curso lo vacía
+     * el propio pago. Llamar con el monitor de la sesión.
+     */
+    void liberarReservas() {
+        if (!fija && !pagando && carrito != null) {
+            carrito.limpiar();
+        }
+    }
+
+    /**
+     * true si la sesión no tiene carrito en memoria (vacía o compactada)
+     */
+    public synchronized boolean isCompactada() {
+        return carrito == null;
+    }
+
+    boolean isPagando() {
+        return pagando;
+    }
+
+    void setPagando(boolean pagando) {
+        this.pagando = pagando;
+    }
+
+    @Override
+    public String toString() {
+        return "SesionCompra[" + id + ", usuario=" + usuarioId + (fija ? ", fija" : "") + "]";
+    }
+}
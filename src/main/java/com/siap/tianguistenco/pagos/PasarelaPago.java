@@ -0,0 +1,28 @@
+package com.siap.tianguistenco.pagos;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pasarela que autoriza cobros sin bloquear al que llama
+ * La implementación completa el future cuando la pasarela responde; un rechazo se reporta como resultado,
+ * no como excepción. Una excepción indica que no hubo respuesta (error de comunicación): el cobro pudo
+ * haberse hecho o no. Por eso cada cobro lleva una clave de idempotencia; repetir la solicitud con la
+ * misma clave no cobra otra vez y responde con el resultado de la primera.
+ */
+public interface PasarelaPago {
+
+    /**
+     * Solicita la autorización de un cobro sin clave de idempotencia
+     */
+    default CompletableFuture<ResultadoPago> autorizar(Integer tarjetaId, long montoCentavos) {
+        return autorizar(tarjetaId, montoCentavos, null);
+    }
+
+    /**
+     * Solicita la autorización de un cobro
+     * @param tarjetaId tarjeta a cargar, o null para pago en efectivo
+     * @param montoCentavos monto a cobrar en centavos
+     * @param clave clave de idempotencia del cobro, o null si no se va a reintentar
+     */
+    CompletableFuture<ResultadoPago> autorizar(Integer tarjetaId, long montoCentavos, String clave);
+}
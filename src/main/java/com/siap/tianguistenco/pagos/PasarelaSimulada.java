@@ -0,0 +1,144 @@
+package com.siap.tianguistenco.pagos;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pasarela local que imita a la real: responde después de una latencia aleatoria y rechaza o falla
+ * con las probabilidades configuradas
+ * Las respuestas se programan en un solo hilo temporizador; ningún pago ocupa un hilo mientras espera.
+ * La latencia es uniforme entre el mínimo y el máximo; con probabilidad de lentitud se suma la latencia
+ * lenta, para reproducir la cola larga de una pasarela real.
+ * Una falla es una respuesta perdida: el cobro se aprueba o se rechaza igual, pero quien llamó recibe un error.
+ * Con clave de idempotencia, la solicitud repetida recibe el resultado del primer cobro (aunque siga en curso)
+ * durante RETENCION_CLAVES_HORAS; un cobro rechazado no se recuerda y se puede volver a intentar.
+ */
+public class PasarelaSimulada implements PasarelaPago {
+    public static final long RETENCION_CLAVES_HORAS = 24;
+
+    private static final ScheduledExecutorService TEMPORIZADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "PasarelaSimulada-Temporizador");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private final long latenciaMinMs;
+    private final long latenciaMaxMs;
+    private final double probabilidadLenta;
+    private final long latenciaLentaMs;
+    private final double probabilidadRechazo;
+    private final double probabilidadError;
+    private final AtomicLong autorizaciones = new AtomicLong();
+    private final ConcurrentHashMap<String, CompletableFuture<ResultadoPago>> porClave = new ConcurrentHashMap<>();
+
+    // Métricas
+    private final AtomicLong cobros = new AtomicLong();
+    private final AtomicLong repetidas = new AtomicLong();
+
+    public PasarelaSimulada(long latenciaMinMs, long latenciaMaxMs, double probabilidadLenta, long latenciaLentaMs,
+                            double probabilidadRechazo, double probabilidadError) {
+        if (latenciaMinMs < 0 || latenciaMaxMs < latenciaMinMs) {
+            throw new IllegalArgumentException("Latencia inválida: " + latenciaMinMs + " - " + latenciaMaxMs);
+        }
+        this.latenciaMinMs = latenciaMinMs;
+        this.latenciaMaxMs = latenciaMaxMs;
+        this.probabilidadLenta = probabilidadLenta;
+        this.latenciaLentaMs = latenciaLentaMs;
+        this.probabilidadRechazo = probabilidadRechazo;
+        this.probabilidadError = probabilidadError;
+    }
+
+    /**
+     * Valores de la aplicación: alrededor de 1.5 s, 2% de respuestas lentas, 5% de rechazos
+     */
+    public static PasarelaSimulada predeterminada() {
+        return new PasarelaSimulada(1000, 2000, 0.02, 8000, 0.05, 0.0);
+    }
+
+    @Override
+    public CompletableFuture<ResultadoPago> autorizar(Integer tarjetaId, long montoCentavos, String clave) {
+        CompletableFuture<ResultadoPago> cobro;
+        if (clave == null) {
+            cobro = cobrar(tarjetaId);
+        } else {
+            CompletableFuture<ResultadoPago> nuevo = new CompletableFuture<>();
+            cobro = porClave.putIfAbsent(clave, nuevo);
+            if (cobro != null) {
+                repetidas.incrementAndGet();
+            } else {
+                cobro = nuevo;
+                cobrar(tarjetaId).thenAccept(resultado -> {
+                    if (!resultado.isAprobado()) {
+                        porClave.remove(clave, nuevo);
+                    } else {
+                        TEMPORIZADOR.schedule(() -> porClave.remove(clave, nuevo), RETENCION_CLAVES_HORAS, TimeUnit.HOURS);
+                    }
+                    nuevo.complete(resultado);
+                });
+            }
+        }
+
+        if (ThreadLocalRandom.current().nextDouble() < probabilidadError) {
+            return cobro.thenCompose(resultado ->
+                CompletableFuture.failedFuture(new IllegalStateException("La pasarela no respondió correctamente")));
+        }
+        // Copia: quien llama puede completar su future (p. ej. con orTimeout) sin tocar el de la clave
+        return cobro.copy();
+    }
+
+    /**
+     * Programa la respuesta de un cobro nuevo
+     */
+    private CompletableFuture<ResultadoPago> cobrar(Integer tarjetaId) {
+        cobros.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latencia = latenciaMinMs + (latenciaMaxMs > latenciaMinMs ? random.nextLong(latenciaMaxMs - latenciaMinMs + 1) : 0);
+        if (random.nextDouble() < probabilidadLenta) {
+            latencia += latenciaLentaMs;
+        }
+        boolean rechazo = random.nextDouble() < probabilidadRechazo;
+
+        CompletableFuture<ResultadoPago> respuesta = new CompletableFuture<>();
+        TEMPORIZADOR.schedule(() -> {
+            if (rechazo) {
+                respuesta.complete(ResultadoPago.rechazado(tarjetaId != null ? "Tarjeta rechazada" : "Pago rechazado"));
+            } else {
+                respuesta.complete(ResultadoPago.aprobado("AUT-" + autorizaciones.incrementAndGet()));
+            }
+        }, latencia, TimeUnit.MILLISECONDS);
+        return respuesta;
+    }
+
+    /**
+     * Cobros que llegaron a la pasarela (sin contar las solicitudes repetidas con la misma clave)
+     */
+    public long getCobros() {
+        return cobros.get();
+    }
+
+    /**
+     * Cobros aprobados
+     */
+    public long getAutorizaciones() {
+        return autorizaciones.get();
+    }
+
+    /**
+     * Solicitudes respondidas con el cobro ya hecho para su clave
+     */
+    public long getRepetidas() {
+        return repetidas.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PasarelaSimulada[latencia=%d-%d ms, lenta=%.0f%% +%d ms, rechazo=%.0f%%, error=%.0f%%]",
+            latenciaMinMs, latenciaMaxMs, probabilidadLenta * 100, latenciaLentaMs,
+            probabilidadRechazo * 100, probabilidadError * 100);
+    }
+}
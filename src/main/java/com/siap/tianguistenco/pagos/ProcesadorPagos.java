@@ -0,0 +1,241 @@
+package com.siap.tianguistenco.pagos;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Envía los pagos a la pasarela sin bloquear y con un número máximo de autorizaciones en vuelo
+ * Si todas las plazas están ocupadas la solicitud espera en una cola acotada; con la cola llena se
+ * responde SATURADO de inmediato. Cada solicitud tiene un plazo que cuenta desde que se pide (incluye la
+ * espera en cola); al vencer se responde TIEMPO_AGOTADO. La plaza se libera cuando la pasarela contesta
+ * o cuando vence el plazo de la llamada, no antes, para no exceder el límite real de la pasarela.
+ */
+public class ProcesadorPagos {
+    private static final Bitacora LOG = Bitacora.de(ProcesadorPagos.class);
+
+    public static final long PLAZO_PREDETERMINADO_MS = 15_000;
+    private static final int MAXIMO_EN_VUELO = 16;
+    private static final int COLA_MAXIMA = 256;
+
+    private static ProcesadorPagos instancia;
+
+    private final PasarelaPago pasarela;
+    private final int maximoEnVuelo;
+    private final int colaMaxima;
+    private final ReentrantLock candado = new ReentrantLock();
+    private final Deque<Solicitud> cola = new ArrayDeque<>();
+    private int enVuelo;
+    private int maximoEnVueloObservado;
+
+    private final AtomicLong aprobados = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final AtomicLong agotados = new AtomicLong();
+    private final AtomicLong saturados = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    public ProcesadorPagos(PasarelaPago pasarela, int maximoEnVuelo, int colaMaxima) {
+        if (maximoEnVuelo <= 0 || colaMaxima < 0) {
+            throw new IllegalArgumentException("Límites inválidos: en vuelo " + maximoEnVuelo + ", cola " + colaMaxima);
+        }
+        this.pasarela = pasarela;
+        this.maximoEnVuelo = maximoEnVuelo;
+        this.colaMaxima = colaMaxima;
+    }
+
+    public static synchronized ProcesadorPagos getInstancia() {
+        if (instancia == null) {
+            instancia = new ProcesadorPagos(PasarelaSimulada.predeterminada(), MAXIMO_EN_VUELO, COLA_MAXIMA);
+        }
+        return instancia;
+    }
+
+    public CompletableFuture<ResultadoPago> procesar(Integer tarjetaId, long montoCentavos) {
+        return procesar(tarjetaId, montoCentavos, null, PLAZO_PREDETERMINADO_MS);
+    }
+
+    public CompletableFuture<ResultadoPago> procesar(Integer tarjetaId, long montoCentavos, long plazoMs) {
+        return procesar(tarjetaId, montoCentavos, null, plazoMs);
+    }
+
+    /**
+     * Solicita un pago con clave de idempotencia y el plazo predeterminado
+     */
+    public CompletableFuture<ResultadoPago> procesar(Integer tarjetaId, long montoCentavos, String clave) {
+        return procesar(tarjetaId, montoCentavos, clave, PLAZO_PREDETERMINADO_MS);
+    }
+
+    /**
+     * Solicita un pago; el future siempre se completa normalmente con el resultado
+     * TIEMPO_AGOTADO y ERROR no dicen si se cobró: el reintento debe usar la misma clave para que la pasarela
+     * responda con el primer cobro en vez de hacer otro. SATURADO nunca llegó a la pasarela.
+     * @param clave clave de idempotencia que se pasa a la pasarela, o null
+     * @param plazoMs tiempo máximo desde ahora hasta tener respuesta
+     */
+    public CompletableFuture<ResultadoPago> procesar(Integer tarjetaId, long montoCentavos, String clave, long plazoMs) {
+        Solicitud solicitud = new Solicitud(tarjetaId, montoCentavos, clave, plazoMs);
+        solicitud.resultado.completeOnTimeout(
+            new ResultadoPago(ResultadoPago.Estado.TIEMPO_AGOTADO, null, "Sin respuesta en " + plazoMs + " ms", 0),
+            plazoMs, TimeUnit.MILLISECONDS);
+
+        boolean despachar = false;
+        boolean saturado = false;
+        candado.lock();
+        try {
+            if (enVuelo < maximoEnVuelo) {
+                ocuparPlaza();
+                despachar = true;
+            } else if (cola.size() < colaMaxima) {
+                cola.addLast(solicitud);
+            } else {
+                saturado = true;
+            }
+        } finally {
+            candado.unlock();
+        }
+
+        if (saturado) {
+            solicitud.resultado.complete(new ResultadoPago(ResultadoPago.Estado.SATURADO, null,
+                "Demasiados pagos en proceso, intente de nuevo", 0));
+        } else if (despachar && !despachar(solicitud)) {
+            liberarPlaza();
+        }
+        return solicitud.resultado.thenApply(resultado -> contar(resultado.conTiempo(System.nanoTime() - solicitud.inicio)));
+    }
+
+    private void ocuparPlaza() {
+        enVuelo++;
+        maximoEnVueloObservado = Math.max(maximoEnVueloObservado, enVuelo);
+    }
+
+    /**
+     * Llama a la pasarela con la plaza ya ocupada
+     * @return false si la solicitud ya venció; la plaza sigue ocupada y la debe liberar quien llama
+     */
+    private boolean despachar(Solicitud solicitud) {
+        long restanteNanos = solicitud.limiteNanos - System.nanoTime();
+        if (solicitud.resultado.isDone() || restanteNanos <= 0) {
+            // Venció mientras esperaba en la cola
+            return false;
+        }
+        CompletableFuture<ResultadoPago> llamada;
+        try {
+            llamada = pasarela.autorizar(solicitud.tarjetaId, solicitud.montoCentavos, solicitud.clave);
+        } catch (RuntimeException e) {
+            llamada = CompletableFuture.failedFuture(e);
+        }
+        llamada.orTimeout(restanteNanos, TimeUnit.NANOSECONDS).whenComplete((resultado, error) -> {
+            liberarPlaza();
+            if (error == null) {
+                solicitud.resultado.complete(resultado);
+                return;
+            }
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (causa instanceof TimeoutException) {
+                solicitud.resultado.complete(new ResultadoPago(ResultadoPago.Estado.TIEMPO_AGOTADO, null,
+                    "La pasarela no respondió a tiempo", 0));
+            } else {
+                LOG.error("Error en la pasarela de pago: {}", causa.getMessage());
+                solicitud.resultado.complete(new ResultadoPago(ResultadoPago.Estado.ERROR, null,
+                    "Error de comunicación con la pasarela", 0));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Cede la plaza a la siguiente solicitud vigente en cola o la libera
+     * Las solicitudes vencidas se descartan en un ciclo (no por recursión): con la cola larga y muchos
+     * plazos vencidos a la vez la pila no crece.
+     */
+    private void liberarPlaza() {
+        while (true) {
+            Solicitud siguiente;
+            candado.lock();
+            try {
+                siguiente = cola.pollFirst();
+                if (siguiente == null) {
+                    enVuelo--;
+                    return;
+                }
+            } finally {
+                candado.unlock();
+            }
+            if (despachar(siguiente)) {
+                return;
+            }
+        }
+    }
+
+    private ResultadoPago contar(ResultadoPago resultado) {
+        switch (resultado.getEstado()) {
+            case APROBADO -> aprobados.incrementAndGet();
+            case RECHAZADO -> rechazados.incrementAndGet();
+            case TIEMPO_AGOTADO -> agotados.incrementAndGet();
+            case SATURADO -> saturados.incrementAndGet();
+            case ERROR -> errores.incrementAndGet();
+        }
+        return resultado;
+    }
+
+    public int getEnVuelo() {
+        candado.lock();
+        try {
+            return enVuelo;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public int getMaximoEnVueloObservado() {
+        candado.lock();
+        try {
+            return maximoEnVueloObservado;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public int getEnCola() {
+        candado.lock();
+        try {
+            return cola.size();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProcesadorPagos[en vuelo=" + getEnVuelo() + "/" + maximoEnVuelo + ", cola=" + getEnCola() + "/" + colaMaxima +
+               ", máx en vuelo=" + getMaximoEnVueloObservado() + ", aprobados=" + aprobados.get() +
+               ", rechazados=" + rechazados.get() + ", agotados=" + agotados.get() +
+               ", saturados=" + saturados.get() + ", errores=" + errores.get() + ", " + pasarela + "]";
+    }
+
+    /**
+     * Pago pendiente con su plazo
+     */
+    private static final class Solicitud {
+        private final Integer tarjetaId;
+        private final long montoCentavos;
+        private final String clave;
+        private final long inicio = System.nanoTime();
+        private final long limiteNanos;
+        private final CompletableFuture<ResultadoPago> resultado = new CompletableFuture<>();
+
+        Solicitud(Integer tarjetaId, long montoCentavos, String clave, long plazoMs) {
+            this.tarjetaId = tarjetaId;
+            this.montoCentavos = montoCentavos;
+            this.clave = clave;
+            this.limiteNanos = inicio + TimeUnit.MILLISECONDS.toNanos(plazoMs);
+        }
+    }
+}
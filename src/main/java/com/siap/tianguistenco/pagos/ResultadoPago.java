@@ -0,0 +1,72 @@
+package com.siap.tianguistenco.pagos;
+
+/**
+ * Resultado de una solicitud de pago
+ */
+public class ResultadoPago {
+    private final Estado estado;
+    private final String autorizacion;
+    private final String mensaje;
+    private final long tiempoNanos;
+
+    public ResultadoPago(Estado estado, String autorizacion, String mensaje, long tiempoNanos) {
+        this.estado = estado;
+        this.autorizacion = autorizacion;
+        this.mensaje = mensaje;
+        this.tiempoNanos = tiempoNanos;
+    }
+
+    public static ResultadoPago aprobado(String autorizacion) {
+        return new ResultadoPago(Estado.APROBADO, autorizacion, "Pago aprobado", 0);
+    }
+
+    public static ResultadoPago rechazado(String mensaje) {
+        return new ResultadoPago(Estado.RECHAZADO, null, mensaje, 0);
+    }
+
+    /**
+     * Copia del resultado con el tiempo total medido por el procesador
+     */
+    ResultadoPago conTiempo(long tiempoNanos) {
+        return new ResultadoPago(estado, autorizacion, mensaje, tiempoNanos);
+    }
+
+    public boolean isAprobado() {
+        return estado == Estado.APROBADO;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    /**
+     * Código de autorización de la pasarela; null si no se aprobó
+     */
+    public String getAutorizacion() {
+        return autorizacion;
+    }
+
+    public String getMensaje() {
+        return mensaje;
+    }
+
+    public double getTiempoMs() {
+        return tiempoNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%s) en %.1f ms", estado, mensaje, getTiempoMs());
+    }
+
+    /**
+     * Estados posibles de un pago
+     */
+    public enum Estado {
+        APROBADO,
+        RECHAZADO,
+        TIEMPO_AGOTADO,
+        SATURADO,
+        ERROR
+    }
+}
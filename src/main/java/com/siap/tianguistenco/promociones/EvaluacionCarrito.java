@@ -0,0 +1,192 @@
+package com.siap.tianguistenco.promociones;
+
+import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Centavos;
+import com.siap.tianguistenco.model.ItemCarrito;
+import com.siap.tianguistenco.model.Producto;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Descuentos de un carrito calculados de forma incremental
+ * Guarda el descuento de cada línea; cuando cambia una línea solo se vuelve a evaluar esa, y el descuento
+ * por total se obtiene con una búsqueda binaria sobre los umbrales. Si cambian las reglas se reevalúan
+ * todas las líneas. No es segura entre hilos: la usa solo el hilo que revisa los descuentos.
+ */
+public class EvaluacionCarrito {
+    private final Map<String, Linea> lineas = new HashMap<>();
+    private ReglasPromocion reglas;
+    private long subtotal;
+    private long descuentoLineas;
+    private long lineasEvaluadas;
+
+    public EvaluacionCarrito(ReglasPromocion reglas) {
+        this.reglas = reglas;
+    }
+
+    /**
+     * Cambia las reglas y reevalúa todas las líneas si son distintas de las actuales
+     */
+    public void setReglas(ReglasPromocion nuevas) {
+        if (nuevas == reglas) {
+            return;
+        }
+        reglas = nuevas;
+        descuentoLineas = 0;
+        for (Linea linea : lineas.values()) {
+            linea.descuento = evaluar(linea.producto, linea.cantidad);
+            descuentoLineas += linea.descuento;
+        }
+    }
+
+    /**
+     * Registra la cantidad actual de un producto; 0 quita la línea
+     */
+    public void actualizarLinea(Producto producto, int cantidad) {
+        Linea linea = lineas.get(producto.getId());
+        if (linea != null && linea.cantidad == cantidad && linea.producto.getPrecioCentavos() == producto.getPrecioCentavos()) {
+            return;
+        }
+        if (cantidad <= 0) {
+            quitarLinea(producto.getId());
+            return;
+        }
+        if (linea != null) {
+            subtotal -= linea.producto.getPrecioCentavos() * linea.cantidad;
+            descuentoLineas -= linea.descuento;
+        } else {
+            linea = new Linea();
+            lineas.put(producto.getId(), linea);
+        }
+        linea.producto = producto;
+        linea.cantidad = cantidad;
+        linea.descuento = evaluar(producto, cantidad);
+        subtotal += producto.getPrecioCentavos() * cantidad;
+        descuentoLineas += linea.descuento;
+    }
+
+    /**
+     * Ajusta solo la línea de un producto a lo que tiene ahora el carrito
+     */
+    public void actualizarLinea(CarritoCompra carrito, String productoId) {
+        ItemCarrito item = carrito.getItem(productoId);
+        if (item != null) {
+            actualizarLinea(item.getProducto(), item.getCantidad());
+        } else {
+            quitarLinea(productoId);
+        }
+    }
+
+    /**
+     * Quita la línea de un producto que ya no está en el carrito
+     */
+    public void quitarLinea(String productoId) {
+        Linea linea = lineas.remove(productoId);
+        if (linea != null) {
+            subtotal -= linea.producto.getPrecioCentavos() * linea.cantidad;
+            descuentoLineas -= linea.descuento;
+        }
+    }
+
+    /**
+     * Ajusta la evaluación a todos los items del carrito; solo reevalúa las líneas cuya cantidad cambió
+     * Recorre todo el carrito: para el cambio de una línea basta actualizarLinea().
+     */
+    public void sincronizar(List<ItemCarrito> items) {
+        for (ItemCarrito item : items) {
+            actualizarLinea(item.getProducto(), item.getCantidad());
+        }
+        // Todas las líneas del carrito ya están registradas; si sobran, se eliminaron del carrito
+        if (lineas.size() > items.size()) {
+            Set<String> presentes = new HashSet<>(items.size() * 2);
+            for (ItemCarrito item : items) {
+                presentes.add(item.getProducto().getId());
+            }
+            Iterator<Map.Entry<String, Linea>> it = lineas.entrySet().iterator();
+            while (it.hasNext()) {
+                Linea linea = it.next().getValue();
+                if (!presentes.contains(linea.producto.getId())) {
+                    subtotal -= linea.producto.getPrecioCentavos() * linea.cantidad;
+                    descuentoLineas -= linea.descuento;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void limpiar() {
+        lineas.clear();
+        subtotal = 0;
+        descuentoLineas = 0;
+    }
+
+    private long evaluar(Producto producto, int cantidad) {
+        lineasEvaluadas++;
+        return reglas.descuentoLinea(producto, cantidad);
+    }
+
+    /**
+     * Promoción por total aplicable al subtotal después de los descuentos de línea, o null
+     */
+    public Promocion getPromocionPorTotal() {
+        return reglas.promocionPorTotal(subtotal - descuentoLineas);
+    }
+
+    /**
+     * Descuento total en centavos: descuentos de línea más la promoción por total sobre el resto
+     */
+    public long getDescuentoCentavos() {
+        long restante = subtotal - descuentoLineas;
+        Promocion porTotal = reglas.promocionPorTotal(restante);
+        long descuentoTotal = porTotal != null ? Centavos.porcentaje(restante, porTotal.getPorcentaje()) : 0;
+        return descuentoLineas + descuentoTotal;
+    }
+
+    /**
+     * Descripción de los descuentos aplicados (promociones de producto y promoción por total), o cadena vacía
+     */
+    public String describir() {
+        StringBuilder sb = new StringBuilder();
+        if (descuentoLineas > 0) {
+            sb.append("Promociones de producto ").append(Centavos.formatear(descuentoLineas));
+        }
+        Promocion porTotal = getPromocionPorTotal();
+        if (porTotal != null) {
+            sb.append(sb.length() > 0 ? " + " : "").append(porTotal.getDescripcion());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Subtotal de las líneas registradas, sin descuentos
+     */
+    public long getSubtotalCentavos() {
+        return subtotal;
+    }
+
+    public long getDescuentoLineasCentavos() {
+        return descuentoLineas;
+    }
+
+    /**
+     * Veces que se evaluó una línea contra las reglas (para medir cuánto trabajo evita el cálculo incremental)
+     */
+    public long getLineasEvaluadas() {
+        return lineasEvaluadas;
+    }
+
+    public ReglasPromocion getReglas() {
+        return reglas;
+    }
+
+    private static final class Linea {
+        private Producto producto;
+        private int cantidad;
+        private long descuento;
+    }
+}
@@ -0,0 +1,96 @@
+package com.siap.tianguistenco.promociones;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de las promociones activas de la tienda
+ * Mantiene la lista de promociones y su versión compilada; las reglas se recompilan cuando cambia la lista
+ * o cuando alguna promoción entra o sale de su ventana de vigencia. Leer las reglas no toma candado.
+ */
+public class MotorPromociones {
+    private static final Bitacora LOG = Bitacora.de(MotorPromociones.class);
+
+    private static MotorPromociones instancia;
+
+    private final List<Promocion> promociones = new ArrayList<>();
+    private volatile ReglasPromocion reglas;
+
+    public MotorPromociones(List<Promocion> iniciales) {
+        promociones.addAll(iniciales);
+        reglas = ReglasPromocion.compilar(promociones, System.currentTimeMillis());
+    }
+
+    public static synchronized MotorPromociones getInstancia() {
+        if (instancia == null) {
+            instancia = new MotorPromociones(promocionesPredeterminadas());
+        }
+        return instancia;
+    }
+
+    /**
+     * Descuentos por monto de compra que la tienda ofrece siempre
+     */
+    public static List<Promocion> promocionesPredeterminadas() {
+        return List.of(
+            Promocion.porTotal("TOTAL_500", "10% (Compra mayor a $500)", 50_000, 10),
+            Promocion.porTotal("TOTAL_1000", "15% (Compra mayor a $1,000)", 100_000, 15),
+            Promocion.porTotal("TOTAL_2000", "20% (Compra mayor a $2,000)", 200_000, 20));
+    }
+
+    /**
+     * Reglas vigentes en este momento
+     */
+    public ReglasPromocion getReglas() {
+        return getReglas(System.currentTimeMillis());
+    }
+
+    /**
+     * Reglas vigentes en el instante dado; recompila si se cruzó una frontera de vigencia
+     */
+    public ReglasPromocion getReglas(long ahoraMs) {
+        ReglasPromocion actuales = reglas;
+        if (ahoraMs < actuales.getValidaHastaMs()) {
+            return actuales;
+        }
+        synchronized (this) {
+            if (ahoraMs >= reglas.getValidaHastaMs()) {
+                reglas = ReglasPromocion.compilar(promociones, ahoraMs);
+                LOG.info("Promociones recompiladas por vigencia: {}", reglas);
+            }
+            return reglas;
+        }
+    }
+
+    /**
+     * Agrega una promoción (o la reemplaza si ya hay una con el mismo id)
+     */
+    public synchronized void agregarPromocion(Promocion promocion) {
+        promociones.removeIf(p -> p.getId().equals(promocion.getId()));
+        promociones.add(promocion);
+        reglas = ReglasPromocion.compilar(promociones, System.currentTimeMillis());
+    }
+
+    public synchronized boolean quitarPromocion(String id) {
+        boolean quitada = promociones.removeIf(p -> p.getId().equals(id));
+        if (quitada) {
+            reglas = ReglasPromocion.compilar(promociones, System.currentTimeMillis());
+        }
+        return quitada;
+    }
+
+    /**
+     * Reemplaza todas las promociones
+     */
+    public synchronized void setPromociones(List<Promocion> nuevas) {
+        promociones.clear();
+        promociones.addAll(nuevas);
+        reglas = ReglasPromocion.compilar(promociones, System.currentTimeMillis());
+    }
+
+    public synchronized List<Promocion> getPromociones() {
+        return List.copyOf(promociones);
+    }
+}
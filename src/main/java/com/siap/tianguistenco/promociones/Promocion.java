@@ -0,0 +1,149 @@
+package com.siap.tianguistenco.promociones;
+
+/**
+ * Promoción que puede aplicarse al carrito
+ * Los tipos por producto y por categoría descuentan líneas; POR_TOTAL descuenta sobre el total de la compra
+ * después de los descuentos de línea. Cada promoción puede tener una ventana de vigencia en milisegundos
+ * desde epoch (desde inclusivo, hasta exclusivo).
+ */
+public final class Promocion {
+    public static final long SIN_LIMITE = Long.MAX_VALUE;
+
+    private final String id;
+    private final String descripcion;
+    private final Tipo tipo;
+    private final String clave;
+    private final int porcentaje;
+    private final long umbralCentavos;
+    private final int lleva;
+    private final int paga;
+    private final long desdeMs;
+    private final long hastaMs;
+
+    private Promocion(String id, String descripcion, Tipo tipo, String clave, int porcentaje,
+                      long umbralCentavos, int lleva, int paga, long desdeMs, long hastaMs) {
+        this.id = id;
+        this.descripcion = descripcion;
+        this.tipo = tipo;
+        this.clave = clave;
+        this.porcentaje = porcentaje;
+        this.umbralCentavos = umbralCentavos;
+        this.lleva = lleva;
+        this.paga = paga;
+        this.desdeMs = desdeMs;
+        this.hastaMs = hastaMs;
+    }
+
+    /**
+     * Porcentaje sobre el total de la compra a partir de un umbral
+     */
+    public static Promocion porTotal(String id, String descripcion, long umbralCentavos, int porcentaje) {
+        validarPorcentaje(porcentaje);
+        return new Promocion(id, descripcion, Tipo.POR_TOTAL, null, porcentaje, umbralCentavos, 0, 0, 0, SIN_LIMITE);
+    }
+
+    /**
+     * Porcentaje sobre las líneas de una categoría
+     */
+    public static Promocion porCategoria(String id, String descripcion, String categoria, int porcentaje) {
+        validarPorcentaje(porcentaje);
+        return new Promocion(id, descripcion, Tipo.POR_CATEGORIA, categoria, porcentaje, 0, 0, 0, 0, SIN_LIMITE);
+    }
+
+    /**
+     * Rebaja en porcentaje de un producto
+     */
+    public static Promocion porProducto(String id, String descripcion, String productoId, int porcentaje) {
+        validarPorcentaje(porcentaje);
+        return new Promocion(id, descripcion, Tipo.POR_PRODUCTO, productoId, porcentaje, 0, 0, 0, 0, SIN_LIMITE);
+    }
+
+    /**
+     * Paquete "lleva N, paga M" de un producto (p. ej. 3x2)
+     */
+    public static Promocion paquete(String id, String descripcion, String productoId, int lleva, int paga) {
+        if (lleva <= 0 || paga < 0 || paga >= lleva) {
+            throw new IllegalArgumentException("Paquete inválido: lleva " + lleva + ", paga " + paga);
+        }
+        return new Promocion(id, descripcion, Tipo.PAQUETE, productoId, 0, 0, lleva, paga, 0, SIN_LIMITE);
+    }
+
+    /**
+     * Copia de la promoción limitada a una ventana de tiempo
+     */
+    public Promocion vigente(long desdeMs, long hastaMs) {
+        if (hastaMs <= desdeMs) {
+            throw new IllegalArgumentException("Vigencia vacía: " + desdeMs + " - " + hastaMs);
+        }
+        return new Promocion(id, descripcion, tipo, clave, porcentaje, umbralCentavos, lleva, paga, desdeMs, hastaMs);
+    }
+
+    public boolean estaVigente(long ahoraMs) {
+        return ahoraMs >= desdeMs && ahoraMs < hastaMs;
+    }
+
+    private static void validarPorcentaje(int porcentaje) {
+        if (porcentaje <= 0 || porcentaje > 100) {
+            throw new IllegalArgumentException("Porcentaje inválido: " + porcentaje);
+        }
+    }
+
+    // Getters
+    public String getId() {
+        return id;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Id de producto (POR_PRODUCTO, PAQUETE) o categoría (POR_CATEGORIA); null en POR_TOTAL
+     */
+    public String getClave() {
+        return clave;
+    }
+
+    public int getPorcentaje() {
+        return porcentaje;
+    }
+
+    public long getUmbralCentavos() {
+        return umbralCentavos;
+    }
+
+    public int getLleva() {
+        return lleva;
+    }
+
+    public int getPaga() {
+        return paga;
+    }
+
+    public long getDesdeMs() {
+        return desdeMs;
+    }
+
+    public long getHastaMs() {
+        return hastaMs;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + tipo + ") " + descripcion;
+    }
+
+    /**
+     * Tipos de promoción
+     */
+    public enum Tipo {
+        POR_TOTAL,
+        POR_CATEGORIA,
+        POR_PRODUCTO,
+        PAQUETE
+    }
+}
@@ -0,0 +1,153 @@
+package com.siap.tianguistenco.promociones;
+
+import com.siap.tianguistenco.model.Centavos;
+import com.siap.tianguistenco.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Promociones vigentes compiladas en estructuras indexadas e inmutables
+ * Las promociones de línea se indexan por id de producto y por categoría, así evaluar una línea solo
+ * revisa las reglas que le aplican. Las de total se ordenan por umbral con el mejor porcentaje acumulado,
+ * y elegir la que corresponde es una búsqueda binaria. Entre varias promociones de una misma línea se
+ * aplica la de mayor descuento; no se acumulan.
+ */
+public final class ReglasPromocion {
+    private static final Promocion[] NINGUNA = new Promocion[0];
+
+    private final Map<String, Promocion[]> porProducto;
+    private final Map<String, Promocion[]> porCategoria;
+    private final long[] umbrales;
+    private final Promocion[] mejorPorTotal;
+    private final int cantidad;
+    private final long validaHastaMs;
+
+    private ReglasPromocion(Map<String, Promocion[]> porProducto, Map<String, Promocion[]> porCategoria,
+                            long[] umbrales, Promocion[] mejorPorTotal, int cantidad, long validaHastaMs) {
+        this.porProducto = porProducto;
+        this.porCategoria = porCategoria;
+        this.umbrales = umbrales;
+        this.mejorPorTotal = mejorPorTotal;
+        this.cantidad = cantidad;
+        this.validaHastaMs = validaHastaMs;
+    }
+
+    /**
+     * Compila las promociones vigentes en el instante dado
+     * El resultado es válido hasta que alguna promoción empiece o termine (getValidaHastaMs).
+     */
+    public static ReglasPromocion compilar(List<Promocion> promociones, long ahoraMs) {
+        Map<String, List<Promocion>> porProducto = new HashMap<>();
+        Map<String, List<Promocion>> porCategoria = new HashMap<>();
+        List<Promocion> porTotal = new ArrayList<>();
+        long validaHasta = Long.MAX_VALUE;
+        int vigentes = 0;
+
+        for (Promocion promocion : promociones) {
+            // La siguiente frontera de vigencia obliga a recompilar
+            if (promocion.getDesdeMs() > ahoraMs) {
+                validaHasta = Math.min(validaHasta, promocion.getDesdeMs());
+            } else if (promocion.getHastaMs() > ahoraMs) {
+                validaHasta = Math.min(validaHasta, promocion.getHastaMs());
+            }
+            if (!promocion.estaVigente(ahoraMs)) {
+                continue;
+            }
+            vigentes++;
+            switch (promocion.getTipo()) {
+                case POR_TOTAL -> porTotal.add(promocion);
+                case POR_CATEGORIA -> porCategoria.computeIfAbsent(promocion.getClave(), k -> new ArrayList<>()).add(promocion);
+                case POR_PRODUCTO, PAQUETE -> porProducto.computeIfAbsent(promocion.getClave(), k -> new ArrayList<>()).add(promocion);
+            }
+        }
+
+        porTotal.sort(Comparator.comparingLong(Promocion::getUmbralCentavos));
+        long[] umbrales = new long[porTotal.size()];
+        Promocion[] mejor = new Promocion[porTotal.size()];
+        for (int i = 0; i < porTotal.size(); i++) {
+            Promocion promocion = porTotal.get(i);
+            umbrales[i] = promocion.getUmbralCentavos();
+            // Un umbral mayor con menor porcentaje no debe quitar el descuento de uno menor
+            mejor[i] = i > 0 && mejor[i - 1].getPorcentaje() >= promocion.getPorcentaje() ? mejor[i - 1] : promocion;
+        }
+
+        return new ReglasPromocion(aArreglos(porProducto), aArreglos(porCategoria), umbrales, mejor, vigentes, validaHasta);
+    }
+
+    private static Map<String, Promocion[]> aArreglos(Map<String, List<Promocion>> listas) {
+        Map<String, Promocion[]> arreglos = new HashMap<>(listas.size() * 2);
+        for (Map.Entry<String, List<Promocion>> entrada : listas.entrySet()) {
+            arreglos.put(entrada.getKey(), entrada.getValue().toArray(NINGUNA));
+        }
+        return arreglos;
+    }
+
+    /**
+     * Mayor descuento en centavos que alguna promoción de producto o de categoría da a la línea
+     */
+    public long descuentoLinea(Producto producto, int cantidad) {
+        if (cantidad <= 0) {
+            return 0;
+        }
+        long precio = producto.getPrecioCentavos();
+        long subtotal = precio * cantidad;
+        long mejor = 0;
+        for (Promocion promocion : porProducto.getOrDefault(producto.getId(), NINGUNA)) {
+            mejor = Math.max(mejor, descuento(promocion, precio, cantidad, subtotal));
+        }
+        for (Promocion promocion : porCategoria.getOrDefault(producto.getCategoria(), NINGUNA)) {
+            mejor = Math.max(mejor, descuento(promocion, precio, cantidad, subtotal));
+        }
+        return Math.min(mejor, subtotal);
+    }
+
+    private static long descuento(Promocion promocion, long precio, int cantidad, long subtotal) {
+        if (promocion.getTipo() == Promocion.Tipo.PAQUETE) {
+            long gratis = (long) (cantidad / promocion.getLleva()) * (promocion.getLleva() - promocion.getPaga());
+            return gratis * precio;
+        }
+        return Centavos.porcentaje(subtotal, promocion.getPorcentaje());
+    }
+
+    /**
+     * Promoción por total que corresponde al monto, o null si no alcanza ningún umbral
+     */
+    public Promocion promocionPorTotal(long totalCentavos) {
+        int indice = Arrays.binarySearch(umbrales, totalCentavos);
+        if (indice < 0) {
+            // Último umbral menor que el total
+            indice = -indice - 2;
+        } else {
+            // Con umbrales repetidos, tomar el último igual al total
+            while (indice + 1 < umbrales.length && umbrales[indice + 1] == totalCentavos) {
+                indice++;
+            }
+        }
+        return indice >= 0 ? mejorPorTotal[indice] : null;
+    }
+
+    /**
+     * Número de promociones vigentes compiladas
+     */
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Instante en que alguna promoción empieza o termina; a partir de ahí hay que recompilar
+     */
+    public long getValidaHastaMs() {
+        return validaHastaMs;
+    }
+
+    @Override
+    public String toString() {
+        return "ReglasPromocion[vigentes=" + cantidad + ", productos=" + porProducto.size() +
+               ", categorías=" + porCategoria.size() + ", umbrales=" + umbrales.length + "]";
+    }
+}
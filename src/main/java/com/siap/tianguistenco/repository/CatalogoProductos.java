@@ -0,0 +1,118 @@
+package com.siap.tianguistenco.repository;
+
+import com.siap.tianguistenco.model.Categoria;
+import com.siap.tianguistenco.model.Producto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Instantánea inmutable e indexada del catálogo de productos
+ * Se construye una vez por carga y nunca se modifica: los lectores la consultan sin bloqueos ni copias.
+ * Cuando el catálogo cambia se construye una nueva instantánea y se reemplaza completa.
+ */
+public final class CatalogoProductos {
+    private static final Comparator<Producto> POR_NOMBRE =
+        Comparator.comparing(Producto::getNombre).thenComparing(Producto::getId);
+
+    private final long version;
+    private final Map<String, Producto> porId;
+    private final Map<String, List<Producto>> porCategoria;
+    private final List<Producto> porNombre;
+    private final List<String> nombresCategorias;
+    private final List<Categoria> categorias;
+
+    private CatalogoProductos(long version, Map<String, Producto> porId, Map<String, List<Producto>> porCategoria,
+                              List<Producto> porNombre, List<Categoria> categorias) {
+        this.version = version;
+        this.porId = porId;
+        this.porCategoria = porCategoria;
+        this.porNombre = porNombre;
+        this.nombresCategorias = Collections.unmodifiableList(new ArrayList<>(porCategoria.keySet()));
+        this.categorias = categorias;
+    }
+
+    /**
+     * Construye la instantánea y sus índices a partir de una lista de productos
+     * @param version número de versión de la carga
+     * @param productos productos leídos de la base de datos
+     * @param descripciones descripción de cada categoría por nombre (opcional)
+     * @return catálogo inmutable
+     */
+    public static CatalogoProductos construir(long version, List<Producto> productos, Map<String, String> descripciones) {
+        Map<String, Producto> porId = new HashMap<>(productos.size() * 2);
+        Map<String, List<Producto>> agrupados = new TreeMap<>();
+        for (Producto producto : productos) {
+            porId.put(producto.getId(), producto);
+            agrupados.computeIfAbsent(producto.getCategoria(), c -> new ArrayList<>()).add(producto);
+        }
+
+        Map<String, List<Producto>> porCategoria = new LinkedHashMap<>();
+        List<Categoria> categorias = new ArrayList<>(agrupados.size());
+        for (Map.Entry<String, List<Producto>> entrada : agrupados.entrySet()) {
+            List<Producto> lista = entrada.getValue();
+            lista.sort(POR_NOMBRE);
+            porCategoria.put(entrada.getKey(), Collections.unmodifiableList(lista));
+
+            Categoria categoria = new Categoria(entrada.getKey(), descripciones.getOrDefault(entrada.getKey(), ""));
+            for (Producto producto : lista) {
+                categoria.agregarProducto(producto);
+            }
+            categorias.add(categoria);
+        }
+
+        List<Producto> porNombre = new ArrayList<>(productos);
+        porNombre.sort(POR_NOMBRE);
+
+        return new CatalogoProductos(version,
+            Collections.unmodifiableMap(porId),
+            Collections.unmodifiableMap(porCategoria),
+            Collections.unmodifiableList(porNombre),
+            Collections.unmodifiableList(categorias));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Producto buscarPorId(String id) {
+        return porId.get(id);
+    }
+
+    /**
+     * Productos de una categoría ordenados por nombre
+     * @return lista inmutable, vacía si la categoría no existe
+     */
+    public List<Producto> getProductosPorCategoria(String categoria) {
+        return porCategoria.getOrDefault(categoria, Collections.emptyList());
+    }
+
+    /**
+     * Todos los productos ordenados por nombre
+     * @return lista inmutable
+     */
+    public List<Producto> getProductosPorNombre() {
+        return porNombre;
+    }
+
+    /**
+     * Nombres de categoría en orden alfabético
+     */
+    public List<String> getNombresCategorias() {
+        return nombresCategorias;
+    }
+
+    public List<Categoria> getCategorias() {
+        return categorias;
+    }
+
+    public int getTamano() {
+        return porId.size();
+    }
+}
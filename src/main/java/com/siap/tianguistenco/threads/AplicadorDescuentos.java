@@ -1,128 +1,134 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Centavos;
+import com.siap.tianguistenco.promociones.EvaluacionCarrito;
+import com.siap.tianguistenco.promociones.MotorPromociones;
 
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo responsable de aplicar promociones y descuentos al carrito
  * Se coordina con el CalculadorPrecio para aplicar descuentos automáticamente
+ * Reacciona a los cambios de items del carrito; el descuento aplicado publica a su vez un cambio
+ * que el CalculadorPrecio usa para refrescar la interfaz.
+ * Las promociones vienen del MotorPromociones; la evaluación es incremental: cada cambio de items trae
+ * el producto de la línea que cambió y solo esas líneas se vuelven a calcular. Al vaciar el carrito
+ * (o al iniciar) se recorre el carrito completo.
  */
 public class AplicadorDescuentos implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(AplicadorDescuentos.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final CarritoCompra carritoCompra;
     private final CalculadorPrecio calculadorPrecio;
-    private double ultimoDescuentoAplicado;
-    private double ultimoTotalVerificado;
-
-    // Reglas de descuento
-    private static final double DESCUENTO_500 = 0.10; // 10% de descuento para compras > $500
-    private static final double DESCUENTO_1000 = 0.15; // 15% de descuento para compras > $1000
-    private static final double DESCUENTO_2000 = 0.20; // 20% de descuento para compras > $2000
-    private static final double UMBRAL_500 = 500.0;
-    private static final double UMBRAL_1000 = 1000.0;
-    private static final double UMBRAL_2000 = 2000.0;
-
-    public AplicadorDescuentos(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, 
+    private final TareaCoalescente revision;
+    private final CarritoCompra.Oyente oyenteCarrito;
+    private long ultimoDescuentoAplicado;
+    private final MotorPromociones motorPromociones;
+    private final EvaluacionCarrito evaluacion;
+    // Productos cuya línea cambió desde la última revisión; varios cambios se atienden en una sola
+    private final Set<String> lineasCambiadas = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reconstruir = new AtomicBoolean(true);
+
+    public AplicadorDescuentos(CicloVidaAplicacion cicloVida, 
                               CarritoCompra carritoCompra, CalculadorPrecio calculadorPrecio) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+        this(cicloVida, carritoCompra, calculadorPrecio, MotorPromociones.getInstancia());
+    }
+
+    public AplicadorDescuentos(CicloVidaAplicacion cicloVida, CarritoCompra carritoCompra,
+                              CalculadorPrecio calculadorPrecio, MotorPromociones motorPromociones) {
+        this.cicloVida = cicloVida;
+        this.motorPromociones = motorPromociones;
+        this.evaluacion = new EvaluacionCarrito(motorPromociones.getReglas());
         this.carritoCompra = carritoCompra;
         this.calculadorPrecio = calculadorPrecio;
-        this.ultimoDescuentoAplicado = 0.0;
-        this.ultimoTotalVerificado = 0.0;
+        this.ultimoDescuentoAplicado = 0;
+        this.revision = new TareaCoalescente("AplicadorDescuentos-Revision", this::revisarDescuentos);
+        // Los cambios de descuento los produce este mismo hilo; solo los items y el vaciado cambian el total
+        this.oyenteCarrito = (version, tipo, productoId) -> {
+            if (tipo == CarritoCompra.TipoCambio.ITEMS) {
+                lineasCambiadas.add(productoId);
+                revision.solicitar();
+            } else if (tipo == CarritoCompra.TipoCambio.VACIADO) {
+                reconstruir.set(true);
+                revision.solicitar();
+            }
+        };
     }
 
     @Override
     public void run() {
         try {
-            System.out.println("AplicadorDescuentos iniciado");
+            LOG.info("AplicadorDescuentos iniciado");
 
             // Esperar a que el usuario se autentique
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
-            // Monitorear cambios en el carrito y aplicar descuentos
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                synchronized (carritoCompra) {
-                    // Verificar si el total ha cambiado
-                    if (haCambiadoElTotal()) {
-                        aplicarDescuentosApropiados();
-                    }
-                }
-
-                // Esperar antes de la siguiente verificación
-                Thread.sleep(1000);
+            // Revisar descuentos con cada cambio del carrito mientras dure la sesión
+            carritoCompra.suscribir(oyenteCarrito);
+            try {
+                revision.solicitar();
+                cicloVida.esperarFinSesion();
+            } finally {
+                carritoCompra.desuscribir(oyenteCarrito);
+                revision.cerrar();
             }
 
         } catch (InterruptedException e) {
-            System.out.println("AplicadorDescuentos interrumpido");
+            LOG.info("AplicadorDescuentos interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en AplicadorDescuentos: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en AplicadorDescuentos", e);
         }
     }
 
     /**
-     * Verifica si el total del carrito ha cambiado desde la última verificación
+     * Aplica el descuento que corresponda al total actual; se ejecuta en el hilo de la tarea coalescente
+     * Se revisa aunque el total sea el mismo: vaciar el carrito quita el descuento, y volver a llegar
+     * al mismo total debe aplicarlo otra vez.
      */
-    private boolean haCambiadoElTotal() {
-        double totalActual = carritoCompra.getTotal();
-        boolean haCambiado = Math.abs(totalActual - ultimoTotalVerificado) > 0.01;
-        
-        if (haCambiado) {
-            ultimoTotalVerificado = totalActual;
+    private void revisarDescuentos() {
+        synchronized (carritoCompra) {
+            aplicarDescuentosApropiados();
         }
-        
-        return haCambiado;
     }
 
     /**
-     * Aplica los descuentos apropiados según el total del carrito
+     * Aplica los descuentos de las promociones vigentes a los items del carrito
      */
     private void aplicarDescuentosApropiados() {
-        double total = carritoCompra.getTotal();
-        double descuentoCalculado = 0.0;
-        String tipoDescuento = "";
-
-        // Determinar el descuento apropiado
-        if (total >= UMBRAL_2000) {
-            descuentoCalculado = total * DESCUENTO_2000;
-            tipoDescuento = "20% (Compra mayor a $2,000)";
-        } else if (total >= UMBRAL_1000) {
-            descuentoCalculado = total * DESCUENTO_1000;
-            tipoDescuento = "15% (Compra mayor a $1,000)";
-        } else if (total >= UMBRAL_500) {
-            descuentoCalculado = total * DESCUENTO_500;
-            tipoDescuento = "10% (Compra mayor a $500)";
+        // Las reglas cambian solo si se editaron las promociones o cruzó una ventana de vigencia
+        evaluacion.setReglas(motorPromociones.getReglas());
+        if (reconstruir.getAndSet(false)) {
+            evaluacion.sincronizar(carritoCompra.getItems());
+        }
+        // Un producto que llegue después de tomarlo pide otra revisión
+        Iterator<String> it = lineasCambiadas.iterator();
+        while (it.hasNext()) {
+            String productoId = it.next();
+            it.remove();
+            evaluacion.actualizarLinea(carritoCompra, productoId);
         }
+        long total = evaluacion.getSubtotalCentavos();
+        long descuentoCalculado = evaluacion.getDescuentoCentavos();
 
-        // Aplicar el descuento si es diferente al anterior
-        if (Math.abs(descuentoCalculado - ultimoDescuentoAplicado) > 0.01) {
-            carritoCompra.aplicarDescuento(descuentoCalculado);
+        // Aplicar el descuento si es diferente al que tiene el carrito
+        if (descuentoCalculado != carritoCompra.getDescuentoCentavos()) {
+            carritoCompra.aplicarDescuentoCentavos(descuentoCalculado);
             ultimoDescuentoAplicado = descuentoCalculado;
 
-            // Log del descuento aplicado
-            if (descuentoCalculado > 0) {
-                System.out.println("Descuento aplicado:");
-                System.out.println("  - Tipo: " + tipoDescuento);
-                System.out.println("  - Monto: $" + String.format("%.2f", descuentoCalculado));
-                System.out.println("  - Total original: $" + String.format("%.2f", total));
-                System.out.println("  - Total con descuento: $" + String.format("%.2f", carritoCompra.getTotalConDescuento()));
-            } else {
-                System.out.println("Sin descuento aplicable - Total: $" + String.format("%.2f", total));
-            }
-
-            // Notificar al calculador de precios para actualizar la interfaz
-            if (calculadorPrecio != null) {
-                calculadorPrecio.forzarRecalculo();
+            // Se evalúa con cada cambio del carrito: el detalle solo va en DEPURACION
+            if (LOG.isDepuracion()) {
+                LOG.depuracion("Descuento {}: {} sobre {} ({})", descuentoCalculado > 0 ? "aplicado" : "retirado",
+                    Centavos.formatear(descuentoCalculado), Centavos.formatear(total), evaluacion.describir());
             }
+            // El CalculadorPrecio actualiza la interfaz al recibir el cambio de descuento
         }
     }
 
@@ -130,14 +136,7 @@ public class AplicadorDescuentos implements Runnable {
      * Obtiene el último descuento aplicado
      */
     public double getUltimoDescuentoAplicado() {
-        return ultimoDescuentoAplicado;
-    }
-
-    /**
-     * Obtiene el último total verificado
-     */
-    public double getUltimoTotalVerificado() {
-        return ultimoTotalVerificado;
+        return Centavos.aPesos(ultimoDescuentoAplicado);
     }
 
     /**
@@ -145,16 +144,14 @@ public class AplicadorDescuentos implements Runnable {
      */
     public void aplicarDescuentoPersonalizado(double porcentaje, String descripcion) {
         synchronized (carritoCompra) {
-            double total = carritoCompra.getTotal();
-            double descuento = total * (porcentaje / 100.0);
+            long total = carritoCompra.getTotalCentavos();
+            // El porcentaje puede traer decimales; se redondea una sola vez al centavo
+            long descuento = Math.round(total * porcentaje / 100.0);
             
-            carritoCompra.aplicarDescuento(descuento);
+            carritoCompra.aplicarDescuentoCentavos(descuento);
             ultimoDescuentoAplicado = descuento;
             
-            System.out.println("Descuento personalizado aplicado:");
-            System.out.println("  - Descripción: " + descripcion);
-            System.out.println("  - Porcentaje: " + porcentaje + "%");
-            System.out.println("  - Monto: $" + String.format("%.2f", descuento));
+            LOG.info("Descuento personalizado aplicado: {} ({}%), {} centavos", descripcion, porcentaje, descuento);
             
             if (calculadorPrecio != null) {
                 calculadorPrecio.forzarRecalculo();
@@ -167,10 +164,10 @@ public class AplicadorDescuentos implements Runnable {
      */
     public void removerDescuentos() {
         synchronized (carritoCompra) {
-            carritoCompra.aplicarDescuento(0.0);
-            ultimoDescuentoAplicado = 0.0;
+            carritoCompra.aplicarDescuentoCentavos(0);
+            ultimoDescuentoAplicado = 0;
             
-            System.out.println("Todos los descuentos han sido removidos");
+            LOG.info("Todos los descuentos han sido removidos");
             
             if (calculadorPrecio != null) {
                 calculadorPrecio.forzarRecalculo();
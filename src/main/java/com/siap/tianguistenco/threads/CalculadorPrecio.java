@@ -1,65 +1,77 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.CarritoCompra;
+import com.siap.tianguistenco.model.Centavos;
 import com.siap.tianguistenco.model.ItemCarrito;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-
 /**
  * Hilo responsable de calcular el precio total del carrito en tiempo real
  * Utiliza sincronización para evitar condiciones de carrera
+ * El recálculo se dispara con los cambios publicados por el carrito; las ráfagas de cambios
+ * se agrupan en un solo recálculo (TareaCoalescente) en lugar de revisar el carrito periódicamente.
  */
 public class CalculadorPrecio implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(CalculadorPrecio.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final CarritoCompra carritoCompra;
     private final SelectorProductos selectorProductos;
+    private final TareaCoalescente recalculo;
+    private final CarritoCompra.Oyente oyenteCarrito;
     private double ultimoTotalCalculado;
     private int ultimaCantidadItems;
+    private long ultimaVersionCalculada = -1;
 
-    public CalculadorPrecio(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, 
+    public CalculadorPrecio(CicloVidaAplicacion cicloVida, 
                            CarritoCompra carritoCompra, SelectorProductos selectorProductos) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+        this.cicloVida = cicloVida;
         this.carritoCompra = carritoCompra;
         this.selectorProductos = selectorProductos;
         this.ultimoTotalCalculado = 0.0;
         this.ultimaCantidadItems = 0;
+        this.recalculo = new TareaCoalescente("CalculadorPrecio-Recalculo", this::recalcularSiCambio);
+        // Cualquier cambio (items, descuento o vaciado) se refleja en los totales de la interfaz
+        this.oyenteCarrito = (version, tipo, productoId) -> recalculo.solicitar();
     }
 
     @Override
     public void run() {
         try {
-            System.out.println("CalculadorPrecio iniciado");
+            LOG.info("CalculadorPrecio iniciado");
 
             // Esperar a que el usuario se autentique
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
-            // Monitorear cambios en el carrito y recalcular precios
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                synchronized (carritoCompra) {
-                    // Verificar si hay cambios en el carrito
-                    if (haCambiadoElCarrito()) {
-                        recalcularPrecios();
-                        actualizarInterfaz();
-                    }
-                }
-
-                // Esperar antes de la siguiente verificación
-                Thread.sleep(500);
+            // Recalcular precios con cada cambio del carrito mientras dure la sesión
+            carritoCompra.suscribir(oyenteCarrito);
+            try {
+                recalculo.solicitar();
+                cicloVida.esperarFinSesion();
+            } finally {
+                carritoCompra.desuscribir(oyenteCarrito);
+                recalculo.cerrar();
             }
 
         } catch (InterruptedException e) {
-            System.out.println("CalculadorPrecio interrumpido");
+            LOG.info("CalculadorPrecio interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en CalculadorPrecio: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en CalculadorPrecio", e);
+        }
+    }
+
+    /**
+     * Recalcula y actualiza la interfaz si la versión del carrito cambió desde el último cálculo
+     * Se ejecuta en el hilo de la tarea coalescente
+     */
+    private void recalcularSiCambio() {
+        synchronized (carritoCompra) {
+            if (haCambiadoElCarrito()) {
+                recalcularPrecios();
+                actualizarInterfaz();
+            }
         }
     }
 
@@ -67,15 +79,13 @@ public class CalculadorPrecio implements Runnable {
      * Verifica si el carrito ha cambiado desde la última verificación
      */
     private boolean haCambiadoElCarrito() {
-        int cantidadActual = carritoCompra.getCantidadTotalItems();
-        double totalActual = carritoCompra.getTotal();
-        
-        boolean haCambiado = (cantidadActual != ultimaCantidadItems) || 
-                           (Math.abs(totalActual - ultimoTotalCalculado) > 0.01);
+        long versionActual = carritoCompra.getVersion();
+        boolean haCambiado = versionActual != ultimaVersionCalculada;
         
         if (haCambiado) {
-            ultimaCantidadItems = cantidadActual;
-            ultimoTotalCalculado = totalActual;
+            ultimaVersionCalculada = versionActual;
+            ultimaCantidadItems = carritoCompra.getCantidadTotalItems();
+            ultimoTotalCalculado = carritoCompra.getTotal();
         }
         
         return haCambiado;
@@ -86,29 +96,23 @@ public class CalculadorPrecio implements Runnable {
      */
     private void recalcularPrecios() {
         try {
-            // Recalcular el total del carrito
-            carritoCompra.calcularTotal();
-            
-            // Log del cálculo
-            System.out.println("Precios recalculados:");
-            System.out.println("  - Items en carrito: " + carritoCompra.getCantidadTotalItems());
-            System.out.println("  - Subtotal: $" + String.format("%.2f", carritoCompra.getTotal()));
-            System.out.println("  - Descuento aplicado: $" + String.format("%.2f", carritoCompra.getDescuento()));
-            System.out.println("  - Total final: $" + String.format("%.2f", carritoCompra.getTotalConDescuento()));
-            
-            // Mostrar detalles de cada item
-            if (!carritoCompra.getItems().isEmpty()) {
-                System.out.println("  - Detalles del carrito:");
-                for (ItemCarrito item : carritoCompra.getItems()) {
-                    System.out.println("    * " + item.getProducto().getNombre() + 
-                                     " x" + item.getCantidad() + 
-                                     " = $" + String.format("%.2f", item.getSubtotal()));
-                }
+            // El carrito ya mantiene el total en cada cambio; aquí solo se reporta, y solo en DEPURACION:
+            // cada cambio del carrito pasa por aquí y formatear cada línea no vale la pena si no se va a escribir
+            if (!LOG.isDepuracion()) {
+                return;
+            }
+            LOG.depuracion("Precios recalculados: items={}, subtotal={}, descuento={}, total={}",
+                carritoCompra.getCantidadTotalItems(),
+                Centavos.formatear(carritoCompra.getTotalCentavos()),
+                Centavos.formatear(carritoCompra.getDescuentoCentavos()),
+                Centavos.formatear(carritoCompra.getTotalConDescuentoCentavos()));
+            for (ItemCarrito item : carritoCompra.getItems()) {
+                LOG.depuracion("  * {} x{} = {}", item.getProducto().getNombre(), item.getCantidad(),
+                    Centavos.formatear(item.getSubtotalCentavos()));
             }
             
         } catch (Exception e) {
-            System.err.println("Error al recalcular precios: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al recalcular precios", e);
         }
     }
 
@@ -121,7 +125,7 @@ public class CalculadorPrecio implements Runnable {
                 selectorProductos.actualizarInterfaz();
             }
         } catch (Exception e) {
-            System.err.println("Error al actualizar interfaz: " + e.getMessage());
+            LOG.error("Error al actualizar interfaz: {}", e.getMessage());
         }
     }
 
@@ -0,0 +1,163 @@
+package com.siap.tianguistenco.threads;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Máquina de estados compartida por todos los hilos de la aplicación
+ * Reemplaza a las banderas usuarioAutenticado/aplicacionActiva: los hilos se bloquean en
+ * esperarAutenticacion()/esperarFinSesion() y despiertan en el momento de la transición,
+ * sin consultar el estado cada cierto tiempo. Los oyentes se notifican en el hilo que hizo la transición.
+ * Se usa ReentrantLock/Condition y no synchronized/wait: un hilo virtual en wait() dentro de
+ * synchronized queda fijado a su hilo portador, mientras que en Condition.await() lo libera.
+ */
+public class CicloVidaAplicacion {
+    private static final Bitacora LOG = Bitacora.de(CicloVidaAplicacion.class);
+
+    private final List<Oyente> oyentes = new CopyOnWriteArrayList<>();
+    private final ReentrantLock candado = new ReentrantLock();
+    private final Condition cambioEstado = candado.newCondition();
+    private EstadoAplicacion estado = EstadoAplicacion.SIN_SESION;
+
+    /**
+     * Cambia al estado indicado si la transición es válida desde el estado actual
+     * @return true si el estado cambió
+     */
+    public boolean transicionar(EstadoAplicacion nuevo) {
+        EstadoAplicacion anterior;
+        candado.lock();
+        try {
+            if (!estado.puedeIrA(nuevo)) {
+                return false;
+            }
+            anterior = estado;
+            estado = nuevo;
+            cambioEstado.signalAll();
+        } finally {
+            candado.unlock();
+        }
+        notificar(anterior, nuevo);
+        return true;
+    }
+
+    /**
+     * Cambia al estado indicado solo si el estado actual es el esperado
+     * @return true si el estado cambió
+     */
+    public boolean transicionar(EstadoAplicacion esperado, EstadoAplicacion nuevo) {
+        candado.lock();
+        try {
+            if (estado != esperado || !estado.puedeIrA(nuevo)) {
+                return false;
+            }
+            estado = nuevo;
+            cambioEstado.signalAll();
+        } finally {
+            candado.unlock();
+        }
+        notificar(esperado, nuevo);
+        return true;
+    }
+
+    /**
+     * Registra un oyente que se llama en cada transición
+     */
+    public void suscribir(Oyente oyente) {
+        oyentes.add(oyente);
+    }
+
+    public void desuscribir(Oyente oyente) {
+        oyentes.remove(oyente);
+    }
+
+    public EstadoAplicacion getEstado() {
+        candado.lock();
+        try {
+            return estado;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    public boolean isActiva() {
+        return getEstado() != EstadoAplicacion.CERRADA;
+    }
+
+    public boolean isAutenticado() {
+        return getEstado().conSesion();
+    }
+
+    /**
+     * Bloquea hasta que el usuario inicie sesión o la aplicación se cierre
+     * @return true si hay sesión iniciada, false si la aplicación se cerró
+     */
+    public boolean esperarAutenticacion() throws InterruptedException {
+        candado.lock();
+        try {
+            while (estado == EstadoAplicacion.SIN_SESION) {
+                cambioEstado.await();
+            }
+            return estado.conSesion();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Bloquea mientras haya sesión iniciada (termina al cerrar sesión o la aplicación)
+     */
+    public void esperarFinSesion() throws InterruptedException {
+        candado.lock();
+        try {
+            while (estado.conSesion()) {
+                cambioEstado.await();
+            }
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Bloquea mientras haya sesión iniciada, como máximo el tiempo indicado
+     * @return true si la sesión terminó, false si se agotó el tiempo con la sesión aún iniciada
+     */
+    public boolean esperarFinSesion(long timeoutMs) throws InterruptedException {
+        long restanteNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        candado.lock();
+        try {
+            while (estado.conSesion()) {
+                if (restanteNanos <= 0) {
+                    return false;
+                }
+                restanteNanos = cambioEstado.awaitNanos(restanteNanos);
+            }
+            return true;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private void notificar(EstadoAplicacion anterior, EstadoAplicacion nuevo) {
+        LOG.info("Ciclo de vida: {} -> {}", anterior, nuevo);
+        for (Oyente oyente : oyentes) {
+            try {
+                oyente.alCambiarEstado(anterior, nuevo);
+            } catch (RuntimeException e) {
+                LOG.error("Error en oyente del ciclo de vida", e);
+            }
+        }
+    }
+
+    /**
+     * Recibe las transiciones del ciclo de vida
+     */
+    @FunctionalInterface
+    public interface Oyente {
+        void alCambiarEstado(EstadoAplicacion anterior, EstadoAplicacion nuevo);
+    }
+}
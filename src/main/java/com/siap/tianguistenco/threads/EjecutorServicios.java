@@ -0,0 +1,91 @@
+package com.siap.tianguistenco.threads;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ejecuta los servicios de la aplicación (gestores, selector, calculador, ...) en hilos virtuales
+ * Cada servicio es una tarea con nombre; mientras espera en el ciclo de vida no ocupa un hilo de plataforma.
+ * detener() deja de aceptar servicios, espera a todos dentro de un solo plazo y, si alguno no terminó,
+ * lo interrumpe y vuelve a esperar brevemente.
+ */
+public class EjecutorServicios {
+    private static final Bitacora LOG = Bitacora.de(EjecutorServicios.class);
+
+    private static final long PLAZO_INTERRUPCION_MS = 500;
+
+    private final ExecutorService ejecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+    private final Map<String, Thread> servicios = new ConcurrentHashMap<>();
+
+    /**
+     * Inicia un servicio en su propio hilo virtual
+     * @param nombre nombre del servicio (también se usa como nombre del hilo)
+     * @return false si el ejecutor ya se detuvo
+     */
+    public boolean iniciar(String nombre, Runnable servicio) {
+        try {
+            ejecutor.execute(() -> {
+                Thread hilo = Thread.currentThread();
+                hilo.setName(nombre);
+                servicios.put(nombre, hilo);
+                try {
+                    servicio.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Error en servicio {}", nombre, e);
+                } finally {
+                    servicios.remove(nombre, hilo);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            LOG.aviso("No se pudo iniciar el servicio {}: el ejecutor está detenido", nombre);
+            return false;
+        }
+    }
+
+    /**
+     * Detiene el ejecutor y espera a que terminen todos los servicios
+     * @param plazoMs tiempo máximo total de espera antes de interrumpir
+     * @return true si todos los servicios terminaron
+     */
+    public boolean detener(long plazoMs) {
+        ejecutor.shutdown();
+        try {
+            if (ejecutor.awaitTermination(plazoMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            LOG.aviso("Servicios que no terminaron en {} ms: {}; interrumpiendo", plazoMs, getServiciosActivos());
+            ejecutor.shutdownNow();
+            if (ejecutor.awaitTermination(PLAZO_INTERRUPCION_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            LOG.aviso("Servicios que siguen activos: {}", getServiciosActivos());
+        } catch (InterruptedException e) {
+            ejecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Nombres de los servicios que siguen en ejecución
+     */
+    public List<String> getServiciosActivos() {
+        List<String> activos = new ArrayList<>(servicios.keySet());
+        activos.sort(null);
+        return activos;
+    }
+
+    @Override
+    public String toString() {
+        return "EjecutorServicios[activos=" + getServiciosActivos() + "]";
+    }
+}
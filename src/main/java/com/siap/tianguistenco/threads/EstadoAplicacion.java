@@ -0,0 +1,38 @@
+package com.siap.tianguistenco.threads;
+
+/**
+ * Estados del ciclo de vida de la aplicación
+ * SIN_SESION → AUTENTICADO → EN_PAGO → AUTENTICADO/SIN_SESION; cualquier estado puede pasar a CERRADA.
+ */
+public enum EstadoAplicacion {
+    SIN_SESION,
+    AUTENTICADO,
+    EN_PAGO,
+    CERRADA;
+
+    /**
+     * Indica si la transición desde este estado hacia el indicado es válida
+     */
+    public boolean puedeIrA(EstadoAplicacion destino) {
+        if (destino == CERRADA) {
+            return this != CERRADA;
+        }
+        switch (this) {
+            case SIN_SESION:
+                return destino == AUTENTICADO;
+            case AUTENTICADO:
+                return destino == EN_PAGO || destino == SIN_SESION;
+            case EN_PAGO:
+                return destino == AUTENTICADO || destino == SIN_SESION;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Indica si en este estado hay un usuario con sesión iniciada
+     */
+    public boolean conSesion() {
+        return this == AUTENTICADO || this == EN_PAGO;
+    }
+}
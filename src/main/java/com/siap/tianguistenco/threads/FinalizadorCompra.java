@@ -1,43 +1,43 @@
 package com.siap.tianguistenco.threads;
 
-import com.siap.tianguistenco.datos.CompraDAO;
-import com.siap.tianguistenco.datos.MetodoPagoDAO;
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.model.*;
+import com.siap.tianguistenco.motor.MotorComercio;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
 
 import javax.swing.*;
 import java.awt.*;
 import java.text.DecimalFormat;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Hilo responsable de procesar el pago y finalizar la compra
- * Simula una pasarela de pago y cierra la sesión del usuario
+ * Cobra en la pasarela de pago y cierra la sesión del usuario
  */
 public class FinalizadorCompra implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(FinalizadorCompra.class);
+
+    private static final long TIEMPO_MAXIMO_GUARDADO_SEG = 30;
+    private final CicloVidaAplicacion cicloVida;
     private final CarritoCompra carritoCompra;
     private final GestorSesion gestorSesion;
     private final GeneradorTicket generadorTicket;
-    private final CompraDAO compraDAO;
-    private final MetodoPagoDAO metodoPagoDAO;
     private int usuarioId;
+    private String sesionMotor;
     private boolean compraEnProceso;
     private final DecimalFormat formatoMoneda = new DecimalFormat("$#,##0.00");
 
-    public FinalizadorCompra(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, 
+    public FinalizadorCompra(CicloVidaAplicacion cicloVida, 
                             CarritoCompra carritoCompra, GestorSesion gestorSesion, 
                             GeneradorTicket generadorTicket) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+        this.cicloVida = cicloVida;
         this.carritoCompra = carritoCompra;
         this.gestorSesion = gestorSesion;
         this.generadorTicket = generadorTicket;
-        this.compraDAO = new CompraDAO();
-        this.metodoPagoDAO = new MetodoPagoDAO();
         this.compraEnProceso = false;
     }
 
@@ -45,30 +45,30 @@ public class FinalizadorCompra implements Runnable {
         this.usuarioId = usuarioId;
     }
 
+    /**
+     * Sesión del cliente de escritorio en el MotorComercio; las compras se registran a través de ella
+     */
+    public void setSesionMotor(String sesionMotor) {
+        this.sesionMotor = sesionMotor;
+    }
+
     @Override
     public void run() {
         try {
-            System.out.println("FinalizadorCompra iniciado");
+            LOG.info("FinalizadorCompra iniciado");
 
             // Esperar a que el usuario se autentique
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
             // Monitorear solicitudes de pago
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("FinalizadorCompra interrumpido");
+            LOG.info("FinalizadorCompra interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en FinalizadorCompra: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en FinalizadorCompra", e);
         }
     }
 
@@ -93,13 +93,14 @@ public class FinalizadorCompra implements Runnable {
         }
 
         compraEnProceso = true;
+        iniciarPago();
         
         try {
             // Mostrar resumen de la compra
             mostrarResumenCompra();
             
-            // Simular procesamiento de pago
-            if (simularProcesamientoPago()) {
+            // Cobrar en la pasarela
+            if (procesarPagoEnPasarela()) {
                 // Generar ticket
                 if (generadorTicket != null) {
                     generadorTicket.generarTicket(carritoCompra);
@@ -122,17 +123,31 @@ public class FinalizadorCompra implements Runnable {
             }
             
         } catch (Exception e) {
-            System.err.println("Error al procesar compra: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al procesar compra", e);
             JOptionPane.showMessageDialog(null, 
                 "Error al procesar la compra: " + e.getMessage(), 
                 "Error", 
                 JOptionPane.ERROR_MESSAGE);
         } finally {
             compraEnProceso = false;
+            terminarPago();
         }
     }
 
+    /**
+     * Marca el inicio del pago en el ciclo de vida (AUTENTICADO → EN_PAGO)
+     */
+    public void iniciarPago() {
+        cicloVida.transicionar(EstadoAplicacion.AUTENTICADO, EstadoAplicacion.EN_PAGO);
+    }
+
+    /**
+     * Marca el fin del pago; si la sesión ya se cerró después de la compra no cambia nada
+     */
+    public void terminarPago() {
+        cicloVida.transicionar(EstadoAplicacion.EN_PAGO, EstadoAplicacion.AUTENTICADO);
+    }
+
     /**
      * Muestra el resumen de la compra antes del pago
      */
@@ -159,11 +174,11 @@ public class FinalizadorCompra implements Runnable {
     }
 
     /**
-     * Simula el procesamiento del pago
+     * Cobra el total en la pasarela mostrando un diálogo de progreso
+     * El diálogo no es modal y se cierra cuando llega la respuesta, no después de un tiempo fijo.
      */
-    private boolean simularProcesamientoPago() {
-        // Mostrar diálogo de procesamiento
-        JDialog dialog = new JDialog((Frame) null, "Procesando Pago", true);
+    private boolean procesarPagoEnPasarela() {
+        JDialog dialog = new JDialog((Frame) null, "Procesando Pago", false);
         dialog.setSize(300, 150);
         dialog.setLocationRelativeTo(null);
         
@@ -179,20 +194,14 @@ public class FinalizadorCompra implements Runnable {
         panel.add(progressBar, BorderLayout.SOUTH);
         
         dialog.add(panel);
-        dialog.setVisible(true);
+        SwingUtilities.invokeLater(() -> dialog.setVisible(true));
         
-        // Simular delay de procesamiento
-        try {
-            Thread.sleep(3000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
-        }
-        
-        dialog.dispose();
-        
-        // Simular éxito del pago (90% de probabilidad)
-        return Math.random() > 0.1;
+        ResultadoPago resultado = ProcesadorPagos.getInstancia()
+            .procesar(null, carritoCompra.getTotalConDescuentoCentavos())
+            .whenComplete((r, e) -> SwingUtilities.invokeLater(dialog::dispose))
+            .join();
+        LOG.info("Resultado del pago: {}", resultado);
+        return resultado.isAprobado();
     }
 
     /**
@@ -222,9 +231,9 @@ public class FinalizadorCompra implements Runnable {
             gestorSesion.cerrarSesion();
         }
         
-        usuarioAutenticado.set(false);
+        cicloVida.transicionar(EstadoAplicacion.SIN_SESION);
         
-        System.out.println("Sesión cerrada después de compra exitosa");
+        LOG.info("Sesión cerrada después de compra exitosa");
     }
 
     /**
@@ -240,7 +249,7 @@ public class FinalizadorCompra implements Runnable {
     public void cancelarCompra() {
         if (compraEnProceso) {
             compraEnProceso = false;
-            System.out.println("Compra cancelada por el usuario");
+            LOG.info("Compra cancelada por el usuario");
         }
     }
 
@@ -249,70 +258,55 @@ public class FinalizadorCompra implements Runnable {
      */
     public Compra guardarCompra(String folio, Compra.TipoEnvio tipoEnvio, String direccionEnvio, 
                                 double costoEnvio, Integer tarjetaId) {
+        return guardarCompra(null, folio, tipoEnvio, direccionEnvio, costoEnvio, tarjetaId);
+    }
+
+    /**
+     * Cobra una sola vez por clave de idempotencia del usuario de la sesión (ver MotorComercio.cobrarUnaVez)
+     */
+    public CompletableFuture<ResultadoPago> cobrarUnaVez(String clave, Supplier<CompletableFuture<ResultadoPago>> cobro) {
+        if (sesionMotor == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("FinalizadorCompra sin sesión en el motor de comercio"));
+        }
+        return MotorComercio.getInstancia().cobrarUnaVez(sesionMotor, clave, cobro);
+    }
+
+    /**
+     * Guarda una compra una sola vez por clave de idempotencia; reintentar con la misma clave no la duplica
+     * @return la compra guardada, que puede tener otro folio si la guardó un intento anterior; null si falló
+     */
+    public Compra guardarCompra(String clave, String folio, Compra.TipoEnvio tipoEnvio, String direccionEnvio,
+                                double costoEnvio, Integer tarjetaId) {
         try {
-            System.out.println("=== INICIANDO GUARDADO DE COMPRA ===");
-            System.out.println("Usuario ID: " + usuarioId);
-            System.out.println("Folio: " + folio);
-            System.out.println("Total carrito: " + carritoCompra.getTotal());
-            System.out.println("Descuento: " + carritoCompra.getDescuento());
-            System.out.println("Items en carrito: " + carritoCompra.getItems().size());
+            if (LOG.isDepuracion()) {
+                LOG.depuracion("Guardando compra {}: usuario={}, piezas={}, total={} centavos", folio, usuarioId,
+                    carritoCompra.getCantidadTotalItems(), carritoCompra.getTotalConDescuentoCentavos());
+            }
             
-            Compra compra = new Compra();
-            compra.setUsuarioId(usuarioId);
-            compra.setFolio(folio);
-            compra.setFecha(LocalDateTime.now());
-            compra.setTotal(carritoCompra.getTotal());
-            compra.setDescuento(carritoCompra.getDescuento());
-            compra.setEstado("COMPLETADA");
-            compra.setTipoEnvio(tipoEnvio);
-            compra.setDireccionEnvio(direccionEnvio);
-            compra.setCostoEnvio(costoEnvio);
-
-            // Convertir items del carrito a items de compra
-            List<CompraItem> itemsCompra = new ArrayList<>();
-            for (ItemCarrito itemCarrito : carritoCompra.getItems()) {
-                CompraItem item = new CompraItem();
-                item.setProductoId(itemCarrito.getProducto().getId());
-                item.setNombreProducto(itemCarrito.getProducto().getNombre());
-                item.setCantidad(itemCarrito.getCantidad());
-                item.setPrecioUnitario(itemCarrito.getProducto().getPrecio());
-                item.setSubtotal(itemCarrito.getSubtotal());
-                itemsCompra.add(item);
-                System.out.println("  - Item: " + item.getNombreProducto() + " x" + item.getCantidad());
+            if (sesionMotor == null) {
+                LOG.error("FinalizadorCompra sin sesión en el motor de comercio");
+                return null;
             }
-            compra.setItems(itemsCompra);
-
-            // Guardar compra en BD
-            System.out.println("Guardando compra en base de datos...");
-            int compraId = compraDAO.guardarCompra(compra);
-            if (compraId > 0) {
-                compra.setId(compraId);
-                System.out.println("Compra guardada con ID: " + compraId);
 
-                // Guardar método de pago
-                double montoTotal = compra.getTotalConDescuento();
-                System.out.println("Guardando método de pago. Monto: " + montoTotal);
-                boolean metodoPagoGuardado = false;
-                if (tarjetaId != null) {
-                    metodoPagoGuardado = metodoPagoDAO.registrarMetodoPago(compraId, "TARJETA", tarjetaId, montoTotal);
-                    System.out.println("Método de pago TARJETA guardado: " + metodoPagoGuardado);
-                } else {
-                    metodoPagoGuardado = metodoPagoDAO.registrarMetodoPago(compraId, "EFECTIVO", null, montoTotal);
-                    System.out.println("Método de pago EFECTIVO guardado: " + metodoPagoGuardado);
-                }
-
-                System.out.println("=== COMPRA GUARDADA EXITOSAMENTE ===");
-                System.out.println("Folio: " + folio);
-                System.out.println("ID: " + compraId);
-                System.out.println("Total: $" + String.format("%.2f", montoTotal));
+            // El motor arma la compra con el carrito de la sesión y la encola en el escritor agrupado:
+            // encabezado, items, método de pago y stock se confirman en la misma transacción que el resto del lote
+            long inicio = System.nanoTime();
+            Compra compra = MotorComercio.getInstancia()
+                .registrarCompra(sesionMotor, clave, folio, tipoEnvio, direccionEnvio, Centavos.desdePesos(costoEnvio), tarjetaId)
+                .get(TIEMPO_MAXIMO_GUARDADO_SEG, TimeUnit.SECONDS);
+            int compraId = compra.getId();
+            if (!compra.getFolio().equals(folio)) {
+                LOG.info("Compra ya registrada con la clave {}: folio={}, id={}", clave, compra.getFolio(), compraId);
                 return compra;
-            } else {
-                System.err.println("ERROR: No se pudo guardar la compra. compraId = " + compraId);
             }
 
+            LOG.info("Compra guardada: folio={}, id={}, pago={}, total={} centavos, {} µs", folio, compraId,
+                tarjetaId != null ? "TARJETA" : "EFECTIVO", compra.getTotalConDescuentoCentavos(),
+                (System.nanoTime() - inicio) / 1_000);
+            return compra;
+
         } catch (Exception e) {
-            System.err.println("ERROR al guardar compra: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al guardar compra {}", folio, e);
         }
 
         return null;
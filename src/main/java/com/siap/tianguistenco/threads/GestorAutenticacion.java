@@ -1,25 +1,25 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.UsuarioDAO;
 import com.siap.tianguistenco.gui.LoginFrame;
 
 import javax.swing.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo responsable de gestionar la autenticación de usuarios
  * Maneja el login y registro de usuarios en la aplicación
  */
 public class GestorAutenticacion implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(GestorAutenticacion.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final UsuarioDAO usuarioDAO;
     private LoginFrame loginFrame;
     private String usuarioActual;
 
-    public GestorAutenticacion(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public GestorAutenticacion(CicloVidaAplicacion cicloVida) {
+        this.cicloVida = cicloVida;
         this.usuarioDAO = new UsuarioDAO();
     }
 
@@ -33,13 +33,13 @@ public class GestorAutenticacion implements Runnable {
             });
 
             // Esperar hasta que el usuario se autentique o la aplicación se cierre
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
+            cicloVida.esperarAutenticacion();
+
+        } catch (InterruptedException e) {
+            LOG.info("GestorAutenticacion interrumpido");
 
         } catch (Exception e) {
-            System.err.println("Error en GestorAutenticacion: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorAutenticacion", e);
         }
     }
 
@@ -55,10 +55,11 @@ public class GestorAutenticacion implements Runnable {
         
         if (esValido) {
             this.usuarioActual = usuario;
-            usuarioAutenticado.set(true);
-            System.out.println("Usuario autenticado exitosamente: " + usuario);
+            LOG.info("Usuario autenticado exitosamente: {}", usuario);
+            // Publicar la transición: despierta a los hilos que esperan la autenticación
+            cicloVida.transicionar(EstadoAplicacion.AUTENTICADO);
         } else {
-            System.out.println("Credenciales inválidas para usuario: " + usuario);
+            LOG.aviso("Credenciales inválidas para usuario: {}", usuario);
         }
         
         return esValido;
@@ -68,7 +69,7 @@ public class GestorAutenticacion implements Runnable {
      * Cierra la sesión del usuario
      */
     public void cerrarSesion() {
-        usuarioAutenticado.set(false);
+        cicloVida.transicionar(EstadoAplicacion.SIN_SESION);
         usuarioActual = null;
         if (loginFrame != null) {
             SwingUtilities.invokeLater(() -> loginFrame.setVisible(false));
@@ -86,7 +87,7 @@ public class GestorAutenticacion implements Runnable {
      * Verifica si hay un usuario autenticado
      */
     public boolean isUsuarioAutenticado() {
-        return usuarioAutenticado.get();
+        return cicloVida.isAutenticado();
     }
 
     /**
@@ -99,9 +100,9 @@ public class GestorAutenticacion implements Runnable {
         boolean registrado = usuarioDAO.registrarUsuario(usuario, contrasena);
         
         if (registrado) {
-            System.out.println("Usuario registrado exitosamente: " + usuario);
+            LOG.info("Usuario registrado exitosamente: {}", usuario);
         } else {
-            System.out.println("Error al registrar usuario: " + usuario);
+            LOG.aviso("Error al registrar usuario: {}", usuario);
         }
         
         return registrado;
@@ -1,24 +1,24 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.DevolucionDAO;
 import com.siap.tianguistenco.model.Devolucion;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo responsable de procesar devoluciones de compras
  */
 public class GestorDevoluciones implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(GestorDevoluciones.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final DevolucionDAO devolucionDAO;
     private int usuarioId;
 
-    public GestorDevoluciones(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, int usuarioId) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public GestorDevoluciones(CicloVidaAplicacion cicloVida, int usuarioId) {
+        this.cicloVida = cicloVida;
         this.devolucionDAO = new DevolucionDAO();
         this.usuarioId = usuarioId;
     }
@@ -26,27 +26,20 @@ public class GestorDevoluciones implements Runnable {
     @Override
     public void run() {
         try {
-            System.out.println("GestorDevoluciones iniciado para usuario: " + usuarioId);
+            LOG.info("GestorDevoluciones iniciado para usuario: {}", usuarioId);
 
             // Esperar a que el usuario esté autenticado
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
             // Mantener el hilo activo
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("GestorDevoluciones interrumpido");
+            LOG.info("GestorDevoluciones interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en GestorDevoluciones: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorDevoluciones", e);
         }
     }
 
@@ -68,14 +61,14 @@ public class GestorDevoluciones implements Runnable {
             int devolucionId = devolucionDAO.registrarDevolucion(devolucion);
             
             if (devolucionId > 0) {
-                System.out.println("Devolución registrada: ID=" + devolucionId + ", Folio=" + folioCompra);
+                LOG.info("Devolución registrada: ID={}, Folio={}", devolucionId, folioCompra);
                 
                 // Simular procesamiento de devolución
                 Thread.sleep(1000);
                 
                 // Actualizar estado a PROCESADA
                 devolucionDAO.actualizarEstadoDevolucion(devolucionId, "PROCESADA");
-                System.out.println("Devolución procesada exitosamente");
+                LOG.info("Devolución procesada exitosamente");
             }
 
             return devolucionId;
@@ -84,8 +77,7 @@ public class GestorDevoluciones implements Runnable {
             Thread.currentThread().interrupt();
             return -1;
         } catch (Exception e) {
-            System.err.println("Error al procesar devolución: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al procesar devolución", e);
             return -1;
         }
     }
@@ -1,45 +1,39 @@
 package com.siap.tianguistenco.threads;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import com.siap.tianguistenco.bitacora.Bitacora;
+import com.siap.tianguistenco.model.Centavos;
 
 /**
  * Hilo responsable de calcular y gestionar envíos a domicilio
  */
 public class GestorEnvio implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
-    private static final double COSTO_ENVIO_BASE = 50.00;
-    private static final double COSTO_ENVIO_GRATIS_MINIMO = 500.00;
+    private static final Bitacora LOG = Bitacora.de(GestorEnvio.class);
 
-    public GestorEnvio(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    private final CicloVidaAplicacion cicloVida;
+    private static final long COSTO_ENVIO_BASE = 5_000; // centavos
+    private static final long COSTO_ENVIO_GRATIS_MINIMO = 50_000; // centavos
+
+    public GestorEnvio(CicloVidaAplicacion cicloVida) {
+        this.cicloVida = cicloVida;
     }
 
     @Override
     public void run() {
         try {
-            System.out.println("GestorEnvio iniciado");
+            LOG.info("GestorEnvio iniciado");
 
             // Esperar a que el usuario esté autenticado
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
             // Mantener el hilo activo
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("GestorEnvio interrumpido");
+            LOG.info("GestorEnvio interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en GestorEnvio: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorEnvio", e);
         }
     }
 
@@ -48,11 +42,25 @@ public class GestorEnvio implements Runnable {
      * Envío gratis para compras mayores a $500
      */
     public double calcularCostoEnvio(double montoTotal) {
-        if (montoTotal >= COSTO_ENVIO_GRATIS_MINIMO) {
-            System.out.println("Envío gratis aplicado (compra mayor a $" + COSTO_ENVIO_GRATIS_MINIMO + ")");
-            return 0.0;
+        return Centavos.aPesos(calcularCostoEnvioCentavos(Centavos.desdePesos(montoTotal)));
+    }
+
+    /**
+     * Calcula el costo de envío en centavos a partir del monto total en centavos
+     */
+    public long calcularCostoEnvioCentavos(long montoTotal) {
+        long costo = costoEnvioCentavos(montoTotal);
+        if (costo == 0) {
+            LOG.depuracion("Envío gratis aplicado (compra mayor a {} centavos)", COSTO_ENVIO_GRATIS_MINIMO);
         }
-        return COSTO_ENVIO_BASE;
+        return costo;
+    }
+
+    /**
+     * Tarifa de envío a domicilio en centavos; no depende de la sesión, la comparten todos los clientes
+     */
+    public static long costoEnvioCentavos(long montoTotal) {
+        return montoTotal >= COSTO_ENVIO_GRATIS_MINIMO ? 0 : COSTO_ENVIO_BASE;
     }
 
     /**
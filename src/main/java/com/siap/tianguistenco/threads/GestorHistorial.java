@@ -1,23 +1,26 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.CompraDAO;
+import com.siap.tianguistenco.datos.CursorCompras;
+import com.siap.tianguistenco.datos.PaginaCompras;
 import com.siap.tianguistenco.model.Compra;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo responsable de gestionar el historial de compras
  */
 public class GestorHistorial implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(GestorHistorial.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final CompraDAO compraDAO;
     private int usuarioId;
 
-    public GestorHistorial(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, int usuarioId) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public GestorHistorial(CicloVidaAplicacion cicloVida, int usuarioId) {
+        this.cicloVida = cicloVida;
         this.compraDAO = new CompraDAO();
         this.usuarioId = usuarioId;
     }
@@ -25,35 +28,61 @@ public class GestorHistorial implements Runnable {
     @Override
     public void run() {
         try {
-            System.out.println("GestorHistorial iniciado para usuario: " + usuarioId);
+            LOG.info("GestorHistorial iniciado para usuario: {}", usuarioId);
 
             // Esperar a que el usuario esté autenticado
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
             // Mantener el hilo activo
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("GestorHistorial interrumpido");
+            LOG.info("GestorHistorial interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en GestorHistorial: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorHistorial", e);
         }
     }
 
     /**
-     * Obtiene todas las compras del usuario
+     * Obtiene todas las compras del usuario con sus items
      */
     public List<Compra> obtenerHistorialCompras() {
-        return compraDAO.obtenerComprasPorUsuario(usuarioId);
+        return compraDAO.obtenerComprasPorUsuario(usuarioId, true);
+    }
+
+    /**
+     * Obtiene solo los encabezados de las compras del usuario
+     * Los items se cargan después con cargarItems() cuando se necesitan
+     */
+    public List<Compra> obtenerEncabezadosCompras() {
+        return compraDAO.obtenerComprasPorUsuario(usuarioId, false);
+    }
+
+    /**
+     * Obtiene una página de encabezados del historial del usuario
+     * @param despuesDe cursor de la página anterior, o null para la primera
+     * @param tamanoPagina número máximo de compras
+     */
+    public PaginaCompras obtenerPaginaHistorial(CursorCompras despuesDe, int tamanoPagina) {
+        return compraDAO.obtenerPaginaComprasPorUsuario(usuarioId, despuesDe, tamanoPagina, false);
+    }
+
+    /**
+     * Obtiene las compras del usuario entre dos fechas (desde inclusivo, hasta exclusivo)
+     */
+    public List<Compra> obtenerComprasEntre(LocalDateTime desde, LocalDateTime hasta) {
+        return compraDAO.obtenerComprasPorUsuarioEntre(usuarioId, desde, hasta, false);
+    }
+
+    /**
+     * Carga los items de una compra leída solo con su encabezado
+     */
+    public void cargarItems(Compra compra) {
+        if (compra != null && compra.getItems().isEmpty()) {
+            compra.setItems(compraDAO.obtenerItemsCompra(compra.getId()));
+        }
     }
 
     /**
@@ -1,24 +1,24 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
+
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Hilo responsable de mantener la sesión del usuario activa
  * Monitorea el estado de la sesión y registra eventos importantes
  */
 public class GestorSesion implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(GestorSesion.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final String usuario;
     private LocalDateTime inicioSesion;
     private LocalDateTime ultimaActividad;
     private boolean sesionActiva;
 
-    public GestorSesion(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, String usuario) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public GestorSesion(CicloVidaAplicacion cicloVida, String usuario) {
+        this.cicloVida = cicloVida;
         this.usuario = usuario;
         this.sesionActiva = true;
         this.inicioSesion = LocalDateTime.now();
@@ -28,19 +28,16 @@ public class GestorSesion implements Runnable {
     @Override
     public void run() {
         try {
-            System.out.println("GestorSesion iniciado para usuario: " + usuario);
+            LOG.info("GestorSesion iniciado para usuario: {}", usuario);
             logEvento("Sesión iniciada");
 
             // Monitorear la sesión mientras esté activa
-            while (aplicacionActiva.get() && usuarioAutenticado.get() && sesionActiva) {
-                // Verificar si la sesión sigue activa
-                if (!usuarioAutenticado.get()) {
+            while (cicloVida.isAutenticado() && sesionActiva) {
+                // Actualizar última actividad cada 30 segundos; si la sesión termina antes, se despierta de inmediato
+                if (cicloVida.esperarFinSesion(30000)) {
                     cerrarSesion();
                     break;
                 }
-
-                // Actualizar última actividad cada 30 segundos
-                Thread.sleep(30000);
                 ultimaActividad = LocalDateTime.now();
                 
                 // Log de actividad cada 2 minutos
@@ -50,11 +47,10 @@ public class GestorSesion implements Runnable {
             }
 
         } catch (InterruptedException e) {
-            System.out.println("GestorSesion interrumpido para usuario: " + usuario);
+            LOG.info("GestorSesion interrumpido para usuario: {}", usuario);
             cerrarSesion();
         } catch (Exception e) {
-            System.err.println("Error en GestorSesion: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorSesion", e);
         }
     }
 
@@ -68,7 +64,7 @@ public class GestorSesion implements Runnable {
             long duracionMinutos = java.time.Duration.between(inicioSesion, finSesion).toMinutes();
             
             logEvento("Sesión cerrada - Duración: " + duracionMinutos + " minutos");
-            System.out.println("Sesión de " + usuario + " cerrada después de " + duracionMinutos + " minutos");
+            LOG.info("Sesión de {} cerrada después de {} minutos", usuario, duracionMinutos);
         }
     }
 
@@ -83,8 +79,8 @@ public class GestorSesion implements Runnable {
      * Registra un evento en la sesión
      */
     private void logEvento(String evento) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        System.out.println("[" + timestamp + "] SESIÓN - " + evento);
+        // La bitácora ya pone la hora
+        LOG.info("SESIÓN {} - {}", usuario, evento);
     }
 
     /**
@@ -105,7 +101,7 @@ public class GestorSesion implements Runnable {
      * Verifica si la sesión está activa
      */
     public boolean isSesionActiva() {
-        return sesionActiva && usuarioAutenticado.get();
+        return sesionActiva && cicloVida.isAutenticado();
     }
 
     /**
@@ -1,52 +1,60 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.TarjetaDAO;
+import com.siap.tianguistenco.model.Centavos;
 import com.siap.tianguistenco.model.Tarjeta;
+import com.siap.tianguistenco.pagos.ProcesadorPagos;
+import com.siap.tianguistenco.pagos.ResultadoPago;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Hilo responsable de gestionar las tarjetas de pago
  * Maneja el registro, validación y procesamiento de pagos con tarjetas
+ * Los pagos se envían al ProcesadorPagos y devuelven un CompletableFuture; ningún hilo espera a la pasarela.
  */
 public class GestorTarjetas implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(GestorTarjetas.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final TarjetaDAO tarjetaDAO;
+    private final ProcesadorPagos procesadorPagos;
+    // La consulta de la tarjeta bloquea en la base de datos; se hace en un hilo virtual
+    private final ExecutorService consultas = Executors.newVirtualThreadPerTaskExecutor();
     private int usuarioId;
 
-    public GestorTarjetas(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, int usuarioId) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public GestorTarjetas(CicloVidaAplicacion cicloVida, int usuarioId) {
+        this(cicloVida, usuarioId, ProcesadorPagos.getInstancia());
+    }
+
+    public GestorTarjetas(CicloVidaAplicacion cicloVida, int usuarioId, ProcesadorPagos procesadorPagos) {
+        this.cicloVida = cicloVida;
         this.tarjetaDAO = new TarjetaDAO();
+        this.procesadorPagos = procesadorPagos;
         this.usuarioId = usuarioId;
     }
 
     @Override
     public void run() {
         try {
-            System.out.println("GestorTarjetas iniciado para usuario: " + usuarioId);
+            LOG.info("GestorTarjetas iniciado para usuario: {}", usuarioId);
 
             // Esperar a que el usuario esté autenticado
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
             // Mantener el hilo activo para procesar solicitudes de tarjetas
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("GestorTarjetas interrumpido");
+            LOG.info("GestorTarjetas interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en GestorTarjetas: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en GestorTarjetas", e);
         }
     }
 
@@ -58,20 +66,19 @@ public class GestorTarjetas implements Runnable {
         try {
             // Validar formato de tarjeta (básico)
             if (!validarNumeroTarjeta(numeroTarjeta)) {
-                System.out.println("Número de tarjeta inválido");
+                LOG.aviso("Número de tarjeta inválido para usuario: {}", usuarioId);
                 return false;
             }
 
             boolean registrada = tarjetaDAO.registrarTarjeta(usuarioId, numeroTarjeta, nombreTitular, 
                                                              fechaVencimiento, tipo);
             if (registrada) {
-                System.out.println("Tarjeta registrada exitosamente para usuario: " + usuarioId);
+                LOG.info("Tarjeta registrada exitosamente para usuario: {}", usuarioId);
             }
             return registrada;
 
         } catch (Exception e) {
-            System.err.println("Error al registrar tarjeta: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error al registrar tarjeta", e);
             return false;
         }
     }
@@ -85,41 +92,53 @@ public class GestorTarjetas implements Runnable {
 
     /**
      * Procesa un pago con una tarjeta
+     * Bloquea hasta tener el resultado; para no ocupar el hilo usar procesarPago.
      */
     public boolean procesarPagoConTarjeta(int tarjetaId, double monto) {
-        try {
-            Tarjeta tarjeta = tarjetaDAO.obtenerTarjetaPorId(tarjetaId);
-            if (tarjeta == null || !tarjeta.isActiva()) {
-                System.out.println("Tarjeta no válida o inactiva");
-                return false;
-            }
-
-            // Simular procesamiento de pago (validación de tarjeta, saldo, etc.)
-            System.out.println("Procesando pago con tarjeta: " + tarjeta.getNumeroEnmascarado());
-            System.out.println("Monto: $" + String.format("%.2f", monto));
-
-            // Simular delay de procesamiento
-            Thread.sleep(1500);
+        return procesarPago(tarjetaId, Centavos.desdePesos(monto)).join().isAprobado();
+    }
 
-            // Simular éxito del pago (95% de probabilidad)
-            boolean exito = Math.random() > 0.05;
-            
-            if (exito) {
-                System.out.println("Pago procesado exitosamente");
-            } else {
-                System.out.println("Error al procesar el pago");
-            }
+    /**
+     * Procesa un pago sin bloquear
+     * @param tarjetaId tarjeta a cargar, o null para pago en efectivo
+     * @return future que se completa con el resultado (aprobado, rechazado, tiempo agotado, ...)
+     */
+    public CompletableFuture<ResultadoPago> procesarPago(Integer tarjetaId, long montoCentavos) {
+        return procesarPago(tarjetaId, montoCentavos, null);
+    }
 
-            return exito;
+    /**
+     * Procesa un pago sin bloquear con clave de idempotencia: repetirlo con la misma clave no cobra dos veces
+     * @param clave clave de idempotencia del checkout, o null
+     */
+    public CompletableFuture<ResultadoPago> procesarPago(Integer tarjetaId, long montoCentavos, String clave) {
+        if (tarjetaId == null) {
+            LOG.depuracion("Procesando pago en efectivo: {} centavos", montoCentavos);
+            return procesadorPagos.procesar(null, montoCentavos, clave).thenApply(this::registrarResultado);
+        }
+        return CompletableFuture.supplyAsync(() -> tarjetaDAO.obtenerTarjetaPorId(tarjetaId), consultas)
+            .thenCompose(tarjeta -> {
+                if (tarjeta == null || !tarjeta.isActiva()) {
+                    LOG.aviso("Tarjeta {} no válida o inactiva", tarjetaId);
+                    return CompletableFuture.completedFuture(ResultadoPago.rechazado("Tarjeta no válida o inactiva"));
+                }
+                LOG.depuracion("Procesando pago con tarjeta {}: {} centavos", tarjeta.getNumeroEnmascarado(), montoCentavos);
+                return procesadorPagos.procesar(tarjetaId, montoCentavos, clave);
+            })
+            .exceptionally(e -> {
+                LOG.error("Error al procesar pago", e);
+                return new ResultadoPago(ResultadoPago.Estado.ERROR, null, "Error al procesar el pago", 0);
+            })
+            .thenApply(this::registrarResultado);
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
-        } catch (Exception e) {
-            System.err.println("Error al procesar pago: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+    private ResultadoPago registrarResultado(ResultadoPago resultado) {
+        if (resultado.isAprobado()) {
+            LOG.info("Pago procesado exitosamente: {}", resultado);
+        } else {
+            LOG.aviso("Pago no aprobado: {}", resultado);
         }
+        return resultado;
     }
 
     /**
@@ -1,59 +1,60 @@
 package com.siap.tianguistenco.threads;
 
+import com.siap.tianguistenco.bitacora.Bitacora;
 import com.siap.tianguistenco.datos.ProductoDAO;
+import com.siap.tianguistenco.datos.ProductoDAOCache;
 import com.siap.tianguistenco.gui.CatalogoFrame;
 import com.siap.tianguistenco.model.CarritoCompra;
 import com.siap.tianguistenco.model.Producto;
+import com.siap.tianguistenco.repository.RepositorioProductos;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Hilo responsable de gestionar la selección de productos y el catálogo
  * Maneja la interfaz del catálogo y las operaciones del carrito
  */
 public class SelectorProductos implements Runnable {
-    private final AtomicBoolean usuarioAutenticado;
-    private final AtomicBoolean aplicacionActiva;
+    private static final Bitacora LOG = Bitacora.de(SelectorProductos.class);
+
+    private final CicloVidaAplicacion cicloVida;
     private final CarritoCompra carritoCompra;
     private final ProductoDAO productoDAO;
-    private CatalogoFrame catalogoFrame;
+    private final RepositorioProductos repositorioProductos;
+    private final CompletableFuture<CatalogoFrame> catalogoListo = new CompletableFuture<>();
+    private volatile CatalogoFrame catalogoFrame;
 
-    public SelectorProductos(AtomicBoolean usuarioAutenticado, AtomicBoolean aplicacionActiva, CarritoCompra carritoCompra) {
-        this.usuarioAutenticado = usuarioAutenticado;
-        this.aplicacionActiva = aplicacionActiva;
+    public SelectorProductos(CicloVidaAplicacion cicloVida, CarritoCompra carritoCompra) {
+        this.cicloVida = cicloVida;
         this.carritoCompra = carritoCompra;
-        this.productoDAO = new ProductoDAO();
+        this.productoDAO = ProductoDAOCache.getInstancia();
+        this.repositorioProductos = RepositorioProductos.getInstancia();
     }
 
     @Override
     public void run() {
         try {
             // Esperar a que el usuario se autentique
-            while (aplicacionActiva.get() && !usuarioAutenticado.get()) {
-                Thread.sleep(100);
-            }
-
-            if (!aplicacionActiva.get()) {
+            if (!cicloVida.esperarAutenticacion()) {
                 return;
             }
 
-            System.out.println("SelectorProductos iniciado - Mostrando catálogo");
+            LOG.info("SelectorProductos iniciado - Mostrando catálogo");
 
             // Crear y mostrar la ventana del catálogo
-            catalogoFrame = new CatalogoFrame(this, carritoCompra, productoDAO);
+            catalogoFrame = new CatalogoFrame(this, carritoCompra);
             catalogoFrame.setVisible(true);
+            catalogoListo.complete(catalogoFrame);
 
             // Mantener el hilo activo mientras la aplicación esté corriendo
-            while (aplicacionActiva.get() && usuarioAutenticado.get()) {
-                Thread.sleep(1000);
-            }
+            cicloVida.esperarFinSesion();
 
         } catch (InterruptedException e) {
-            System.out.println("SelectorProductos interrumpido");
+            LOG.info("SelectorProductos interrumpido");
         } catch (Exception e) {
-            System.err.println("Error en SelectorProductos: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error en SelectorProductos", e);
         } finally {
             if (catalogoFrame != null) {
                 catalogoFrame.dispose();
@@ -63,15 +64,21 @@ public class SelectorProductos implements Runnable {
 
     /**
      * Agrega un producto al carrito de compras
+     * @return false si no hay existencias para reservarlo
      */
-    public synchronized void agregarAlCarrito(Producto producto) {
+    public synchronized boolean agregarAlCarrito(Producto producto) {
         if (producto != null) {
-            carritoCompra.agregarProducto(producto);
-            System.out.println("Producto agregado al carrito: " + producto.getNombre());
+            if (!carritoCompra.agregarProducto(producto)) {
+                LOG.depuracion("Sin existencias para agregar: {}", producto.getNombre());
+                return false;
+            }
+            LOG.depuracion("Producto agregado al carrito: {}", producto.getNombre());
             
             // Notificar a otros hilos sobre el cambio
             notifyAll();
+            return true;
         }
+        return false;
     }
 
     /**
@@ -80,7 +87,7 @@ public class SelectorProductos implements Runnable {
     public synchronized void eliminarDelCarrito(Producto producto) {
         if (producto != null) {
             carritoCompra.eliminarProducto(producto);
-            System.out.println("Producto eliminado del carrito: " + producto.getNombre());
+            LOG.depuracion("Producto eliminado del carrito: {}", producto.getNombre());
             
             // Notificar a otros hilos sobre el cambio
             notifyAll();
@@ -102,24 +109,24 @@ public class SelectorProductos implements Runnable {
     }
     
     /**
-     * Obtiene todos los productos de la base de datos
+     * Obtiene todos los productos del catálogo en memoria
      */
     public List<Producto> obtenerTodosLosProductos() {
-        return productoDAO.obtenerTodosLosProductos();
+        return repositorioProductos.getTodosLosProductos();
     }
     
     /**
-     * Obtiene productos por categoría
+     * Obtiene productos por categoría del catálogo en memoria
      */
     public List<Producto> obtenerProductosPorCategoria(String categoria) {
-        return productoDAO.obtenerProductosPorCategoria(categoria);
+        return repositorioProductos.getProductosPorCategoria(categoria);
     }
     
     /**
      * Obtiene todas las categorías disponibles
      */
     public List<String> obtenerCategorias() {
-        return productoDAO.obtenerCategorias();
+        return repositorioProductos.getCatalogo().getNombresCategorias();
     }
 
     /**
@@ -146,7 +153,7 @@ public class SelectorProductos implements Runnable {
     public void procesarPago() {
         // Este método será llamado desde la interfaz para activar el finalizador
         // La lógica real del pago se maneja en FinalizadorCompra
-        System.out.println("Solicitud de pago recibida en SelectorProductos");
+        LOG.depuracion("Solicitud de pago recibida en SelectorProductos");
     }
 
     /**
@@ -155,4 +162,11 @@ public class SelectorProductos implements Runnable {
     public CatalogoFrame getCatalogoFrame() {
         return catalogoFrame;
     }
+
+    /**
+     * Ejecuta la acción en cuanto la ventana del catálogo exista (de inmediato si ya se creó)
+     */
+    public void cuandoCatalogoListo(Consumer<CatalogoFrame> accion) {
+        catalogoListo.thenAccept(accion);
+    }
 }
@@ -0,0 +1,70 @@
+package com.siap.tianguistenco.threads;
+
+import com.siap.tianguistenco.bitacora.Bitacora;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Acción que se ejecuta en un hilo propio cada vez que se solicita, agrupando ráfagas de solicitudes
+ * Mientras haya una ejecución pendiente las nuevas solicitudes no encolan otra; la marca de pendiente
+ * se limpia antes de ejecutar, así un cambio que llega durante la ejecución provoca exactamente una más.
+ */
+public class TareaCoalescente {
+    private static final Bitacora LOG = Bitacora.de(TareaCoalescente.class);
+
+    private final Runnable accion;
+    private final ExecutorService ejecutor;
+    private final AtomicBoolean pendiente = new AtomicBoolean();
+    private final AtomicLong solicitudes = new AtomicLong();
+    private final AtomicLong ejecuciones = new AtomicLong();
+
+    public TareaCoalescente(String nombreHilo, Runnable accion) {
+        this.accion = accion;
+        // Hilo virtual: mientras no hay solicitudes no ocupa un hilo de plataforma
+        this.ejecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name(nombreHilo).factory());
+    }
+
+    /**
+     * Pide una ejecución de la acción; no bloquea
+     */
+    public void solicitar() {
+        solicitudes.incrementAndGet();
+        if (pendiente.compareAndSet(false, true)) {
+            try {
+                ejecutor.execute(this::ejecutar);
+            } catch (RejectedExecutionException e) {
+                // La tarea ya se cerró; la solicitud se descarta
+                pendiente.set(false);
+            }
+        }
+    }
+
+    private void ejecutar() {
+        pendiente.set(false);
+        ejecuciones.incrementAndGet();
+        try {
+            accion.run();
+        } catch (RuntimeException e) {
+            LOG.error("Error en tarea {}", Thread.currentThread().getName(), e);
+        }
+    }
+
+    /**
+     * Deja de aceptar solicitudes; la ejecución en curso termina normalmente
+     */
+    public void cerrar() {
+        ejecutor.shutdown();
+    }
+
+    public long getSolicitudes() {
+        return solicitudes.get();
+    }
+
+    public long getEjecuciones() {
+        return ejecuciones.get();
+    }
+}